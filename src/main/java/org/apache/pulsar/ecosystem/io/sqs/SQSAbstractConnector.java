@@ -18,10 +18,35 @@
  */
 package org.apache.pulsar.ecosystem.io.sqs;
 
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.handlers.RequestHandler2;
 import com.amazonaws.services.sqs.buffered.AmazonSQSBufferedAsyncClient;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.GetQueueAttributesResult;
+import com.amazonaws.services.sqs.model.QueueAttributeName;
+import com.amazonaws.services.sqs.model.QueueDoesNotExistException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.IntStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -33,9 +58,12 @@ import org.apache.pulsar.io.aws.AwsCredentialProviderPlugin;
  */
 @Slf4j
 public abstract class SQSAbstractConnector extends AbstractAwsConnector {
-    // There will be a bottleneck when use single AmazonSQSBufferedAsyncClient to delete.
-    // If consumer threads exceed the threshold n times, n clients will be created for asynchronous delete tasks.
+    // There will be a bottleneck when all requests go through a single AmazonSQSBufferedAsyncClient.
+    // Unless clientPoolSize is set, one client is added to the pool for every n times the threshold of consumers.
     public static final int SQS_CLIENT_THRESHOLD = 10;
+    protected static final long DRAIN_POLL_MILLIS = 50;
+    private static final long WARM_UP_TIMEOUT_MILLIS = 10000;
+    static final String METRICS_STARTUP_MILLIS = "_sqs_startup_millis_";
     @Getter
     @Setter
     private SQSConnectorConfig config;
@@ -44,16 +72,54 @@ public abstract class SQSAbstractConnector extends AbstractAwsConnector {
     private AmazonSQSBufferedAsyncClient client;
 
     @Getter
-    private ArrayList<AmazonSQSBufferedAsyncClient> clientsForDelete;
+    private SQSClientPool clientPool;
 
-    private final AtomicLong index = new AtomicLong(0);
+    @Getter
+    private String queueUrl;
+
+    // the first endpoint that could be reached on open is the primary one, the queue url and pool above are its
+    @Getter
+    private List<SQSEndpoint> endpoints = Collections.emptyList();
+    private SQSEndpoint primaryEndpoint;
 
-    private int deleteClientCount = 0;
+    @Getter
+    private final SQSRequestStats requestStats = new SQSRequestStats();
 
     @Getter
-    private String queueUrl;
+    private SQSRateLimiter rateLimiter;
+
+    private final SQSFlightRecorder flightRecorder = new SQSFlightRecorder();
+
+    @Getter
+    private SQSTracer tracer;
+
+    @Getter
+    private SQSTrafficCapture capture;
+
+    private ScheduledExecutorService statsExecutor;
+    private ScheduledExecutorService healthCheckExecutor;
+    private ScheduledExecutorService configWatchExecutor;
+
+    // the queue urls this connector resolved, by endpoint and queue name
+    private final Map<String, String> queueUrls = new ConcurrentHashMap<>();
+
+    // drops the cached queue urls of the connector once a request finds a queue gone, so the next resolve creates
+    // the queue again
+    private final RequestHandler2 queueUrlInvalidator = new RequestHandler2() {
+        @Override
+        public void afterError(Request<?> request, Response<?> response, Exception e) {
+            if (e instanceof QueueDoesNotExistException) {
+                queueUrls.clear();
+            }
+        }
+    };
+
+    // when the connector started to open, and whether it handed out or wrote its first record since
+    private volatile long openedNanos = System.nanoTime();
+    private final AtomicBoolean firstRecord = new AtomicBoolean();
 
     public void prepareSqsClient() throws Exception {
+        openedNanos = System.nanoTime();
         if (config == null) {
             throw new IllegalStateException("Configuration not set");
         }
@@ -65,23 +131,499 @@ public abstract class SQSAbstractConnector extends AbstractAwsConnector {
                 config.getAwsCredentialPluginName(),
                 config.getAwsCredentialPluginParam());
 
-        client = config.buildAmazonSQSClient(credentialsProvider);
+        rateLimiter = config.buildRateLimiter();
+        tracer = SQSTracer.create(config.getTraceSamplingRatio(), config.getTraceSpanExporter());
+        // the rate limiter runs first, so its waits are not part of the recorded request durations
+        RequestHandler2[] requestHandlers = rateLimiter == null
+                ? new RequestHandler2[]{flightRecorder, requestStats, queueUrlInvalidator}
+                : new RequestHandler2[]{rateLimiter, flightRecorder, requestStats, queueUrlInvalidator};
 
-        queueUrl = SQSUtils.ensureQueueExists(client, config.getQueueName());
+        List<SQSEndpointConfig> endpointConfigs = config.getEffectiveEndpoints();
+        ExecutorService startupExecutor = Executors.newCachedThreadPool();
+        try {
+            // the endpoints and the clients of their pools do not depend on each other, so they are all set up
+            // at once instead of one after another
+            List<CompletableFuture<SQSEndpoint>> opening = new ArrayList<>(endpointConfigs.size());
+            for (int i = 0; i < endpointConfigs.size(); i++) {
+                int index = i;
+                opening.add(CompletableFuture.supplyAsync(() -> openEndpoint(index, endpointConfigs.get(index),
+                        endpointConfigs.size() == 1, credentialsProvider, requestHandlers, startupExecutor),
+                        startupExecutor));
+            }
+            List<SQSEndpoint> openedEndpoints = new ArrayList<>(endpointConfigs.size());
+            RuntimeException failure = null;
+            for (CompletableFuture<SQSEndpoint> endpoint : opening) {
+                try {
+                    openedEndpoints.add(join(endpoint));
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+            }
+            SQSEndpoint primary = null;
+            for (SQSEndpoint endpoint : openedEndpoints) {
+                if (endpoint.getQueueUrl() != null) {
+                    primary = endpoint;
+                    break;
+                }
+            }
+            if (failure != null || primary == null) {
+                openedEndpoints.forEach(endpoint -> endpoint.getClientPool().shutdown());
+                throw failure != null ? failure
+                        : new IllegalStateException("None of the sqs endpoints " + endpointConfigs + " can be reached");
+            }
+            if (config.isPrefetchEnabled()) {
+                int visibilityTimeout;
+                try {
+                    visibilityTimeout = SQSUtils.getVisibilityTimeout(primary.getClientPool().getPrimaryClient(),
+                            primary.getQueueUrl());
+                } catch (AmazonClientException e) {
+                    openedEndpoints.forEach(endpoint -> endpoint.getClientPool().shutdown());
+                    throw e;
+                }
+                if (config.limitPrefetchToVisibilityTimeout(visibilityTimeout)) {
+                    // nothing was received yet, rebuild the clients with the lowered prefetch depth
+                    int primaryIndex = openedEndpoints.indexOf(primary);
+                    openedEndpoints = rebuildClientPools(openedEndpoints, endpointConfigs, credentialsProvider,
+                            requestHandlers, startupExecutor);
+                    primary = openedEndpoints.get(primaryIndex);
+                }
+            }
+            for (SQSEndpoint endpoint : openedEndpoints) {
+                log.info("Created a pool of {} sqs clients for {}, prefetching: {}.", endpoint.getClientPool().size(),
+                        endpoint.getName(), config.isPrefetchEnabled());
+            }
+            endpoints = Collections.unmodifiableList(openedEndpoints);
+            primaryEndpoint = primary;
+            clientPool = primary.getClientPool();
+            client = clientPool.getPrimaryClient();
+            queueUrl = primary.getQueueUrl();
+        } finally {
+            startupExecutor.shutdown();
+        }
+        // opened once the endpoints are set up, a failed setup would leave the capture file open otherwise
+        if (!config.getCaptureFile().isEmpty()) {
+            try {
+                capture = SQSTrafficCapture.open(getCaptureFile(), config.getCaptureSampleRatio(),
+                        config.getCaptureMaxMessages());
+            } catch (IOException | RuntimeException e) {
+                endpoints.forEach(endpoint -> endpoint.getClientPool().shutdown());
+                throw e;
+            }
+        }
+        if (config.getWarmUpConnections() > 0) {
+            warmUpConnections(config.getWarmUpConnections());
+        }
+        long startupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - openedNanos);
+        log.info("The sqs clients are ready after {} ms.", startupMillis);
+        recordMetric(METRICS_STARTUP_MILLIS, startupMillis);
+
+        if (endpoints.size() > 1) {
+            healthCheckExecutor = Executors.newSingleThreadScheduledExecutor();
+            healthCheckExecutor.scheduleWithFixedDelay(this::checkEndpoints,
+                    config.getEndpointHealthCheckIntervalSeconds(), config.getEndpointHealthCheckIntervalSeconds(),
+                    TimeUnit.SECONDS);
+        }
 
-        if (config.getNumberOfConsumers() > SQS_CLIENT_THRESHOLD) {
-            deleteClientCount = config.getNumberOfConsumers() / SQS_CLIENT_THRESHOLD + 1;
-            clientsForDelete = new ArrayList<>(deleteClientCount);
+        if (config.getStatsIntervalSeconds() > 0) {
+            statsExecutor = Executors.newSingleThreadScheduledExecutor();
+            statsExecutor.scheduleAtFixedRate(this::reportRequestStats, config.getStatsIntervalSeconds(),
+                    config.getStatsIntervalSeconds(), TimeUnit.SECONDS);
+        }
+    }
 
-            IntStream.range(0, deleteClientCount)
-                    .forEach((i) -> clientsForDelete.add(config.buildAmazonSQSClient(credentialsProvider)));
+    /**
+     * Builds the client pool of an endpoint and resolves its queue. The queue is resolved on the first client
+     * while the other clients are built. The queue url is null if the endpoint cannot be reached and it is not
+     * the only one.
+     */
+    private SQSEndpoint openEndpoint(int index, SQSEndpointConfig endpointConfig, boolean single,
+                                     AwsCredentialProviderPlugin credentialsProvider,
+                                     RequestHandler2[] requestHandlers, ExecutorService startupExecutor) {
+        AmazonSQSBufferedAsyncClient firstClient = config.buildAmazonSQSClient(endpointConfig,
+                config.getClientPrefetchBatches(0, config.getEffectiveClientPoolSize()), credentialsProvider,
+                requestHandlers);
+        CompletableFuture<List<AmazonSQSBufferedAsyncClient>> otherClients = buildClients(endpointConfig, 1,
+                config.getEffectiveClientPoolSize(), credentialsProvider, requestHandlers, startupExecutor);
+        String endpointQueueUrl;
+        try {
+            endpointQueueUrl = resolveQueueUrl(firstClient, endpointConfig, endpointConfig.getQueueName());
+        } catch (AmazonClientException e) {
+            if (single) {
+                firstClient.shutdown();
+                join(otherClients).forEach(AmazonSQSBufferedAsyncClient::shutdown);
+                throw e;
+            }
+            // the health checks resolve the queue once the endpoint can be reached
+            log.warn("The sqs endpoint {} cannot be reached, it is failed over.", endpointConfig, e);
+            endpointQueueUrl = null;
         }
+        List<AmazonSQSBufferedAsyncClient> clients = new ArrayList<>(config.getEffectiveClientPoolSize());
+        clients.add(firstClient);
+        clients.addAll(join(otherClients));
+        return new SQSEndpoint(index, endpointName(endpointConfig), new SQSClientPool(clients), endpointQueueUrl,
+                config.getEndpointFailureThreshold());
+    }
+
+    /**
+     * Builds the clients of an endpoint pool of the given size from the given index on at once. Every client sets
+     * up its own executor and connection pool, which is what makes building them one after another slow.
+     */
+    private CompletableFuture<List<AmazonSQSBufferedAsyncClient>> buildClients(
+            SQSEndpointConfig endpointConfig, int fromIndex, int poolSize,
+            AwsCredentialProviderPlugin credentialsProvider, RequestHandler2[] requestHandlers,
+            ExecutorService startupExecutor) {
+        List<CompletableFuture<AmazonSQSBufferedAsyncClient>> building = new ArrayList<>(poolSize - fromIndex);
+        for (int i = fromIndex; i < poolSize; i++) {
+            int prefetch = config.getClientPrefetchBatches(i, poolSize);
+            building.add(CompletableFuture.supplyAsync(
+                    () -> config.buildAmazonSQSClient(endpointConfig, prefetch, credentialsProvider, requestHandlers),
+                    startupExecutor));
+        }
+        return CompletableFuture.allOf(building.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<AmazonSQSBufferedAsyncClient> clients = new ArrayList<>(building.size());
+            building.forEach(future -> clients.add(future.join()));
+            return clients;
+        });
+    }
+
+    private List<SQSEndpoint> rebuildClientPools(List<SQSEndpoint> openedEndpoints,
+                                                 List<SQSEndpointConfig> endpointConfigs,
+                                                 AwsCredentialProviderPlugin credentialsProvider,
+                                                 RequestHandler2[] requestHandlers, ExecutorService startupExecutor) {
+        List<CompletableFuture<List<AmazonSQSBufferedAsyncClient>>> building = new ArrayList<>();
+        for (SQSEndpoint endpoint : openedEndpoints) {
+            endpoint.getClientPool().shutdown();
+            building.add(buildClients(endpointConfigs.get(endpoint.getIndex()), 0, endpoint.getClientPool().size(),
+                    credentialsProvider, requestHandlers, startupExecutor));
+        }
+        List<SQSEndpoint> rebuilt = new ArrayList<>(openedEndpoints.size());
+        for (int i = 0; i < openedEndpoints.size(); i++) {
+            SQSEndpoint endpoint = openedEndpoints.get(i);
+            rebuilt.add(new SQSEndpoint(endpoint.getIndex(), endpoint.getName(),
+                    new SQSClientPool(join(building.get(i))), endpoint.getQueueUrl(),
+                    config.getEndpointFailureThreshold()));
+        }
+        return rebuilt;
+    }
+
+    /**
+     * Opens the given number of connections on every client of the reachable endpoints with a cheap request, so
+     * the first receives and sends do not pay for the TLS handshakes. A failed warm-up is only logged.
+     */
+    private void warmUpConnections(int connections) {
+        List<Future<GetQueueAttributesResult>> requests = new ArrayList<>();
+        for (SQSEndpoint endpoint : endpoints) {
+            if (endpoint.getQueueUrl() == null) {
+                continue;
+            }
+            GetQueueAttributesRequest request = new GetQueueAttributesRequest(endpoint.getQueueUrl())
+                    .withAttributeNames(QueueAttributeName.VisibilityTimeout);
+            for (AmazonSQSBufferedAsyncClient endpointClient : endpoint.getClientPool().getClients()) {
+                for (int i = 0; i < connections; i++) {
+                    requests.add(endpointClient.getQueueAttributesAsync(request));
+                }
+            }
+        }
+        long deadlineMillis = System.currentTimeMillis() + WARM_UP_TIMEOUT_MILLIS;
+        int warmed = 0;
+        try {
+            for (Future<GetQueueAttributesResult> request : requests) {
+                request.get(Math.max(0, deadlineMillis - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                warmed++;
+            }
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("failed to warm up the connections of the sqs clients.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Warmed up {} of {} sqs connections.", warmed, requests.size());
+    }
+
+    /**
+     * Resolves the url of a queue on an endpoint, creating the queue if needed. The url is cached by the
+     * connector, so a queue it uses twice is resolved once. The cache is not shared with other connectors, whose
+     * credentials may belong to another account.
+     */
+    protected String resolveQueueUrl(AmazonSQSBufferedAsyncClient endpointClient, SQSEndpointConfig endpointConfig,
+                                     String queueName) {
+        String key = endpointName(endpointConfig) + "|" + queueName;
+        String queueUrl = queueUrls.get(key);
+        if (queueUrl == null) {
+            queueUrl = SQSUtils.ensureQueueExists(endpointClient, queueName);
+            queueUrls.put(key, queueUrl);
+        }
+        return queueUrl;
+    }
+
+    /**
+     * Resolves the url of a queue on the primary endpoint, see {@link #resolveQueueUrl}.
+     */
+    protected String resolveQueueUrl(String queueName) {
+        return resolveQueueUrl(clientPool.getPrimaryClient(),
+                config.getEffectiveEndpoints().get(primaryEndpoint.getIndex()), queueName);
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static String endpointName(SQSEndpointConfig endpoint) {
+        String location = endpoint.getAwsEndpoint() == null || endpoint.getAwsEndpoint().isEmpty()
+                ? endpoint.getAwsRegion() : endpoint.getAwsEndpoint();
+        return location + "/" + endpoint.getQueueName();
+    }
+
+    /**
+     * Checks every endpoint with a cheap request, so a failed over endpoint recovers when it can be reached
+     * again, and the latency of the endpoints the sink does not use is kept up to date.
+     */
+    void checkEndpoints() {
+        List<SQSEndpointConfig> endpointConfigs = config.getEffectiveEndpoints();
+        for (SQSEndpoint endpoint : endpoints) {
+            AmazonSQSBufferedAsyncClient endpointClient = endpoint.getClientPool().getPrimaryClient();
+            long start = System.nanoTime();
+            try {
+                if (endpoint.getQueueUrl() == null) {
+                    SQSEndpointConfig endpointConfig = endpointConfigs.get(endpoint.getIndex());
+                    endpoint.setQueueUrl(resolveQueueUrl(endpointClient, endpointConfig,
+                            endpointConfig.getQueueName()));
+                } else {
+                    SQSUtils.getVisibilityTimeout(endpointClient, endpoint.getQueueUrl());
+                }
+                endpoint.onSuccess(System.nanoTime() - start);
+            } catch (Exception e) {
+                log.debug("The health check of the sqs endpoint {} failed.", endpoint.getName(), e);
+                endpoint.onError();
+            }
+        }
+    }
+
+    /**
+     * Applies the config override of the state store now and at every configOverrideIntervalSeconds, see
+     * {@link SQSConfigWatcher}.
+     */
+    protected void watchConfigOverride(Function<String, ByteBuffer> state) {
+        configWatchExecutor = Executors.newSingleThreadScheduledExecutor();
+        configWatchExecutor.scheduleWithFixedDelay(new SQSConfigWatcher(this, state), 0,
+                config.getConfigOverrideIntervalSeconds(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Changes the given options of the running connector to the given values. The options that already have the
+     * value are left alone, the ones that are not valid or cannot change at runtime keep their value.
+     */
+    synchronized void reconfigure(Map<String, Number> options) {
+        Map<String, Number> current = config.getReconfigurableOptions();
+        for (Map.Entry<String, Number> option : options.entrySet()) {
+            String name = option.getKey();
+            Number before = current.get(name);
+            Number after = option.getValue();
+            if (before != null && before.doubleValue() == after.doubleValue()) {
+                continue;
+            }
+            if (before != null && applyOption(name, after)) {
+                log.info("The {} changed from {} to {}.", name, before, after);
+            } else {
+                log.warn("The {}: {} is not valid or cannot change at runtime, keeping {}.", name, after, before);
+            }
+        }
+    }
+
+    /**
+     * Changes an option of the running connector.
+     *
+     * @return false if the value is not valid or the connector cannot change the option at runtime
+     */
+    protected boolean applyOption(String name, Number value) {
+        switch (name) {
+            case "rateLimitPerSecond":
+                if (rateLimiter == null || value.doubleValue() < 0) {
+                    return false;
+                }
+                config.setRateLimitPerSecond(value.doubleValue());
+                break;
+            case "rateLimitBurst":
+                Integer burst = intValue(value);
+                if (rateLimiter == null || burst == null || burst < 0) {
+                    return false;
+                }
+                config.setRateLimitBurst(burst);
+                break;
+            default:
+                return false;
+        }
+        rateLimiter.setRate(config.getRateLimitPerSecond(), config.getEffectiveRateLimitBurst());
+        return true;
+    }
+
+    /**
+     * The value of an int option, or null if it is not one.
+     */
+    protected static Integer intValue(Number value) {
+        double number = value.doubleValue();
+        return number == Math.rint(number) && number >= Integer.MIN_VALUE && number <= Integer.MAX_VALUE
+                ? (int) number : null;
+    }
+
+    /**
+     * Stops applying config overrides, before the connector stops what they would change.
+     */
+    protected void stopConfigWatch() {
+        if (configWatchExecutor != null) {
+            configWatchExecutor.shutdownNow();
+            configWatchExecutor = null;
+        }
+    }
+
+    public void shutdownSqsClient() {
+        stopConfigWatch();
+        if (healthCheckExecutor != null) {
+            healthCheckExecutor.shutdownNow();
+            healthCheckExecutor = null;
+        }
+        if (statsExecutor != null) {
+            statsExecutor.shutdownNow();
+            statsExecutor = null;
+        }
+        if (clientPool != null) {
+            for (SQSEndpoint endpoint : endpoints) {
+                if (endpoint.getClientPool() != clientPool) {
+                    endpoint.getClientPool().shutdown();
+                }
+            }
+            clientPool.shutdown();
+            reportRequestStats();
+        }
+        if (capture != null) {
+            try {
+                capture.close();
+            } catch (IOException e) {
+                log.warn("failed to close the capture {}.", getCaptureFile(), e);
+            }
+            capture = null;
+        }
+    }
+
+    /**
+     * Flushes the buffered requests of the clients and waits for the requests in flight, until the deadline.
+     *
+     * @return whether all requests completed before the deadline
+     */
+    protected boolean awaitPendingRequests(long deadlineMillis) throws InterruptedException {
+        for (SQSEndpoint endpoint : endpoints) {
+            if (!endpoint.getClientPool().flush(deadlineMillis - System.currentTimeMillis())) {
+                return false;
+            }
+        }
+        while (getInFlight() > 0) {
+            if (System.currentTimeMillis() >= deadlineMillis) {
+                return false;
+            }
+            Thread.sleep(DRAIN_POLL_MILLIS);
+        }
+        return true;
+    }
+
+    /**
+     * The number of requests in flight on all endpoints.
+     */
+    protected int getInFlight() {
+        int inFlight = 0;
+        for (SQSEndpoint endpoint : endpoints) {
+            inFlight += endpoint.getClientPool().getInFlight();
+        }
+        return inFlight;
+    }
+
+    /**
+     * Replaces the client pool with the single given client.
+     */
+    void setClient(AmazonSQSBufferedAsyncClient client) {
+        this.client = client;
+        this.clientPool = new SQSClientPool(Collections.singletonList(client));
+        this.primaryEndpoint = new SQSEndpoint(0, "default", clientPool, queueUrl,
+                config != null ? config.getEndpointFailureThreshold()
+                        : SQSConnectorConfig.DEFAULT_ENDPOINT_FAILURE_THRESHOLD);
+        this.endpoints = Collections.singletonList(primaryEndpoint);
+    }
+
+    void setQueueUrl(String queueUrl) {
+        this.queueUrl = queueUrl;
+        if (primaryEndpoint != null) {
+            primaryEndpoint.setQueueUrl(queueUrl);
+        }
+    }
+
+    /**
+     * The endpoint the requests not bound to an endpoint are issued on.
+     */
+    SQSEndpoint getPrimaryEndpoint() {
+        return primaryEndpoint;
+    }
+
+    /**
+     * Records the time since the connector started to open as the given metric, the first time it is called.
+     */
+    protected void recordTimeToFirstRecord(String metricName) {
+        if (!firstRecord.get() && firstRecord.compareAndSet(false, true)) {
+            recordMetric(metricName, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - openedNanos));
+        }
+    }
+
+    /**
+     * Records a metric through the context of the connector, if there is one.
+     */
+    protected abstract void recordMetric(String metricName, double value);
+
+    /**
+     * The id of the instance of the connector, 0 without a context.
+     */
+    protected abstract int getInstanceId();
+
+    /**
+     * The capture file of this instance, the captureFile with the instance id before its extension, so the
+     * instances of a connector with a parallelism above one do not replace each other's capture.
+     */
+    Path getCaptureFile() {
+        Path file = Paths.get(config.getCaptureFile());
+        String name = file.getFileName().toString();
+        int extension = name.indexOf('.', 1);
+        String instanceName = extension < 0 ? name + "-" + getInstanceId()
+                : name.substring(0, extension) + "-" + getInstanceId() + name.substring(extension);
+        return file.resolveSibling(instanceName);
+    }
+
+    /**
+     * Reports the stats of the connector itself, at the interval of the request stats.
+     */
+    protected void reportStats() {
     }
 
-    public AmazonSQSBufferedAsyncClient getDeleteClient() {
-        if (deleteClientCount > 0) {
-            return clientsForDelete.get((int) (index.getAndIncrement() % deleteClientCount));
+    private void reportRequestStats() {
+        try {
+            requestStats.report(this::recordMetric);
+            if (clientPool != null) {
+                clientPool.report(this::recordMetric, config.getMaxConnections());
+            }
+            if (rateLimiter != null) {
+                rateLimiter.report(this::recordMetric);
+            }
+            if (endpoints.size() > 1) {
+                endpoints.forEach(endpoint -> endpoint.report(this::recordMetric));
+            }
+            if (capture != null) {
+                capture.report(this::recordMetric);
+            }
+            reportStats();
+        } catch (Exception e) {
+            log.warn("failed to report sqs request stats.", e);
         }
-        return client;
     }
 }
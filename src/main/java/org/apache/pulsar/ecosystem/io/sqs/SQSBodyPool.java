@@ -0,0 +1,192 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * A fixed amount of direct memory for the values of the records buffered by {@link SQSSource}, so a deep buffer of
+ * large messages does not sit on the heap.
+ *
+ * <p>The memory is split into chunks of equal size. A value takes as many chunks as it needs, not necessarily
+ * adjacent ones, and gives them back once its last reference is released. The pool is the admission limit of the
+ * receives: an allocation waits until enough chunks are free, and the consumer threads do not receive while the
+ * free memory would not hold a batch of messages of the average size.
+ */
+public class SQSBodyPool {
+
+    static final String METRICS_USED_BYTES = "_sqs_source_body_pool_used_bytes_";
+    static final String METRICS_WAITS = "_sqs_source_body_pool_waits_";
+
+    private final ByteBuffer memory;
+    private final int chunkSize;
+    // a stack of the free chunks, guarded by this
+    private final int[] freeChunks;
+    private int freeCount;
+    private final LongAdder allocations = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+
+    public SQSBodyPool(long capacityBytes, int chunkSize) {
+        long chunks = capacityBytes / chunkSize;
+        if (chunkSize < 1 || chunks < 1 || chunks * chunkSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cannot pool " + capacityBytes + " bytes in chunks of " + chunkSize);
+        }
+        this.memory = ByteBuffer.allocateDirect((int) (chunks * chunkSize));
+        this.chunkSize = chunkSize;
+        this.freeChunks = new int[(int) chunks];
+        for (int i = 0; i < freeChunks.length; i++) {
+            freeChunks[i] = freeChunks.length - 1 - i;
+        }
+        this.freeCount = freeChunks.length;
+    }
+
+    /**
+     * Copies a value into the pool, waiting until enough chunks are free.
+     *
+     * @return the pooled value, or null if it is larger than the whole pool
+     */
+    public Body allocate(byte[] value) throws InterruptedException {
+        int needed = chunksOf(value.length);
+        if (needed > freeChunks.length) {
+            return null;
+        }
+        int[] chunks = new int[needed];
+        synchronized (this) {
+            if (freeCount < needed) {
+                waits.increment();
+                while (freeCount < needed) {
+                    wait();
+                }
+            }
+            for (int i = 0; i < needed; i++) {
+                chunks[i] = freeChunks[--freeCount];
+            }
+        }
+        for (int i = 0; i < needed; i++) {
+            int offset = i * chunkSize;
+            memory.put(chunks[i] * chunkSize, value, offset, Math.min(chunkSize, value.length - offset));
+        }
+        allocations.increment();
+        allocatedBytes.add(value.length);
+        return new Body(chunks, value.length);
+    }
+
+    private synchronized void free(int[] chunks) {
+        for (int chunk : chunks) {
+            freeChunks[freeCount++] = chunk;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Whether the free memory holds the given number of values of the average size allocated so far, or the
+     * whole pool is free if it cannot hold that many.
+     */
+    public boolean admits(int values) {
+        long averageChunks = chunksOf(getAverageValueBytes());
+        long needed = Math.min(freeChunks.length, Math.max(1, averageChunks) * values);
+        synchronized (this) {
+            return freeCount >= needed;
+        }
+    }
+
+    long getAverageValueBytes() {
+        long count = allocations.sum();
+        return count == 0 ? chunkSize : allocatedBytes.sum() / count;
+    }
+
+    public long getCapacityBytes() {
+        return memory.capacity();
+    }
+
+    public synchronized long getFreeBytes() {
+        return (long) freeCount * chunkSize;
+    }
+
+    void report(BiConsumer<String, Double> recorder) {
+        recorder.accept(METRICS_USED_BYTES, (double) (getCapacityBytes() - getFreeBytes()));
+        recorder.accept(METRICS_WAITS, (double) waits.sumThenReset());
+    }
+
+    private int chunksOf(long bytes) {
+        return (int) ((bytes + chunkSize - 1) / chunkSize);
+    }
+
+    /**
+     * A value in the pool. It holds one reference when it is allocated, and its chunks are freed when the last
+     * reference is released.
+     */
+    public final class Body {
+        private final int[] chunks;
+        private final int length;
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private Body(int[] chunks, int length) {
+            this.chunks = chunks;
+            this.length = length;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * Copies the value out of the pool.
+         */
+        public byte[] getBytes() {
+            if (references.get() <= 0) {
+                throw new IllegalStateException("The pooled value was already released");
+            }
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < chunks.length; i++) {
+                int offset = i * chunkSize;
+                memory.get(chunks[i] * chunkSize, bytes, offset, Math.min(chunkSize, length - offset));
+            }
+            return bytes;
+        }
+
+        public Body retain() {
+            if (references.getAndUpdate(count -> count > 0 ? count + 1 : count) <= 0) {
+                throw new IllegalStateException("The pooled value was already released");
+            }
+            return this;
+        }
+
+        /**
+         * Releases a reference. Releasing a value that was already freed does nothing.
+         *
+         * @return whether the value was freed
+         */
+        public boolean release() {
+            int previous = references.getAndUpdate(count -> count > 0 ? count - 1 : count);
+            if (previous == 1) {
+                free(chunks);
+            }
+            return previous == 1;
+        }
+
+        int getReferences() {
+            return references.get();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.io.core.SourceContext;
+
+/**
+ * Shares a budget of consumer threads between the instances of a {@link SQSSource} that runs with a parallelism
+ * above 1, through the state store of the source.
+ *
+ * <p>Every instance publishes a report under its own key: the share of the requested messages its receives
+ * returned since its previous report, and how full its buffer is. It then reads the reports of all instances and
+ * computes the same split of the budget as the others do: every instance keeps minConsumers, and the rest goes to
+ * the instances in proportion to their demand, which is the fill ratio scaled down by the buffer pressure. So an
+ * idle queue costs few empty long polls over the whole cluster, and the instances that receive full batches take
+ * the consumers of the ones that do not. An instance without a recent report keeps minConsumers, it is either
+ * starting or gone.
+ */
+@Slf4j
+public class SQSBudgetCoordinator implements Runnable {
+
+    static final String STATE_KEY_PREFIX = "sqs-consumer-budget-";
+    static final String METRICS_BUDGET_CONSUMERS = "_sqs_source_budget_consumers_";
+    static final String METRICS_BUDGET_DEMAND = "_sqs_source_budget_demand_";
+    static final String METRICS_BUDGET_INSTANCES = "_sqs_source_budget_instances_";
+
+    // a report older than this many intervals is not taken into account
+    private static final int STALE_INTERVALS = 3;
+    private static final int REPORT_SIZE = Long.BYTES + 2 * Double.BYTES;
+
+    private final SQSSource source;
+    private final SourceContext context;
+    private long lastRequested;
+    private long lastReceived;
+    private double fillRatio;
+
+    @Getter
+    private int share = -1;
+
+    public SQSBudgetCoordinator(SQSSource source, SourceContext context) {
+        this.source = source;
+        this.context = context;
+    }
+
+    @Override
+    public void run() {
+        try {
+            coordinate(System.currentTimeMillis());
+        } catch (Exception e) {
+            log.warn("failed to coordinate the consumer budget through the state store.", e);
+        }
+    }
+
+    void coordinate(long nowMillis) {
+        SQSConnectorConfig config = source.getConfig();
+        long requested = source.getRequestedMessages();
+        long received = source.getReceivedMessages();
+        if (requested > lastRequested) {
+            // no receive completed while every consumer waits in a long poll, keep the previous ratio then
+            fillRatio = (double) (received - lastReceived) / (requested - lastRequested);
+        }
+        lastRequested = requested;
+        lastReceived = received;
+        double pressure = (double) source.getBufferedRecords() / source.getQueueLength();
+        double ownDemand = demand(fillRatio, pressure);
+
+        int instanceId = context.getInstanceId();
+        context.putState(STATE_KEY_PREFIX + instanceId, encode(nowMillis, fillRatio, pressure));
+
+        int instances = Math.max(1, context.getNumInstances());
+        long staleMillis = TimeUnit.SECONDS.toMillis((long) STALE_INTERVALS
+                * config.getBudgetCoordinationIntervalSeconds());
+        double[] demands = new double[instances];
+        int reporting = 0;
+        for (int i = 0; i < instances; i++) {
+            demands[i] = i == instanceId ? ownDemand : decode(context.getState(STATE_KEY_PREFIX + i),
+                    nowMillis - staleMillis);
+            if (demands[i] >= 0) {
+                reporting++;
+            }
+        }
+        int budget = config.getConsumerBudget() > 0
+                ? config.getConsumerBudget() : config.getNumberOfConsumers() * instances;
+        int[] shares = allocate(budget, config.getMinConsumers(), config.getMaxConsumers(), demands);
+        share = shares[Math.min(instanceId, instances - 1)];
+        source.recordMetric(METRICS_BUDGET_CONSUMERS, share);
+        source.recordMetric(METRICS_BUDGET_DEMAND, ownDemand);
+        source.recordMetric(METRICS_BUDGET_INSTANCES, reporting);
+
+        int consumers = source.getNumberOfRunningConsumers();
+        if (share != consumers) {
+            log.info("Resizing the sqs consumers from {} to {}, the share of instance {} in a budget of {}.",
+                    consumers, share, instanceId, budget);
+            source.resizeConsumers(share);
+        }
+    }
+
+    /**
+     * How many more consumers an instance could put to use: none while its buffer is close to full, since its
+     * consumers are paused then, and otherwise the fill ratio of its receives scaled by the free buffer.
+     */
+    static double demand(double fillRatio, double pressure) {
+        if (pressure >= SQSReceiveController.PAUSE_OCCUPANCY) {
+            return 0;
+        }
+        return Math.max(0, Math.min(1, fillRatio)) * (1 - pressure);
+    }
+
+    /**
+     * Splits the budget between the instances. Every instance gets min consumers, and the rest is handed out one
+     * consumer at a time to the instance with the highest demand per consumer it already has, up to max
+     * consumers. Instances with a negative demand did not report and get min consumers only. The split only
+     * depends on its arguments, so every instance computes the same one.
+     */
+    static int[] allocate(int budget, int min, int max, double[] demands) {
+        int[] shares = new int[demands.length];
+        int rest = budget;
+        for (int i = 0; i < shares.length; i++) {
+            shares[i] = min;
+            rest -= min;
+        }
+        for (; rest > 0; rest--) {
+            int best = -1;
+            double bestQuotient = 0;
+            for (int i = 0; i < shares.length; i++) {
+                double quotient = demands[i] / (shares[i] + 1);
+                if (shares[i] < max && demands[i] > 0 && quotient > bestQuotient) {
+                    best = i;
+                    bestQuotient = quotient;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            shares[best]++;
+        }
+        return shares;
+    }
+
+    static ByteBuffer encode(long timestampMillis, double fillRatio, double pressure) {
+        ByteBuffer report = ByteBuffer.allocate(REPORT_SIZE);
+        report.putLong(timestampMillis).putDouble(fillRatio).putDouble(pressure).flip();
+        return report;
+    }
+
+    /**
+     * The demand of a report, or -1 if there is none or it was published before the given time.
+     */
+    static double decode(ByteBuffer report, long notBeforeMillis) {
+        if (report == null || report.remaining() < REPORT_SIZE) {
+            return -1;
+        }
+        int offset = report.position();
+        if (report.getLong(offset) < notBeforeMillis) {
+            return -1;
+        }
+        return demand(report.getDouble(offset + Long.BYTES), report.getDouble(offset + Long.BYTES + Double.BYTES));
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import com.amazonaws.services.sqs.buffered.AmazonSQSBufferedAsyncClient;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A fixed set of sqs clients shared by the receive, delete, visibility and send paths of a connector.
+ *
+ * <p>Every request is issued on the client with the fewest requests in flight. A caller acquires a
+ * {@link PooledClient}, issues exactly one request on it and releases it once the request completed,
+ * in the async handler for async requests.
+ */
+@Slf4j
+public class SQSClientPool {
+
+    private final PooledClient[] clients;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public SQSClientPool(List<AmazonSQSBufferedAsyncClient> clients) {
+        if (clients.isEmpty()) {
+            throw new IllegalArgumentException("The sqs client pool needs at least one client");
+        }
+        this.clients = new PooledClient[clients.size()];
+        for (int i = 0; i < this.clients.length; i++) {
+            this.clients[i] = new PooledClient(clients.get(i));
+        }
+    }
+
+    /**
+     * Picks the client with the fewest requests in flight and counts a request on it.
+     */
+    public PooledClient acquire() {
+        // start the scan at a rotating offset so that idle clients share the load instead of the first one
+        // taking every request
+        int start = Math.floorMod(next.getAndIncrement(), clients.length);
+        PooledClient least = clients[start];
+        for (int i = 1; i < clients.length && least.inFlight.get() > 0; i++) {
+            PooledClient candidate = clients[(start + i) % clients.length];
+            if (candidate.inFlight.get() < least.inFlight.get()) {
+                least = candidate;
+            }
+        }
+        least.acquired();
+        return least;
+    }
+
+    /**
+     * The client for calls that are not on a hot path, such as resolving the queue url.
+     */
+    public AmazonSQSBufferedAsyncClient getPrimaryClient() {
+        return clients[0].client;
+    }
+
+    List<AmazonSQSBufferedAsyncClient> getClients() {
+        List<AmazonSQSBufferedAsyncClient> all = new ArrayList<>(clients.length);
+        for (PooledClient pooled : clients) {
+            all.add(pooled.client);
+        }
+        return all;
+    }
+
+    public int size() {
+        return clients.length;
+    }
+
+    int getInFlight(int index) {
+        return clients[index].inFlight.get();
+    }
+
+    /**
+     * Reports the peak number of requests in flight on every client since the previous report, and the
+     * saturation of the client: that peak relative to the connections it may open. A saturation above 1
+     * means requests waited for a connection.
+     */
+    void report(BiConsumer<String, Double> recorder, int maxConnections) {
+        for (int i = 0; i < clients.length; i++) {
+            PooledClient pooled = clients[i];
+            int peak = pooled.peakInFlight.getAndSet(pooled.inFlight.get());
+            recorder.accept(metricName(i, "requests"), (double) pooled.requests.sumThenReset());
+            recorder.accept(metricName(i, "in_flight_peak"), (double) peak);
+            recorder.accept(metricName(i, "saturation"), maxConnections > 0 ? (double) peak / maxConnections : 0);
+        }
+    }
+
+    static String metricName(int index, String suffix) {
+        return "_sqs_client_" + index + "_" + suffix + "_";
+    }
+
+    /**
+     * Sends the requests every client still buffers, and waits at most the given time for them to complete.
+     *
+     * @return whether all clients were flushed in time
+     */
+    public boolean flush(long timeoutMillis) throws InterruptedException {
+        CompletableFuture<?>[] flushes = new CompletableFuture<?>[clients.length];
+        for (int i = 0; i < clients.length; i++) {
+            flushes[i] = CompletableFuture.runAsync(clients[i].client::flush);
+        }
+        try {
+            CompletableFuture.allOf(flushes).get(Math.max(0, timeoutMillis), TimeUnit.MILLISECONDS);
+            return true;
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("failed to flush the sqs clients.", e);
+            return false;
+        }
+    }
+
+    /**
+     * The number of requests in flight over all clients.
+     */
+    public int getInFlight() {
+        int inFlight = 0;
+        for (PooledClient pooled : clients) {
+            inFlight += pooled.inFlight.get();
+        }
+        return inFlight;
+    }
+
+    public void shutdown() {
+        for (PooledClient pooled : clients) {
+            pooled.client.shutdown();
+        }
+    }
+
+    /**
+     * A client of the pool, acquired for a single request.
+     */
+    public static final class PooledClient {
+        private final AmazonSQSBufferedAsyncClient client;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger peakInFlight = new AtomicInteger();
+        private final LongAdder requests = new LongAdder();
+
+        private PooledClient(AmazonSQSBufferedAsyncClient client) {
+            this.client = client;
+        }
+
+        public AmazonSQSBufferedAsyncClient getClient() {
+            return client;
+        }
+
+        private void acquired() {
+            requests.increment();
+            peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        }
+
+        public void release() {
+            inFlight.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Applies a config override from the state store to a running connector, so its throughput can be tuned without
+ * a restart that would drop the work in flight.
+ *
+ * <p>The override is a json object under {@link #STATE_KEY}, which all instances of a connector share, e.g.
+ * {@code {"numberOfConsumers": 20, "rateLimitPerSecond": 500}}. It is read at every interval and applied when it
+ * changed. The options it leaves out go back to the values the connector was opened with, so deleting the key
+ * undoes the override. The override is applied again when the connector restarts.
+ *
+ * <p>When the state store cannot be read, e.g. because the state storage of Pulsar Functions is not enabled, the
+ * failure is logged once and the watcher skips twice as many intervals after every failed read, up to
+ * {@link #MAX_BACKOFF_INTERVALS}, until a read succeeds again.
+ */
+@Slf4j
+public class SQSConfigWatcher implements Runnable {
+
+    static final String STATE_KEY = "sqs-config-override";
+    static final int MAX_BACKOFF_INTERVALS = 64;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final SQSAbstractConnector connector;
+    private final Function<String, ByteBuffer> state;
+    // the values the connector was opened with
+    private final Map<String, Number> configured;
+    // the override applied last, empty if there was none
+    private String applied = "";
+    // the intervals to skip after a failed read of the state store, and the ones skipped so far
+    private int backoffIntervals;
+    private int skippedIntervals;
+
+    public SQSConfigWatcher(SQSAbstractConnector connector, Function<String, ByteBuffer> state) {
+        this.connector = connector;
+        this.state = state;
+        this.configured = connector.getConfig().getReconfigurableOptions();
+    }
+
+    @Override
+    public void run() {
+        try {
+            poll();
+        } catch (Exception e) {
+            log.warn("failed to apply the config override of the state store.", e);
+        }
+    }
+
+    void poll() throws IOException {
+        if (skippedIntervals < backoffIntervals) {
+            skippedIntervals++;
+            return;
+        }
+        ByteBuffer value;
+        try {
+            value = state.apply(STATE_KEY);
+        } catch (RuntimeException e) {
+            if (backoffIntervals == 0) {
+                log.warn("Failed to read the config override from the state store, is the state storage of Pulsar"
+                        + " Functions enabled? Retrying less often.", e);
+            } else {
+                log.debug("Failed to read the config override from the state store.", e);
+            }
+            backoffIntervals = Math.min(MAX_BACKOFF_INTERVALS, Math.max(1, backoffIntervals * 2));
+            skippedIntervals = 0;
+            return;
+        }
+        if (backoffIntervals > 0) {
+            log.info("Read the config override from the state store again.");
+            backoffIntervals = 0;
+            skippedIntervals = 0;
+        }
+        String override = value != null ? UTF_8.decode(value.duplicate()).toString().trim() : "";
+        if (override.equals(applied)) {
+            return;
+        }
+        // a broken override is reported once, not at every interval
+        applied = override;
+        Map<String, Number> options = new LinkedHashMap<>(configured);
+        if (!override.isEmpty()) {
+            Map<String, Object> overrides = MAPPER.readValue(override, new TypeReference<Map<String, Object>>() {});
+            for (Map.Entry<String, Object> option : overrides.entrySet()) {
+                if (!configured.containsKey(option.getKey()) || !(option.getValue() instanceof Number)) {
+                    log.warn("The {}: {} of the config override cannot change at runtime, ignoring it.",
+                            option.getKey(), option.getValue());
+                    continue;
+                }
+                options.put(option.getKey(), (Number) option.getValue());
+            }
+        }
+        log.info("Applying the config override {}.", override.isEmpty() ? "{}" : override);
+        connector.reconfigure(options);
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import org.apache.pulsar.functions.api.Record;
+
+/**
+ * Conflates the records of {@link SQSSink} by key: within a window only the latest record of every key is sent,
+ * the records it replaced are acked or failed together with it.
+ *
+ * <p>The window ends when it is flushed, at the conflation interval, or as soon as it holds the maximum number
+ * of keys. The keys are sent in the order they first appeared in the window.
+ */
+public class SQSConflator<T> {
+
+    private final int maxKeys;
+    // called with the latest record of a key and the records it replaced, which are completed with it
+    private final BiConsumer<Record<T>, List<Record<T>>> sender;
+    private final LongAdder conflated = new LongAdder();
+    private LinkedHashMap<String, Entry<T>> window = new LinkedHashMap<>();
+
+    SQSConflator(int maxKeys, BiConsumer<Record<T>, List<Record<T>>> sender) {
+        this.maxKeys = maxKeys;
+        this.sender = sender;
+    }
+
+    /**
+     * Adds a keyed record to the window, replacing the previous record of its key.
+     */
+    void offer(String key, Record<T> record) {
+        Map<String, Entry<T>> full = null;
+        synchronized (this) {
+            Entry<T> entry = window.get(key);
+            if (entry != null) {
+                entry.replace(record);
+                conflated.increment();
+                return;
+            }
+            window.put(key, new Entry<>(record));
+            if (window.size() >= maxKeys) {
+                full = swap();
+            }
+        }
+        // send outside of the lock, a send may block on the rate limit
+        send(full);
+    }
+
+    /**
+     * Sends the latest record of every key in the window and starts a new window.
+     */
+    void flush() {
+        Map<String, Entry<T>> flushed;
+        synchronized (this) {
+            if (window.isEmpty()) {
+                return;
+            }
+            flushed = swap();
+        }
+        send(flushed);
+    }
+
+    private Map<String, Entry<T>> swap() {
+        Map<String, Entry<T>> flushed = window;
+        window = new LinkedHashMap<>();
+        return flushed;
+    }
+
+    private void send(Map<String, Entry<T>> flushed) {
+        if (flushed == null) {
+            return;
+        }
+        for (Entry<T> entry : flushed.values()) {
+            sender.accept(entry.latest, entry.replaced == null ? Collections.emptyList() : entry.replaced);
+        }
+    }
+
+    synchronized int size() {
+        return window.size();
+    }
+
+    /**
+     * The number of records replaced by a later record of their key since the previous call.
+     */
+    long getAndResetConflated() {
+        return conflated.sumThenReset();
+    }
+
+    private static final class Entry<T> {
+        private Record<T> latest;
+        private List<Record<T>> replaced;
+
+        private Entry(Record<T> latest) {
+            this.latest = latest;
+        }
+
+        private void replace(Record<T> record) {
+            if (replaced == null) {
+                replaced = new ArrayList<>();
+            }
+            replaced.add(latest);
+            latest = record;
+        }
+    }
+}
@@ -18,17 +18,26 @@
  */
 package org.apache.pulsar.ecosystem.io.sqs;
 
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.handlers.RequestHandler2;
 import com.amazonaws.services.sqs.AmazonSQSAsyncClientBuilder;
 import com.amazonaws.services.sqs.buffered.AmazonSQSBufferedAsyncClient;
 import com.amazonaws.services.sqs.buffered.QueueBufferConfig;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.common.schema.SchemaType;
 import org.apache.pulsar.io.aws.AwsCredentialProviderPlugin;
 import org.apache.pulsar.io.core.annotations.FieldDoc;
 
@@ -42,6 +51,32 @@ public class SQSConnectorConfig implements Serializable {
 
     public static final int DEFAULT_BATCH_SIZE_OF_ONCE_RECEIVE = 1;
     public static final int DEFAULT_NUMBER_OF_SQS_CONSUMERS = 1;
+    public static final int DEFAULT_STATS_INTERVAL_SECONDS = 60;
+    public static final int DEFAULT_MAX_CONNECTIONS = ClientConfiguration.DEFAULT_MAX_CONNECTIONS;
+    public static final int DEFAULT_CONNECTION_TIMEOUT_MILLIS = ClientConfiguration.DEFAULT_CONNECTION_TIMEOUT;
+    public static final int DEFAULT_SOCKET_TIMEOUT_MILLIS = ClientConfiguration.DEFAULT_SOCKET_TIMEOUT;
+    public static final int DEFAULT_PREFETCH_BATCHES = 2;
+    public static final int DEFAULT_BACKLOG_DRAIN_TARGET_SECONDS = 60;
+    public static final int MAX_NUMBER_OF_SQS_CONSUMERS = 50;
+    public static final int MAX_NUMBER_OF_VIRTUAL_SQS_CONSUMERS = 500;
+    public static final long DEFAULT_DRAIN_TIMEOUT_MILLIS = 30000;
+    public static final int DEFAULT_CONFLATION_MAX_KEYS = 10000;
+    public static final int DEFAULT_SPILL_SEGMENT_SIZE_BYTES = 64 * 1024 * 1024;
+    public static final int MIN_SPILL_SEGMENT_SIZE_BYTES = 1024 * 1024;
+    public static final int MAX_SPILL_SEGMENT_SIZE_BYTES = 1024 * 1024 * 1024;
+    public static final long DEFAULT_SPILL_MAX_BYTES = 1024L * 1024 * 1024;
+    public static final long DEFAULT_SPILL_FSYNC_INTERVAL_MILLIS = 100;
+    public static final int DEFAULT_SPILL_DRAIN_BATCHES = 8;
+    public static final long DEFAULT_CAPTURE_MAX_MESSAGES = 1000000;
+    public static final int DEFAULT_ENDPOINT_FAILURE_THRESHOLD = 3;
+    public static final int DEFAULT_ENDPOINT_HEALTH_CHECK_INTERVAL_SECONDS = 10;
+    public static final int DEFAULT_DEDUP_CACHE_SIZE = 100000;
+    public static final int DEFAULT_OFF_HEAP_BODY_CHUNK_BYTES = 1024;
+    public static final int MIN_OFF_HEAP_BODY_CHUNK_BYTES = 64;
+    public static final int MAX_OFF_HEAP_BODY_CHUNK_BYTES = 64 * 1024;
+    public static final long MAX_OFF_HEAP_BODY_POOL_BYTES = 1024L * 1024 * 1024;
+    public static final int MAX_DEDUP_CACHE_SIZE = 1 << 26;
+    public static final int DEFAULT_DEDUP_TTL_SECONDS = 300;
 
     @FieldDoc(
             required = false,
@@ -89,9 +124,385 @@ public class SQSConnectorConfig implements Serializable {
     @FieldDoc(required = false,
             defaultValue = "1",
             help = "The expected numbers of consumers for SQS source. You can scale message consumers horizontally to "
-                    + "achieve high throughput. Default=1 and the max value=50.")
+                    + "achieve high throughput. Default=1 and the max value=50, or 500 with virtualThreads.")
     private int numberOfConsumers;
 
+    @FieldDoc(required = false,
+            defaultValue = "false",
+            help = "Whether the consumers of the SQS source and the callbacks of the SQS clients, which run the "
+                    + "acks, nacks and their retries and complete the sends of the SQS sink, run on virtual "
+                    + "threads. A consumer waiting for a long poll then does not hold a platform thread. It "
+                    + "requires JDK 21+, on older JDKs platform threads are used.")
+    private boolean virtualThreads;
+
+    @FieldDoc(required = false,
+            defaultValue = "60",
+            help = "The interval in seconds at which the SQS request counters (calls per API action, batch fill "
+                    + "ratios, empty receives and billed requests) are reported as metrics and logged. "
+                    + "Set it to 0 to disable the report.")
+    private int statsIntervalSeconds = DEFAULT_STATS_INTERVAL_SECONDS;
+
+    @FieldDoc(required = false,
+            defaultValue = "0",
+            help = "The number of SQS clients shared by the receive, delete, visibility and send requests. Each "
+                    + "request goes to the client with the fewest requests in flight. Set it to 0 to size the pool "
+                    + "from numberOfConsumers: one client per 10 consumers, plus one.")
+    private int clientPoolSize;
+
+    @FieldDoc(required = false,
+            defaultValue = "50",
+            help = "The maximum number of open HTTP connections of each SQS client.")
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+    @FieldDoc(required = false,
+            defaultValue = "0",
+            help = "The number of HTTP connections every SQS client opens with a cheap request before the connector "
+                    + "starts, so the first receives and sends do not pay for the TLS handshakes. At most "
+                    + "maxConnections. Set it to 0 to open the connections on demand.")
+    private int warmUpConnections;
+
+    @FieldDoc(required = false,
+            defaultValue = "10000",
+            help = "The timeout in milliseconds for establishing an HTTP connection to SQS.")
+    private int connectionTimeoutMillis = DEFAULT_CONNECTION_TIMEOUT_MILLIS;
+
+    @FieldDoc(required = false,
+            defaultValue = "50000",
+            help = "The timeout in milliseconds for reading from an open HTTP connection. It must be longer than "
+                    + "the 20 seconds of a long poll receive.")
+    private int socketTimeoutMillis = DEFAULT_SOCKET_TIMEOUT_MILLIS;
+
+    @FieldDoc(required = false,
+            defaultValue = "false",
+            help = "Whether TCP keep-alive is enabled on the HTTP connections to SQS.")
+    private boolean tcpKeepAlive;
+
+    @FieldDoc(required = false,
+            defaultValue = "false",
+            help = "Whether the SQS clients of the source receive ahead of the consumer threads. The consumer threads "
+                    + "then take their messages from the batches the clients keep ready instead of waiting for a "
+                    + "receive of their own.")
+    private boolean prefetchEnabled;
+
+    @FieldDoc(required = false,
+            defaultValue = "2",
+            help = "The number of received batches of up to 10 messages the clients of an endpoint keep ready in "
+                    + "prefetch mode, split over the clients of the pool. It is lowered when the queue visibility "
+                    + "timeout is too short to consume that many batches.")
+    private int prefetchBatches = DEFAULT_PREFETCH_BATCHES;
+
+    @FieldDoc(required = false,
+            defaultValue = "2",
+            help = "The number of receive requests each client may have in flight in prefetch mode.")
+    private int prefetchInflightBatches = DEFAULT_PREFETCH_BATCHES;
+
+    @FieldDoc(required = false,
+            defaultValue = "false",
+            help = "Whether the clients only prefetch as many batches as the consumer threads currently wait for, "
+                    + "instead of always keeping prefetchBatches ready.")
+    private boolean adaptivePrefetching;
+
+    @FieldDoc(required = false,
+            defaultValue = "false",
+            help = "Whether the consumer threads adapt the wait time and the batch size of every receive. The batch "
+                    + "size grows to 10 while receives come back mostly full or the queue has a backlog, and falls "
+                    + "back to batchSizeOfOnceReceive otherwise. Receives long poll for 20 seconds, only while the "
+                    + "source buffer is more than half full the wait drops to 1 second. No receive is issued while "
+                    + "the source buffer is more than 90% full.")
+    private boolean adaptiveReceiveEnabled;
+
+    @FieldDoc(required = false,
+            defaultValue = "0",
+            help = "The interval in seconds at which the SQS source polls the approximate number of visible, "
+                    + "in flight and delayed messages of the queue, and reports them with the drain rate and the "
+                    + "recommended number of consumers and instances. Set it to 0 to disable the monitor.")
+    private int queueMonitorIntervalSeconds;
+
+    @FieldDoc(required = false,
+            defaultValue = "60",
+            help = "The time in seconds in which the recommended consumers should drain the current backlog of "
+                    + "the queue, on top of keeping up with the arriving messages.")
+    private int backlogDrainTargetSeconds = DEFAULT_BACKLOG_DRAIN_TARGET_SECONDS;
+
+    @FieldDoc(required = false,
+            defaultValue = "false",
+            help = "Whether the SQS source resizes its consumer threads to the recommended number, within "
+                    + "minConsumers and maxConsumers. It requires the queue monitor.")
+    private boolean autoscaleConsumers;
+
+    @FieldDoc(required = false,
+            defaultValue = "1",
+            help = "The lowest number of consumer threads that the autoscaling and the budget coordination keep.")
+    private int minConsumers = DEFAULT_NUMBER_OF_SQS_CONSUMERS;
+
+    @FieldDoc(required = false,
+            defaultValue = "50",
+            help = "The highest number of consumer threads that the autoscaling and the budget coordination "
+                    + "start. It is also the number of consumers per instance the recommended parallelism is "
+                    + "based on.")
+    private int maxConsumers = MAX_NUMBER_OF_SQS_CONSUMERS;
+
+    @FieldDoc(required = false,
+            defaultValue = "0",
+            help = "The interval in seconds at which the instances of a SQS source with a parallelism above 1 "
+                    + "share the consumerBudget through the state store. Every instance publishes how full its "
+                    + "receives come back and how full its buffer is, and runs its share of the budget, within "
+                    + "minConsumers and maxConsumers. It requires the state storage of Pulsar Functions, which Pulsar "
+                    + "standalone runs unless it is started with --no-stream-storage. Set it to 0 to run "
+                    + "numberOfConsumers on every instance.")
+    private int budgetCoordinationIntervalSeconds;
+
+    @FieldDoc(required = false,
+            defaultValue = "0",
+            help = "The number of consumer threads the instances of the SQS source share when the budget is "
+                    + "coordinated. Set it to 0 for numberOfConsumers times the parallelism.")
+    private int consumerBudget;
+
+    @FieldDoc(required = false,
+            defaultValue = "0",
+            help = "The bytes of direct memory the SQS source keeps the values of its buffered records in, instead "
+                    + "of the heap. A value is freed when its record is acked or failed. The consumers do not "
+                    + "receive while the pool cannot hold a batch of messages, and wait for room when it is full. "
+                    + "The values of records made by transformers stay on the heap. At most 1 GB, and the direct "
+                    + "memory of the JVM must allow it. Set it to 0 to keep the values on the heap.")
+    private long offHeapBodyPoolBytes;
+
+    @FieldDoc(required = false,
+            defaultValue = "1024",
+            help = "The size in bytes of the chunks the off-heap body pool allocates values in. Every value takes "
+                    + "at least one chunk.")
+    private int offHeapBodyChunkBytes = DEFAULT_OFF_HEAP_BODY_CHUNK_BYTES;
+
+    @FieldDoc(required = false,
+            defaultValue = "false",
+            help = "Whether the connector drains on close. The source stops receiving, waits for the acks of the "
+                    + "records it handed out and makes the messages it did not process visible again right away. "
+                    + "The sink sends the buffered messages and waits for them to be acknowledged.")
+    private boolean drainOnClose;
+
+    @FieldDoc(required = false,
+            defaultValue = "30000",
+            help = "The time in milliseconds the drain on close may take. Messages of the source that are not acked "
+                    + "by then are made visible again.")
+    private long drainTimeoutMillis = DEFAULT_DRAIN_TIMEOUT_MILLIS;
+
+    @FieldDoc(required = false,
+            defaultValue = "0",
+            help = "The number of messages the SQS sink sends at most before they are acked. A write waits while "
+                    + "the limit is reached. If it is 0, the sends are not limited.")
+    private int maxPendingSends;
+
+    @FieldDoc(required = false,
+            defaultValue = "0",
+            help = "The window (in milliseconds) in which the SQS sink conflates the records by key: only the "
+                    + "latest record of a key is sent, the records it replaced are acked once it is sent. The "
+                    + "records without a key are sent as they come. If it is 0, every record is sent.")
+    private long conflationWindowMillis;
+
+    @FieldDoc(required = false,
+            defaultValue = "10000",
+            help = "The maximum number of keys in a conflation window, the window is sent early when it is full.")
+    private int conflationMaxKeys = DEFAULT_CONFLATION_MAX_KEYS;
+
+    @FieldDoc(required = false,
+            defaultValue = "false",
+            help = "Whether the SQS sink spills the messages to a write-ahead log on local disk, acks the records "
+                    + "once they are durable there, and sends them from the log in the background. A record is "
+                    + "failed only when the log is full.")
+    private boolean spillEnabled;
+
+    @FieldDoc(required = false,
+            defaultValue = "",
+            help = "The directory of the spill log, it is required if spillEnabled. Every instance of the sink keeps "
+                    + "its log in the instance-<instance id> directory in it. The messages left in it are sent when "
+                    + "the sink is opened again, so it must not be shared by two sinks.")
+    private String spillDirectory = "";
+
+    @FieldDoc(required = false,
+            defaultValue = "67108864",
+            help = "The size (in bytes) of a segment file of the spill log, [1 MB, 1 GB].")
+    private int spillSegmentSizeBytes = DEFAULT_SPILL_SEGMENT_SIZE_BYTES;
+
+    @FieldDoc(required = false,
+            defaultValue = "1073741824",
+            help = "The disk space (in bytes) the spill log may take, at least two segments.")
+    private long spillMaxBytes = DEFAULT_SPILL_MAX_BYTES;
+
+    @FieldDoc(required = false,
+            defaultValue = "INTERVAL",
+            help = "When the spill log is forced to disk: ALWAYS on every message, INTERVAL every "
+                    + "spillFsyncIntervalMillis, or NONE, leaving it to the operating system. A record is acked once "
+                    + "its message is forced, right away with NONE.")
+    private SQSSpillLog.FsyncPolicy spillFsyncPolicy = SQSSpillLog.FsyncPolicy.INTERVAL;
+
+    @FieldDoc(required = false,
+            defaultValue = "100",
+            help = "The interval (in milliseconds) at which the spill log is forced to disk with the INTERVAL "
+                    + "spillFsyncPolicy.")
+    private long spillFsyncIntervalMillis = DEFAULT_SPILL_FSYNC_INTERVAL_MILLIS;
+
+    @FieldDoc(required = false,
+            defaultValue = "8",
+            help = "The number of batches of spilled messages the SQS sink sends at the same time.")
+    private int spillDrainBatches = DEFAULT_SPILL_DRAIN_BATCHES;
+
+    @FieldDoc(required = false,
+            defaultValue = "",
+            help = "A list of SQS endpoints, each with awsEndpoint, awsRegion and queueName, the fields left empty "
+                    + "are taken from the top level ones. The SQS sink sends to the healthy endpoint with the lowest "
+                    + "latency, the SQS source consumes all of them. If it is empty, the top level awsEndpoint, "
+                    + "awsRegion and queueName are the only endpoint.")
+    private List<SQSEndpointConfig> endpoints = Collections.emptyList();
+
+    @FieldDoc(required = false,
+            defaultValue = "3",
+            help = "The number of consecutive failed requests after which an endpoint is failed over, until a "
+                    + "request or a health check succeeds on it again.")
+    private int endpointFailureThreshold = DEFAULT_ENDPOINT_FAILURE_THRESHOLD;
+
+    @FieldDoc(required = false,
+            defaultValue = "10",
+            help = "The interval (in seconds) at which every endpoint is checked, when there are several of them.")
+    private int endpointHealthCheckIntervalSeconds = DEFAULT_ENDPOINT_HEALTH_CHECK_INTERVAL_SECONDS;
+
+    @FieldDoc(required = false,
+            defaultValue = "false",
+            help = "Whether the SQS source drops the messages whose key it has seen recently. A copy of an acked "
+                    + "message is deleted from the queue instead of being published, a copy of a message in flight "
+                    + "is left to become visible again.")
+    private boolean dedupEnabled;
+
+    @FieldDoc(required = false,
+            defaultValue = "",
+            help = "The message attribute that identifies a message for the dedup. If it is empty or a message "
+                    + "does not have it, the SQS message id is used.")
+    private String dedupAttribute = "";
+
+    @FieldDoc(required = false,
+            defaultValue = "100000",
+            help = "The number of message keys the dedup remembers. Each takes between 40 and 64 bytes.")
+    private int dedupCacheSize = DEFAULT_DEDUP_CACHE_SIZE;
+
+    @FieldDoc(required = false,
+            defaultValue = "300",
+            help = "The time in seconds the dedup remembers a message key. It should exceed the visibility timeout "
+                    + "of the queue, which is when the redeliveries happen.")
+    private int dedupTtlSeconds = DEFAULT_DEDUP_TTL_SECONDS;
+
+    @FieldDoc(required = false,
+            defaultValue = "0",
+            help = "The rate limit of the SQS calls of a connector instance, in tokens per second. Receives, deletes, "
+                    + "visibility changes and sends wait for their tokens instead of failing. Set it to 0 to disable "
+                    + "the limit.")
+    private double rateLimitPerSecond;
+
+    @FieldDoc(required = false,
+            defaultValue = "0",
+            help = "The number of tokens an idle rate limiter saves up for a burst. If it is 0, the burst is one "
+                    + "second of the rate limit.")
+    private int rateLimitBurst;
+
+    @FieldDoc(required = false,
+            defaultValue = "CALLS",
+            help = "What a token of the rate limit pays for: CALLS for one SQS API call, MESSAGES for every message "
+                    + "a call carries, or may receive at most.")
+    private SQSRateLimiter.Unit rateLimitUnit = SQSRateLimiter.Unit.CALLS;
+
+    @FieldDoc(required = false,
+            defaultValue = "All",
+            help = "The comma separated names of the message attributes the SQS source receives, a name may end "
+                    + "with .* to match a prefix. The attributes of the pulsar key and destination topic, of the "
+                    + "dedup, of the filter and, with tracing, the traceparent are always received. Default=All.")
+    private String messageAttributeNames = SQSUtils.ALL_MESSAGE_ATTRIBUTES;
+
+    @FieldDoc(required = false,
+            defaultValue = "",
+            help = "A filter on the received messages, e.g. attr.type == 'order' && !body startsWith 'test'. It "
+                    + "combines attr.<name> == 'value', attr.<name> != 'value', attr.<name> exists and body "
+                    + "startsWith 'prefix' with &&, ||, ! and parentheses. The messages that do not match are "
+                    + "deleted from the queue instead of being published. If it is empty, all messages are "
+                    + "published.")
+    private String filter = "";
+
+    @FieldDoc(required = false,
+            defaultValue = "",
+            help = "The comma separated class names of the SQSRecordTransformer implementations the SQS source "
+                    + "applies, in order, to every received message on the consumer threads. A transformer may "
+                    + "change, split or drop a record. If it is empty, the messages are published as received.")
+    private String transformers = "";
+
+    @FieldDoc(required = false,
+            defaultValue = "",
+            help = "The configuration passed to the open method of every transformer.")
+    private Map<String, Object> transformerConfig = Collections.emptyMap();
+
+    @FieldDoc(required = false,
+            defaultValue = "BYTES",
+            help = "The schema of the records of the SQS source: BYTES, JSON, AVRO, PROTOBUF or PROTOBUF_NATIVE. "
+                    + "JSON bodies are parsed and checked against the schema definition, the binary formats are "
+                    + "expected base64 encoded in the body. The bodies are decoded on the consumer threads.")
+    private SchemaType schemaType = SchemaType.BYTES;
+
+    @FieldDoc(required = false,
+            defaultValue = "",
+            help = "The definition of the schema, in the format pulsar uses for the schemaType: the avro schema "
+                    + "of the records for JSON, AVRO and PROTOBUF. Required unless the schemaType is BYTES.")
+    private String schemaDefinition = "";
+
+    @FieldDoc(required = false,
+            defaultValue = "NACK",
+            help = "What the SQS source does with a message whose body does not decode for the schema: NACK makes "
+                    + "it visible again, so the redrive policy of the queue moves it to its dead letter queue, "
+                    + "DEAD_LETTER sends it to the deadLetterQueueName queue and deletes it.")
+    private SQSSchemaDecoder.FailureAction decodeFailureAction = SQSSchemaDecoder.FailureAction.NACK;
+
+    @FieldDoc(required = false,
+            defaultValue = "",
+            help = "The name of the queue the messages that do not decode are sent to, with the DEAD_LETTER "
+                    + "decodeFailureAction. It is created if it does not exist.")
+    private String deadLetterQueueName = "";
+
+    @FieldDoc(required = false,
+            defaultValue = "0",
+            help = "The ratio [0, 1] of the messages without a trace context that are traced. The messages with a "
+                    + "context in the traceparent attribute or property are traced if the context is sampled. If "
+                    + "it is 0, tracing is disabled and the traceparent is passed on as any other attribute.")
+    private double traceSamplingRatio;
+
+    @FieldDoc(required = false,
+            defaultValue = "",
+            help = "The class name of the SQSSpanExporter the spans are passed to. If it is empty, the spans are "
+                    + "logged.")
+    private String traceSpanExporter = "";
+
+    @FieldDoc(required = false,
+            defaultValue = "",
+            help = "The file a sample of the received (SQS source) or sent (SQS sink) messages is captured to, "
+                    + "with their body, attributes and time, to be replayed by the benchmarks. Every instance "
+                    + "writes its own file, with the instance id before the extension, e.g. capture-0.gz, which is "
+                    + "replaced when the instance opens. If it is empty, nothing is captured.")
+    private String captureFile = "";
+
+    @FieldDoc(required = false,
+            defaultValue = "1.0",
+            help = "The ratio (0, 1] of the messages that are captured.")
+    private double captureSampleRatio = 1.0;
+
+    @FieldDoc(required = false,
+            defaultValue = "1000000",
+            help = "The number of captured messages after which the capture stops.")
+    private long captureMaxMessages = DEFAULT_CAPTURE_MAX_MESSAGES;
+
+    @FieldDoc(required = false,
+            defaultValue = "0",
+            help = "The interval in seconds at which the connector looks for a config override in the state store, "
+                    + "under the key sqs-config-override. The override is a json object of rateLimitPerSecond and "
+                    + "rateLimitBurst, numberOfConsumers and batchSizeOfOnceReceive for the SQS source, and "
+                    + "maxPendingSends for the SQS sink, which the connector applies without a restart. An option "
+                    + "left out of the override goes back to its configured value. It requires the state storage of "
+                    + "Pulsar Functions. Set it to 0 to ignore overrides.")
+    private int configOverrideIntervalSeconds;
+
     public static SQSConnectorConfig load(Map<String, Object> map) throws IOException {
         ObjectMapper mapper = new ObjectMapper();
         return mapper.readValue(new ObjectMapper().writeValueAsString(map), SQSConnectorConfig.class);
@@ -103,27 +514,398 @@ public class SQSConnectorConfig implements Serializable {
                     DEFAULT_BATCH_SIZE_OF_ONCE_RECEIVE);
             batchSizeOfOnceReceive = 1;
         }
-        if (numberOfConsumers < 1 || numberOfConsumers > 50) {
-            log.warn("The numberOfConsumers: {} should be [1,50], using default {}.", numberOfConsumers,
-                    DEFAULT_NUMBER_OF_SQS_CONSUMERS);
+        if (virtualThreads && !SQSThreads.isVirtualSupported()) {
+            log.warn("The virtualThreads require JDK 21+, using platform threads on {}.",
+                    System.getProperty("java.version"));
+            virtualThreads = false;
+        }
+        if (numberOfConsumers < 1 || numberOfConsumers > getConsumerLimit()) {
+            log.warn("The numberOfConsumers: {} should be [1,{}], using default {}.", numberOfConsumers,
+                    getConsumerLimit(), DEFAULT_NUMBER_OF_SQS_CONSUMERS);
             numberOfConsumers = 1;
         }
+        if (statsIntervalSeconds < 0) {
+            log.warn("The statsIntervalSeconds: {} should be >= 0, using default {}.", statsIntervalSeconds,
+                    DEFAULT_STATS_INTERVAL_SECONDS);
+            statsIntervalSeconds = DEFAULT_STATS_INTERVAL_SECONDS;
+        }
+        if (clientPoolSize < 0) {
+            log.warn("The clientPoolSize: {} should be >= 0, sizing the pool from numberOfConsumers.",
+                    clientPoolSize);
+            clientPoolSize = 0;
+        }
+        if (maxConnections < 1) {
+            log.warn("The maxConnections: {} should be >= 1, using default {}.", maxConnections,
+                    DEFAULT_MAX_CONNECTIONS);
+            maxConnections = DEFAULT_MAX_CONNECTIONS;
+        }
+        if (warmUpConnections < 0 || warmUpConnections > maxConnections) {
+            log.warn("The warmUpConnections: {} should be [0,{}], using {}.", warmUpConnections, maxConnections,
+                    Math.max(0, Math.min(maxConnections, warmUpConnections)));
+            warmUpConnections = Math.max(0, Math.min(maxConnections, warmUpConnections));
+        }
+        if (connectionTimeoutMillis < 0) {
+            log.warn("The connectionTimeoutMillis: {} should be >= 0, using default {}.", connectionTimeoutMillis,
+                    DEFAULT_CONNECTION_TIMEOUT_MILLIS);
+            connectionTimeoutMillis = DEFAULT_CONNECTION_TIMEOUT_MILLIS;
+        }
+        if (socketTimeoutMillis != 0 && socketTimeoutMillis <= SQSUtils.MAX_WAIT_TIME * 1000) {
+            log.warn("The socketTimeoutMillis: {} should be longer than a long poll of {}s, using default {}.",
+                    socketTimeoutMillis, SQSUtils.MAX_WAIT_TIME, DEFAULT_SOCKET_TIMEOUT_MILLIS);
+            socketTimeoutMillis = DEFAULT_SOCKET_TIMEOUT_MILLIS;
+        }
+        if (queueMonitorIntervalSeconds < 0) {
+            log.warn("The queueMonitorIntervalSeconds: {} should be >= 0, disabling the queue monitor.",
+                    queueMonitorIntervalSeconds);
+            queueMonitorIntervalSeconds = 0;
+        }
+        if (backlogDrainTargetSeconds < 1) {
+            log.warn("The backlogDrainTargetSeconds: {} should be >= 1, using default {}.", backlogDrainTargetSeconds,
+                    DEFAULT_BACKLOG_DRAIN_TARGET_SECONDS);
+            backlogDrainTargetSeconds = DEFAULT_BACKLOG_DRAIN_TARGET_SECONDS;
+        }
+        if (maxConsumers < 1 || maxConsumers > getConsumerLimit()) {
+            log.warn("The maxConsumers: {} should be [1,{}], using default {}.", maxConsumers, getConsumerLimit(),
+                    MAX_NUMBER_OF_SQS_CONSUMERS);
+            maxConsumers = MAX_NUMBER_OF_SQS_CONSUMERS;
+        }
+        if (minConsumers < 1 || minConsumers > maxConsumers) {
+            log.warn("The minConsumers: {} should be [1,{}], using default {}.", minConsumers, maxConsumers,
+                    DEFAULT_NUMBER_OF_SQS_CONSUMERS);
+            minConsumers = DEFAULT_NUMBER_OF_SQS_CONSUMERS;
+        }
+        if (autoscaleConsumers && queueMonitorIntervalSeconds == 0) {
+            log.warn("The autoscaleConsumers requires queueMonitorIntervalSeconds > 0, the consumers are not resized.");
+        }
+        if (budgetCoordinationIntervalSeconds < 0) {
+            log.warn("The budgetCoordinationIntervalSeconds: {} should be >= 0, disabling the budget coordination.",
+                    budgetCoordinationIntervalSeconds);
+            budgetCoordinationIntervalSeconds = 0;
+        }
+        if (consumerBudget < 0) {
+            log.warn("The consumerBudget: {} should be >= 0, using numberOfConsumers times the parallelism.",
+                    consumerBudget);
+            consumerBudget = 0;
+        }
+        if (offHeapBodyChunkBytes < MIN_OFF_HEAP_BODY_CHUNK_BYTES
+                || offHeapBodyChunkBytes > MAX_OFF_HEAP_BODY_CHUNK_BYTES) {
+            log.warn("The offHeapBodyChunkBytes: {} should be [{},{}], using default {}.", offHeapBodyChunkBytes,
+                    MIN_OFF_HEAP_BODY_CHUNK_BYTES, MAX_OFF_HEAP_BODY_CHUNK_BYTES, DEFAULT_OFF_HEAP_BODY_CHUNK_BYTES);
+            offHeapBodyChunkBytes = DEFAULT_OFF_HEAP_BODY_CHUNK_BYTES;
+        }
+        if (offHeapBodyPoolBytes < 0) {
+            log.warn("The offHeapBodyPoolBytes: {} should be >= 0, keeping the values on the heap.",
+                    offHeapBodyPoolBytes);
+            offHeapBodyPoolBytes = 0;
+        } else if (offHeapBodyPoolBytes > MAX_OFF_HEAP_BODY_POOL_BYTES) {
+            log.warn("The offHeapBodyPoolBytes: {} should be at most {}, using {}.", offHeapBodyPoolBytes,
+                    MAX_OFF_HEAP_BODY_POOL_BYTES, MAX_OFF_HEAP_BODY_POOL_BYTES);
+            offHeapBodyPoolBytes = MAX_OFF_HEAP_BODY_POOL_BYTES;
+        } else if (offHeapBodyPoolBytes > 0 && offHeapBodyPoolBytes < offHeapBodyChunkBytes) {
+            log.warn("The offHeapBodyPoolBytes: {} should hold at least one chunk of {}, using {}.",
+                    offHeapBodyPoolBytes, offHeapBodyChunkBytes, offHeapBodyChunkBytes);
+            offHeapBodyPoolBytes = offHeapBodyChunkBytes;
+        }
+        if (autoscaleConsumers && budgetCoordinationIntervalSeconds > 0) {
+            log.warn("The autoscaleConsumers is ignored, the consumers are resized by the budget coordination.");
+            autoscaleConsumers = false;
+        }
+        if (endpointFailureThreshold < 1) {
+            log.warn("The endpointFailureThreshold: {} should be >= 1, using default {}.", endpointFailureThreshold,
+                    DEFAULT_ENDPOINT_FAILURE_THRESHOLD);
+            endpointFailureThreshold = DEFAULT_ENDPOINT_FAILURE_THRESHOLD;
+        }
+        if (endpointHealthCheckIntervalSeconds < 1) {
+            log.warn("The endpointHealthCheckIntervalSeconds: {} should be >= 1, using default {}.",
+                    endpointHealthCheckIntervalSeconds, DEFAULT_ENDPOINT_HEALTH_CHECK_INTERVAL_SECONDS);
+            endpointHealthCheckIntervalSeconds = DEFAULT_ENDPOINT_HEALTH_CHECK_INTERVAL_SECONDS;
+        }
+        if (conflationWindowMillis < 0) {
+            log.warn("The conflationWindowMillis: {} should be >= 0, disabling conflation.", conflationWindowMillis);
+            conflationWindowMillis = 0;
+        }
+        if (captureSampleRatio <= 0 || captureSampleRatio > 1) {
+            log.warn("The captureSampleRatio: {} should be (0,1], using default 1.0.", captureSampleRatio);
+            captureSampleRatio = 1.0;
+        }
+        if (captureMaxMessages < 1) {
+            log.warn("The captureMaxMessages: {} should be >= 1, using default {}.", captureMaxMessages,
+                    DEFAULT_CAPTURE_MAX_MESSAGES);
+            captureMaxMessages = DEFAULT_CAPTURE_MAX_MESSAGES;
+        }
+        if (maxPendingSends < 0) {
+            log.warn("The maxPendingSends: {} should be >= 0, not limiting the sends.", maxPendingSends);
+            maxPendingSends = 0;
+        }
+        if (configOverrideIntervalSeconds < 0) {
+            log.warn("The configOverrideIntervalSeconds: {} should be >= 0, ignoring config overrides.",
+                    configOverrideIntervalSeconds);
+            configOverrideIntervalSeconds = 0;
+        }
+        if (spillSegmentSizeBytes < MIN_SPILL_SEGMENT_SIZE_BYTES
+                || spillSegmentSizeBytes > MAX_SPILL_SEGMENT_SIZE_BYTES) {
+            log.warn("The spillSegmentSizeBytes: {} should be [{},{}], using default {}.", spillSegmentSizeBytes,
+                    MIN_SPILL_SEGMENT_SIZE_BYTES, MAX_SPILL_SEGMENT_SIZE_BYTES, DEFAULT_SPILL_SEGMENT_SIZE_BYTES);
+            spillSegmentSizeBytes = DEFAULT_SPILL_SEGMENT_SIZE_BYTES;
+        }
+        if (spillMaxBytes < 2L * spillSegmentSizeBytes) {
+            log.warn("The spillMaxBytes: {} should be at least two segments, using {}.", spillMaxBytes,
+                    2L * spillSegmentSizeBytes);
+            spillMaxBytes = 2L * spillSegmentSizeBytes;
+        }
+        if (spillFsyncIntervalMillis < 1) {
+            log.warn("The spillFsyncIntervalMillis: {} should be >= 1, using default {}.", spillFsyncIntervalMillis,
+                    DEFAULT_SPILL_FSYNC_INTERVAL_MILLIS);
+            spillFsyncIntervalMillis = DEFAULT_SPILL_FSYNC_INTERVAL_MILLIS;
+        }
+        if (spillDrainBatches < 1) {
+            log.warn("The spillDrainBatches: {} should be >= 1, using default {}.", spillDrainBatches,
+                    DEFAULT_SPILL_DRAIN_BATCHES);
+            spillDrainBatches = DEFAULT_SPILL_DRAIN_BATCHES;
+        }
+        if (spillEnabled && spillDirectory.isEmpty()) {
+            throw new IllegalArgumentException("The spillDirectory is required if spillEnabled");
+        }
+        if (conflationMaxKeys < 1) {
+            log.warn("The conflationMaxKeys: {} should be >= 1, using default {}.", conflationMaxKeys,
+                    DEFAULT_CONFLATION_MAX_KEYS);
+            conflationMaxKeys = DEFAULT_CONFLATION_MAX_KEYS;
+        }
+        if (drainTimeoutMillis < 0) {
+            log.warn("The drainTimeoutMillis: {} should be >= 0, using default {}.", drainTimeoutMillis,
+                    DEFAULT_DRAIN_TIMEOUT_MILLIS);
+            drainTimeoutMillis = DEFAULT_DRAIN_TIMEOUT_MILLIS;
+        }
+        if (dedupCacheSize < 1 || dedupCacheSize > MAX_DEDUP_CACHE_SIZE) {
+            log.warn("The dedupCacheSize: {} should be [1,{}], using default {}.", dedupCacheSize,
+                    MAX_DEDUP_CACHE_SIZE, DEFAULT_DEDUP_CACHE_SIZE);
+            dedupCacheSize = DEFAULT_DEDUP_CACHE_SIZE;
+        }
+        if (dedupTtlSeconds < 1) {
+            log.warn("The dedupTtlSeconds: {} should be >= 1, using default {}.", dedupTtlSeconds,
+                    DEFAULT_DEDUP_TTL_SECONDS);
+            dedupTtlSeconds = DEFAULT_DEDUP_TTL_SECONDS;
+        }
+        if (rateLimitPerSecond < 0) {
+            log.warn("The rateLimitPerSecond: {} should be >= 0, disabling the rate limit.", rateLimitPerSecond);
+            rateLimitPerSecond = 0;
+        }
+        if (traceSamplingRatio < 0 || traceSamplingRatio > 1) {
+            log.warn("The traceSamplingRatio: {} should be [0,1], disabling tracing.", traceSamplingRatio);
+            traceSamplingRatio = 0;
+        }
+        if (rateLimitBurst < 0) {
+            log.warn("The rateLimitBurst: {} should be >= 0, using one second of the rate limit.", rateLimitBurst);
+            rateLimitBurst = 0;
+        }
+        // fail on open rather than on the first receive
+        SQSMessageFilter.compile(filter);
+        SQSSchemaDecoder.create(schemaType, schemaDefinition);
+        if (decodeFailureAction == SQSSchemaDecoder.FailureAction.DEAD_LETTER && deadLetterQueueName.isEmpty()) {
+            throw new IllegalArgumentException("The deadLetterQueueName is required for the DEAD_LETTER "
+                    + "decodeFailureAction");
+        }
+        if (prefetchBatches < 1) {
+            log.warn("The prefetchBatches: {} should be >= 1, using default {}.", prefetchBatches,
+                    DEFAULT_PREFETCH_BATCHES);
+            prefetchBatches = DEFAULT_PREFETCH_BATCHES;
+        }
+        if (prefetchInflightBatches < 1) {
+            log.warn("The prefetchInflightBatches: {} should be >= 1, using default {}.", prefetchInflightBatches,
+                    DEFAULT_PREFETCH_BATCHES);
+            prefetchInflightBatches = DEFAULT_PREFETCH_BATCHES;
+        }
+    }
+
+    /**
+     * Limits the prefetch depth to what can be consumed within the visibility timeout of the queue. A batch
+     * that is not handed out before its visibility timeout expires is dropped by the client and the messages
+     * are delivered again. Assuming the consumers take at least one batch per long poll, the clients of an
+     * endpoint may keep at most visibilityTimeout / long poll batches ready together; below one batch the prefetch
+     * is turned off.
+     *
+     * @return whether the prefetch settings changed
+     */
+    public boolean limitPrefetchToVisibilityTimeout(int visibilityTimeoutSeconds) {
+        int maxBatches = visibilityTimeoutSeconds / SQSUtils.MAX_WAIT_TIME;
+        if (maxBatches < 1) {
+            log.warn("The visibility timeout {}s of the queue is shorter than a long poll, prefetching is disabled.",
+                    visibilityTimeoutSeconds);
+            prefetchEnabled = false;
+            return true;
+        }
+        if (prefetchBatches > maxBatches) {
+            log.warn("The prefetchBatches: {} cannot be consumed within the visibility timeout {}s, using {}.",
+                    prefetchBatches, visibilityTimeoutSeconds, maxBatches);
+            prefetchBatches = maxBatches;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The prefetch depth of a client of a pool. The prefetchBatches are the depth of the whole pool of an
+     * endpoint, split over its clients, so the messages the pool leases do not grow with its size and the limit
+     * of {@link #limitPrefetchToVisibilityTimeout} holds for the pool. A client whose share is 0 does not prefetch.
+     */
+    public int getClientPrefetchBatches(int clientIndex, int poolSize) {
+        return prefetchBatches / poolSize + (clientIndex < prefetchBatches % poolSize ? 1 : 0);
+    }
+
+    /**
+     * The highest number of consumer threads per instance: the platform threads are limited, the virtual ones
+     * are bounded by the connections of the client pool.
+     */
+    public int getConsumerLimit() {
+        return virtualThreads ? MAX_NUMBER_OF_VIRTUAL_SQS_CONSUMERS : MAX_NUMBER_OF_SQS_CONSUMERS;
+    }
+
+    /**
+     * The number of clients of the connector pool, see {@link SQSClientPool}.
+     */
+    public int getEffectiveClientPoolSize() {
+        if (clientPoolSize > 0) {
+            return clientPoolSize;
+        }
+        return numberOfConsumers > SQSAbstractConnector.SQS_CLIENT_THRESHOLD
+                ? numberOfConsumers / SQSAbstractConnector.SQS_CLIENT_THRESHOLD + 1 : 1;
+    }
+
+    /**
+     * The endpoints of the connector, with the fields left empty taken from the top level ones.
+     */
+    public List<SQSEndpointConfig> getEffectiveEndpoints() {
+        if (endpoints == null || endpoints.isEmpty()) {
+            return Collections.singletonList(new SQSEndpointConfig(awsEndpoint, awsRegion, queueName));
+        }
+        List<SQSEndpointConfig> effective = new ArrayList<>(endpoints.size());
+        for (SQSEndpointConfig endpoint : endpoints) {
+            effective.add(new SQSEndpointConfig(
+                    isEmpty(endpoint.getAwsEndpoint()) ? awsEndpoint : endpoint.getAwsEndpoint(),
+                    isEmpty(endpoint.getAwsRegion()) ? awsRegion : endpoint.getAwsRegion(),
+                    isEmpty(endpoint.getQueueName()) ? queueName : endpoint.getQueueName()));
+        }
+        return effective;
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    /**
+     * The message attribute names of the receives of the source, with the attributes the connector needs itself.
+     */
+    public List<String> getEffectiveMessageAttributeNames() {
+        Set<String> names = new LinkedHashSet<>();
+        for (String name : messageAttributeNames.split(",")) {
+            if (!name.trim().isEmpty()) {
+                names.add(name.trim());
+            }
+        }
+        if (names.isEmpty() || names.contains(SQSUtils.ALL_MESSAGE_ATTRIBUTES)) {
+            return Collections.singletonList(SQSUtils.ALL_MESSAGE_ATTRIBUTES);
+        }
+        names.add(SQSUtils.PULSAR_MESSAGE_KEY);
+        names.add(SQSUtils.PULSAR_TOPIC_ATTRIBUTE);
+        if (!dedupAttribute.isEmpty()) {
+            names.add(dedupAttribute);
+        }
+        if (traceSamplingRatio > 0) {
+            // the trace context of the producer
+            names.add(SQSTracer.TRACEPARENT);
+        }
+        SQSMessageFilter messageFilter = SQSMessageFilter.compile(filter);
+        if (messageFilter != null) {
+            names.addAll(messageFilter.getAttributeNames());
+        }
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * The rate limiter shared by the clients of a connector instance, or null if the calls are not limited. With
+     * config overrides the limiter is always built, so a limit can be set later.
+     */
+    public SQSRateLimiter buildRateLimiter() {
+        if (rateLimitPerSecond <= 0 && configOverrideIntervalSeconds == 0) {
+            return null;
+        }
+        return new SQSRateLimiter(Math.max(0, rateLimitPerSecond), getEffectiveRateLimitBurst(), rateLimitUnit);
+    }
+
+    /**
+     * The burst of the rate limit, one second of it unless it is set.
+     */
+    public int getEffectiveRateLimitBurst() {
+        return rateLimitBurst > 0 ? rateLimitBurst : (int) Math.max(1, Math.ceil(rateLimitPerSecond));
+    }
+
+    /**
+     * The options a running connector applies from a config override, with their current values.
+     */
+    public Map<String, Number> getReconfigurableOptions() {
+        Map<String, Number> options = new LinkedHashMap<>();
+        options.put("numberOfConsumers", numberOfConsumers);
+        options.put("batchSizeOfOnceReceive", batchSizeOfOnceReceive);
+        options.put("rateLimitPerSecond", rateLimitPerSecond);
+        options.put("rateLimitBurst", rateLimitBurst);
+        options.put("maxPendingSends", maxPendingSends);
+        return options;
     }
 
     public AmazonSQSBufferedAsyncClient buildAmazonSQSClient(AwsCredentialProviderPlugin credPlugin) {
+        return buildAmazonSQSClient(credPlugin, new RequestHandler2[0]);
+    }
+
+    public AmazonSQSBufferedAsyncClient buildAmazonSQSClient(AwsCredentialProviderPlugin credPlugin,
+                                                             RequestHandler2... requestHandlers) {
+        return buildAmazonSQSClient(new SQSEndpointConfig(awsEndpoint, awsRegion, queueName), credPlugin,
+                requestHandlers);
+    }
+
+    public AmazonSQSBufferedAsyncClient buildAmazonSQSClient(SQSEndpointConfig endpoint,
+                                                             AwsCredentialProviderPlugin credPlugin,
+                                                             RequestHandler2... requestHandlers) {
+        return buildAmazonSQSClient(endpoint, prefetchBatches, credPlugin, requestHandlers);
+    }
+
+    /**
+     * Builds a client that keeps the given number of received batches ready in prefetch mode, none if it is 0.
+     */
+    public AmazonSQSBufferedAsyncClient buildAmazonSQSClient(SQSEndpointConfig endpoint, int clientPrefetchBatches,
+                                                             AwsCredentialProviderPlugin credPlugin,
+                                                             RequestHandler2... requestHandlers) {
         AmazonSQSAsyncClientBuilder builder = AmazonSQSAsyncClientBuilder.standard();
         QueueBufferConfig config = new QueueBufferConfig()
                 .withMaxBatchSize(QueueBufferConfig.MAX_BATCH_SIZE_DEFAULT)
                 .withMaxInflightOutboundBatches(
                         QueueBufferConfig.MAX_INFLIGHT_OUTBOUND_BATCHES_DEFAULT * numberOfConsumers);
-        if (!this.getAwsEndpoint().isEmpty()) {
+        if (prefetchEnabled && clientPrefetchBatches > 0) {
+            // receives are only served from the prefetched batches when they ask for the same attributes
+            config.withMaxInflightReceiveBatches(prefetchInflightBatches)
+                    .withMaxDoneReceiveBatches(clientPrefetchBatches)
+                    .withAdaptivePrefetching(adaptivePrefetching)
+                    .withReceiveAttributeNames(SQSUtils.RECEIVE_ATTRIBUTE_NAMES)
+                    .withReceiveMessageAttributeNames(getEffectiveMessageAttributeNames());
+        }
+        if (!endpoint.getAwsEndpoint().isEmpty()) {
             builder.setEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(
-                    this.getAwsEndpoint(),
-                    this.getAwsRegion()));
-        } else if (!this.getAwsRegion().isEmpty()) {
-            builder.setRegion(this.getAwsRegion());
+                    endpoint.getAwsEndpoint(),
+                    endpoint.getAwsRegion()));
+        } else if (!endpoint.getAwsRegion().isEmpty()) {
+            builder.setRegion(endpoint.getAwsRegion());
         }
         builder.setCredentials(credPlugin.getCredentialProvider());
+        // the sdk always opens its connections with TCP_NODELAY, there is nothing to configure for it
+        builder.setClientConfiguration(new ClientConfiguration()
+                .withMaxConnections(maxConnections)
+                .withConnectionTimeout(connectionTimeoutMillis)
+                .withSocketTimeout(socketTimeoutMillis)
+                .withTcpKeepAlive(tcpKeepAlive));
+        builder.setRequestHandlers(requestHandlers);
+        if (virtualThreads) {
+            // the async handlers of every request run on the executor of the client
+            builder.setExecutorFactory(() -> SQSThreads.newExecutor("sqs-client", true));
+        }
         return new AmazonSQSBufferedAsyncClient(builder.build(), config);
     }
 
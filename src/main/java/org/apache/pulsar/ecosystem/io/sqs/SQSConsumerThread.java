@@ -18,8 +18,9 @@
  */
 package org.apache.pulsar.ecosystem.io.sqs;
 
-import com.amazonaws.services.sqs.model.MessageSystemAttributeName;
+import com.amazonaws.services.sqs.model.Message;
 import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import java.util.List;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -29,34 +30,108 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class SQSConsumerThread extends Thread {
 
+    private static final long PAUSE_MILLIS = 50;
+    // the pause after a failed receive on one of several endpoints, before the endpoint is tried again
+    private static final long ENDPOINT_RETRY_MILLIS = 1000;
+
     private final SQSSource source;
-    private boolean stopped;
+    private final SQSEndpoint endpoint;
+    private volatile boolean stopped;
     private final ReceiveMessageRequest request;
+    private final SQSReceiveController controller;
 
     public SQSConsumerThread(SQSSource source) {
+        this(source, source.getPrimaryEndpoint());
+    }
+
+    /**
+     * A consumer that receives from the given endpoint of the source.
+     */
+    SQSConsumerThread(SQSSource source, SQSEndpoint endpoint) {
         this.stopped = false;
         this.source = source;
-        this.request = new ReceiveMessageRequest(source.getQueueUrl())
+        this.endpoint = endpoint;
+        this.request = new ReceiveMessageRequest(endpoint.getQueueUrl())
                 .withMaxNumberOfMessages(source.getConfig().getBatchSizeOfOnceReceive())
                 .withWaitTimeSeconds(SQSUtils.MAX_WAIT_TIME)
-                .withMessageAttributeNames("All")
-                .withAttributeNames(MessageSystemAttributeName.SentTimestamp.toString());
+                .withMessageAttributeNames(source.getConfig().getEffectiveMessageAttributeNames())
+                .withAttributeNames(SQSUtils.RECEIVE_ATTRIBUTE_NAMES);
+        this.controller = source.getConfig().isAdaptiveReceiveEnabled()
+                ? new SQSReceiveController(source.getConfig().getBatchSizeOfOnceReceive(),
+                        source::getNumberOfRunningConsumers)
+                : null;
     }
 
     public void run() {
         while (!stopped) {
             try {
-                source.getClient()
-                        .receiveMessage(request)
-                        .getMessages()
-                        .forEach(source::enqueue);
-            } catch (Exception ex) {
-                log.error("receive message from sqs error.", ex);
+                if (controller != null) {
+                    controller.setMinBatchSize(source.getReceiveBatchSize());
+                    if (!controller.plan(source.getBufferedRecords(), source.getQueueLength(),
+                            source.getApproximateBacklog())) {
+                        Thread.sleep(PAUSE_MILLIS);
+                        continue;
+                    }
+                    request.setMaxNumberOfMessages(controller.getBatchSize());
+                    request.setWaitTimeSeconds(controller.getWaitTimeSeconds());
+                } else {
+                    request.setMaxNumberOfMessages(source.getReceiveBatchSize());
+                }
+                if (!source.admitsReceive(request.getMaxNumberOfMessages())) {
+                    // the body pool is close to full, the messages would only wait there for memory
+                    Thread.sleep(PAUSE_MILLIS);
+                    continue;
+                }
+                if (endpoint.getQueueUrl() == null) {
+                    // the endpoint was not reached yet, the health checks resolve its queue
+                    Thread.sleep(ENDPOINT_RETRY_MILLIS);
+                    continue;
+                }
+                request.setQueueUrl(endpoint.getQueueUrl());
+                SQSClientPool.PooledClient pooled = endpoint.getClientPool().acquire();
+                List<Message> messages;
+                SQSFlightRecorder.ReceiveEvent event = new SQSFlightRecorder.ReceiveEvent();
+                event.begin();
+                try {
+                    messages = pooled.getClient().receiveMessage(request).getMessages();
+                } finally {
+                    pooled.release();
+                }
+                event.end();
+                if (event.shouldCommit()) {
+                    event.requested = request.getMaxNumberOfMessages();
+                    event.received = messages.size();
+                    event.commit();
+                }
+                if (controller != null) {
+                    controller.onReceived(request.getMaxNumberOfMessages(), messages.size());
+                }
+                source.recordReceive(request.getMaxNumberOfMessages(), messages.size());
+                source.enqueueAll(endpoint, messages);
+            } catch (InterruptedException ex) {
                 close();
+            } catch (Exception ex) {
+                if (source.getEndpoints().size() > 1) {
+                    // the other endpoints are still consumed, keep trying this one until it recovers
+                    log.warn("receive message from sqs endpoint {} error.", endpoint, ex);
+                    endpoint.onError();
+                    pauseAfterError();
+                } else {
+                    log.error("receive message from sqs error.", ex);
+                    close();
+                }
             }
         }
     }
 
+    private void pauseAfterError() {
+        try {
+            Thread.sleep(ENDPOINT_RETRY_MILLIS);
+        } catch (InterruptedException e) {
+            close();
+        }
+    }
+
     public void close() {
         stopped = true;
     }
@@ -0,0 +1,215 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+/**
+ * A size and time bounded set of the message keys {@link SQSSource} has seen recently.
+ *
+ * <p>The keys are stored as 64 bit hashes in an open addressing table with linear probing, and their insertion
+ * order in a ring of primitive arrays, so an entry costs between 40 and 64 bytes and no objects. A key is in
+ * flight until its message is acked; only then are later copies of the message duplicates. The oldest key is
+ * evicted when the cache is full or its time to live is over. Two different keys with the same 64 bit hash are
+ * taken for a duplicate; at a million keys the chance for that is in the order of 1e-8.
+ */
+public class SQSDedupCache {
+
+    /**
+     * What the cache knew about a key when it was looked up.
+     */
+    public enum State {
+        // the key was not seen, it is in flight now
+        NEW,
+        // a message with the key is in flight, it may still fail and must not be dropped for it
+        IN_FLIGHT,
+        // a message with the key was acked, any other copy is a duplicate
+        ACKED
+    }
+
+    // the hash that marks an empty slot, keys hashing to it are stored as 1
+    private static final long EMPTY = 0;
+
+    private final long[] table;
+    // per slot of the table the index of the entry in the ring shifted left by one, with the acked flag in bit 0
+    private final int[] entries;
+    private final int mask;
+    private final long[] ringKeys;
+    private final long[] ringTimes;
+    private final long ttlNanos;
+    private int head;
+    private int size;
+    private long lookups;
+    private long hits;
+
+    public SQSDedupCache(int maxEntries, long ttlNanos) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("The dedup cache needs room for at least one key");
+        }
+        // keep the load factor at or below one half so probe sequences stay short
+        int capacity = Integer.highestOneBit(Math.max(2, maxEntries) * 2 - 1) << 1;
+        this.table = new long[capacity];
+        this.entries = new int[capacity];
+        this.mask = capacity - 1;
+        this.ringKeys = new long[maxEntries];
+        this.ringTimes = new long[maxEntries];
+        this.ttlNanos = ttlNanos;
+    }
+
+    /**
+     * Looks the key up and remembers it as in flight if it was not seen within the time to live before.
+     *
+     * @return what was known about the key before, a message is a duplicate only if its key was {@link State#ACKED}
+     */
+    public synchronized State checkAndAdd(String key, long nowNanos) {
+        expire(nowNanos);
+        long hash = hash(key);
+        lookups++;
+        int slot = find(hash);
+        if (slot >= 0) {
+            hits++;
+            return (entries[slot] & 1) != 0 ? State.ACKED : State.IN_FLIGHT;
+        }
+        if (size == ringKeys.length) {
+            evictOldest();
+        }
+        int tail = (head + size) % ringKeys.length;
+        insert(hash, tail);
+        ringKeys[tail] = hash;
+        ringTimes[tail] = nowNanos;
+        size++;
+        return State.NEW;
+    }
+
+    /**
+     * Marks the key acked, so later copies of its message are duplicates. A key that expired meanwhile is not
+     * added again.
+     */
+    public synchronized void markAcked(String key) {
+        int slot = find(hash(key));
+        if (slot >= 0) {
+            entries[slot] |= 1;
+        }
+    }
+
+    /**
+     * Forgets the key, e.g. because its message failed and has to pass when it is delivered again. Its slot
+     * in the insertion order is only freed when it expires, but no longer refers to the key, so the key can
+     * be added again.
+     */
+    public synchronized void remove(String key) {
+        int slot = find(hash(key));
+        if (slot >= 0) {
+            ringKeys[entries[slot] >>> 1] = EMPTY;
+            delete(slot);
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * The share of the lookups since the previous call that found a duplicate.
+     */
+    public synchronized double getAndResetHitRate() {
+        double hitRate = lookups == 0 ? 0 : (double) hits / lookups;
+        lookups = 0;
+        hits = 0;
+        return hitRate;
+    }
+
+    /**
+     * The bytes of the arrays of the cache, which are allocated up front.
+     */
+    public long getMemoryBytes() {
+        return (long) table.length * (Long.BYTES + Integer.BYTES) + (long) ringKeys.length * Long.BYTES * 2;
+    }
+
+    private void expire(long nowNanos) {
+        while (size > 0 && nowNanos - ringTimes[head] >= ttlNanos) {
+            evictOldest();
+        }
+    }
+
+    private void evictOldest() {
+        // a removed key left an empty ring slot behind
+        int slot = ringKeys[head] != EMPTY ? find(ringKeys[head]) : -1;
+        if (slot >= 0) {
+            delete(slot);
+        }
+        head = (head + 1) % ringKeys.length;
+        size--;
+    }
+
+    /**
+     * The slot of the hash in the table, or -1 if it is not there.
+     */
+    private int find(long hash) {
+        for (int slot = slot(hash); table[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (table[slot] == hash) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(long hash, int ringIndex) {
+        int slot = slot(hash);
+        while (table[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = hash;
+        entries[slot] = ringIndex << 1;
+    }
+
+    private void delete(int slot) {
+        // shift the following entries of the probe sequence back, so no tombstones are needed
+        int gap = slot;
+        for (int next = (gap + 1) & mask; table[next] != EMPTY; next = (next + 1) & mask) {
+            int home = slot(table[next]);
+            // move the entry if its home slot is not between the gap and its current slot
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                table[gap] = table[next];
+                entries[gap] = entries[next];
+                gap = next;
+            }
+        }
+        table[gap] = EMPTY;
+    }
+
+    private int slot(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * FNV-1a over the chars of the key, finished with the mixer of MurmurHash3.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == EMPTY ? 1 : hash;
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * An SQS endpoint of a connector: the queue on it, the clients it is reached with, and its health.
+ *
+ * <p>The health follows the outcome of the requests issued on the endpoint and of the health checks. After the
+ * failure threshold of consecutive errors the endpoint is failed over, i.e. marked unhealthy so the sink routes
+ * around it, and the next success recovers it.
+ */
+@Slf4j
+public class SQSEndpoint {
+
+    // the weight of a new sample in the moving averages of the latency and the error rate
+    static final double EWMA_WEIGHT = 0.2;
+    // how much an error rate of 1 adds to the latency score, e.g. 0.1 errors weigh like doubling the latency
+    static final double ERROR_PENALTY = 10;
+
+    @Getter
+    private final int index;
+    @Getter
+    private final String name;
+    @Getter
+    private final SQSClientPool clientPool;
+    @Getter
+    private volatile String queueUrl;
+    private final int failureThreshold;
+
+    private volatile boolean healthy = true;
+    private final AtomicInteger consecutiveErrors = new AtomicInteger();
+    // updated racily by the callbacks, a lost sample does not matter for an average
+    private volatile double latencyMillis;
+    private volatile double errorRate;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder failovers = new LongAdder();
+    private final LongAdder recoveries = new LongAdder();
+
+    SQSEndpoint(int index, String name, SQSClientPool clientPool, String queueUrl, int failureThreshold) {
+        this.index = index;
+        this.name = name;
+        this.clientPool = clientPool;
+        this.queueUrl = queueUrl;
+        this.failureThreshold = failureThreshold;
+    }
+
+    void setQueueUrl(String queueUrl) {
+        this.queueUrl = queueUrl;
+    }
+
+    public boolean isHealthy() {
+        return healthy && queueUrl != null;
+    }
+
+    /**
+     * Records a request on the endpoint that succeeded after the given time.
+     */
+    void onSuccess(long latencyNanos) {
+        requests.increment();
+        double millis = (double) latencyNanos / TimeUnit.MILLISECONDS.toNanos(1);
+        latencyMillis = latencyMillis == 0 ? millis : latencyMillis + EWMA_WEIGHT * (millis - latencyMillis);
+        errorRate -= EWMA_WEIGHT * errorRate;
+        consecutiveErrors.set(0);
+        if (!healthy) {
+            healthy = true;
+            recoveries.increment();
+            log.info("The sqs endpoint {} recovered.", name);
+        }
+    }
+
+    /**
+     * Records a request on the endpoint that failed.
+     */
+    void onError() {
+        requests.increment();
+        errors.increment();
+        errorRate += EWMA_WEIGHT * (1 - errorRate);
+        if (consecutiveErrors.incrementAndGet() >= failureThreshold && healthy) {
+            healthy = false;
+            failovers.increment();
+            log.warn("Failing over the sqs endpoint {} after {} consecutive errors.", name, failureThreshold);
+        }
+    }
+
+    /**
+     * The routing cost of the endpoint, lower is better: the average latency, raised by the error rate.
+     */
+    double getScore() {
+        return latencyMillis * (1 + ERROR_PENALTY * errorRate);
+    }
+
+    int getConsecutiveErrors() {
+        return consecutiveErrors.get();
+    }
+
+    void report(BiConsumer<String, Double> recorder) {
+        recorder.accept(metricName(index, "healthy"), isHealthy() ? 1.0 : 0.0);
+        recorder.accept(metricName(index, "latency_millis"), latencyMillis);
+        recorder.accept(metricName(index, "error_rate"), errorRate);
+        recorder.accept(metricName(index, "requests"), (double) requests.sumThenReset());
+        recorder.accept(metricName(index, "errors"), (double) errors.sumThenReset());
+        recorder.accept(metricName(index, "failovers"), (double) failovers.sumThenReset());
+        recorder.accept(metricName(index, "recoveries"), (double) recoveries.sumThenReset());
+    }
+
+    static String metricName(int index, String suffix) {
+        return "_sqs_endpoint_" + index + "_" + suffix + "_";
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
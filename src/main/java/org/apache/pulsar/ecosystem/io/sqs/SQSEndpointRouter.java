@@ -0,0 +1,53 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import java.util.List;
+
+/**
+ * Picks the endpoint a request of the sink is sent to: the healthy endpoint with the lowest score, or, when all
+ * of them are failed over, the one with the fewest consecutive errors.
+ */
+public class SQSEndpointRouter {
+
+    private final SQSEndpoint[] endpoints;
+
+    SQSEndpointRouter(List<SQSEndpoint> endpoints) {
+        this.endpoints = endpoints.toArray(new SQSEndpoint[0]);
+    }
+
+    SQSEndpoint choose() {
+        SQSEndpoint best = null;
+        for (SQSEndpoint endpoint : endpoints) {
+            if (endpoint.isHealthy() && (best == null || endpoint.getScore() < best.getScore())) {
+                best = endpoint;
+            }
+        }
+        if (best != null) {
+            return best;
+        }
+        for (SQSEndpoint endpoint : endpoints) {
+            if (endpoint.getQueueUrl() != null
+                    && (best == null || endpoint.getConsecutiveErrors() < best.getConsecutiveErrors())) {
+                best = endpoint;
+            }
+        }
+        return best != null ? best : endpoints[0];
+    }
+}
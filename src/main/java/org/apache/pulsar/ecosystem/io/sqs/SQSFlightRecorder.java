@@ -0,0 +1,192 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.handlers.HandlerContextKey;
+import com.amazonaws.handlers.RequestHandler2;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The Java Flight Recorder events of the connector, and the request handler that records the SQS requests.
+ *
+ * <p>The events are disabled unless a recording enables them, e.g. with the sqs-connector.jfc settings of the
+ * connector: {@code jcmd <pid> JFR.start settings=/path/to/sqs-connector.jfc}. While they are disabled an event
+ * costs little more than the check of a flag.
+ */
+public class SQSFlightRecorder extends RequestHandler2 {
+
+    private static final String PREFIX = "org.apache.pulsar.ecosystem.io.sqs.";
+    private static final HandlerContextKey<RequestEvent> EVENT = new HandlerContextKey<>(PREFIX + "RequestEvent");
+
+    @Override
+    public AmazonWebServiceRequest beforeExecution(AmazonWebServiceRequest request) {
+        RequestEvent event = new RequestEvent();
+        if (event.isEnabled()) {
+            event.begin();
+            request.addHandlerContext(EVENT, event);
+        }
+        return request;
+    }
+
+    @Override
+    public void afterResponse(Request<?> request, Response<?> response) {
+        end(request, true);
+    }
+
+    @Override
+    public void afterError(Request<?> request, Response<?> response, Exception e) {
+        end(request, false);
+    }
+
+    private static void end(Request<?> request, boolean success) {
+        AmazonWebServiceRequest originalRequest = request.getOriginalRequest();
+        RequestEvent event = originalRequest.getHandlerContext(EVENT);
+        if (event == null) {
+            return;
+        }
+        // the request object may be issued again, e.g. the receive request of a consumer thread
+        originalRequest.addHandlerContext(EVENT, null);
+        event.end();
+        if (event.shouldCommit()) {
+            event.action = SQSRequestStats.actionOf(originalRequest).getApiName();
+            event.entries = SQSRequestStats.entriesOf(originalRequest);
+            event.bytes = SQSRequestStats.sendPayloadSize(originalRequest);
+            event.success = success;
+            event.commit();
+        }
+    }
+
+    /**
+     * Begins the round trip of an async call of the connector.
+     *
+     * @return the event to pass to {@link #endRoundTrip}, or null if the event is disabled
+     */
+    static RoundTripEvent beginRoundTrip(SQSRequestStats.Action action) {
+        RoundTripEvent event = new RoundTripEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.action = action.getApiName();
+        event.begin();
+        return event;
+    }
+
+    static void endRoundTrip(RoundTripEvent event, boolean success) {
+        if (event != null) {
+            event.success = success;
+            event.commit();
+        }
+    }
+
+    /**
+     * An SQS API request as it is sent, including the batches the buffered clients assemble.
+     */
+    @Name(PREFIX + "Request")
+    @Label("SQS Request")
+    @Category({"Pulsar", "SQS Connector"})
+    @Description("An SQS API request sent by the connector. The SendMessageBatch requests are the sink send "
+            + "batches")
+    @Enabled(false)
+    @StackTrace(false)
+    static class RequestEvent extends Event {
+        @Label("Action")
+        String action;
+
+        @Label("Entries")
+        int entries;
+
+        @Label("Payload")
+        @DataAmount
+        long bytes;
+
+        @Label("Success")
+        boolean success;
+    }
+
+    /**
+     * A receive call of a consumer thread, served by SQS or by the batches the client prefetched.
+     */
+    @Name(PREFIX + "Receive")
+    @Label("SQS Receive")
+    @Category({"Pulsar", "SQS Connector"})
+    @Description("A receive call of a source consumer thread")
+    @Enabled(false)
+    @StackTrace(false)
+    static class ReceiveEvent extends Event {
+        @Label("Requested")
+        int requested;
+
+        @Label("Received")
+        int received;
+    }
+
+    /**
+     * A consumer thread blocked on putting records into the full buffer of the source.
+     */
+    @Name(PREFIX + "EnqueueBlock")
+    @Label("SQS Enqueue Block")
+    @Category({"Pulsar", "SQS Connector"})
+    @Description("A source consumer thread putting the records of a message into the buffer of the source")
+    @Enabled(false)
+    @StackTrace(false)
+    static class EnqueueEvent extends Event {
+        @Label("Records")
+        int records;
+    }
+
+    /**
+     * The runtime waiting in {@link SQSSource#read()} for a record.
+     */
+    @Name(PREFIX + "ReadWait")
+    @Label("SQS Read Wait")
+    @Category({"Pulsar", "SQS Connector"})
+    @Description("The pulsar runtime waiting for a record of the source")
+    @Enabled(false)
+    @StackTrace(false)
+    static class ReadWaitEvent extends Event {
+    }
+
+    /**
+     * An async call of the connector, from issuing it to its callback. It includes the time the call is
+     * buffered by the client to be batched.
+     */
+    @Name(PREFIX + "RoundTrip")
+    @Label("SQS Round Trip")
+    @Category({"Pulsar", "SQS Connector"})
+    @Description("An ack, nack or send of the connector from the call to its callback")
+    @Enabled(false)
+    @StackTrace(false)
+    static class RoundTripEvent extends Event {
+        @Label("Action")
+        String action;
+
+        @Label("Success")
+        boolean success;
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * A filter on the attributes and the body prefix of the received messages, compiled once from an expression.
+ *
+ * <p>The grammar of an expression:
+ * <pre>
+ * expression := and ( '||' and )*
+ * and        := term ( '&amp;&amp;' term )*
+ * term       := '!' term | '(' expression ')' | predicate
+ * predicate  := 'attr.' name ( '==' string | '!=' string | 'exists' ) | 'body' 'startsWith' string
+ * string     := a quoted value, in single quotes
+ * </pre>
+ * For example {@code attr.type == 'order' && !body startsWith '{"test"'}.
+ */
+public final class SQSMessageFilter implements Predicate<Message> {
+
+    private static final String ATTRIBUTE_PREFIX = "attr.";
+
+    private final Predicate<Message> predicate;
+    private final Set<String> attributeNames;
+
+    private SQSMessageFilter(Predicate<Message> predicate, Set<String> attributeNames) {
+        this.predicate = predicate;
+        this.attributeNames = Collections.unmodifiableSet(attributeNames);
+    }
+
+    /**
+     * Compiles the expression.
+     *
+     * @return the filter, or null if the expression is empty
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    public static SQSMessageFilter compile(String expression) {
+        if (expression == null || expression.trim().isEmpty()) {
+            return null;
+        }
+        Parser parser = new Parser(tokenize(expression));
+        Predicate<Message> predicate = parser.expression();
+        if (parser.position < parser.tokens.size()) {
+            throw new IllegalArgumentException("Unexpected '" + parser.tokens.get(parser.position)
+                    + "' in the filter: " + expression);
+        }
+        return new SQSMessageFilter(predicate, parser.attributeNames);
+    }
+
+    @Override
+    public boolean test(Message message) {
+        return predicate.test(message);
+    }
+
+    /**
+     * The message attributes the filter looks at, they have to be received.
+     */
+    public Set<String> getAttributeNames() {
+        return attributeNames;
+    }
+
+    private static String attribute(Message message, String name) {
+        MessageAttributeValue value = message.getMessageAttributes().get(name);
+        return value == null ? null : value.getStringValue();
+    }
+
+    static List<String> tokenize(String expression) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < expression.length()) {
+            char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'') {
+                int end = expression.indexOf('\'', i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unterminated string in the filter: " + expression);
+                }
+                // strings keep their opening quote to tell them from names
+                tokens.add(expression.substring(i, end));
+                i = end + 1;
+            } else if (c == '(' || c == ')') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (expression.startsWith("&&", i) || expression.startsWith("||", i)
+                    || expression.startsWith("==", i) || expression.startsWith("!=", i)) {
+                tokens.add(expression.substring(i, i + 2));
+                i += 2;
+            } else if (c == '!') {
+                tokens.add("!");
+                i++;
+            } else {
+                int start = i;
+                while (i < expression.length() && !Character.isWhitespace(expression.charAt(i))
+                        && "()'!&|=".indexOf(expression.charAt(i)) < 0) {
+                    i++;
+                }
+                tokens.add(expression.substring(start, i));
+            }
+        }
+        return tokens;
+    }
+
+    private static final class Parser {
+        private final List<String> tokens;
+        private final Set<String> attributeNames = new LinkedHashSet<>();
+        private int position;
+
+        Parser(List<String> tokens) {
+            this.tokens = tokens;
+        }
+
+        Predicate<Message> expression() {
+            Predicate<Message> predicate = and();
+            while (accept("||")) {
+                predicate = predicate.or(and());
+            }
+            return predicate;
+        }
+
+        private Predicate<Message> and() {
+            Predicate<Message> predicate = term();
+            while (accept("&&")) {
+                predicate = predicate.and(term());
+            }
+            return predicate;
+        }
+
+        private Predicate<Message> term() {
+            if (accept("!")) {
+                return term().negate();
+            }
+            if (accept("(")) {
+                Predicate<Message> predicate = expression();
+                expect(")");
+                return predicate;
+            }
+            String name = next();
+            if (name.equals("body")) {
+                expect("startsWith");
+                String prefix = string();
+                return message -> message.getBody() != null && message.getBody().startsWith(prefix);
+            }
+            if (!name.startsWith(ATTRIBUTE_PREFIX) || name.length() == ATTRIBUTE_PREFIX.length()) {
+                throw new IllegalArgumentException("Expected 'body' or 'attr.<name>' in the filter, got '" + name
+                        + "'");
+            }
+            String attribute = name.substring(ATTRIBUTE_PREFIX.length());
+            attributeNames.add(attribute);
+            if (accept("exists")) {
+                return message -> message.getMessageAttributes().containsKey(attribute);
+            }
+            if (accept("==")) {
+                String value = string();
+                return message -> value.equals(attribute(message, attribute));
+            }
+            expect("!=");
+            String value = string();
+            return message -> !value.equals(attribute(message, attribute));
+        }
+
+        private String string() {
+            String token = next();
+            if (!token.startsWith("'")) {
+                throw new IllegalArgumentException("Expected a quoted string in the filter, got '" + token + "'");
+            }
+            return token.substring(1);
+        }
+
+        private boolean accept(String token) {
+            if (position < tokens.size() && tokens.get(position).equals(token)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String token) {
+            if (!accept(token)) {
+                throw new IllegalArgumentException("Expected '" + token + "' in the filter");
+            }
+        }
+
+        private String next() {
+            if (position >= tokens.size()) {
+                throw new IllegalArgumentException("Unexpected end of the filter");
+            }
+            return tokens.get(position++);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import java.util.Map;
+import java.util.Optional;
+import org.apache.pulsar.client.api.Schema;
+
+/**
+ * A record of {@link SQSSource} whose value waits in a {@link SQSBodyPool} until the record is acked or failed.
+ *
+ * <p>It keeps the few fields the runtime reads instead of the received message with its body and attribute maps,
+ * so little of a buffered record is left on the heap.
+ */
+class SQSPooledRecord implements SQSSourceRecord {
+    private final SQSSource source;
+    private final SQSBodyPool.Body body;
+    private final String receiptHandle;
+    // the key of the message in the dedup cache, or null without dedup
+    private final String dedupKey;
+    private final Optional<String> key;
+    private final Optional<Long> eventTime;
+    private final Map<String, String> properties;
+    private final String topicName;
+    private final boolean hasTopicAttribute;
+    private final String destination;
+    private final SQSTracer.MessageTrace trace;
+    private final SQSEndpoint endpoint;
+
+    SQSPooledRecord(SQSRecord record, SQSBodyPool.Body body, SQSSource source, String dedupKey) {
+        this.source = source;
+        this.body = body;
+        this.receiptHandle = record.getReceiptHandle();
+        this.dedupKey = dedupKey;
+        this.key = record.getKey();
+        this.eventTime = record.getEventTime();
+        this.properties = record.getProperties();
+        MessageAttributeValue topic = record.getSqsMessage().getMessageAttributes()
+                .get(SQSUtils.PULSAR_TOPIC_ATTRIBUTE);
+        this.topicName = topic != null ? topic.getStringValue() : null;
+        this.hasTopicAttribute = topic != null;
+        this.destination = record.getDestination();
+        this.trace = record.getTrace();
+        this.endpoint = record.getEndpoint();
+    }
+
+    @Override
+    public Optional<String> getKey() {
+        return key;
+    }
+
+    @Override
+    public Schema<byte[]> getSchema() {
+        return source.getRecordSchema();
+    }
+
+    @Override
+    public byte[] getValue() {
+        return body.getBytes();
+    }
+
+    @Override
+    public Optional<Long> getEventTime() {
+        return eventTime;
+    }
+
+    @Override
+    public Map<String, String> getProperties() {
+        return properties;
+    }
+
+    @Override
+    public Optional<String> getDestinationTopic() {
+        return SQSRecord.destinationTopic(topicName, destination, hasTopicAttribute);
+    }
+
+    @Override
+    public String getReceiptHandle() {
+        return receiptHandle;
+    }
+
+    @Override
+    public SQSTracer.MessageTrace getTrace() {
+        return trace;
+    }
+
+    @Override
+    public SQSEndpoint getEndpoint() {
+        return endpoint;
+    }
+
+    SQSBodyPool.Body getBody() {
+        return body;
+    }
+
+    @Override
+    public void ack() {
+        body.release();
+        source.ackMessage(endpoint, receiptHandle, dedupKey);
+        if (trace != null) {
+            trace.onComplete(true);
+        }
+    }
+
+    @Override
+    public void fail() {
+        body.release();
+        source.failMessage(endpoint, receiptHandle, dedupKey);
+        if (trace != null) {
+            trace.onComplete(false);
+        }
+    }
+}
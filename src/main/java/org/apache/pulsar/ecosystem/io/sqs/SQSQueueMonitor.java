@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.QueueAttributeName;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Polls the approximate message counts of the queue for {@link SQSSource}, and derives how many consumer threads
+ * and instances would drain the backlog within backlogDrainTargetSeconds at the observed drain rate.
+ *
+ * <p>The drain rate is the rate of deleted messages of this instance. The age of the oldest message is not
+ * reported, SQS only publishes it as a CloudWatch metric and not as a queue attribute.
+ */
+@Slf4j
+public class SQSQueueMonitor implements Runnable {
+
+    static final String METRICS_VISIBLE = "_sqs_queue_visible_messages_";
+    static final String METRICS_NOT_VISIBLE = "_sqs_queue_not_visible_messages_";
+    static final String METRICS_DELAYED = "_sqs_queue_delayed_messages_";
+    static final String METRICS_DRAIN_RATE = "_sqs_queue_drain_rate_";
+    static final String METRICS_RECOMMENDED_CONSUMERS = "_sqs_queue_recommended_consumers_";
+    static final String METRICS_RECOMMENDED_PARALLELISM = "_sqs_queue_recommended_parallelism_";
+    static final String METRICS_CONSUMERS = "_sqs_source_consumers_";
+
+    private static final double BUSY_OCCUPANCY = 0.9;
+
+    private final SQSSource source;
+    private long lastDrained = -1;
+    private long lastVisible;
+    private long lastNanos;
+
+    @Getter
+    private int recommendedConsumers;
+
+    @Getter
+    private int recommendedParallelism;
+
+    public SQSQueueMonitor(SQSSource source) {
+        this.source = source;
+    }
+
+    @Override
+    public void run() {
+        try {
+            Map<String, String> attributes = source.getClient().getQueueAttributes(
+                    new GetQueueAttributesRequest(source.getQueueUrl()).withAttributeNames(
+                            QueueAttributeName.ApproximateNumberOfMessages,
+                            QueueAttributeName.ApproximateNumberOfMessagesNotVisible,
+                            QueueAttributeName.ApproximateNumberOfMessagesDelayed)).getAttributes();
+            SQSRequestStats stats = source.getRequestStats();
+            update(count(attributes, QueueAttributeName.ApproximateNumberOfMessages),
+                    count(attributes, QueueAttributeName.ApproximateNumberOfMessagesNotVisible),
+                    count(attributes, QueueAttributeName.ApproximateNumberOfMessagesDelayed),
+                    stats.getEntries(SQSRequestStats.Action.DELETE)
+                            + stats.getEntries(SQSRequestStats.Action.DELETE_BATCH),
+                    System.nanoTime());
+        } catch (Exception e) {
+            log.warn("failed to poll the attributes of the sqs queue.", e);
+        }
+    }
+
+    void update(long visible, long notVisible, long delayed, long drained, long nanos) {
+        source.setApproximateBacklog(visible);
+        source.recordMetric(METRICS_VISIBLE, visible);
+        source.recordMetric(METRICS_NOT_VISIBLE, notVisible);
+        source.recordMetric(METRICS_DELAYED, delayed);
+        int consumers = source.getNumberOfRunningConsumers();
+        source.recordMetric(METRICS_CONSUMERS, consumers);
+
+        if (lastDrained >= 0 && nanos > lastNanos) {
+            double seconds = (nanos - lastNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+            double drainRate = (drained - lastDrained) / seconds;
+            double backlogGrowthRate = (visible - lastVisible) / seconds;
+            source.recordMetric(METRICS_DRAIN_RATE, drainRate);
+            recommend(drainRate, backlogGrowthRate, visible, consumers);
+        }
+        lastDrained = drained;
+        lastVisible = visible;
+        lastNanos = nanos;
+    }
+
+    private void recommend(double drainRate, double backlogGrowthRate, long backlog, int consumers) {
+        SQSConnectorConfig config = source.getConfig();
+        int instances = Math.max(1, source.getNumberOfInstances());
+        int totalConsumers = recommendConsumers(drainRate * instances, backlogGrowthRate, backlog,
+                consumers * instances, config.getBacklogDrainTargetSeconds());
+        int perInstance = (int) ((totalConsumers + (long) instances - 1) / instances);
+        if (source.getBufferedRecords() >= source.getQueueLength() * BUSY_OCCUPANCY) {
+            // the records are not read fast enough, more consumers would only fill the buffer
+            perInstance = Math.min(perInstance, consumers);
+        }
+        recommendedConsumers = Math.max(config.getMinConsumers(), Math.min(config.getMaxConsumers(), perInstance));
+        recommendedParallelism = (int) Math.max(1, (totalConsumers + (long) config.getMaxConsumers() - 1)
+                / config.getMaxConsumers());
+        source.recordMetric(METRICS_RECOMMENDED_CONSUMERS, recommendedConsumers);
+        source.recordMetric(METRICS_RECOMMENDED_PARALLELISM, recommendedParallelism);
+
+        if (config.isAutoscaleConsumers() && recommendedConsumers != consumers) {
+            // grow at once, shrink by half of the difference to not oscillate on a noisy rate
+            int target = recommendedConsumers > consumers
+                    ? recommendedConsumers : consumers - Math.max(1, (consumers - recommendedConsumers) / 2);
+            log.info("Resizing the sqs consumers from {} to {}, recommended {}.", consumers, target,
+                    recommendedConsumers);
+            source.resizeConsumers(target);
+        }
+    }
+
+    /**
+     * The number of consumers that keeps up with the arriving messages and drains the backlog within the target,
+     * assuming every consumer drains as many messages as the current ones do on average.
+     */
+    static int recommendConsumers(double drainRate, double backlogGrowthRate, long backlog, int consumers,
+                                  int drainTargetSeconds) {
+        if (drainRate <= 0) {
+            // nothing was drained: idle, or just started with a backlog and no rate to go by yet
+            return backlog > 0 ? Math.max(1, consumers) * 2 : 1;
+        }
+        double arrivalRate = Math.max(0, drainRate + backlogGrowthRate);
+        double requiredRate = arrivalRate + (double) backlog / Math.max(1, drainTargetSeconds);
+        double ratePerConsumer = drainRate / Math.max(1, consumers);
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.ceil(requiredRate / ratePerConsumer)));
+    }
+
+    private static long count(Map<String, String> attributes, QueueAttributeName name) {
+        String value = attributes.get(name.toString());
+        return value == null ? 0 : Long.parseLong(value);
+    }
+}
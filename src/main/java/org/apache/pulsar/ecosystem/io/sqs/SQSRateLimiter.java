@@ -0,0 +1,153 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+/**
+ * A token bucket shared by all clients of a connector instance. It is attached to the clients as a request
+ * handler, so every receive, delete, visibility change and send waits for its tokens right before it is sent,
+ * after the buffered client has batched it. Calls that do not move messages, such as resolving the queue url,
+ * are not limited.
+ *
+ * <p>The bucket is lock-free: its only state is the time at which all tokens handed out so far are paid for.
+ * A caller moves that time ahead by the cost of its tokens and waits until it has come. That time never lags
+ * behind now by more than the burst, which is how many tokens an idle bucket holds.
+ *
+ * <p>The rate can change while the bucket is in use. A bucket with a rate of 0 does not limit the calls, so a
+ * limit can be set on clients that were built without one.
+ */
+public class SQSRateLimiter extends RequestHandler2 {
+
+    static final String METRICS_WAITS = "_sqs_rate_limit_waits_";
+    static final String METRICS_WAIT_MILLIS = "_sqs_rate_limit_wait_millis_";
+
+    /**
+     * What a token pays for.
+     */
+    public enum Unit {
+        // one token per api call, whatever the number of messages it carries
+        CALLS,
+        // one token per message a call carries, or may receive at most
+        MESSAGES
+    }
+
+    private final Unit unit;
+    private volatile long nanosPerToken;
+    private volatile long burstNanos;
+    private final AtomicLong paidUntilNanos = new AtomicLong(System.nanoTime());
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    public SQSRateLimiter(double tokensPerSecond, int burst, Unit unit) {
+        this.unit = unit;
+        setRate(tokensPerSecond, burst);
+    }
+
+    /**
+     * Changes the rate, or lifts the limit with a rate of 0. The bucket starts over full: the debt of the calls
+     * let through at the previous rate is forgiven, so a raised limit applies at once.
+     */
+    public void setRate(double tokensPerSecond, int burst) {
+        if (tokensPerSecond < 0) {
+            throw new IllegalArgumentException("The rate limit must not be negative");
+        }
+        long nanos = tokensPerSecond > 0 ? Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / tokensPerSecond)) : 0;
+        long burstNanos = Math.max(1, burst) * nanos;
+        this.nanosPerToken = nanos;
+        this.burstNanos = burstNanos;
+        long nowNanos = System.nanoTime();
+        paidUntilNanos.accumulateAndGet(nowNanos - burstNanos, Math::min);
+    }
+
+    public boolean isLimited() {
+        return nanosPerToken > 0;
+    }
+
+    @Override
+    public AmazonWebServiceRequest beforeExecution(AmazonWebServiceRequest request) {
+        if (SQSRequestStats.actionOf(request) != SQSRequestStats.Action.OTHER) {
+            acquire(tokensOf(request));
+        }
+        return request;
+    }
+
+    /**
+     * Takes the tokens, waiting until the bucket has them.
+     */
+    public void acquire(int tokens) {
+        if (!isLimited()) {
+            return;
+        }
+        long waitNanos = reserve(tokens, System.nanoTime());
+        if (waitNanos <= 0) {
+            return;
+        }
+        waits.increment();
+        this.waitNanos.add(waitNanos);
+        long deadline = System.nanoTime() + waitNanos;
+        for (long remaining = waitNanos; remaining > 0; remaining = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    /**
+     * Takes the tokens from the bucket, which may go into debt.
+     *
+     * @return the nanoseconds until the tokens are paid for
+     */
+    long reserve(int tokens, long nowNanos) {
+        long nanosPerToken = this.nanosPerToken;
+        long burstNanos = this.burstNanos;
+        while (true) {
+            long paidUntil = paidUntilNanos.get();
+            // an idle bucket fills up to the burst, not beyond it
+            long updated = Math.max(paidUntil, nowNanos - burstNanos) + tokens * nanosPerToken;
+            if (paidUntilNanos.compareAndSet(paidUntil, updated)) {
+                return updated - nowNanos;
+            }
+        }
+    }
+
+    int tokensOf(AmazonWebServiceRequest request) {
+        if (unit == Unit.CALLS) {
+            return 1;
+        }
+        if (request instanceof ReceiveMessageRequest) {
+            Integer maxMessages = ((ReceiveMessageRequest) request).getMaxNumberOfMessages();
+            return maxMessages == null ? 1 : maxMessages;
+        }
+        return SQSRequestStats.entriesOf(request);
+    }
+
+    /**
+     * Reports the number of calls that had to wait and the total time they waited since the previous report.
+     */
+    void report(BiConsumer<String, Double> recorder) {
+        recorder.accept(METRICS_WAITS, (double) waits.sumThenReset());
+        recorder.accept(METRICS_WAIT_MILLIS, waitNanos.sumThenReset() / 1e6);
+    }
+}
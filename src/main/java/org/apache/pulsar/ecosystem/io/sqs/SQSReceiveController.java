@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import java.util.function.IntSupplier;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Chooses the wait time and the batch size of the next receive of a {@link SQSConsumerThread}.
+ *
+ * <p>The batch size grows to the maximum of 10 while the receives come back mostly full or the queue has a
+ * backlog, and falls back to the configured batchSizeOfOnceReceive otherwise. It never exceeds the free space
+ * of the source buffer. Every receive is a long poll of 20 seconds, which returns as soon as messages arrive and
+ * keeps the number of billed empty receives low. Only while the buffer is more than half full the wait drops to
+ * 1 second, so the thread looks at the buffer again soon. When the buffer is close to full no receive is issued
+ * at all, the messages would only wait there while their visibility timeout runs out.
+ */
+public class SQSReceiveController {
+
+    static final double PAUSE_OCCUPANCY = 0.9;
+    static final double FULL_FILL_RATIO = 0.5;
+    static final double EWMA_WEIGHT = 0.3;
+    static final int MIN_WAIT_TIME_SECONDS = 1;
+    static final int MAX_BATCH_SIZE = 10;
+
+    @Setter
+    private int minBatchSize;
+    private final IntSupplier numberOfConsumers;
+    private double fillRatio;
+
+    @Getter
+    private int batchSize;
+
+    @Getter
+    private int waitTimeSeconds = SQSUtils.MAX_WAIT_TIME;
+
+    /**
+     * @param minBatchSize the batch size while the queue is not busy
+     * @param numberOfConsumers the number of consumers currently running on the endpoint, it changes when the
+     *                          source scales them
+     */
+    public SQSReceiveController(int minBatchSize, IntSupplier numberOfConsumers) {
+        this.minBatchSize = minBatchSize;
+        this.numberOfConsumers = numberOfConsumers;
+        this.batchSize = minBatchSize;
+    }
+
+    /**
+     * Plans the next receive.
+     *
+     * @param bufferedRecords the records waiting in the source buffer
+     * @param capacity the capacity of the source buffer
+     * @param backlog the approximate number of visible messages in the queue, or a negative value if unknown
+     * @return false if the thread should not receive now because the buffer is close to full
+     */
+    public boolean plan(int bufferedRecords, int capacity, long backlog) {
+        int free = capacity - bufferedRecords;
+        if (bufferedRecords >= capacity * PAUSE_OCCUPANCY || free < 1) {
+            return false;
+        }
+        int consumers = Math.max(1, numberOfConsumers.getAsInt());
+        boolean busy = fillRatio >= FULL_FILL_RATIO || backlog >= (long) MAX_BATCH_SIZE * consumers;
+        batchSize = Math.max(1, Math.min(busy ? MAX_BATCH_SIZE : minBatchSize, free));
+        // come back soon to see whether the buffer drained, long poll otherwise
+        waitTimeSeconds = bufferedRecords * 2 > capacity ? MIN_WAIT_TIME_SECONDS : SQSUtils.MAX_WAIT_TIME;
+        return true;
+    }
+
+    /**
+     * Takes the result of the planned receive into account.
+     */
+    public void onReceived(int requested, int received) {
+        fillRatio = EWMA_WEIGHT * received / requested + (1 - EWMA_WEIGHT) * fillRatio;
+    }
+
+    double getFillRatio() {
+        return fillRatio;
+    }
+}
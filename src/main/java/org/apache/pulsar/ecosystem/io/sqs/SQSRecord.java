@@ -27,22 +27,33 @@ import java.util.Map;
 import java.util.Optional;
 
 import org.apache.pulsar.client.api.Schema;
-import org.apache.pulsar.functions.api.Record;
 import software.amazon.awssdk.utils.StringUtils;
 
 
 /**
  * A record wrapping an sqs message.
  */
-public class SQSRecord implements Record<byte[]> {
+public class SQSRecord implements SQSSourceRecord {
     private final String destination;
     private final com.amazonaws.services.sqs.model.Message msg;
     private final SQSSource source;
+    // the body decoded for the schema of the source, or null for the raw body
+    private final byte[] value;
+    private final SQSTracer.MessageTrace trace;
+    private final SQSEndpoint endpoint;
 
     public SQSRecord(String destination, com.amazonaws.services.sqs.model.Message msg, SQSSource source) {
+        this(destination, msg, source, null, null, null);
+    }
+
+    SQSRecord(String destination, com.amazonaws.services.sqs.model.Message msg, SQSSource source, byte[] value,
+              SQSTracer.MessageTrace trace, SQSEndpoint endpoint) {
         this.destination = destination;
         this.msg = msg;
         this.source = source;
+        this.value = value;
+        this.trace = trace;
+        this.endpoint = endpoint;
     }
 
     @Override
@@ -56,11 +67,14 @@ public class SQSRecord implements Record<byte[]> {
 
     @Override
     public Schema<byte[]> getSchema() {
-        return Schema.BYTES;
+        return source != null ? source.getRecordSchema() : Schema.BYTES;
     }
 
     @Override
     public byte[] getValue() {
+        if (value != null) {
+            return value;
+        }
         return msg.getBody().getBytes(StandardCharsets.UTF_8);
     }
 
@@ -82,23 +96,58 @@ public class SQSRecord implements Record<byte[]> {
                 properties.put(attribute.getKey(), attribute.getValue().getStringValue());
             }
         }
+        if (trace != null) {
+            properties.put(SQSTracer.TRACEPARENT, trace.getTraceparent());
+        }
         return properties;
     }
 
+    @Override
+    public String getReceiptHandle() {
+        return msg.getReceiptHandle();
+    }
+
+    @Override
+    public SQSTracer.MessageTrace getTrace() {
+        return trace;
+    }
+
+    @Override
+    public SQSEndpoint getEndpoint() {
+        return endpoint;
+    }
+
+    com.amazonaws.services.sqs.model.Message getSqsMessage() {
+        return msg;
+    }
+
     @Override
     public void ack() {
-        source.ack(msg.getReceiptHandle());
+        source.ackMessage(endpoint, msg);
+        if (trace != null) {
+            trace.onComplete(true);
+        }
     }
 
     @Override
     public void fail() {
-        source.fail(msg.getReceiptHandle());
+        source.failMessage(endpoint, msg);
+        if (trace != null) {
+            trace.onComplete(false);
+        }
     }
 
     @Override
     public Optional<String> getDestinationTopic() {
-        if (msg.getMessageAttributes().containsKey(SQSUtils.PULSAR_TOPIC_ATTRIBUTE)) {
-            String topicName = msg.getMessageAttributes().get(SQSUtils.PULSAR_TOPIC_ATTRIBUTE).getStringValue();
+        MessageAttributeValue topic = msg.getMessageAttributes().get(SQSUtils.PULSAR_TOPIC_ATTRIBUTE);
+        return destinationTopic(topic != null ? topic.getStringValue() : null, destination, topic != null);
+    }
+
+    /**
+     * The topic named by the topic attribute of a message if it has one, or the destination of the source.
+     */
+    static Optional<String> destinationTopic(String topicName, String destination, boolean hasTopicAttribute) {
+        if (hasTopicAttribute) {
             if (StringUtils.isBlank(topicName)) {
                 throw new IllegalArgumentException("topicName cannot be blank");
             }
@@ -107,4 +156,8 @@ public class SQSRecord implements Record<byte[]> {
             return Optional.of(destination);
         }
     }
+
+    String getDestination() {
+        return destination;
+    }
 }
@@ -0,0 +1,52 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import java.util.Collections;
+import java.util.Map;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * The content of a record passed through the {@link SQSRecordTransformer}s. It is immutable, a transformer
+ * changes a record with {@code record.toBuilder()}.
+ */
+@Value
+@Builder(toBuilder = true)
+public class SQSRecordData {
+    // the pulsar key, or null
+    String key;
+    byte[] value;
+    @Builder.Default
+    Map<String, String> properties = Collections.emptyMap();
+    // the topic the record is published to
+    String destinationTopic;
+    // the event time in milliseconds, or null
+    Long eventTime;
+
+    static SQSRecordData of(SQSRecord record) {
+        return SQSRecordData.builder()
+                .key(record.getKey().orElse(null))
+                .value(record.getValue())
+                .properties(record.getProperties())
+                .destinationTopic(record.getDestinationTopic().orElse(null))
+                .eventTime(record.getEventTime().orElse(null))
+                .build();
+    }
+}
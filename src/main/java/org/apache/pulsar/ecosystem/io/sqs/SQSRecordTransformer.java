@@ -0,0 +1,44 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reshapes the records of {@link SQSSource} before they are published, configured with the transformers option.
+ *
+ * <p>A transformer returns the records that replace the given one: the record itself or a changed copy to map,
+ * re-key or re-route it, several records to split it, or none to drop it. The transformers run one after the
+ * other on the consumer threads, so an implementation is called concurrently and has to be thread-safe. The
+ * SQS message is deleted once all the records made from it are acked, and dropped messages are deleted at once.
+ */
+public interface SQSRecordTransformer {
+
+    /**
+     * Initializes the transformer with the transformerConfig option of the connector.
+     */
+    default void open(Map<String, Object> config) throws Exception {
+    }
+
+    List<SQSRecordData> transform(SQSRecordData record) throws Exception;
+
+    default void close() throws Exception {
+    }
+}
@@ -0,0 +1,309 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Counts the SQS API requests issued by the sqs clients of a connector.
+ *
+ * <p>It is registered as a request handler on every sqs client, so it sees the requests that are really sent
+ * to SQS, including the batches assembled by {@link com.amazonaws.services.sqs.buffered.AmazonSQSBufferedAsyncClient}.
+ * Together with the batch fill ratios, the empty receives and the billed 64KB chunks it shows how many paid
+ * requests every message costs.
+ */
+@Slf4j
+public class SQSRequestStats extends RequestHandler2 {
+
+    /**
+     * SQS bills every 64KB chunk of a request payload as one request.
+     */
+    public static final int BILLED_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The SQS API actions that are accounted separately.
+     */
+    public enum Action {
+        RECEIVE("ReceiveMessage", 10),
+        DELETE("DeleteMessage", 1),
+        DELETE_BATCH("DeleteMessageBatch", 10),
+        CHANGE_VISIBILITY("ChangeMessageVisibility", 1),
+        CHANGE_VISIBILITY_BATCH("ChangeMessageVisibilityBatch", 10),
+        SEND("SendMessage", 1),
+        SEND_BATCH("SendMessageBatch", 10),
+        OTHER("Other", 1);
+
+        private final String apiName;
+        private final int maxEntries;
+
+        Action(String apiName, int maxEntries) {
+            this.apiName = apiName;
+            this.maxEntries = maxEntries;
+        }
+
+        public String getApiName() {
+            return apiName;
+        }
+
+        String metricName(String suffix) {
+            return "_sqs_request_" + name().toLowerCase() + "_" + suffix + "_";
+        }
+    }
+
+    private static final String METRICS_BILLED_REQUESTS = "_sqs_billed_requests_";
+    private static final String METRICS_EMPTY_RECEIVES = "_sqs_empty_receives_";
+    private static final String METRICS_BILLED_REQUESTS_PER_MESSAGE = "_sqs_billed_requests_per_message_";
+
+    private static final int ACTIONS = Action.values().length;
+
+    private final LongAdder[] calls = newAdders(ACTIONS);
+    private final LongAdder[] errors = newAdders(ACTIONS);
+    // entries carried by the successful calls, e.g. messages of a receive or entries of a batch
+    private final LongAdder[] entries = newAdders(ACTIONS);
+    // entries the successful calls could have carried at most
+    private final LongAdder[] capacity = newAdders(ACTIONS);
+    private final LongAdder billedChunks = new LongAdder();
+    private final LongAdder emptyReceives = new LongAdder();
+
+    // values of the previous report, only touched by the reporting thread
+    private final long[] lastCalls = new long[ACTIONS];
+    private final long[] lastErrors = new long[ACTIONS];
+    private final long[] lastEntries = new long[ACTIONS];
+    private final long[] lastCapacity = new long[ACTIONS];
+    private long lastBilledChunks;
+    private long lastEmptyReceives;
+
+    @Override
+    public void afterResponse(Request<?> request, Response<?> response) {
+        AmazonWebServiceRequest originalRequest = request.getOriginalRequest();
+        Action action = actionOf(originalRequest);
+        int index = action.ordinal();
+        calls[index].increment();
+
+        long payloadBytes;
+        if (action == Action.RECEIVE) {
+            Object result = response == null ? null : response.getAwsResponse();
+            int received = 0;
+            payloadBytes = 0;
+            if (result instanceof ReceiveMessageResult) {
+                for (Message message : ((ReceiveMessageResult) result).getMessages()) {
+                    received++;
+                    payloadBytes += payloadSize(message.getBody(), message.getMessageAttributes());
+                }
+            }
+            if (received == 0) {
+                emptyReceives.increment();
+            }
+            Integer maxMessages = ((ReceiveMessageRequest) originalRequest).getMaxNumberOfMessages();
+            entries[index].add(received);
+            capacity[index].add(maxMessages == null ? 1 : maxMessages);
+        } else {
+            int requestEntries = entriesOf(originalRequest);
+            entries[index].add(requestEntries);
+            capacity[index].add(action.maxEntries);
+            payloadBytes = sendPayloadSize(originalRequest);
+        }
+        billedChunks.add(billedChunks(payloadBytes));
+    }
+
+    @Override
+    public void afterError(Request<?> request, Response<?> response, Exception e) {
+        Action action = actionOf(request.getOriginalRequest());
+        calls[action.ordinal()].increment();
+        errors[action.ordinal()].increment();
+        if (e instanceof AmazonServiceException) {
+            // only a request that reached SQS is billed, a timeout or a connection failure is not
+            billedChunks.increment();
+        }
+    }
+
+    /**
+     * Records the counters accumulated since the previous report as metrics and logs a summary line.
+     *
+     * @param metricRecorder receives the metric name and value of every reported metric
+     */
+    public synchronized void report(BiConsumer<String, Double> metricRecorder) {
+        StringBuilder summary = new StringBuilder();
+        long totalCalls = 0;
+        long messages = 0;
+        for (Action action : Action.values()) {
+            int i = action.ordinal();
+            long callsDelta = delta(calls[i], lastCalls, i);
+            long errorsDelta = delta(errors[i], lastErrors, i);
+            long entriesDelta = delta(entries[i], lastEntries, i);
+            long capacityDelta = delta(capacity[i], lastCapacity, i);
+            if (callsDelta == 0) {
+                continue;
+            }
+            totalCalls += callsDelta;
+            if (action == Action.RECEIVE || action == Action.SEND || action == Action.SEND_BATCH) {
+                messages += entriesDelta;
+            }
+            double fillRatio = capacityDelta == 0 ? 0 : (double) entriesDelta / capacityDelta;
+            metricRecorder.accept(action.metricName("calls"), (double) callsDelta);
+            metricRecorder.accept(action.metricName("errors"), (double) errorsDelta);
+            metricRecorder.accept(action.metricName("fill_ratio"), fillRatio);
+            summary.append(' ').append(action.getApiName()).append('=').append(callsDelta)
+                    .append("(errors=").append(errorsDelta)
+                    .append(", fill=").append(String.format("%.2f", fillRatio)).append(')');
+        }
+
+        long billed = billedChunks.sum();
+        long billedDelta = billed - lastBilledChunks;
+        lastBilledChunks = billed;
+        long empty = emptyReceives.sum();
+        long emptyDelta = empty - lastEmptyReceives;
+        lastEmptyReceives = empty;
+        double billedPerMessage = messages == 0 ? 0 : (double) billedDelta / messages;
+
+        metricRecorder.accept(METRICS_BILLED_REQUESTS, (double) billedDelta);
+        metricRecorder.accept(METRICS_EMPTY_RECEIVES, (double) emptyDelta);
+        metricRecorder.accept(METRICS_BILLED_REQUESTS_PER_MESSAGE, billedPerMessage);
+
+        if (totalCalls > 0) {
+            log.info("SQS requests since last report: calls={}, billed={}, emptyReceives={}, messages={}, "
+                            + "billedPerMessage={},{}", totalCalls, billedDelta, emptyDelta, messages,
+                    String.format("%.3f", billedPerMessage), summary);
+        }
+    }
+
+    public long getCalls(Action action) {
+        return calls[action.ordinal()].sum();
+    }
+
+    public long getErrors(Action action) {
+        return errors[action.ordinal()].sum();
+    }
+
+    public long getEntries(Action action) {
+        return entries[action.ordinal()].sum();
+    }
+
+    public long getBilledChunks() {
+        return billedChunks.sum();
+    }
+
+    public long getEmptyReceives() {
+        return emptyReceives.sum();
+    }
+
+    static Action actionOf(AmazonWebServiceRequest request) {
+        if (request instanceof ReceiveMessageRequest) {
+            return Action.RECEIVE;
+        } else if (request instanceof DeleteMessageRequest) {
+            return Action.DELETE;
+        } else if (request instanceof DeleteMessageBatchRequest) {
+            return Action.DELETE_BATCH;
+        } else if (request instanceof ChangeMessageVisibilityRequest) {
+            return Action.CHANGE_VISIBILITY;
+        } else if (request instanceof ChangeMessageVisibilityBatchRequest) {
+            return Action.CHANGE_VISIBILITY_BATCH;
+        } else if (request instanceof SendMessageRequest) {
+            return Action.SEND;
+        } else if (request instanceof SendMessageBatchRequest) {
+            return Action.SEND_BATCH;
+        }
+        return Action.OTHER;
+    }
+
+    static int entriesOf(AmazonWebServiceRequest request) {
+        if (request instanceof DeleteMessageBatchRequest) {
+            return ((DeleteMessageBatchRequest) request).getEntries().size();
+        } else if (request instanceof ChangeMessageVisibilityBatchRequest) {
+            return ((ChangeMessageVisibilityBatchRequest) request).getEntries().size();
+        } else if (request instanceof SendMessageBatchRequest) {
+            return ((SendMessageBatchRequest) request).getEntries().size();
+        }
+        return 1;
+    }
+
+    static long sendPayloadSize(AmazonWebServiceRequest request) {
+        if (request instanceof SendMessageRequest) {
+            SendMessageRequest send = (SendMessageRequest) request;
+            return payloadSize(send.getMessageBody(), send.getMessageAttributes());
+        } else if (request instanceof SendMessageBatchRequest) {
+            long size = 0;
+            for (SendMessageBatchRequestEntry entry : ((SendMessageBatchRequest) request).getEntries()) {
+                size += payloadSize(entry.getMessageBody(), entry.getMessageAttributes());
+            }
+            return size;
+        }
+        return 0;
+    }
+
+    static long payloadSize(String body, Map<String, MessageAttributeValue> attributes) {
+        long size = body == null ? 0 : body.getBytes(UTF_8).length;
+        if (attributes != null) {
+            for (Map.Entry<String, MessageAttributeValue> attribute : attributes.entrySet()) {
+                MessageAttributeValue value = attribute.getValue();
+                size += attribute.getKey().length();
+                if (value.getDataType() != null) {
+                    size += value.getDataType().length();
+                }
+                if (value.getStringValue() != null) {
+                    size += value.getStringValue().getBytes(UTF_8).length;
+                }
+                if (value.getBinaryValue() != null) {
+                    size += value.getBinaryValue().remaining();
+                }
+            }
+        }
+        return size;
+    }
+
+    static long billedChunks(long payloadBytes) {
+        return Math.max(1, (payloadBytes + BILLED_CHUNK_SIZE - 1) / BILLED_CHUNK_SIZE);
+    }
+
+    private static long delta(LongAdder adder, long[] last, int index) {
+        long current = adder.sum();
+        long delta = current - last[index];
+        last[index] = current;
+        return delta;
+    }
+
+    private static LongAdder[] newAdders(int size) {
+        LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
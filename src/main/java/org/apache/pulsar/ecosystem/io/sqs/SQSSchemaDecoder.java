@@ -0,0 +1,186 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.common.schema.SchemaInfo;
+import org.apache.pulsar.common.schema.SchemaType;
+
+/**
+ * Decodes the bodies of the received messages for the typed schema of the source, on the consumer threads.
+ *
+ * <p>A JSON body is parsed and checked against the required fields of the schema definition. The binary formats,
+ * AVRO, PROTOBUF and PROTOBUF_NATIVE, are carried base64 encoded in the body, which is decoded. Either way the
+ * record value is the encoded form of the schema, so it is published without being parsed again.
+ */
+public class SQSSchemaDecoder {
+
+    // readers are immutable and thread-safe, all consumer threads share the parsers of one
+    private static final ObjectReader JSON_READER = new ObjectMapper().reader();
+
+    /**
+     * What the source does with a message whose body does not decode.
+     */
+    public enum FailureAction {
+        // make the message visible again, the redrive policy of the queue moves it to its dead letter queue
+        NACK,
+        // send the message to the deadLetterQueueName queue and delete it
+        DEAD_LETTER
+    }
+
+    private final SchemaType type;
+    private final List<String> requiredFields;
+    private final Schema<byte[]> schema;
+
+    SQSSchemaDecoder(SchemaType type, String definition) {
+        this.type = type;
+        this.requiredFields = type == SchemaType.JSON ? requiredFields(definition) : Collections.emptyList();
+        this.schema = new EncodedSchema(SchemaInfo.builder()
+                .name("sqs-source")
+                .type(type)
+                .schema(definition.getBytes(UTF_8))
+                .properties(Collections.emptyMap())
+                .build());
+    }
+
+    /**
+     * Creates the decoder of the schema configured for the source.
+     *
+     * @return the decoder, or null if the source publishes raw bytes
+     */
+    static SQSSchemaDecoder create(SchemaType type, String definition) {
+        if (type == null || type == SchemaType.BYTES) {
+            return null;
+        }
+        switch (type) {
+            case JSON:
+            case AVRO:
+            case PROTOBUF:
+            case PROTOBUF_NATIVE:
+                break;
+            default:
+                throw new IllegalArgumentException("The schemaType " + type + " is not supported, use one of "
+                        + "BYTES, JSON, AVRO, PROTOBUF or PROTOBUF_NATIVE");
+        }
+        if (definition == null || definition.trim().isEmpty()) {
+            throw new IllegalArgumentException("The schemaDefinition is required for the schemaType " + type);
+        }
+        return new SQSSchemaDecoder(type, definition);
+    }
+
+    /**
+     * The fields of an avro record definition that are neither nullable nor have a default.
+     */
+    private static List<String> requiredFields(String definition) {
+        JsonNode root;
+        try {
+            root = JSON_READER.readTree(definition);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("The schemaDefinition is not a valid avro schema: "
+                    + e.getOriginalMessage());
+        }
+        List<String> fields = new ArrayList<>();
+        for (JsonNode field : root.path("fields")) {
+            JsonNode fieldType = field.path("type");
+            boolean nullable = "null".equals(fieldType.asText());
+            for (JsonNode branch : fieldType) {
+                nullable |= "null".equals(branch.asText());
+            }
+            if (!nullable && !field.has("default")) {
+                fields.add(field.path("name").asText());
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Decodes a message body.
+     *
+     * @return the record value in the encoding of the schema
+     * @throws IOException if the body does not decode
+     */
+    byte[] decode(String body) throws IOException {
+        if (type != SchemaType.JSON) {
+            try {
+                return Base64.getDecoder().decode(body);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("The body is not base64 encoded: " + e.getMessage());
+            }
+        }
+        JsonNode root = JSON_READER.readTree(body);
+        if (root == null || !root.isObject()) {
+            throw new IOException("The body is not a json object");
+        }
+        for (String field : requiredFields) {
+            if (root.path(field).isMissingNode() || root.path(field).isNull()) {
+                throw new IOException("The body misses the required field " + field);
+            }
+        }
+        return body.getBytes(UTF_8);
+    }
+
+    /**
+     * The schema of the decoded records.
+     */
+    Schema<byte[]> getSchema() {
+        return schema;
+    }
+
+    /**
+     * A schema whose values are already encoded, it only carries the schema info for the topic.
+     */
+    private static final class EncodedSchema implements Schema<byte[]> {
+        private final SchemaInfo schemaInfo;
+
+        private EncodedSchema(SchemaInfo schemaInfo) {
+            this.schemaInfo = schemaInfo;
+        }
+
+        @Override
+        public byte[] encode(byte[] message) {
+            return message;
+        }
+
+        @Override
+        public byte[] decode(byte[] bytes) {
+            return bytes;
+        }
+
+        @Override
+        public SchemaInfo getSchemaInfo() {
+            return schemaInfo;
+        }
+
+        @Override
+        public Schema<byte[]> clone() {
+            return this;
+        }
+    }
+}
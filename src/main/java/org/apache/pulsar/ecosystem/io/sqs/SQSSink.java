@@ -20,12 +20,31 @@ package org.apache.pulsar.ecosystem.io.sqs;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
 import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
 import com.amazonaws.services.sqs.model.SendMessageRequest;
 import com.amazonaws.services.sqs.model.SendMessageResult;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.pulsar.client.api.schema.GenericRecord;
@@ -41,28 +60,150 @@ public class SQSSink extends SQSAbstractConnector implements Sink<GenericRecord>
     private SinkContext sinkContext;
 
     private static final String METRICS_TOTAL_SUCCESS = "_sqs_sink_total_success_";
+    private static final String METRICS_TIME_TO_FIRST_RECORD = "_sqs_sink_time_to_first_record_millis_";
     private static final String METRICS_TOTAL_FAILURE = "_sqs_sink_total_failure_";
+    private static final String METRICS_CONFLATED = "_sqs_sink_conflated_";
+    private static final String METRICS_CONFLATION_KEYS = "_sqs_sink_conflation_keys_";
+    private static final String METRICS_SPILLED = "_sqs_sink_spilled_";
+    private static final String METRICS_SPILL_DRAINED = "_sqs_sink_spill_drained_";
+    private static final String METRICS_SPILL_REJECTED = "_sqs_sink_spill_rejected_";
+    private static final String METRICS_SPILL_DROPPED = "_sqs_sink_spill_dropped_";
+    private static final String METRICS_SPILL_BACKLOG = "_sqs_sink_spill_backlog_";
+    private static final String METRICS_SPILL_SEGMENTS = "_sqs_sink_spill_segments_";
+
+    // the limit of the total size of the messages of a batch send
+    private static final int MAX_BATCH_BYTES = 256 * 1024;
+    private static final long SPILL_POLL_MILLIS = 1000;
+    private static final long SPILL_RETRY_MIN_MILLIS = 100;
+    private static final long SPILL_RETRY_MAX_MILLIS = 5000;
+
+    private SQSConflator<GenericRecord> conflator;
+    private ScheduledExecutorService conflationExecutor;
+    private SQSEndpointRouter router;
+
+    private SQSSpillLog spillLog;
+    private ExecutorService spillDrainer;
+    // set on close, the sdk may swallow the interrupt of the drainer
+    private volatile boolean spillStopped;
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder spillDrained = new LongAdder();
+    private final LongAdder spillRejected = new LongAdder();
+    private final LongAdder spillDropped = new LongAdder();
+
+    // the messages sent and not acked yet, limited by maxPendingSends
+    private final Object pendingSendsLock = new Object();
+    private int pendingSends;
 
     @Override
     public void open(Map<String, Object> map, SinkContext sinkContext) throws Exception {
         this.sinkContext = sinkContext;
         setConfig(SQSConnectorConfig.load(map));
+        this.getConfig().validate();
         prepareSqsClient();
+        if (getEndpoints().size() > 1) {
+            router = new SQSEndpointRouter(getEndpoints());
+        }
+        if (getConfig().isSpillEnabled()) {
+            spillLog = SQSSpillLog.open(getSpillDirectory(),
+                    getConfig().getSpillSegmentSizeBytes(), getConfig().getSpillMaxBytes(),
+                    getConfig().getSpillFsyncPolicy(), getConfig().getSpillFsyncIntervalMillis());
+            spillDrainer = Executors.newSingleThreadExecutor();
+            spillDrainer.execute(this::drainSpillLog);
+        }
+        if (getConfig().getConflationWindowMillis() > 0) {
+            conflator = new SQSConflator<>(getConfig().getConflationMaxKeys(), this::send);
+            conflationExecutor = Executors.newSingleThreadScheduledExecutor();
+            conflationExecutor.scheduleWithFixedDelay(this::flushConflationWindow,
+                    getConfig().getConflationWindowMillis(), getConfig().getConflationWindowMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+        if (getConfig().getConfigOverrideIntervalSeconds() > 0) {
+            watchConfigOverride(sinkContext::getState);
+        }
+    }
+
+    /**
+     * The directory of the spill log of this instance, so the instances of a sink with a parallelism above one
+     * each have a log of their own.
+     */
+    private Path getSpillDirectory() {
+        return Paths.get(getConfig().getSpillDirectory()).resolve("instance-" + getInstanceId());
+    }
+
+    @Override
+    protected int getInstanceId() {
+        return sinkContext != null ? sinkContext.getInstanceId() : 0;
     }
 
     @Override
     public void write(Record<GenericRecord> record) {
+        if (conflator != null && record.getKey().isPresent()) {
+            conflator.offer(record.getKey().get(), record);
+        } else {
+            send(record, Collections.emptyList());
+        }
+    }
+
+    private void flushConflationWindow() {
+        try {
+            conflator.flush();
+        } catch (Exception e) {
+            log.error("failed to flush the conflation window.", e);
+        }
+    }
+
+    /**
+     * Sends a record, and acks or fails the records it replaced together with it.
+     */
+    private void send(Record<GenericRecord> record, List<Record<GenericRecord>> replaced) {
         SendMessageRequest request = generateSendMessageRequest(record);
         if (request == null) {
             record.ack();
+            replaced.forEach(Record::ack);
             return;
         }
+        if (!acquirePendingSend()) {
+            record.fail();
+            replaced.forEach(Record::fail);
+            return;
+        }
+        if (getCapture() != null) {
+            getCapture().capture(request, System.currentTimeMillis());
+        }
 
-        getClient().sendMessageAsync(request, new AsyncHandler<SendMessageRequest, SendMessageResult>() {
+        SQSTracer.SendTrace trace = getTracer() != null
+                ? getTracer().startSend(record.getProperties().get(SQSTracer.TRACEPARENT)) : null;
+        if (trace != null) {
+            request.getMessageAttributes().put(SQSTracer.TRACEPARENT, new MessageAttributeValue()
+                    .withDataType("String")
+                    .withStringValue(trace.getTraceparent()));
+        }
+        if (spillLog != null) {
+            spill(request, record, replaced, trace);
+            return;
+        }
+        SQSEndpoint endpoint = router != null ? router.choose() : null;
+        if (endpoint != null) {
+            request.setQueueUrl(endpoint.getQueueUrl());
+        }
+        long start = System.nanoTime();
+        SQSFlightRecorder.RoundTripEvent event = SQSFlightRecorder.beginRoundTrip(SQSRequestStats.Action.SEND);
+        SQSClientPool.PooledClient pooled = (endpoint != null ? endpoint.getClientPool() : getClientPool()).acquire();
+        pooled.getClient().sendMessageAsync(request, new AsyncHandler<SendMessageRequest, SendMessageResult>() {
             @Override
             public void onError(Exception e) {
+                pooled.release();
+                releasePendingSend();
+                SQSFlightRecorder.endRoundTrip(event, false);
+                if (endpoint != null) {
+                    endpoint.onError();
+                }
+                if (trace != null) {
+                    trace.onComplete(false);
+                }
                 log.error("failed sending message to AWS SQS.", e);
                 record.fail();
+                replaced.forEach(Record::fail);
                 if (sinkContext != null) {
                     sinkContext.recordMetric(METRICS_TOTAL_FAILURE, 1);
                 }
@@ -70,7 +211,18 @@ public class SQSSink extends SQSAbstractConnector implements Sink<GenericRecord>
 
             @Override
             public void onSuccess(SendMessageRequest request, SendMessageResult sendMessageResult) {
+                pooled.release();
+                releasePendingSend();
+                SQSFlightRecorder.endRoundTrip(event, true);
+                if (endpoint != null) {
+                    endpoint.onSuccess(System.nanoTime() - start);
+                }
+                if (trace != null) {
+                    trace.onComplete(true);
+                }
                 record.ack();
+                replaced.forEach(Record::ack);
+                recordTimeToFirstRecord(METRICS_TIME_TO_FIRST_RECORD);
                 if (sinkContext != null) {
                     sinkContext.recordMetric(METRICS_TOTAL_SUCCESS, 1);
                 }
@@ -78,7 +230,230 @@ public class SQSSink extends SQSAbstractConnector implements Sink<GenericRecord>
         });
     }
 
-    private SendMessageRequest generateSendMessageRequest(Record<GenericRecord> record) {
+    /**
+     * Waits until fewer than maxPendingSends messages are pending, and counts one more.
+     *
+     * @return false if the wait was interrupted
+     */
+    private boolean acquirePendingSend() {
+        synchronized (pendingSendsLock) {
+            try {
+                while (getConfig().getMaxPendingSends() > 0 && pendingSends >= getConfig().getMaxPendingSends()) {
+                    pendingSendsLock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            pendingSends++;
+            return true;
+        }
+    }
+
+    private void releasePendingSend() {
+        synchronized (pendingSendsLock) {
+            pendingSends--;
+            pendingSendsLock.notifyAll();
+        }
+    }
+
+    @Override
+    protected boolean applyOption(String name, Number value) {
+        if (!"maxPendingSends".equals(name)) {
+            return super.applyOption(name, value);
+        }
+        Integer limit = intValue(value);
+        if (limit == null || limit < 0) {
+            return false;
+        }
+        synchronized (pendingSendsLock) {
+            getConfig().setMaxPendingSends(limit);
+            pendingSendsLock.notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * Appends a message to the spill log, and acks its records once it is durable there. The records are failed
+     * if the log is full.
+     */
+    private void spill(SendMessageRequest request, Record<GenericRecord> record,
+                       List<Record<GenericRecord>> replaced, SQSTracer.SendTrace trace) {
+        boolean appended;
+        try {
+            appended = spillLog.append(SQSSpillCodec.encode(request), () -> {
+                releasePendingSend();
+                if (trace != null) {
+                    trace.onComplete(true);
+                }
+                record.ack();
+                replaced.forEach(Record::ack);
+                recordTimeToFirstRecord(METRICS_TIME_TO_FIRST_RECORD);
+            });
+        } catch (IOException e) {
+            log.error("failed to spill a message.", e);
+            appended = false;
+        }
+        if (appended) {
+            spilled.increment();
+            return;
+        }
+        spillRejected.increment();
+        releasePendingSend();
+        if (trace != null) {
+            trace.onComplete(false);
+        }
+        record.fail();
+        replaced.forEach(Record::fail);
+        recordMetric(METRICS_TOTAL_FAILURE, 1);
+    }
+
+    /**
+     * Sends the messages of the spill log in batches, up to spillDrainBatches of them at the same time, until the
+     * sink is closed. The batches are committed once all their messages are sent, so a message may be sent again
+     * after a restart.
+     */
+    private void drainSpillLog() {
+        while (!spillStopped && !Thread.currentThread().isInterrupted()) {
+            try {
+                List<List<SendMessageBatchRequestEntry>> batches = new ArrayList<>();
+                int read = 0;
+                // the first read waits for a message, the following ones take what is there already
+                for (int i = 0; i < getConfig().getSpillDrainBatches(); i++) {
+                    List<byte[]> entries = spillLog.read(SQSReceiveController.MAX_BATCH_SIZE, MAX_BATCH_BYTES,
+                            i == 0 ? SPILL_POLL_MILLIS : 0);
+                    if (entries.isEmpty()) {
+                        break;
+                    }
+                    read += entries.size();
+                    List<SendMessageBatchRequestEntry> batch = decodeSpilled(entries);
+                    if (!batch.isEmpty()) {
+                        batches.add(batch);
+                    }
+                }
+                if (read > 0 && sendSpilled(batches)) {
+                    spillLog.commit();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                log.error("failed to drain the spill log, the sink stops sending the spilled messages.", e);
+                return;
+            }
+        }
+    }
+
+    private static List<SendMessageBatchRequestEntry> decodeSpilled(List<byte[]> entries) {
+        List<SendMessageBatchRequestEntry> batch = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            try {
+                batch.add(SQSSpillCodec.decode(entries.get(i), String.valueOf(i)));
+            } catch (IOException e) {
+                log.error("failed to decode a spilled message, it is dropped.", e);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Sends batches of spilled messages at the same time, retrying the failed ones with a backoff until all of them
+     * are sent. A message SQS rejects as the fault of the sender, e.g. one that is too large, is dropped, since it
+     * would block the log forever.
+     *
+     * @return whether all messages were sent or dropped, false if the sink was closed before
+     */
+    private boolean sendSpilled(List<List<SendMessageBatchRequestEntry>> batches) throws InterruptedException {
+        List<List<SendMessageBatchRequestEntry>> pending = batches;
+        long backoffMillis = SPILL_RETRY_MIN_MILLIS;
+        while (!spillStopped) {
+            if (pending.isEmpty()) {
+                return true;
+            }
+            SQSEndpoint endpoint = router != null ? router.choose() : getPrimaryEndpoint();
+            List<Future<SendMessageBatchResult>> results = new ArrayList<>(pending.size());
+            for (List<SendMessageBatchRequestEntry> batch : pending) {
+                results.add(sendSpilledAsync(endpoint, batch));
+            }
+            List<List<SendMessageBatchRequestEntry>> retry = new ArrayList<>();
+            for (int i = 0; i < pending.size(); i++) {
+                List<SendMessageBatchRequestEntry> batch = pending.get(i);
+                try {
+                    SendMessageBatchResult result = results.get(i).get();
+                    spillDrained.add(result.getSuccessful().size());
+                    recordMetric(METRICS_TOTAL_SUCCESS, result.getSuccessful().size());
+                    List<SendMessageBatchRequestEntry> failed = failedSpilled(batch, result.getFailed());
+                    if (!failed.isEmpty()) {
+                        retry.add(failed);
+                    }
+                } catch (ExecutionException e) {
+                    log.warn("failed to send {} spilled messages, retrying in {} ms.", batch.size(), backoffMillis,
+                            e.getCause());
+                    retry.add(batch);
+                }
+            }
+            if (retry.isEmpty()) {
+                return true;
+            }
+            pending = retry;
+            Thread.sleep(backoffMillis);
+            backoffMillis = Math.min(backoffMillis * 2, SPILL_RETRY_MAX_MILLIS);
+        }
+        return false;
+    }
+
+    private Future<SendMessageBatchResult> sendSpilledAsync(SQSEndpoint endpoint,
+                                                            List<SendMessageBatchRequestEntry> batch) {
+        long start = System.nanoTime();
+        SQSFlightRecorder.RoundTripEvent event = SQSFlightRecorder.beginRoundTrip(SQSRequestStats.Action.SEND_BATCH);
+        SQSClientPool.PooledClient pooled = endpoint.getClientPool().acquire();
+        return pooled.getClient().sendMessageBatchAsync(new SendMessageBatchRequest(endpoint.getQueueUrl(), batch),
+                new AsyncHandler<SendMessageBatchRequest, SendMessageBatchResult>() {
+                    @Override
+                    public void onError(Exception e) {
+                        pooled.release();
+                        SQSFlightRecorder.endRoundTrip(event, false);
+                        endpoint.onError();
+                    }
+
+                    @Override
+                    public void onSuccess(SendMessageBatchRequest request, SendMessageBatchResult result) {
+                        pooled.release();
+                        SQSFlightRecorder.endRoundTrip(event, true);
+                        endpoint.onSuccess(System.nanoTime() - start);
+                    }
+                });
+    }
+
+    /**
+     * The messages of a batch that failed and may succeed when they are sent again. The ones that failed for a
+     * fault of the sender are dropped.
+     */
+    private List<SendMessageBatchRequestEntry> failedSpilled(List<SendMessageBatchRequestEntry> batch,
+                                                             List<BatchResultErrorEntry> errors) {
+        if (errors.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Set<String> retried = new HashSet<>();
+        for (BatchResultErrorEntry error : errors) {
+            if (Boolean.TRUE.equals(error.isSenderFault())) {
+                log.error("SQS rejected a spilled message with {}: {}, it is dropped.", error.getCode(),
+                        error.getMessage());
+                spillDropped.increment();
+                recordMetric(METRICS_TOTAL_FAILURE, 1);
+            } else {
+                retried.add(error.getId());
+            }
+        }
+        List<SendMessageBatchRequestEntry> retry = new ArrayList<>(retried.size());
+        for (SendMessageBatchRequestEntry entry : batch) {
+            if (retried.contains(entry.getId())) {
+                retry.add(entry);
+            }
+        }
+        return retry;
+    }
+
+    SendMessageRequest generateSendMessageRequest(Record<GenericRecord> record) {
         String msgBody = generateMessageBody(record);
         if (null == msgBody) {
             return null;
@@ -134,8 +509,77 @@ public class SQSSink extends SQSAbstractConnector implements Sink<GenericRecord>
 
     @Override
     public void close() {
-        if (getClient() != null) {
-            getClient().shutdown();
+        if (conflationExecutor != null) {
+            conflationExecutor.shutdownNow();
+            // the records of the last window are sent, or drained below
+            conflator.flush();
+        }
+        if (spillLog != null) {
+            closeSpillLog();
+        }
+        if (getConfig() != null && getConfig().isDrainOnClose() && getClientPool() != null) {
+            try {
+                if (!awaitPendingRequests(System.currentTimeMillis() + getConfig().getDrainTimeoutMillis())) {
+                    log.warn("{} messages were still being sent to AWS SQS after {} ms.",
+                            getInFlight(), getConfig().getDrainTimeoutMillis());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        shutdownSqsClient();
+    }
+
+    /**
+     * Stops sending the spilled messages, after the log is drained if the sink drains on close. The messages left
+     * in the log are sent when the sink is opened again.
+     */
+    private void closeSpillLog() {
+        try {
+            if (getConfig().isDrainOnClose()) {
+                long deadline = System.currentTimeMillis() + getConfig().getDrainTimeoutMillis();
+                while (spillLog.size() > 0 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(SPILL_RETRY_MIN_MILLIS);
+                }
+            }
+            spillStopped = true;
+            spillDrainer.shutdownNow();
+            if (!spillDrainer.awaitTermination(3000, TimeUnit.MILLISECONDS)) {
+                log.warn("The spill drainer did not stop in time.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            spillLog.close();
+        } catch (IOException e) {
+            log.error("failed to close the spill log.", e);
+        }
+        if (spillLog.size() > 0) {
+            log.info("{} spilled messages are left, they are sent when the sink is opened again.", spillLog.size());
+        }
+    }
+
+    @Override
+    protected void reportStats() {
+        if (spillLog != null) {
+            recordMetric(METRICS_SPILLED, spilled.sumThenReset());
+            recordMetric(METRICS_SPILL_DRAINED, spillDrained.sumThenReset());
+            recordMetric(METRICS_SPILL_REJECTED, spillRejected.sumThenReset());
+            recordMetric(METRICS_SPILL_DROPPED, spillDropped.sumThenReset());
+            recordMetric(METRICS_SPILL_BACKLOG, spillLog.size());
+            recordMetric(METRICS_SPILL_SEGMENTS, spillLog.getSegmentCount());
+        }
+        if (conflator != null) {
+            recordMetric(METRICS_CONFLATED, conflator.getAndResetConflated());
+            recordMetric(METRICS_CONFLATION_KEYS, conflator.size());
+        }
+    }
+
+    @Override
+    protected void recordMetric(String metricName, double value) {
+        if (sinkContext != null) {
+            sinkContext.recordMetric(metricName, value);
         }
     }
 }
@@ -22,20 +22,39 @@
 package org.apache.pulsar.ecosystem.io.sqs;
 
 import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
 import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
 import com.amazonaws.services.sqs.model.ChangeMessageVisibilityResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
 import com.amazonaws.services.sqs.model.DeleteMessageRequest;
 import com.amazonaws.services.sqs.model.DeleteMessageResult;
 import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.MessageSystemAttributeName;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
-import java.util.stream.IntStream;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.client.api.Schema;
 import org.apache.pulsar.functions.api.Record;
 import org.apache.pulsar.io.core.Source;
 import org.apache.pulsar.io.core.SourceContext;
@@ -50,10 +69,44 @@ public class SQSSource extends SQSAbstractConnector implements Source<byte[]> {
 
     private static final String METRICS_TOTAL_SUCCESS = "_sqs_source_total_success_";
     private static final String METRICS_TOTAL_FAILURE = "_sqs_source_total_failure_";
+    private static final String METRICS_DRAIN_RELEASED = "_sqs_source_drain_released_";
+    private static final String METRICS_DEDUP_DUPLICATES = "_sqs_source_dedup_duplicates_";
+    private static final String METRICS_DEDUP_IN_FLIGHT = "_sqs_source_dedup_in_flight_";
+    private static final String METRICS_FILTERED = "_sqs_source_filtered_";
+    private static final String METRICS_TRANSFORM_DROPPED = "_sqs_source_transform_dropped_";
+    private static final String METRICS_DECODE_FAILURES = "_sqs_source_decode_failures_";
+    private static final String METRICS_DEAD_LETTERED = "_sqs_source_dead_lettered_";
+    private static final String METRICS_BODY_POOL_HEAP_FALLBACKS = "_sqs_source_body_pool_heap_fallbacks_";
+    private static final String METRICS_TIME_TO_FIRST_RECORD = "_sqs_source_time_to_first_record_millis_";
+    // the attribute of a dead lettered message with the reason it did not decode
+    static final String DECODE_ERROR_ATTRIBUTE = "pulsar.decode_error";
+    private static final int MAX_DECODE_ERROR_LENGTH = 256;
+    private static final String METRICS_DEDUP_HIT_RATE = "_sqs_source_dedup_hit_rate_";
+    private static final String METRICS_DEDUP_ENTRIES = "_sqs_source_dedup_entries_";
+    private static final String METRICS_DEDUP_MEMORY_BYTES = "_sqs_source_dedup_memory_bytes_";
     private String destinationTopic;
     private SourceContext sourceContext;
     private ExecutorService executor;
-    private LinkedBlockingQueue<Record<byte[]>> queue;
+    private final List<SQSConsumerThread> consumers = new ArrayList<>();
+    private ScheduledExecutorService monitorExecutor;
+    private LinkedBlockingQueue<SQSSourceRecord> queue;
+    // the approximate number of visible messages in the queue, negative while unknown
+    private volatile long approximateBacklog = -1;
+    // the messages the consumers asked for and got, for the budget coordination
+    private final LongAdder requestedMessages = new LongAdder();
+    private final LongAdder receivedMessages = new LongAdder();
+    // the receipt handles of the records that are enqueued and not acked or failed yet, with the endpoint they
+    // were received from, only with drainOnClose
+    private Map<String, SQSEndpoint> unackedHandles;
+    private SQSDedupCache dedupCache;
+    private SQSMessageFilter filter;
+    private SQSTransformPipeline transformPipeline;
+    private SQSSchemaDecoder decoder;
+    private String deadLetterQueueUrl;
+    private SQSBodyPool bodyPool;
+    // the batchSizeOfOnceReceive, which a config override may change while the consumers run
+    private volatile int receiveBatchSize;
+    private final LongAdder heapFallbacks = new LongAdder();
 
     @Override
     public void open(Map<String, Object> map, SourceContext sourceContext) throws Exception {
@@ -62,32 +115,154 @@ public class SQSSource extends SQSAbstractConnector implements Source<byte[]> {
         this.getConfig().validate();
         prepareSqsClient();
 
-        destinationTopic = sourceContext.getOutputTopic();
-        queue = new LinkedBlockingQueue<>(this.getQueueLength());
+        prepareQueue(sourceContext.getOutputTopic());
+        if (decoder != null && getConfig().getDecodeFailureAction() == SQSSchemaDecoder.FailureAction.DEAD_LETTER) {
+            deadLetterQueueUrl = resolveQueueUrl(getConfig().getDeadLetterQueueName());
+        }
+        transformPipeline = SQSTransformPipeline.load(getConfig().getTransformers(),
+                getConfig().getTransformerConfig());
         int numberOfConsumer = getConfig().getNumberOfConsumers();
-        log.info("The number of message consumers are {}.", numberOfConsumer);
-        executor = Executors.newFixedThreadPool(numberOfConsumer);
-        IntStream.range(0, numberOfConsumer).forEach((i) -> {
-            executor.execute(new SQSConsumerThread(this));
-        });
+        log.info("The number of message consumers are {}, on {} threads.", numberOfConsumer,
+                getConfig().isVirtualThreads() ? "virtual" : "platform");
+        executor = SQSThreads.newExecutor("sqs-consumer", getConfig().isVirtualThreads());
+        resizeConsumers(numberOfConsumer);
+
+        if (getConfig().getQueueMonitorIntervalSeconds() > 0
+                || getConfig().getBudgetCoordinationIntervalSeconds() > 0) {
+            monitorExecutor = Executors.newSingleThreadScheduledExecutor();
+        }
+        if (getConfig().getQueueMonitorIntervalSeconds() > 0) {
+            monitorExecutor.scheduleWithFixedDelay(new SQSQueueMonitor(this), 0,
+                    getConfig().getQueueMonitorIntervalSeconds(), TimeUnit.SECONDS);
+        }
+        if (getConfig().getBudgetCoordinationIntervalSeconds() > 0) {
+            int interval = getConfig().getBudgetCoordinationIntervalSeconds();
+            monitorExecutor.scheduleWithFixedDelay(new SQSBudgetCoordinator(this, sourceContext), interval,
+                    interval, TimeUnit.SECONDS);
+        }
+        if (getConfig().getConfigOverrideIntervalSeconds() > 0) {
+            watchConfigOverride(sourceContext::getState);
+        }
+    }
+
+    /**
+     * Starts or stops consumer threads until the given number of them is running on every endpoint. A stopped
+     * thread finishes the receive it is waiting for.
+     */
+    public synchronized void resizeConsumers(int numberOfConsumers) {
+        List<SQSEndpoint> endpoints = getEndpoints();
+        int total = Math.max(0, numberOfConsumers) * endpoints.size();
+        while (consumers.size() < total) {
+            SQSConsumerThread consumer = new SQSConsumerThread(this,
+                    endpoints.get(consumers.size() % endpoints.size()));
+            consumers.add(consumer);
+            executor.execute(consumer);
+        }
+        while (consumers.size() > total) {
+            consumers.remove(consumers.size() - 1).close();
+        }
+    }
+
+    @Override
+    protected boolean applyOption(String name, Number value) {
+        Integer number = intValue(value);
+        switch (name) {
+            case "numberOfConsumers":
+                if (number == null || number < 1 || number > getConfig().getConsumerLimit()) {
+                    return false;
+                }
+                getConfig().setNumberOfConsumers(number);
+                if (getConfig().isAutoscaleConsumers() || getConfig().getBudgetCoordinationIntervalSeconds() > 0) {
+                    log.info("The number of running consumers is left to the autoscaling or budget coordination.");
+                } else {
+                    resizeConsumers(number);
+                }
+                return true;
+            case "batchSizeOfOnceReceive":
+                if (number == null || number < 1 || number > SQSReceiveController.MAX_BATCH_SIZE) {
+                    return false;
+                }
+                getConfig().setBatchSizeOfOnceReceive(number);
+                receiveBatchSize = number;
+                return true;
+            default:
+                return super.applyOption(name, value);
+        }
+    }
+
+    int getReceiveBatchSize() {
+        return receiveBatchSize;
+    }
+
+    /**
+     * The number of consumer threads running on every endpoint.
+     */
+    public synchronized int getNumberOfRunningConsumers() {
+        return getEndpoints().isEmpty() ? 0 : consumers.size() / getEndpoints().size();
+    }
+
+    int getNumberOfInstances() {
+        return sourceContext != null ? sourceContext.getNumInstances() : 1;
+    }
+
+    @Override
+    protected int getInstanceId() {
+        return sourceContext != null ? sourceContext.getInstanceId() : 0;
+    }
+
+    void prepareQueue(String destinationTopic) {
+        this.destinationTopic = destinationTopic;
+        this.receiveBatchSize = getConfig().getBatchSizeOfOnceReceive();
+        this.queue = new LinkedBlockingQueue<>(this.getQueueLength());
+        if (getConfig().isDrainOnClose()) {
+            this.unackedHandles = new ConcurrentHashMap<>();
+        }
+        this.filter = SQSMessageFilter.compile(getConfig().getFilter());
+        this.decoder = SQSSchemaDecoder.create(getConfig().getSchemaType(), getConfig().getSchemaDefinition());
+        if (getConfig().getOffHeapBodyPoolBytes() > 0) {
+            this.bodyPool = new SQSBodyPool(getConfig().getOffHeapBodyPoolBytes(),
+                    getConfig().getOffHeapBodyChunkBytes());
+        }
+        if (getConfig().isDedupEnabled()) {
+            this.dedupCache = new SQSDedupCache(getConfig().getDedupCacheSize(),
+                    TimeUnit.SECONDS.toNanos(getConfig().getDedupTtlSeconds()));
+        }
     }
 
     public void fail(String messageHandle) {
+        fail(null, messageHandle);
+    }
+
+    /**
+     * Makes a message of the given endpoint, or of the primary one if it is null, visible again after a while.
+     */
+    void fail(SQSEndpoint endpoint, String messageHandle) {
+        if (unackedHandles != null) {
+            unackedHandles.remove(messageHandle);
+        }
+        SQSEndpoint target = endpointOf(endpoint);
         final ChangeMessageVisibilityRequest request = new ChangeMessageVisibilityRequest()
-                .withQueueUrl(getQueueUrl())
+                .withQueueUrl(target.getQueueUrl())
                 .withReceiptHandle(messageHandle)
                 .withVisibilityTimeout(SQSUtils.MAX_WAIT_TIME);
 
-        getDeleteClient().changeMessageVisibilityAsync(request,
+        SQSFlightRecorder.RoundTripEvent event =
+                SQSFlightRecorder.beginRoundTrip(SQSRequestStats.Action.CHANGE_VISIBILITY);
+        SQSClientPool.PooledClient pooled = target.getClientPool().acquire();
+        pooled.getClient().changeMessageVisibilityAsync(request,
                 new AsyncHandler<ChangeMessageVisibilityRequest, ChangeMessageVisibilityResult>() {
                     @Override
                     public void onError(Exception e) {
-                        fail(messageHandle); // retry
+                        pooled.release();
+                        SQSFlightRecorder.endRoundTrip(event, false);
+                        fail(target, messageHandle); // retry
                     }
 
                     @Override
                     public void onSuccess(ChangeMessageVisibilityRequest request,
                                           ChangeMessageVisibilityResult changeMessageVisibilityResult) {
+                        pooled.release();
+                        SQSFlightRecorder.endRoundTrip(event, true);
                         if (sourceContext != null) {
                             sourceContext.recordMetric(METRICS_TOTAL_FAILURE, 1);
                         }
@@ -96,22 +271,80 @@ public class SQSSource extends SQSAbstractConnector implements Source<byte[]> {
         );
     }
 
+    void failMessage(SQSEndpoint endpoint, Message msg) {
+        failMessage(endpoint, msg.getReceiptHandle(), dedupCache != null ? dedupKey(msg) : null);
+    }
+
+    /**
+     * Fails a message by its receipt handle and the key it has in the dedup cache, if any.
+     */
+    void failMessage(SQSEndpoint endpoint, String messageHandle, String dedupKey) {
+        if (dedupCache != null && dedupKey != null) {
+            // the message is delivered again and must not be dropped as a duplicate of itself then
+            dedupCache.remove(dedupKey);
+        }
+        fail(endpoint, messageHandle);
+    }
+
+    void ackMessage(SQSEndpoint endpoint, Message msg) {
+        ackMessage(endpoint, msg.getReceiptHandle(), dedupCache != null ? dedupKey(msg) : null);
+    }
+
+    /**
+     * Acks a message by its receipt handle and the key it has in the dedup cache, if any.
+     */
+    void ackMessage(SQSEndpoint endpoint, String messageHandle, String dedupKey) {
+        markDedupAcked(dedupKey);
+        ack(endpoint, messageHandle);
+    }
+
+    private void markDedupAcked(String dedupKey) {
+        if (dedupCache != null && dedupKey != null) {
+            // from now on any other copy of the message is a duplicate
+            dedupCache.markAcked(dedupKey);
+        }
+    }
+
     public void ack(String messageHandle) {
+        ack(null, messageHandle);
+    }
+
+    /**
+     * Deletes a message of the given endpoint, or of the primary one if it is null.
+     */
+    void ack(SQSEndpoint endpoint, String messageHandle) {
+        if (unackedHandles != null) {
+            unackedHandles.remove(messageHandle);
+        }
+        delete(endpointOf(endpoint), messageHandle, METRICS_TOTAL_SUCCESS);
+    }
+
+    private SQSEndpoint endpointOf(SQSEndpoint endpoint) {
+        return endpoint != null ? endpoint : getPrimaryEndpoint();
+    }
+
+    private void delete(SQSEndpoint endpoint, String messageHandle, String metricName) {
         final DeleteMessageRequest request = new DeleteMessageRequest()
-                .withQueueUrl(getQueueUrl())
+                .withQueueUrl(endpoint.getQueueUrl())
                 .withReceiptHandle(messageHandle);
 
-        getDeleteClient().deleteMessageAsync(request, new AsyncHandler<DeleteMessageRequest, DeleteMessageResult>() {
+        SQSFlightRecorder.RoundTripEvent event = SQSFlightRecorder.beginRoundTrip(SQSRequestStats.Action.DELETE);
+        SQSClientPool.PooledClient pooled = endpoint.getClientPool().acquire();
+        pooled.getClient().deleteMessageAsync(request,
+                new AsyncHandler<DeleteMessageRequest, DeleteMessageResult>() {
             @Override
             public void onError(Exception e) {
-                ack(messageHandle); // retry
+                pooled.release();
+                SQSFlightRecorder.endRoundTrip(event, false);
+                delete(endpoint, messageHandle, metricName); // retry
             }
 
             @Override
             public void onSuccess(DeleteMessageRequest request, DeleteMessageResult deleteMessageResult) {
-                // do nothing
+                pooled.release();
+                SQSFlightRecorder.endRoundTrip(event, true);
                 if (sourceContext != null) {
-                    sourceContext.recordMetric(METRICS_TOTAL_SUCCESS, 1);
+                    sourceContext.recordMetric(metricName, 1);
                 }
             }
         });
@@ -119,20 +352,243 @@ public class SQSSource extends SQSAbstractConnector implements Source<byte[]> {
 
     @Override
     public Record<byte[]> read() throws InterruptedException {
-        return this.queue.take();
+        SQSFlightRecorder.ReadWaitEvent event = new SQSFlightRecorder.ReadWaitEvent();
+        event.begin();
+        SQSSourceRecord record = this.queue.take();
+        event.commit();
+        recordTimeToFirstRecord(METRICS_TIME_TO_FIRST_RECORD);
+        if (record.getTrace() != null) {
+            record.getTrace().onRead();
+        }
+        return record;
+    }
+
+    /**
+     * Enqueues the messages of a receive that pass the filter, and deletes the others in a batch.
+     */
+    void enqueueAll(SQSEndpoint endpoint, List<Message> messages) {
+        if (filter == null) {
+            for (Message message : messages) {
+                enqueue(endpoint, message);
+            }
+            return;
+        }
+        List<DeleteMessageBatchRequestEntry> rejected = null;
+        for (Message message : messages) {
+            if (filter.test(message)) {
+                enqueue(endpoint, message);
+            } else {
+                if (rejected == null) {
+                    rejected = new ArrayList<>(messages.size());
+                }
+                rejected.add(new DeleteMessageBatchRequestEntry(String.valueOf(rejected.size()),
+                        message.getReceiptHandle()));
+            }
+        }
+        if (rejected != null) {
+            deleteBatch(endpointOf(endpoint), rejected);
+        }
+    }
+
+    private void deleteBatch(SQSEndpoint endpoint, List<DeleteMessageBatchRequestEntry> entries) {
+        DeleteMessageBatchRequest request = new DeleteMessageBatchRequest(endpoint.getQueueUrl(), entries);
+        SQSFlightRecorder.RoundTripEvent event =
+                SQSFlightRecorder.beginRoundTrip(SQSRequestStats.Action.DELETE_BATCH);
+        SQSClientPool.PooledClient pooled = endpoint.getClientPool().acquire();
+        pooled.getClient().deleteMessageBatchAsync(request,
+                new AsyncHandler<DeleteMessageBatchRequest, DeleteMessageBatchResult>() {
+            @Override
+            public void onError(Exception e) {
+                pooled.release();
+                SQSFlightRecorder.endRoundTrip(event, false);
+                deleteBatch(endpoint, entries); // retry
+            }
+
+            @Override
+            public void onSuccess(DeleteMessageBatchRequest request, DeleteMessageBatchResult result) {
+                pooled.release();
+                SQSFlightRecorder.endRoundTrip(event, true);
+                if (!result.getFailed().isEmpty()) {
+                    log.warn("failed to delete {} filtered messages, they will be received again.",
+                            result.getFailed().size());
+                }
+                recordMetric(METRICS_FILTERED, result.getSuccessful().size());
+            }
+        });
     }
 
     public void enqueue(Message msg) {
+        enqueue(null, msg);
+    }
+
+    /**
+     * Buffers the records of a message received from the given endpoint, or from the primary one if it is null.
+     */
+    void enqueue(SQSEndpoint endpoint, Message msg) {
+        if (getCapture() != null) {
+            capture(msg);
+        }
+        if (dedupCache != null) {
+            SQSDedupCache.State state = dedupCache.checkAndAdd(dedupKey(msg), System.nanoTime());
+            if (state == SQSDedupCache.State.ACKED) {
+                delete(endpointOf(endpoint), msg.getReceiptHandle(), METRICS_DEDUP_DUPLICATES);
+                return;
+            }
+            if (state == SQSDedupCache.State.IN_FLIGHT) {
+                // the first copy may still fail, so this one is left alone and comes back once its visibility
+                // timeout lapses, to be deleted if the first copy was acked by then
+                recordMetric(METRICS_DEDUP_IN_FLIGHT, 1);
+                return;
+            }
+        }
+        byte[] value = null;
+        if (decoder != null) {
+            try {
+                value = decoder.decode(msg.getBody());
+            } catch (IOException e) {
+                onDecodeFailure(endpoint, msg, e);
+                return;
+            }
+        }
+        SQSTracer.MessageTrace trace = getTracer() != null ? getTracer().startMessage(msg) : null;
+        SQSRecord record = new SQSRecord(destinationTopic, msg, this, value, trace, endpoint);
+        List<? extends SQSSourceRecord> records = Collections.emptyList();
         try {
-            this.queue.put(new SQSRecord(destinationTopic, msg, this));
+            if (transformPipeline != null) {
+                records = transform(record);
+                if (records == null) {
+                    return;
+                }
+            } else if (bodyPool != null) {
+                records = Collections.singletonList(pool(record));
+            } else {
+                records = Collections.singletonList(record);
+            }
+            if (unackedHandles != null) {
+                unackedHandles.put(msg.getReceiptHandle(), endpointOf(endpoint));
+            }
+            SQSFlightRecorder.EnqueueEvent event = new SQSFlightRecorder.EnqueueEvent();
+            event.begin();
+            for (SQSSourceRecord r : records) {
+                this.queue.put(r);
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.records = records.size();
+                event.commit();
+            }
         } catch (InterruptedException ex) {
             log.error("sqs message processing interrupted", ex);
-            fail(msg.getReceiptHandle());
+            for (SQSSourceRecord r : records) {
+                if (r instanceof SQSPooledRecord) {
+                    // it was not enqueued, nobody acks or fails it
+                    ((SQSPooledRecord) r).getBody().release();
+                }
+            }
+            failMessage(endpoint, msg);
         }
     }
 
+    /**
+     * Moves the value of a record into the body pool, waiting for room there. A value larger than the whole pool
+     * stays on the heap.
+     */
+    private SQSSourceRecord pool(SQSRecord record) throws InterruptedException {
+        SQSBodyPool.Body body = bodyPool.allocate(record.getValue());
+        if (body == null) {
+            heapFallbacks.increment();
+            return record;
+        }
+        return new SQSPooledRecord(record, body, this,
+                dedupCache != null ? dedupKey(record.getSqsMessage()) : null);
+    }
+
+    /**
+     * Whether the consumers may receive the given number of messages, which is when the body pool, if any, has
+     * room for them.
+     */
+    boolean admitsReceive(int messages) {
+        return bodyPool == null || bodyPool.admits(messages);
+    }
+
+    private void onDecodeFailure(SQSEndpoint endpoint, Message msg, IOException e) {
+        log.warn("failed to decode the sqs message {}: {}", msg.getMessageId(), e.getMessage());
+        recordMetric(METRICS_DECODE_FAILURES, 1);
+        if (deadLetterQueueUrl == null) {
+            failMessage(endpoint, msg);
+            return;
+        }
+        String reason = String.valueOf(e.getMessage());
+        Map<String, MessageAttributeValue> attributes = new HashMap<>(msg.getMessageAttributes());
+        attributes.put(DECODE_ERROR_ATTRIBUTE, new MessageAttributeValue().withDataType("String")
+                .withStringValue(reason.substring(0, Math.min(reason.length(), MAX_DECODE_ERROR_LENGTH))));
+        SendMessageRequest request = new SendMessageRequest(deadLetterQueueUrl, msg.getBody())
+                .withMessageAttributes(attributes);
+        SQSClientPool.PooledClient pooled = getClientPool().acquire();
+        pooled.getClient().sendMessageAsync(request, new AsyncHandler<SendMessageRequest, SendMessageResult>() {
+            @Override
+            public void onError(Exception ex) {
+                pooled.release();
+                log.warn("failed to dead letter the sqs message {}, it will be received again.",
+                        msg.getMessageId(), ex);
+                failMessage(endpoint, msg);
+            }
+
+            @Override
+            public void onSuccess(SendMessageRequest request, SendMessageResult result) {
+                pooled.release();
+                markDedupAcked(dedupCache != null ? dedupKey(msg) : null);
+                delete(endpointOf(endpoint), msg.getReceiptHandle(), METRICS_DEAD_LETTERED);
+            }
+        });
+    }
+
+    /**
+     * Passes the record of a message through the transformers. A message whose records are all dropped is deleted,
+     * and a message a transformer fails on is delivered again.
+     *
+     * @return the records made from the message, or null if there are none
+     */
+    private List<SQSTransformedRecord> transform(SQSRecord record) {
+        List<SQSRecordData> transformed;
+        try {
+            transformed = transformPipeline.apply(SQSRecordData.of(record));
+        } catch (Exception e) {
+            log.error("failed to transform the sqs message {}.", record.getSqsMessage().getMessageId(), e);
+            record.fail();
+            return null;
+        }
+        if (transformed.isEmpty()) {
+            markDedupAcked(dedupCache != null ? dedupKey(record.getSqsMessage()) : null);
+            delete(endpointOf(record.getEndpoint()), record.getReceiptHandle(), METRICS_TRANSFORM_DROPPED);
+            if (record.getTrace() != null) {
+                record.getTrace().onComplete(true);
+            }
+            return null;
+        }
+        SQSTransformedRecord.Origin origin = new SQSTransformedRecord.Origin(record.getSqsMessage(), this,
+                transformed.size(), record.getTrace(), record.getEndpoint());
+        List<SQSTransformedRecord> records = new ArrayList<>(transformed.size());
+        for (SQSRecordData data : transformed) {
+            records.add(new SQSTransformedRecord(data, origin));
+        }
+        return records;
+    }
+
     @Override
     public void close() {
+        stopConfigWatch();
+        if (monitorExecutor != null) {
+            monitorExecutor.shutdownNow();
+        }
+        resizeConsumers(0);
+        if (getConfig().isDrainOnClose()) {
+            try {
+                drain(System.currentTimeMillis() + getConfig().getDrainTimeoutMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         executor.shutdown();
         try {
             if (!executor.awaitTermination(3000, TimeUnit.MILLISECONDS)) {
@@ -145,16 +601,184 @@ public class SQSSource extends SQSAbstractConnector implements Source<byte[]> {
             Thread.currentThread().interrupt();
         }
 
-        if (getClient() != null) {
-            getClient().shutdown();
+        if (transformPipeline != null) {
+            transformPipeline.close();
         }
+        shutdownSqsClient();
 
         log.info("SQSSource closed.");
     }
 
+    /**
+     * Waits for the consumers to finish their last receive, makes the messages that were not handed out visible
+     * again, and waits for the acks of the records that were. The messages still unacked at the deadline are made
+     * visible as well.
+     */
+    void drain(long deadlineMillis) throws InterruptedException {
+        executor.shutdown();
+        List<SQSSourceRecord> unread = new ArrayList<>();
+        // the buffer is emptied while waiting, a consumer may be blocked on putting into it
+        do {
+            queue.drainTo(unread);
+        } while (!executor.awaitTermination(DRAIN_POLL_MILLIS, TimeUnit.MILLISECONDS)
+                && System.currentTimeMillis() < deadlineMillis);
+        queue.drainTo(unread);
+
+        // the records a transformer made from one message share its receipt handle
+        Map<String, SQSEndpoint> unreadHandles = new LinkedHashMap<>();
+        for (SQSSourceRecord record : unread) {
+            unreadHandles.put(record.getReceiptHandle(), endpointOf(record.getEndpoint()));
+            if (record instanceof SQSPooledRecord) {
+                // it is never read, nobody acks or fails it
+                ((SQSPooledRecord) record).getBody().release();
+            }
+        }
+        unackedHandles.keySet().removeAll(unreadHandles.keySet());
+        int released = releaseMessages(unreadHandles);
+
+        while (!unackedHandles.isEmpty() && System.currentTimeMillis() < deadlineMillis) {
+            Thread.sleep(DRAIN_POLL_MILLIS);
+        }
+        Map<String, SQSEndpoint> unacked = new LinkedHashMap<>(unackedHandles);
+        if (!unacked.isEmpty()) {
+            log.warn("{} records were not acked within the drain timeout, making them visible again.",
+                    unacked.size());
+            unackedHandles.keySet().removeAll(unacked.keySet());
+            released += releaseMessages(unacked);
+        }
+
+        // the deletes of the last acks may still be buffered by the clients
+        if (!awaitPendingRequests(Math.max(deadlineMillis, System.currentTimeMillis() + DRAIN_POLL_MILLIS))) {
+            log.warn("Not all deletes completed before the drain timeout.");
+        }
+        recordMetric(METRICS_DRAIN_RELEASED, released);
+        log.info("Drained the SQSSource, {} messages were made visible again.", released);
+    }
+
+    /**
+     * Makes the given messages visible again on the endpoints they were received from.
+     *
+     * @return the number of messages made visible
+     */
+    private int releaseMessages(Map<String, SQSEndpoint> handles) {
+        Map<SQSEndpoint, List<String>> byEndpoint = new LinkedHashMap<>();
+        handles.forEach((handle, endpoint) -> byEndpoint.computeIfAbsent(endpoint, e -> new ArrayList<>())
+                .add(handle));
+        int released = 0;
+        for (Map.Entry<SQSEndpoint, List<String>> entry : byEndpoint.entrySet()) {
+            released += releaseMessages(entry.getKey(), entry.getValue());
+        }
+        return released;
+    }
+
+    /**
+     * Sets the visibility timeout of the given messages to 0 in batches of 10, so they are delivered again now.
+     *
+     * @return the number of messages made visible
+     */
+    private int releaseMessages(SQSEndpoint endpoint, List<String> handles) {
+        int released = 0;
+        for (int from = 0; from < handles.size(); from += SQSReceiveController.MAX_BATCH_SIZE) {
+            List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<>();
+            for (int i = from; i < Math.min(handles.size(), from + SQSReceiveController.MAX_BATCH_SIZE); i++) {
+                entries.add(new ChangeMessageVisibilityBatchRequestEntry(String.valueOf(i), handles.get(i))
+                        .withVisibilityTimeout(0));
+            }
+            SQSClientPool.PooledClient pooled = endpoint.getClientPool().acquire();
+            try {
+                ChangeMessageVisibilityBatchResult result = pooled.getClient().changeMessageVisibilityBatch(
+                        new ChangeMessageVisibilityBatchRequest(endpoint.getQueueUrl(), entries));
+                released += result.getSuccessful().size();
+            } catch (Exception e) {
+                log.warn("failed to make {} messages visible again.", entries.size(), e);
+            } finally {
+                pooled.release();
+            }
+        }
+        return released;
+    }
+
+    private void capture(Message msg) {
+        // the time the message was sent to the queue, so a replay follows the arrival pattern
+        String sent = msg.getAttributes().get(MessageSystemAttributeName.SentTimestamp.toString());
+        getCapture().capture(new SendMessageRequest(null, msg.getBody())
+                        .withMessageAttributes(msg.getMessageAttributes()),
+                sent != null ? Long.parseLong(sent) : System.currentTimeMillis());
+    }
+
+    private String dedupKey(Message msg) {
+        String attribute = getConfig().getDedupAttribute();
+        if (!attribute.isEmpty()) {
+            MessageAttributeValue value = msg.getMessageAttributes().get(attribute);
+            if (value != null && value.getStringValue() != null) {
+                return value.getStringValue();
+            }
+        }
+        return msg.getMessageId();
+    }
+
+    @Override
+    protected void reportStats() {
+        if (transformPipeline != null) {
+            transformPipeline.report(this::recordMetric);
+        }
+        if (dedupCache != null) {
+            recordMetric(METRICS_DEDUP_HIT_RATE, dedupCache.getAndResetHitRate());
+            recordMetric(METRICS_DEDUP_ENTRIES, dedupCache.size());
+            recordMetric(METRICS_DEDUP_MEMORY_BYTES, dedupCache.getMemoryBytes());
+        }
+        if (bodyPool != null) {
+            bodyPool.report(this::recordMetric);
+            recordMetric(METRICS_BODY_POOL_HEAP_FALLBACKS, heapFallbacks.sumThenReset());
+        }
+    }
+
+    @Override
+    protected void recordMetric(String metricName, double value) {
+        if (sourceContext != null) {
+            sourceContext.recordMetric(metricName, value);
+        }
+    }
+
+    /**
+     * The schema of the records, bytes unless a schemaType is configured.
+     */
+    Schema<byte[]> getRecordSchema() {
+        return decoder != null ? decoder.getSchema() : Schema.BYTES;
+    }
+
     public int getQueueLength() {
         return DEFAULT_QUEUE_LENGTH;
     }
 
+    int getBufferedRecords() {
+        return queue.size();
+    }
+
+    SQSBodyPool getBodyPool() {
+        return bodyPool;
+    }
+
+    long getApproximateBacklog() {
+        return approximateBacklog;
+    }
+
+    void setApproximateBacklog(long approximateBacklog) {
+        this.approximateBacklog = approximateBacklog;
+    }
+
+    void recordReceive(int requested, int received) {
+        requestedMessages.add(requested);
+        receivedMessages.add(received);
+    }
+
+    long getRequestedMessages() {
+        return requestedMessages.sum();
+    }
+
+    long getReceivedMessages() {
+        return receivedMessages.sum();
+    }
+
 }
 
@@ -0,0 +1,42 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import org.apache.pulsar.functions.api.Record;
+
+/**
+ * A record buffered by {@link SQSSource}, made from a received message.
+ */
+interface SQSSourceRecord extends Record<byte[]> {
+
+    /**
+     * The receipt handle of the message the record was made from.
+     */
+    String getReceiptHandle();
+
+    /**
+     * The trace of the message the record was made from, or null if it is not sampled.
+     */
+    SQSTracer.MessageTrace getTrace();
+
+    /**
+     * The endpoint the message was received from, or null for the primary endpoint of the source.
+     */
+    SQSEndpoint getEndpoint();
+}
@@ -0,0 +1,41 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import java.util.Map;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * A finished span of the connector, in the terms of OpenTelemetry: the ids are lowercase hex, the times are nanos
+ * since the epoch.
+ */
+@Value
+@Builder
+public class SQSSpan {
+    String name;
+    String traceId;
+    String spanId;
+    // null for a root span
+    String parentSpanId;
+    long startEpochNanos;
+    long endEpochNanos;
+    boolean error;
+    Map<String, String> attributes;
+}
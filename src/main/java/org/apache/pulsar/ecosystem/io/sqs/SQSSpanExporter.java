@@ -0,0 +1,29 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+/**
+ * Receives the sampled spans of a connector, configured with the traceSpanExporter option. An implementation
+ * forwards them to a tracing backend, e.g. through an OpenTelemetry SpanExporter. It is called by the consumer
+ * threads and the sqs client callbacks concurrently, so it has to be thread-safe and should not block.
+ */
+public interface SQSSpanExporter {
+
+    void export(SQSSpan span);
+}
@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The format of the messages in the {@link SQSSpillLog}: a version, the body, and the message attributes with
+ * their data type and their string or binary value.
+ */
+final class SQSSpillCodec {
+
+    private static final byte VERSION = 1;
+    private static final byte STRING_VALUE = 0;
+    private static final byte BINARY_VALUE = 1;
+
+    private SQSSpillCodec() {
+    }
+
+    static byte[] encode(SendMessageRequest request) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(request.getMessageBody().length() + 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        writeBytes(out, request.getMessageBody().getBytes(UTF_8));
+        Map<String, MessageAttributeValue> attributes = request.getMessageAttributes();
+        out.writeInt(attributes.size());
+        for (Map.Entry<String, MessageAttributeValue> attribute : attributes.entrySet()) {
+            out.writeUTF(attribute.getKey());
+            out.writeUTF(attribute.getValue().getDataType());
+            if (attribute.getValue().getBinaryValue() != null) {
+                ByteBuffer value = attribute.getValue().getBinaryValue().duplicate();
+                byte[] binary = new byte[value.remaining()];
+                value.get(binary);
+                out.writeByte(BINARY_VALUE);
+                writeBytes(out, binary);
+            } else {
+                out.writeByte(STRING_VALUE);
+                writeBytes(out, attribute.getValue().getStringValue().getBytes(UTF_8));
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a message into an entry of a batch send with the given id.
+     */
+    static SendMessageBatchRequestEntry decode(byte[] entry, String id) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry));
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unknown spill entry version " + version);
+        }
+        String body = new String(readBytes(in), UTF_8);
+        int count = in.readInt();
+        Map<String, MessageAttributeValue> attributes = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String name = in.readUTF();
+            MessageAttributeValue value = new MessageAttributeValue().withDataType(in.readUTF());
+            if (in.readByte() == BINARY_VALUE) {
+                value.setBinaryValue(ByteBuffer.wrap(readBytes(in)));
+            } else {
+                value.setStringValue(new String(readBytes(in), UTF_8));
+            }
+            attributes.put(name, value);
+        }
+        SendMessageBatchRequestEntry batchEntry = new SendMessageBatchRequestEntry(id, body);
+        if (!attributes.isEmpty()) {
+            batchEntry.setMessageAttributes(attributes);
+        }
+        return batchEntry;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] value = new byte[in.readInt()];
+        in.readFully(value);
+        return value;
+    }
+}
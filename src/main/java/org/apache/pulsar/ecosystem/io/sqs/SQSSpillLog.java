@@ -0,0 +1,465 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A write-ahead log on local disk, made of memory-mapped segment files of a fixed size, that {@link SQSSink}
+ * spills its messages to while they are sent.
+ *
+ * <p>An entry is its length, its CRC32 and its bytes. A segment ends at the first zero length, or at a roll
+ * marker when the next entry did not fit into it. A single reader reads the entries in order and commits them once
+ * they are handled. The position of the last commit is checkpointed, so the entries that were not committed before
+ * a restart are read again after it, and a segment is deleted once all its entries are committed.
+ *
+ * <p>An entry is durable once its segment is forced to disk, after every append, at a fixed interval, or only
+ * when the operating system writes the pages back, depending on the {@link FsyncPolicy}.
+ */
+@Slf4j
+public class SQSSpillLog implements Closeable {
+
+    /**
+     * When the appended entries are forced to disk.
+     */
+    public enum FsyncPolicy {
+        // on every append, before it returns
+        ALWAYS,
+        // at the fsync interval, the entries appended since the last force become durable together
+        INTERVAL,
+        // never, the entries survive a crash of the process but not of the host
+        NONE
+    }
+
+    static final int HEADER_SIZE = 8;
+    private static final int ROLL_MARKER = -1;
+    private static final String SEGMENT_PREFIX = "spill-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String LOCK_FILE = "lock";
+    private static final int CHECKPOINT_SIZE = Long.BYTES + Integer.BYTES;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final FsyncPolicy fsyncPolicy;
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+    // the segments written since the last force
+    private final Set<Long> dirtySegments = new HashSet<>();
+    // the callbacks of the entries appended since the last force, with the INTERVAL policy
+    private List<Runnable> pendingDurable = new ArrayList<>();
+    private ScheduledExecutorService flusher;
+    // holds the lock on the directory while the log is open
+    private FileChannel lockChannel;
+
+    private long writeSeq;
+    private int writeOffset;
+    // the position after the last commit
+    private long readSeq;
+    private int readOffset;
+    // the position after the last read, and the number of entries read since the last commit
+    private long pendingSeq;
+    private int pendingOffset;
+    private int pendingEntries;
+    // the number of entries that were not committed yet
+    private long entries;
+    private boolean closed;
+
+    private SQSSpillLog(Path directory, int segmentSize, long maxBytes, FsyncPolicy fsyncPolicy) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = (int) Math.max(2, Math.min(Integer.MAX_VALUE, maxBytes / segmentSize));
+        this.fsyncPolicy = fsyncPolicy;
+    }
+
+    /**
+     * Opens the log in the given directory, recovering the entries that were not committed before. The directory
+     * is locked until the log is closed, so a second log cannot be opened in it, by this process or another one.
+     *
+     * @param maxBytes the disk space the segments may take, an append fails once it is used up
+     */
+    public static SQSSpillLog open(Path directory, int segmentSize, long maxBytes, FsyncPolicy fsyncPolicy,
+                                   long fsyncIntervalMillis) throws IOException {
+        SQSSpillLog spillLog = new SQSSpillLog(directory, segmentSize, maxBytes, fsyncPolicy);
+        spillLog.recover();
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            spillLog.flusher = Executors.newSingleThreadScheduledExecutor();
+            spillLog.flusher.scheduleWithFixedDelay(spillLog::flush, fsyncIntervalMillis, fsyncIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+        return spillLog;
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        lock();
+        List<Long> existing = listSegments();
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        byte[] position = Files.exists(checkpoint) ? Files.readAllBytes(checkpoint) : new byte[0];
+        if (position.length == CHECKPOINT_SIZE) {
+            readSeq = ByteBuffer.wrap(position).getLong();
+            readOffset = ByteBuffer.wrap(position).getInt(Long.BYTES);
+        } else {
+            if (position.length > 0) {
+                log.warn("Ignoring the corrupted spill checkpoint {}, replaying all segments.", checkpoint);
+            }
+            readSeq = existing.isEmpty() ? 0 : existing.get(0);
+            readOffset = 0;
+        }
+        for (long seq : existing) {
+            if (seq < readSeq) {
+                Files.deleteIfExists(segmentPath(seq));
+            } else {
+                segments.put(seq, map(seq));
+            }
+        }
+        if (segments.isEmpty()) {
+            readOffset = 0;
+            segments.put(readSeq, map(readSeq));
+        } else if (!segments.containsKey(readSeq)) {
+            readSeq = segments.firstKey();
+            readOffset = 0;
+        }
+
+        writeSeq = segments.lastKey();
+        MappedByteBuffer last = segments.get(writeSeq);
+        writeOffset = 0;
+        int length;
+        while ((length = entryLength(last, writeOffset)) > 0 && isIntact(last, writeOffset, length)) {
+            writeOffset += HEADER_SIZE + length;
+        }
+        if (writeOffset + 4 <= segmentSize && last.getInt(writeOffset) == ROLL_MARKER) {
+            roll();
+        } else if (writeOffset + 4 <= segmentSize && last.getInt(writeOffset) != 0) {
+            // an append was torn by a crash, clear its remains so they are not taken for an entry later
+            log.warn("Truncating the torn tail of the spill segment {} at {}.", segmentPath(writeSeq), writeOffset);
+            for (int i = writeOffset; i < segmentSize; i++) {
+                last.put(i, (byte) 0);
+            }
+            dirtySegments.add(writeSeq);
+        }
+
+        pendingSeq = readSeq;
+        pendingOffset = readOffset;
+        while (!readNext(null, Integer.MAX_VALUE)) {
+            entries++;
+        }
+        pendingSeq = readSeq;
+        pendingOffset = readOffset;
+        if (entries > 0) {
+            log.info("Recovered {} spilled messages from {}.", entries, directory);
+        }
+        writeCheckpoint();
+    }
+
+    private List<Long> listSegments() throws IOException {
+        List<Long> seqs = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .forEach(name -> seqs.add(Long.parseLong(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()))));
+        }
+        Collections.sort(seqs);
+        return seqs;
+    }
+
+    private Path segmentPath(long seq) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, seq, SEGMENT_SUFFIX));
+    }
+
+    private MappedByteBuffer map(long seq) throws IOException {
+        // a new file is extended to the segment size and reads as zeros, the mapping outlives the channel
+        try (FileChannel channel = FileChannel.open(segmentPath(seq), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private void lock() throws IOException {
+        lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // held by another log of this process
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("The spill log in " + directory + " is used by another sink");
+        }
+    }
+
+    /**
+     * The length of the entry at the given offset, or 0 if the segment ends there.
+     */
+    private int entryLength(MappedByteBuffer segment, int offset) {
+        if (offset + HEADER_SIZE > segmentSize) {
+            return 0;
+        }
+        int length = segment.getInt(offset);
+        return length > 0 && offset + HEADER_SIZE + length <= segmentSize ? length : 0;
+    }
+
+    private boolean isIntact(MappedByteBuffer segment, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(segment.slice(offset + HEADER_SIZE, length));
+        return (int) crc.getValue() == segment.getInt(offset + 4);
+    }
+
+    /**
+     * Appends an entry. The callback runs once the entry is durable, in the calling thread with the ALWAYS and
+     * NONE policies, and in the flusher thread with the INTERVAL policy.
+     *
+     * @return whether the entry was appended, false if the log is full or the entry is larger than a segment
+     */
+    public boolean append(byte[] entry, Runnable onDurable) throws IOException {
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("The spill log " + directory + " is closed");
+            }
+            if (HEADER_SIZE + entry.length > segmentSize) {
+                return false;
+            }
+            if (writeOffset + HEADER_SIZE + entry.length > segmentSize) {
+                if (segments.size() >= maxSegments) {
+                    return false;
+                }
+                roll();
+            }
+            MappedByteBuffer segment = segments.get(writeSeq);
+            CRC32 crc = new CRC32();
+            crc.update(entry);
+            segment.putInt(writeOffset + 4, (int) crc.getValue());
+            segment.put(writeOffset + HEADER_SIZE, entry);
+            // the length goes last, so a reader in this process never sees an entry that is half written
+            segment.putInt(writeOffset, entry.length);
+            writeOffset += HEADER_SIZE + entry.length;
+            entries++;
+            dirtySegments.add(writeSeq);
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                forceDirtySegments();
+            } else if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+                pendingDurable.add(onDurable);
+            }
+            notifyAll();
+        }
+        if (fsyncPolicy != FsyncPolicy.INTERVAL) {
+            onDurable.run();
+        }
+        return true;
+    }
+
+    private void roll() throws IOException {
+        if (writeOffset + 4 <= segmentSize) {
+            segments.get(writeSeq).putInt(writeOffset, ROLL_MARKER);
+            dirtySegments.add(writeSeq);
+        }
+        writeSeq++;
+        writeOffset = 0;
+        segments.put(writeSeq, map(writeSeq));
+    }
+
+    private void forceDirtySegments() {
+        for (long seq : dirtySegments) {
+            MappedByteBuffer segment = segments.get(seq);
+            if (segment != null) {
+                segment.force();
+            }
+        }
+        dirtySegments.clear();
+    }
+
+    /**
+     * Forces the appended entries to disk and runs the callbacks of those that were waiting for it.
+     */
+    void flush() {
+        List<Runnable> durable;
+        synchronized (this) {
+            try {
+                forceDirtySegments();
+            } catch (Exception e) {
+                log.error("failed to force the spill log {} to disk, retrying.", directory, e);
+                return;
+            }
+            durable = pendingDurable;
+            pendingDurable = new ArrayList<>();
+        }
+        for (Runnable callback : durable) {
+            try {
+                callback.run();
+            } catch (Exception e) {
+                log.warn("the callback of a durable spill entry failed.", e);
+            }
+        }
+    }
+
+    /**
+     * Reads the entries after the last read, at most the given number of them and of bytes, but at least one.
+     * Waits at most the given time for an entry to be appended. The entries are read again after a restart until
+     * they are committed.
+     *
+     * @return the entries, empty if none was appended in time or the log is closed
+     */
+    public synchronized List<byte[]> read(int maxEntries, int maxBytes, long timeoutMillis)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!closed && isAtEnd()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return Collections.emptyList();
+            }
+            wait(remaining);
+        }
+        List<byte[]> batch = new ArrayList<>();
+        int bytes = 0;
+        while (!closed && batch.size() < maxEntries
+                && !readNext(batch, batch.isEmpty() ? Integer.MAX_VALUE : maxBytes - bytes)) {
+            bytes += batch.get(batch.size() - 1).length;
+            pendingEntries++;
+        }
+        return batch;
+    }
+
+    private boolean isAtEnd() {
+        return pendingSeq == writeSeq && pendingOffset >= writeOffset;
+    }
+
+    /**
+     * Moves the read position past the next entry if it is not longer than the given length, and adds the entry
+     * to the given list if there is one.
+     *
+     * @return whether no entry was read
+     */
+    private boolean readNext(List<byte[]> batch, int maxLength) {
+        while (!isAtEnd()) {
+            MappedByteBuffer segment = segments.get(pendingSeq);
+            int length = entryLength(segment, pendingOffset);
+            if (length > 0 && isIntact(segment, pendingOffset, length)) {
+                if (length > maxLength) {
+                    return true;
+                }
+                if (batch != null) {
+                    byte[] entry = new byte[length];
+                    segment.get(pendingOffset + HEADER_SIZE, entry);
+                    batch.add(entry);
+                }
+                pendingOffset += HEADER_SIZE + length;
+                return false;
+            }
+            if (pendingSeq == writeSeq) {
+                // the tail of the last segment was checked on recovery, this is not expected to happen
+                log.warn("Skipping the corrupted spill entries in {} from {} to {}.", segmentPath(pendingSeq),
+                        pendingOffset, writeOffset);
+                pendingOffset = writeOffset;
+                return true;
+            }
+            if (length > 0) {
+                log.warn("Skipping the rest of the spill segment {} after a corrupted entry at {}.",
+                        segmentPath(pendingSeq), pendingOffset);
+            }
+            pendingSeq = segments.higherKey(pendingSeq);
+            pendingOffset = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Commits the entries read so far, deletes the segments that were read entirely and checkpoints the position.
+     */
+    public synchronized void commit() throws IOException {
+        entries -= pendingEntries;
+        pendingEntries = 0;
+        readSeq = pendingSeq;
+        readOffset = pendingOffset;
+        while (segments.firstKey() < readSeq) {
+            long seq = segments.pollFirstEntry().getKey();
+            dirtySegments.remove(seq);
+            // the mapping is released once it is garbage collected, the file is gone already
+            Files.deleteIfExists(segmentPath(seq));
+        }
+        writeCheckpoint();
+    }
+
+    private void writeCheckpoint() throws IOException {
+        ByteBuffer position = ByteBuffer.allocate(CHECKPOINT_SIZE);
+        position.putLong(readSeq).putInt(readOffset);
+        Path temp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        Files.write(temp, position.array());
+        Files.move(temp, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * The number of entries that were not committed yet.
+     */
+    public synchronized long size() {
+        return entries;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Forces the entries to disk and checkpoints the position of the last commit. The entries that were not
+     * committed are read again when the log is opened the next time.
+     */
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        flush();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            writeCheckpoint();
+            notifyAll();
+            // releases the lock
+            lockChannel.close();
+        }
+    }
+}
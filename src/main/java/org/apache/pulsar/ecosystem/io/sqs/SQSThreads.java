@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Creates the threads of the connectors: platform threads, or virtual threads on JDK 21+.
+ *
+ * <p>The connector is compiled for Java 17, so the virtual thread API is looked up when the class is loaded
+ * instead of being linked. Pulsar loads a connector from its unpacked NAR directory, where the versioned
+ * classes of a multi-release jar would be ignored.
+ */
+@Slf4j
+public final class SQSThreads {
+
+    // (String prefix) -> ThreadFactory of virtual threads named prefix-0, prefix-1, ...
+    private static final MethodHandle VIRTUAL_FACTORY;
+    // (ThreadFactory) -> ExecutorService that starts a thread per task
+    private static final MethodHandle THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        MethodHandle virtualFactory = null;
+        MethodHandle threadPerTaskExecutor = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            Class<?> ofVirtual = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            MethodHandle newBuilder = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(ofVirtual));
+            MethodHandle name = lookup.findVirtual(ofVirtual, "name",
+                    MethodType.methodType(ofVirtual, String.class, long.class));
+            MethodHandle factory = lookup.findVirtual(builder, "factory", MethodType.methodType(ThreadFactory.class));
+            // factory(name(ofVirtual(), prefix + "-", 0))
+            MethodHandle named = MethodHandles.collectArguments(name, 0, newBuilder);
+            named = MethodHandles.insertArguments(named, 1, 0L);
+            virtualFactory = MethodHandles.filterReturnValue(named,
+                    factory.asType(MethodType.methodType(ThreadFactory.class, ofVirtual)));
+            threadPerTaskExecutor = lookup.findStatic(Executors.class, "newThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class, ThreadFactory.class));
+            // JDK 19 and 20 have the API as a preview, which throws unless it is enabled
+            virtualFactory.invoke("probe-");
+        } catch (Throwable e) {
+            virtualFactory = null;
+            threadPerTaskExecutor = null;
+        }
+        VIRTUAL_FACTORY = virtualFactory;
+        THREAD_PER_TASK_EXECUTOR = threadPerTaskExecutor;
+    }
+
+    private SQSThreads() {
+    }
+
+    /**
+     * Whether the JVM runs virtual threads, i.e. it is JDK 21+.
+     */
+    public static boolean isVirtualSupported() {
+        return VIRTUAL_FACTORY != null;
+    }
+
+    /**
+     * A factory of threads named after the given prefix. They are virtual if asked for and supported, else
+     * platform threads like the ones of {@link Executors#defaultThreadFactory()}.
+     */
+    public static ThreadFactory factory(String prefix, boolean virtual) {
+        if (virtual && isVirtualSupported()) {
+            try {
+                return (ThreadFactory) VIRTUAL_FACTORY.invoke(prefix + "-");
+            } catch (Throwable e) {
+                log.warn("failed to create virtual threads, using platform threads.", e);
+            }
+        }
+        AtomicInteger index = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, prefix + "-" + index.getAndIncrement());
+            thread.setDaemon(false);
+            return thread;
+        };
+    }
+
+    /**
+     * An executor that runs every task at once. With virtual threads it starts a thread per task, else it
+     * reuses the idle platform threads like {@link Executors#newCachedThreadPool()}.
+     */
+    public static ExecutorService newExecutor(String prefix, boolean virtual) {
+        ThreadFactory factory = factory(prefix, virtual);
+        if (virtual && isVirtualSupported()) {
+            try {
+                return (ExecutorService) THREAD_PER_TASK_EXECUTOR.invoke(factory);
+            } catch (Throwable e) {
+                log.warn("failed to create a virtual thread executor, using platform threads.", e);
+                factory = factory(prefix, false);
+            }
+        }
+        return Executors.newCachedThreadPool(factory);
+    }
+
+    /**
+     * Whether the given thread is a virtual one.
+     */
+    public static boolean isVirtual(Thread thread) {
+        if (!isVirtualSupported()) {
+            return false;
+        }
+        try {
+            return (boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.MessageSystemAttributeName;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Traces the messages through the connector and propagates the trace context across the SQS hop, in the W3C
+ * trace context format OpenTelemetry uses.
+ *
+ * <p>The sink puts the context of its send span into the traceparent attribute of the message, the source takes
+ * it from there and passes the context of its publish span on in the traceparent property of the record. A
+ * message that carries a context is traced if that context is sampled, a message without one is traced at the
+ * sampling ratio. The source traces a message with a receive span from the send to the ack, and the children of
+ * it: the dwell in the queue, the wait in the buffer of the source and the publish to pulsar until the ack.
+ */
+@Slf4j
+public class SQSTracer {
+
+    /**
+     * The attribute of the messages and the property of the records with the trace context.
+     */
+    public static final String TRACEPARENT = "traceparent";
+
+    private static final String VERSION = "00";
+    private static final int TRACEPARENT_LENGTH = 55;
+
+    private final double samplingRatio;
+    private final SQSSpanExporter exporter;
+    // converts System.nanoTime to nanos since the epoch
+    private final long epochOffsetNanos;
+
+    SQSTracer(double samplingRatio, SQSSpanExporter exporter) {
+        this.samplingRatio = samplingRatio;
+        this.exporter = exporter;
+        this.epochOffsetNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - System.nanoTime();
+    }
+
+    /**
+     * Creates the tracer of a connector.
+     *
+     * @return the tracer, or null if tracing is disabled
+     */
+    static SQSTracer create(double samplingRatio, String exporterClassName) throws Exception {
+        if (samplingRatio <= 0) {
+            return null;
+        }
+        SQSSpanExporter exporter = new LoggingExporter();
+        if (exporterClassName != null && !exporterClassName.trim().isEmpty()) {
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            if (classLoader == null) {
+                classLoader = SQSTracer.class.getClassLoader();
+            }
+            Class<?> clazz = Class.forName(exporterClassName.trim(), true, classLoader);
+            if (!SQSSpanExporter.class.isAssignableFrom(clazz)) {
+                throw new IllegalArgumentException(exporterClassName.trim() + " does not implement "
+                        + SQSSpanExporter.class.getName());
+            }
+            exporter = (SQSSpanExporter) clazz.getDeclaredConstructor().newInstance();
+        }
+        return new SQSTracer(Math.min(1, samplingRatio), exporter);
+    }
+
+    /**
+     * Starts the trace of a received message.
+     *
+     * @return the trace, or null if the message is not sampled
+     */
+    MessageTrace startMessage(Message msg) {
+        MessageAttributeValue attribute = msg.getMessageAttributes().get(TRACEPARENT);
+        Context parent = attribute == null ? null : Context.parse(attribute.getStringValue());
+        if (!sampled(parent)) {
+            return null;
+        }
+        long now = nowNanos();
+        long sent = now;
+        String sentTimestamp = msg.getAttributes().get(MessageSystemAttributeName.SentTimestamp.toString());
+        if (sentTimestamp != null) {
+            sent = Math.min(now, TimeUnit.MILLISECONDS.toNanos(Long.parseLong(sentTimestamp)));
+        }
+        return new MessageTrace(parent, msg.getMessageId(), sent, now);
+    }
+
+    /**
+     * Starts the trace of a send of the sink.
+     *
+     * @param traceparent the trace context of the record, or null
+     * @return the trace, or null if the record is not sampled
+     */
+    SendTrace startSend(String traceparent) {
+        Context parent = traceparent == null ? null : Context.parse(traceparent);
+        if (!sampled(parent)) {
+            return null;
+        }
+        return new SendTrace(parent, nowNanos());
+    }
+
+    private boolean sampled(Context parent) {
+        if (parent != null) {
+            return parent.sampled;
+        }
+        return samplingRatio >= 1 || ThreadLocalRandom.current().nextDouble() < samplingRatio;
+    }
+
+    private long nowNanos() {
+        return System.nanoTime() + epochOffsetNanos;
+    }
+
+    private void export(String name, String traceId, String spanId, String parentSpanId, long start, long end,
+                        boolean error, Map<String, String> attributes) {
+        try {
+            exporter.export(SQSSpan.builder()
+                    .name(name)
+                    .traceId(traceId)
+                    .spanId(spanId)
+                    .parentSpanId(parentSpanId)
+                    .startEpochNanos(start)
+                    .endEpochNanos(Math.max(start, end))
+                    .error(error)
+                    .attributes(attributes)
+                    .build());
+        } catch (Exception e) {
+            log.warn("failed to export the span {}.", name, e);
+        }
+    }
+
+    private static String newSpanId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        return hex(id);
+    }
+
+    private static String newTraceId() {
+        return hex(ThreadLocalRandom.current().nextLong()) + newSpanId();
+    }
+
+    private static String hex(long value) {
+        String hex = Long.toHexString(value);
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+
+    /**
+     * The trace of a message in the source, shared by the records made from it.
+     */
+    public final class MessageTrace {
+        private final String traceId;
+        private final String parentSpanId;
+        private final String receiveSpanId = newSpanId();
+        private final String publishSpanId = newSpanId();
+        private final Map<String, String> attributes;
+        private final long sentNanos;
+        private final long receivedNanos;
+        private volatile long readNanos;
+        private final AtomicBoolean read = new AtomicBoolean();
+        private final AtomicBoolean ended = new AtomicBoolean();
+
+        private MessageTrace(Context parent, String messageId, long sentNanos, long receivedNanos) {
+            this.traceId = parent != null ? parent.traceId : newTraceId();
+            this.parentSpanId = parent != null ? parent.spanId : null;
+            this.attributes = Collections.singletonMap("messaging.message.id", messageId);
+            this.sentNanos = sentNanos;
+            this.receivedNanos = receivedNanos;
+        }
+
+        /**
+         * The context to pass on with the record, the publish span is the parent of what follows in pulsar.
+         */
+        public String getTraceparent() {
+            return format(traceId, publishSpanId);
+        }
+
+        /**
+         * Ends the wait in the buffer, when the first record of the message is read.
+         */
+        void onRead() {
+            if (read.compareAndSet(false, true)) {
+                readNanos = nowNanos();
+                export("sqs.source.buffer", traceId, newSpanId(), receiveSpanId, receivedNanos, readNanos, false,
+                        attributes);
+            }
+        }
+
+        /**
+         * Ends the trace when the message is acked or failed.
+         */
+        void onComplete(boolean success) {
+            if (!ended.compareAndSet(false, true)) {
+                return;
+            }
+            long now = nowNanos();
+            long published = read.get() ? readNanos : now;
+            export("sqs.source.dwell", traceId, newSpanId(), receiveSpanId, sentNanos, receivedNanos, false,
+                    attributes);
+            export("sqs.source.publish", traceId, publishSpanId, receiveSpanId, published, now, !success,
+                    attributes);
+            export("sqs.source.receive", traceId, receiveSpanId, parentSpanId, sentNanos, now, !success,
+                    attributes);
+        }
+    }
+
+    /**
+     * The trace of a send of the sink.
+     */
+    public final class SendTrace {
+        private final String traceId;
+        private final String parentSpanId;
+        private final String spanId = newSpanId();
+        private final long startNanos;
+
+        private SendTrace(Context parent, long startNanos) {
+            this.traceId = parent != null ? parent.traceId : newTraceId();
+            this.parentSpanId = parent != null ? parent.spanId : null;
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * The context to put into the message, the send span is the parent of the trace of the receiver.
+         */
+        public String getTraceparent() {
+            return format(traceId, spanId);
+        }
+
+        void onComplete(boolean success) {
+            export("sqs.sink.send", traceId, spanId, parentSpanId, startNanos, nowNanos(), !success,
+                    Collections.emptyMap());
+        }
+    }
+
+    static String format(String traceId, String spanId) {
+        // only sampled contexts are passed on
+        return VERSION + "-" + traceId + "-" + spanId + "-01";
+    }
+
+    /**
+     * A parsed traceparent.
+     */
+    static final class Context {
+        final String traceId;
+        final String spanId;
+        final boolean sampled;
+
+        private Context(String traceId, String spanId, boolean sampled) {
+            this.traceId = traceId;
+            this.spanId = spanId;
+            this.sampled = sampled;
+        }
+
+        /**
+         * Parses a traceparent of version 00.
+         *
+         * @return the context, or null if it is not valid
+         */
+        static Context parse(String traceparent) {
+            if (traceparent == null || traceparent.length() != TRACEPARENT_LENGTH
+                    || !traceparent.startsWith(VERSION + "-") || traceparent.charAt(35) != '-'
+                    || traceparent.charAt(52) != '-') {
+                return null;
+            }
+            String traceId = traceparent.substring(3, 35);
+            String spanId = traceparent.substring(36, 52);
+            String flags = traceparent.substring(53);
+            if (!isHex(traceId) || !isHex(spanId) || !isHex(flags)
+                    || traceId.equals("00000000000000000000000000000000") || spanId.equals("0000000000000000")) {
+                return null;
+            }
+            return new Context(traceId, spanId, (Integer.parseInt(flags, 16) & 1) == 1);
+        }
+
+        private static boolean isHex(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The exporter unless one is configured, it logs every span.
+     */
+    private static final class LoggingExporter implements SQSSpanExporter {
+        @Override
+        public void export(SQSSpan span) {
+            log.info("span {} trace={} span={} parent={} duration={}us error={} {}", span.getName(),
+                    span.getTraceId(), span.getSpanId(), span.getParentSpanId(),
+                    TimeUnit.NANOSECONDS.toMicros(span.getEndEpochNanos() - span.getStartEpochNanos()),
+                    span.isError(), span.getAttributes());
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Captures a sample of the messages a connector receives or sends, with their body, attributes and time, to a
+ * file, so benchmarks can replay the sizes, attribute sets and arrival pattern of real traffic.
+ *
+ * <p>The file is gzipped: a magic number, then for every message its timestamp in milliseconds and its
+ * {@link SQSSpillCodec} encoding. The connector threads only encode the sampled messages, a background thread
+ * writes them; a message is dropped if the writer falls behind. The file is read with a {@link Reader}.
+ */
+@Slf4j
+public class SQSTrafficCapture implements Closeable {
+
+    private static final int MAGIC = 0x53515343;
+    private static final int QUEUE_CAPACITY = 10000;
+    private static final long POLL_MILLIS = 100;
+
+    private final Path file;
+    private final double sampleRatio;
+    private final long maxMessages;
+    private final DataOutputStream out;
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private final AtomicLong accepted = new AtomicLong();
+    private final LongAdder captured = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean closed;
+
+    private SQSTrafficCapture(Path file, double sampleRatio, long maxMessages) throws IOException {
+        this.file = file;
+        this.sampleRatio = sampleRatio;
+        this.maxMessages = maxMessages;
+        OutputStream fileOut = Files.newOutputStream(file);
+        try {
+            // sync flushes keep the file readable while the capture runs
+            this.out = new DataOutputStream(new GZIPOutputStream(fileOut, 64 * 1024, true));
+            out.writeInt(MAGIC);
+        } catch (IOException e) {
+            fileOut.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts a capture to the given file, replacing it.
+     *
+     * @param sampleRatio the ratio of the messages that are captured
+     * @param maxMessages the number of messages after which the capture stops
+     */
+    public static SQSTrafficCapture open(Path file, double sampleRatio, long maxMessages) throws IOException {
+        SQSTrafficCapture capture = new SQSTrafficCapture(file, sampleRatio, maxMessages);
+        capture.writer.execute(capture::write);
+        log.info("Capturing {} of the sqs messages to {}.", sampleRatio, file);
+        return capture;
+    }
+
+    /**
+     * Captures a message if it is sampled.
+     */
+    public void capture(SendMessageRequest message, long timestampMillis) {
+        if (closed || (sampleRatio < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRatio)) {
+            return;
+        }
+        if (accepted.incrementAndGet() > maxMessages) {
+            return;
+        }
+        try {
+            byte[] entry = SQSSpillCodec.encode(message);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(entry.length + 12);
+            DataOutputStream record = new DataOutputStream(bytes);
+            record.writeLong(timestampMillis);
+            record.writeInt(entry.length);
+            record.write(entry);
+            if (!queue.offer(bytes.toByteArray())) {
+                dropped.increment();
+            }
+        } catch (IOException e) {
+            dropped.increment();
+        }
+    }
+
+    private void write() {
+        try {
+            while (!closed || !queue.isEmpty()) {
+                byte[] record = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (record == null) {
+                    out.flush();
+                    continue;
+                }
+                out.write(record);
+                captured.increment();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("failed to write the capture {}, the capture stops.", file, e);
+            closed = true;
+        }
+    }
+
+    void report(BiConsumer<String, Double> recorder) {
+        recorder.accept("_sqs_capture_captured_", (double) captured.sumThenReset());
+        recorder.accept("_sqs_capture_dropped_", (double) dropped.sumThenReset());
+    }
+
+    /**
+     * Writes the messages captured so far and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                writer.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            writer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        out.close();
+        log.info("Captured {} sqs messages to {}.", Math.min(accepted.get(), maxMessages), file);
+    }
+
+    /**
+     * A captured message.
+     */
+    @Value
+    public static class CapturedMessage {
+        long timestampMillis;
+        String body;
+        Map<String, MessageAttributeValue> attributes;
+    }
+
+    /**
+     * Reads the messages of a capture in the order they were captured. A capture that was cut off, e.g. by a
+     * crash, is read up to its last complete message.
+     */
+    public static class Reader implements Closeable {
+        private final DataInputStream in;
+
+        public Reader(Path file) throws IOException {
+            this.in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(Files.newInputStream(file))));
+            if (in.readInt() != MAGIC) {
+                in.close();
+                throw new IOException(file + " is not an sqs traffic capture");
+            }
+        }
+
+        /**
+         * The next message, or null at the end of the capture.
+         */
+        public CapturedMessage next() throws IOException {
+            try {
+                long timestampMillis = in.readLong();
+                byte[] entry = new byte[in.readInt()];
+                in.readFully(entry);
+                SendMessageBatchRequestEntry message = SQSSpillCodec.decode(entry, "");
+                return new CapturedMessage(timestampMillis, message.getMessageBody(),
+                        message.getMessageAttributes());
+            } catch (EOFException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
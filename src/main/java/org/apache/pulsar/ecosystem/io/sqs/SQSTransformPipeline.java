@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The {@link SQSRecordTransformer}s of a source, applied in order and timed one by one.
+ */
+@Slf4j
+public class SQSTransformPipeline {
+
+    private final Stage[] stages;
+
+    SQSTransformPipeline(List<SQSRecordTransformer> transformers) {
+        this.stages = new Stage[transformers.size()];
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new Stage(transformers.get(i));
+        }
+    }
+
+    /**
+     * Loads and opens the transformers of the given comma separated class names.
+     *
+     * @return the pipeline, or null if there are no transformers
+     */
+    static SQSTransformPipeline load(String classNames, Map<String, Object> config) throws Exception {
+        if (classNames == null || classNames.trim().isEmpty()) {
+            return null;
+        }
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null) {
+            classLoader = SQSTransformPipeline.class.getClassLoader();
+        }
+        List<SQSRecordTransformer> transformers = new ArrayList<>();
+        for (String className : classNames.split(",")) {
+            if (className.trim().isEmpty()) {
+                continue;
+            }
+            Class<?> clazz = Class.forName(className.trim(), true, classLoader);
+            if (!SQSRecordTransformer.class.isAssignableFrom(clazz)) {
+                throw new IllegalArgumentException(className.trim() + " does not implement "
+                        + SQSRecordTransformer.class.getName());
+            }
+            transformers.add((SQSRecordTransformer) clazz.getDeclaredConstructor().newInstance());
+        }
+        SQSTransformPipeline pipeline = new SQSTransformPipeline(transformers);
+        pipeline.open(config == null ? Collections.emptyMap() : config);
+        return pipeline;
+    }
+
+    void open(Map<String, Object> config) throws Exception {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i].transformer.open(config);
+            log.info("Opened the transformer {}: {}.", i, stages[i].transformer.getClass().getName());
+        }
+    }
+
+    /**
+     * Passes the record through all transformers.
+     *
+     * @return the records that replace it, empty if it is dropped
+     * @throws Exception the failure of a transformer
+     */
+    List<SQSRecordData> apply(SQSRecordData record) throws Exception {
+        List<SQSRecordData> records = Collections.singletonList(record);
+        for (Stage stage : stages) {
+            if (records.isEmpty()) {
+                break;
+            }
+            records = stage.apply(records);
+        }
+        return records;
+    }
+
+    /**
+     * Reports, per transformer since the previous report, the records it was given, the records it dropped, its
+     * failures and the time it took.
+     */
+    void report(BiConsumer<String, Double> recorder) {
+        for (int i = 0; i < stages.length; i++) {
+            Stage stage = stages[i];
+            recorder.accept(metricName(i, "records"), (double) stage.records.sumThenReset());
+            recorder.accept(metricName(i, "dropped"), (double) stage.dropped.sumThenReset());
+            recorder.accept(metricName(i, "errors"), (double) stage.errors.sumThenReset());
+            recorder.accept(metricName(i, "time_millis"),
+                    (double) stage.nanos.sumThenReset() / TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    static String metricName(int index, String suffix) {
+        return "_sqs_source_transform_" + index + "_" + suffix + "_";
+    }
+
+    public void close() {
+        for (Stage stage : stages) {
+            try {
+                stage.transformer.close();
+            } catch (Exception e) {
+                log.warn("failed to close the transformer {}.", stage.transformer.getClass().getName(), e);
+            }
+        }
+    }
+
+    private static final class Stage {
+        private final SQSRecordTransformer transformer;
+        private final LongAdder records = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        private Stage(SQSRecordTransformer transformer) {
+            this.transformer = transformer;
+        }
+
+        private List<SQSRecordData> apply(List<SQSRecordData> input) throws Exception {
+            List<SQSRecordData> output = input.size() == 1 ? null : new ArrayList<>(input.size());
+            long start = System.nanoTime();
+            try {
+                for (SQSRecordData record : input) {
+                    List<SQSRecordData> transformed = transformer.transform(record);
+                    if (transformed == null || transformed.isEmpty()) {
+                        dropped.increment();
+                    } else if (output == null) {
+                        // a single input record, the result is passed on as it is
+                        output = transformed;
+                    } else {
+                        output.addAll(transformed);
+                    }
+                }
+            } catch (Exception e) {
+                errors.increment();
+                throw e;
+            } finally {
+                records.add(input.size());
+                nanos.add(System.nanoTime() - start);
+            }
+            return output == null ? Collections.emptyList() : output;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import com.amazonaws.services.sqs.model.Message;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.pulsar.client.api.Schema;
+
+/**
+ * A record made by the transformers of the source from an sqs message. The message is deleted once all the
+ * records made from it are acked, and is delivered again if any of them fails.
+ */
+public class SQSTransformedRecord implements SQSSourceRecord {
+    private final SQSRecordData data;
+    private final Origin origin;
+
+    SQSTransformedRecord(SQSRecordData data, Origin origin) {
+        this.data = data;
+        this.origin = origin;
+    }
+
+    @Override
+    public Optional<String> getKey() {
+        return Optional.ofNullable(data.getKey());
+    }
+
+    @Override
+    public Schema<byte[]> getSchema() {
+        return origin.source.getRecordSchema();
+    }
+
+    @Override
+    public byte[] getValue() {
+        return data.getValue();
+    }
+
+    @Override
+    public Optional<Long> getEventTime() {
+        return Optional.ofNullable(data.getEventTime());
+    }
+
+    @Override
+    public Map<String, String> getProperties() {
+        return data.getProperties();
+    }
+
+    @Override
+    public Optional<String> getDestinationTopic() {
+        return Optional.ofNullable(data.getDestinationTopic());
+    }
+
+    @Override
+    public String getReceiptHandle() {
+        return origin.msg.getReceiptHandle();
+    }
+
+    @Override
+    public SQSTracer.MessageTrace getTrace() {
+        return origin.trace;
+    }
+
+    @Override
+    public SQSEndpoint getEndpoint() {
+        return origin.endpoint;
+    }
+
+    @Override
+    public void ack() {
+        if (origin.pending.decrementAndGet() == 0 && !origin.failed.get()) {
+            origin.source.ackMessage(origin.endpoint, origin.msg);
+            if (origin.trace != null) {
+                origin.trace.onComplete(true);
+            }
+        }
+    }
+
+    @Override
+    public void fail() {
+        // once all records are acked the message is deleted and cannot be delivered again
+        if (origin.pending.get() > 0 && origin.failed.compareAndSet(false, true)) {
+            origin.source.failMessage(origin.endpoint, origin.msg);
+            if (origin.trace != null) {
+                origin.trace.onComplete(false);
+            }
+        }
+    }
+
+    /**
+     * The message the records were made from, shared by them.
+     */
+    static final class Origin {
+        private final Message msg;
+        private final SQSSource source;
+        private final AtomicInteger pending;
+        private final AtomicBoolean failed = new AtomicBoolean();
+        private final SQSTracer.MessageTrace trace;
+        private final SQSEndpoint endpoint;
+
+        Origin(Message msg, SQSSource source, int records, SQSTracer.MessageTrace trace) {
+            this(msg, source, records, trace, null);
+        }
+
+        Origin(Message msg, SQSSource source, int records, SQSTracer.MessageTrace trace, SQSEndpoint endpoint) {
+            this.msg = msg;
+            this.source = source;
+            this.pending = new AtomicInteger(records);
+            this.trace = trace;
+            this.endpoint = endpoint;
+        }
+    }
+}
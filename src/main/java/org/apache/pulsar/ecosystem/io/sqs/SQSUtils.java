@@ -20,8 +20,13 @@ package org.apache.pulsar.ecosystem.io.sqs;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
 import com.amazonaws.services.sqs.model.GetQueueUrlRequest;
+import com.amazonaws.services.sqs.model.MessageSystemAttributeName;
+import com.amazonaws.services.sqs.model.QueueAttributeName;
 import com.amazonaws.services.sqs.model.QueueDoesNotExistException;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * SQSUtils defines utils for AWS SQS connector.
@@ -30,6 +35,10 @@ public final class SQSUtils {
     public static final String PULSAR_MESSAGE_KEY = "pulsar.key";
     public static final String PULSAR_TOPIC_ATTRIBUTE = "pulsar.destination_topic";
     public static final Integer MAX_WAIT_TIME = 20;
+    // the attributes of every receive of the source, the prefetching client has to be built with the same ones
+    public static final List<String> RECEIVE_ATTRIBUTE_NAMES =
+            Collections.singletonList(MessageSystemAttributeName.SentTimestamp.toString());
+    public static final String ALL_MESSAGE_ATTRIBUTES = "All";
 
     public static String ensureQueueExists(AmazonSQS client, String queueName) throws AmazonClientException {
         String queueUrl = queueExists(client, queueName);
@@ -46,4 +55,12 @@ public final class SQSUtils {
             return null;
         }
     }
+
+    public static int getVisibilityTimeout(AmazonSQS client, String queueUrl) throws AmazonClientException {
+        String visibilityTimeout = client.getQueueAttributes(new GetQueueAttributesRequest(queueUrl)
+                        .withAttributeNames(QueueAttributeName.VisibilityTimeout))
+                .getAttributes()
+                .get(QueueAttributeName.VisibilityTimeout.toString());
+        return Integer.parseInt(visibilityTimeout);
+    }
 }
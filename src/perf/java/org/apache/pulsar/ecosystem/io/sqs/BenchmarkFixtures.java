@@ -0,0 +1,180 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.buffered.AmazonSQSBufferedAsyncClient;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityResult;
+import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageResult;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.MessageSystemAttributeName;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import org.apache.pulsar.client.api.schema.GenericRecord;
+import org.apache.pulsar.functions.api.Record;
+
+/**
+ * Shared fixtures of the connector benchmarks. Nothing here talks to SQS.
+ */
+final class BenchmarkFixtures {
+
+    static final String QUEUE_URL = "http://localhost/000000000000/benchmark-queue";
+    static final String TOPIC = "persistent://public/default/benchmark";
+
+    private BenchmarkFixtures() {
+    }
+
+    static String body(int size) {
+        char[] chars = new char[size];
+        Arrays.fill(chars, 'x');
+        return new String(chars);
+    }
+
+    static Message message(int bodySize, int attributeCount) {
+        Map<String, MessageAttributeValue> attributes = new HashMap<>();
+        attributes.put(SQSUtils.PULSAR_MESSAGE_KEY, new MessageAttributeValue()
+                .withDataType("String").withStringValue("key"));
+        for (int i = 0; i < attributeCount; i++) {
+            attributes.put("attribute-" + i, new MessageAttributeValue()
+                    .withDataType("String").withStringValue("value-" + i));
+        }
+        Map<String, String> systemAttributes = new HashMap<>();
+        systemAttributes.put(MessageSystemAttributeName.SentTimestamp.toString(),
+                String.valueOf(System.currentTimeMillis()));
+        return new Message()
+                .withMessageId("message-id")
+                .withReceiptHandle("receipt-handle")
+                .withBody(body(bodySize))
+                .withMessageAttributes(attributes)
+                .withAttributes(systemAttributes);
+    }
+
+    /**
+     * A pulsar message with a raw payload. The mock does not record its invocations, so it can be called
+     * from hot loops without piling up memory.
+     */
+    @SuppressWarnings("unchecked")
+    static org.apache.pulsar.client.api.Message<GenericRecord> pulsarMessage(int bodySize) {
+        org.apache.pulsar.client.api.Message<GenericRecord> message =
+                mock(org.apache.pulsar.client.api.Message.class, withSettings().stubOnly());
+        when(message.getData()).thenReturn(body(bodySize).getBytes(UTF_8));
+        return message;
+    }
+
+    /**
+     * A pulsar record with a raw payload, as the sink receives it without a schema.
+     */
+    static Record<GenericRecord> sinkRecord(int bodySize, int propertyCount) {
+        org.apache.pulsar.client.api.Message<GenericRecord> message = pulsarMessage(bodySize);
+        Map<String, String> properties = new HashMap<>();
+        for (int i = 0; i < propertyCount; i++) {
+            properties.put("property-" + i, "value-" + i);
+        }
+        return new Record<GenericRecord>() {
+            @Override
+            public Optional<String> getKey() {
+                return Optional.of("key");
+            }
+
+            @Override
+            public GenericRecord getValue() {
+                return null;
+            }
+
+            @Override
+            public Map<String, String> getProperties() {
+                return properties;
+            }
+
+            @Override
+            public Optional<org.apache.pulsar.client.api.Message<GenericRecord>> getMessage() {
+                return Optional.of(message);
+            }
+        };
+    }
+
+    /**
+     * A client that completes every async call in the calling thread, so only the connector side of the
+     * callback path is measured.
+     */
+    static AmazonSQSBufferedAsyncClient completingClient() {
+        return new AmazonSQSBufferedAsyncClient(mock(AmazonSQSAsync.class)) {
+            @Override
+            public Future<DeleteMessageResult> deleteMessageAsync(DeleteMessageRequest request,
+                    AsyncHandler<DeleteMessageRequest, DeleteMessageResult> handler) {
+                DeleteMessageResult result = new DeleteMessageResult();
+                handler.onSuccess(request, result);
+                return CompletableFuture.completedFuture(result);
+            }
+
+            @Override
+            public Future<ChangeMessageVisibilityResult> changeMessageVisibilityAsync(
+                    ChangeMessageVisibilityRequest request,
+                    AsyncHandler<ChangeMessageVisibilityRequest, ChangeMessageVisibilityResult> handler) {
+                ChangeMessageVisibilityResult result = new ChangeMessageVisibilityResult();
+                handler.onSuccess(request, result);
+                return CompletableFuture.completedFuture(result);
+            }
+
+            @Override
+            public Future<SendMessageResult> sendMessageAsync(SendMessageRequest request,
+                    AsyncHandler<SendMessageRequest, SendMessageResult> handler) {
+                SendMessageResult result = new SendMessageResult().withMessageId("message-id");
+                handler.onSuccess(request, result);
+                return CompletableFuture.completedFuture(result);
+            }
+        };
+    }
+
+    static SQSSource source(AmazonSQSBufferedAsyncClient client) {
+        return source(client, new SQSConnectorConfig());
+    }
+
+    static SQSSource source(AmazonSQSBufferedAsyncClient client, SQSConnectorConfig config) {
+        SQSSource source = new SQSSource();
+        source.setConfig(config);
+        source.setClient(client);
+        source.setQueueUrl(QUEUE_URL);
+        source.prepareQueue(TOPIC);
+        return source;
+    }
+
+    static SQSSink sink(AmazonSQSBufferedAsyncClient client) {
+        SQSSink sink = new SQSSink();
+        sink.setConfig(new SQSConnectorConfig());
+        sink.setClient(client);
+        sink.setQueueUrl(QUEUE_URL);
+        return sink;
+    }
+}
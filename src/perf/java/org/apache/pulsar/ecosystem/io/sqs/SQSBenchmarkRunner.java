@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs the connector benchmarks with the GC profiler and compares them with a stored baseline.
+ *
+ * <p>Usage: {@code SQSBenchmarkRunner <baseline.json> <result.json> <tolerance> <updateBaseline>
+ * <compareBaseline>}. With {@code compareBaseline} a benchmark regresses when its throughput drops, or its
+ * allocation per operation grows, by more than the tolerance. The process exits with status 1 on a regression so
+ * that the build fails. Benchmarks that are not in the baseline yet are reported but never fail the run; run with
+ * {@code updateBaseline=true} on the reference machine to record them. A missing or empty baseline then fails the
+ * run before the benchmarks start. Without {@code compareBaseline} the results are only written.
+ */
+public class SQSBenchmarkRunner {
+
+    static final String SCORE = "score";
+    static final String ALLOC_NORM = "allocBytesPerOp";
+
+    private static final int[] HANDOFF_PRODUCERS = {1, 10, 50};
+    // allocations below this many bytes per operation are noise rather than a regression
+    private static final double ALLOC_NOISE_BYTES = 16;
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        if (args.length < 5) {
+            System.err.println("Usage: SQSBenchmarkRunner <baseline.json> <result.json> <tolerance> "
+                    + "<updateBaseline> <compareBaseline>");
+            System.exit(2);
+        }
+        File baselineFile = new File(args[0]);
+        File resultFile = new File(args[1]);
+        double tolerance = Double.parseDouble(args[2]);
+        boolean updateBaseline = Boolean.parseBoolean(args[3]);
+        boolean compareBaseline = Boolean.parseBoolean(args[4]) && !updateBaseline;
+
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, Map<String, Double>> baseline = baselineFile.exists()
+                ? mapper.readValue(baselineFile, new TypeReference<Map<String, Map<String, Double>>>() {})
+                : new TreeMap<>();
+        if (baseline.isEmpty() && compareBaseline) {
+            // nothing would be compared, so every run would pass
+            System.err.println("The baseline " + baselineFile + " has no benchmarks, record it on the reference "
+                    + "machine with -Dsqs.perf.updateBaseline=true.");
+            System.exit(1);
+        }
+
+        Map<String, Map<String, Double>> results = new TreeMap<>();
+        collect(results, new Runner(options()
+                .include(SQSRecordBenchmark.class.getSimpleName())
+                .include(SQSSinkBenchmark.class.getSimpleName())
+                .include(SQSSourceBenchmark.class.getSimpleName() + "\\.(ack|fail)$")
+                .build()).run());
+        for (int producers : HANDOFF_PRODUCERS) {
+            collect(results, new Runner(options()
+                    .include(SQSSourceBenchmark.class.getSimpleName() + "\\.handoff")
+                    .threadGroups(producers, 1)
+                    .build()).run());
+        }
+
+        mapper.writerWithDefaultPrettyPrinter().writeValue(resultFile, results);
+
+        if (updateBaseline) {
+            baselineFile.getAbsoluteFile().getParentFile().mkdirs();
+            mapper.writerWithDefaultPrettyPrinter().writeValue(baselineFile, results);
+            System.out.println("Recorded " + results.size() + " benchmarks as the new baseline " + baselineFile);
+            return;
+        }
+        if (!compareBaseline) {
+            System.out.println("The results " + resultFile + " are not compared with a baseline.");
+            return;
+        }
+
+        List<String> regressions = compare(baseline, results, tolerance);
+        if (!regressions.isEmpty()) {
+            regressions.forEach(System.err::println);
+            System.exit(1);
+        }
+        System.out.println("No benchmark regressed by more than " + tolerance * 100 + "%.");
+    }
+
+    static ChainedOptionsBuilder options() {
+        return new OptionsBuilder()
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                .warmupIterations(3)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(5)
+                .measurementTime(TimeValue.seconds(1))
+                .timeout(TimeValue.seconds(30))
+                .shouldFailOnError(true);
+    }
+
+    static void collect(Map<String, Map<String, Double>> results, Collection<RunResult> runResults) {
+        for (RunResult runResult : runResults) {
+            Map<String, Double> values = new TreeMap<>();
+            values.put(SCORE, runResult.getPrimaryResult().getScore());
+            for (Map.Entry<String, Result> secondary : runResult.getSecondaryResults().entrySet()) {
+                // the key is prefixed with a middle dot in older jmh versions
+                if (secondary.getKey().endsWith("gc.alloc.rate.norm")) {
+                    values.put(ALLOC_NORM, secondary.getValue().getScore());
+                }
+            }
+            results.put(key(runResult.getParams()), values);
+        }
+    }
+
+    static String key(BenchmarkParams params) {
+        StringBuilder key = new StringBuilder(params.getBenchmark());
+        for (String param : params.getParamsKeys()) {
+            key.append(':').append(param).append('=').append(params.getParam(param));
+        }
+        int[] threadGroups = params.getThreadGroups();
+        if (threadGroups.length > 1) {
+            key.append(":threadGroups=");
+            for (int i = 0; i < threadGroups.length; i++) {
+                key.append(i == 0 ? "" : ",").append(threadGroups[i]);
+            }
+        }
+        return key.toString();
+    }
+
+    static List<String> compare(Map<String, Map<String, Double>> baseline,
+                                Map<String, Map<String, Double>> results, double tolerance) {
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Double>> result : results.entrySet()) {
+            Map<String, Double> expected = baseline.get(result.getKey());
+            if (expected == null) {
+                System.out.println("No baseline for " + result.getKey() + ", skipped.");
+                continue;
+            }
+            Double expectedScore = expected.get(SCORE);
+            Double score = result.getValue().get(SCORE);
+            if (expectedScore != null && score != null && score < expectedScore * (1 - tolerance)) {
+                regressions.add(String.format("%s: throughput %.2f ops/ms is below the baseline %.2f ops/ms",
+                        result.getKey(), score, expectedScore));
+            }
+            Double expectedAlloc = expected.get(ALLOC_NORM);
+            Double alloc = result.getValue().get(ALLOC_NORM);
+            if (expectedAlloc != null && alloc != null
+                    && alloc > expectedAlloc * (1 + tolerance) + ALLOC_NOISE_BYTES) {
+                regressions.add(String.format("%s: allocates %.1f B/op, the baseline is %.1f B/op",
+                        result.getKey(), alloc, expectedAlloc));
+            }
+        }
+        return regressions;
+    }
+}
@@ -0,0 +1,692 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import org.apache.pulsar.client.api.schema.GenericRecord;
+import org.apache.pulsar.functions.api.Record;
+import org.apache.pulsar.io.core.SinkContext;
+import org.apache.pulsar.io.core.SourceContext;
+
+/**
+ * Drives {@link SQSSource} and {@link SQSSink} end to end against a local SQS endpoint and sweeps the
+ * scenarios of docs/source_performance_test.md.
+ *
+ * <p>Usage: {@code SQSLoadGenerator <baseline.json> <result.json> <tolerance> <updateBaseline> <compareBaseline>}.
+ * The sweep is configured with system properties, e.g. {@code -Dsqs.loadtest.consumers=1,10}:
+ * {@code batchSizes}, {@code consumers}, {@code parallelism}, {@code messageSizes}, {@code attributeCounts},
+ * {@code offHeapBodies}, {@code virtualThreads}, {@code durationSeconds}, {@code warmupSeconds}, {@code window}
+ * and {@code endpoint}. Without an endpoint the {@link EmbeddedSQSServer} is started in process; its CPU and
+ * allocations are then part of the numbers, which only makes them comparable with a baseline recorded the
+ * same way. With {@code compareBaseline} a missing or empty baseline fails the run before the scenarios start,
+ * without it the results are only written.
+ *
+ * <p>The source instances are fed with a bounded window of messages ahead of the readers, the sink
+ * instances are written with a bounded window of unacked records, so the latencies are measured at a
+ * steady concurrency rather than against an ever growing backlog.
+ */
+public class SQSLoadGenerator {
+
+    static final String SENT_NANOS_ATTRIBUTE = "loadgen.sent_nanos";
+
+    private static final String PREFIX = "sqs.loadtest.";
+    private static final int MAX_SAMPLES = 2_000_000;
+    private static final int FEEDERS = 4;
+    private static final long OFF_HEAP_BODY_POOL_BYTES = 64L * 1024 * 1024;
+
+    private final String endpoint;
+    private final long warmupMillis;
+    private final long durationMillis;
+    private final int window;
+    private final AmazonSQS feedClient;
+    private final EmbeddedSQSServer embeddedServer;
+    private final GcRecorder gcRecorder = new GcRecorder();
+    private int scenarioIndex;
+
+    SQSLoadGenerator(String endpoint, EmbeddedSQSServer embeddedServer, long warmupMillis, long durationMillis,
+                     int window) {
+        this.endpoint = endpoint;
+        this.embeddedServer = embeddedServer;
+        this.warmupMillis = warmupMillis;
+        this.durationMillis = durationMillis;
+        this.window = window;
+        this.feedClient = AmazonSQSClientBuilder.standard()
+                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint, "us-east-1"))
+                .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("key", "secret")))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 5) {
+            System.err.println("Usage: SQSLoadGenerator <baseline.json> <result.json> <tolerance> <updateBaseline> "
+                    + "<compareBaseline>");
+            System.exit(2);
+        }
+        File baselineFile = new File(args[0]);
+        File resultFile = new File(args[1]);
+        double tolerance = Double.parseDouble(args[2]);
+        boolean updateBaseline = Boolean.parseBoolean(args[3]);
+        boolean compareBaseline = Boolean.parseBoolean(args[4]) && !updateBaseline;
+
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, Map<String, Double>> baseline = baselineFile.exists()
+                ? mapper.readValue(baselineFile, new TypeReference<Map<String, Map<String, Double>>>() {})
+                : new TreeMap<>();
+        if (baseline.isEmpty() && compareBaseline) {
+            // nothing would be compared, so every run would pass
+            System.err.println("The baseline " + baselineFile + " has no scenarios, record it on the reference "
+                    + "machine with -Dsqs.perf.updateBaseline=true.");
+            System.exit(1);
+        }
+
+        String endpoint = System.getProperty(PREFIX + "endpoint", "");
+        EmbeddedSQSServer embeddedServer = endpoint.isEmpty() ? new EmbeddedSQSServer() : null;
+        SQSLoadGenerator generator = new SQSLoadGenerator(
+                embeddedServer != null ? embeddedServer.getEndpoint() : endpoint, embeddedServer,
+                TimeUnit.SECONDS.toMillis(Long.getLong(PREFIX + "warmupSeconds", 5)),
+                TimeUnit.SECONDS.toMillis(Long.getLong(PREFIX + "durationSeconds", 20)),
+                Integer.getInteger(PREFIX + "window", 1000));
+
+        Map<String, Map<String, Double>> results = new TreeMap<>();
+        List<Boolean> threadModes = booleanList("virtualThreads",
+                SQSThreads.isVirtualSupported() ? "false,true" : "false");
+        try {
+            for (int parallelism : intList("parallelism", "1,2")) {
+                for (int messageSize : intList("messageSizes", "256,4096")) {
+                    for (int attributeCount : intList("attributeCounts", "0,5")) {
+                        for (boolean virtualThreads : threadModes) {
+                            for (int batchSize : intList("batchSizes", "1,10")) {
+                                for (int consumers : intList("consumers", "1,10")) {
+                                    if (!virtualThreads && consumers > SQSConnectorConfig.MAX_NUMBER_OF_SQS_CONSUMERS) {
+                                        continue;
+                                    }
+                                    for (boolean offHeapBodies : booleanList("offHeapBodies", "false,true")) {
+                                        Scenario scenario = new Scenario("source", batchSize, consumers,
+                                                parallelism, messageSize, attributeCount, offHeapBodies,
+                                                virtualThreads);
+                                        results.put(scenario.key(), generator.runSource(scenario));
+                                    }
+                                }
+                            }
+                            Scenario scenario = new Scenario("sink", 0, 0, parallelism, messageSize, attributeCount,
+                                    false, virtualThreads);
+                            results.put(scenario.key(), generator.runSink(scenario));
+                        }
+                    }
+                }
+            }
+        } finally {
+            generator.feedClient.shutdown();
+            if (embeddedServer != null) {
+                embeddedServer.close();
+            }
+        }
+
+        mapper.writerWithDefaultPrettyPrinter().writeValue(resultFile, results);
+        if (updateBaseline) {
+            baselineFile.getAbsoluteFile().getParentFile().mkdirs();
+            mapper.writerWithDefaultPrettyPrinter().writeValue(baselineFile, results);
+            System.out.println("Recorded " + results.size() + " scenarios as the new baseline " + baselineFile);
+            return;
+        }
+        if (!compareBaseline) {
+            System.out.println("The results " + resultFile + " are not compared with a baseline.");
+            return;
+        }
+        List<String> regressions = compare(baseline, results, tolerance);
+        if (!regressions.isEmpty()) {
+            regressions.forEach(System.err::println);
+            System.exit(1);
+        }
+        System.out.println("No load test scenario regressed by more than " + tolerance * 100 + "%.");
+    }
+
+    Map<String, Double> runSource(Scenario scenario) throws Exception {
+        String queueName = "loadtest-" + (scenarioIndex++);
+        String queueUrl = feedClient.createQueue(queueName).getQueueUrl();
+        Map<String, MessageAttributeValue> attributes = attributes(scenario.attributeCount);
+        String body = BenchmarkFixtures.body(scenario.messageSize);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong sent = new AtomicLong();
+        AtomicLong received = new AtomicLong();
+        LatencyRecorder latencies = new LatencyRecorder();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < FEEDERS; i++) {
+            threads.add(start("loadgen-feeder-" + i, () -> {
+                int id = 0;
+                while (running.get()) {
+                    if (sent.get() - received.get() >= window) {
+                        pause();
+                        continue;
+                    }
+                    List<SendMessageBatchRequestEntry> entries = new ArrayList<>(10);
+                    for (int j = 0; j < 10; j++) {
+                        Map<String, MessageAttributeValue> messageAttributes = new HashMap<>(attributes);
+                        messageAttributes.put(SENT_NANOS_ATTRIBUTE, new MessageAttributeValue()
+                                .withDataType("Number").withStringValue(String.valueOf(System.nanoTime())));
+                        entries.add(new SendMessageBatchRequestEntry(String.valueOf(id++), body)
+                                .withMessageAttributes(messageAttributes));
+                    }
+                    feedClient.sendMessageBatch(new SendMessageBatchRequest(queueUrl).withEntries(entries));
+                    sent.addAndGet(entries.size());
+                }
+            }));
+        }
+
+        List<SQSSource> sources = new ArrayList<>();
+        for (int i = 0; i < scenario.parallelism; i++) {
+            SourceContext context = mock(SourceContext.class, withSettings().stubOnly());
+            when(context.getOutputTopic()).thenReturn("loadtest-topic");
+            when(context.getInstanceId()).thenReturn(i);
+            when(context.getNumInstances()).thenReturn(scenario.parallelism);
+            SQSSource source = new SQSSource();
+            source.open(config(queueName, scenario), context);
+            sources.add(source);
+            threads.add(start("loadgen-reader-" + i, () -> {
+                while (running.get()) {
+                    Record<byte[]> record;
+                    try {
+                        record = source.read();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    // the runtime takes the value of every record, which copies a pooled one out of the pool
+                    record.getValue();
+                    String sentNanos = record.getProperties().get(SENT_NANOS_ATTRIBUTE);
+                    if (sentNanos != null) {
+                        latencies.record(System.nanoTime() - Long.parseLong(sentNanos));
+                    }
+                    record.ack();
+                    received.incrementAndGet();
+                }
+            }));
+        }
+
+        Map<String, Double> result = measure(scenario, received, latencies);
+        running.set(false);
+        sources.forEach(SQSSource::close);
+        threads.forEach(Thread::interrupt);
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        return result;
+    }
+
+    Map<String, Double> runSink(Scenario scenario) throws Exception {
+        String queueName = "loadtest-" + (scenarioIndex++);
+        String queueUrl = feedClient.createQueue(queueName).getQueueUrl();
+        org.apache.pulsar.client.api.Message<GenericRecord> message =
+                BenchmarkFixtures.pulsarMessage(scenario.messageSize);
+        Map<String, String> properties = new HashMap<>();
+        for (int i = 0; i < scenario.attributeCount; i++) {
+            properties.put("attribute-" + i, "value-" + i);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong acked = new AtomicLong();
+        AtomicLong written = new AtomicLong();
+        AtomicInteger failed = new AtomicInteger();
+        LatencyRecorder latencies = new LatencyRecorder();
+
+        List<Thread> threads = new ArrayList<>();
+        List<SQSSink> sinks = new ArrayList<>();
+        for (int i = 0; i < scenario.parallelism; i++) {
+            SQSSink sink = new SQSSink();
+            sink.open(config(queueName, scenario), mock(SinkContext.class, withSettings().stubOnly()));
+            sinks.add(sink);
+            threads.add(start("loadgen-writer-" + i, () -> {
+                while (running.get()) {
+                    if (written.get() - acked.get() - failed.get() >= window) {
+                        pause();
+                        continue;
+                    }
+                    written.incrementAndGet();
+                    sink.write(new LoadRecord(message, properties, System.nanoTime(), latencies, acked, failed));
+                }
+            }));
+        }
+        // nobody reads what the sink sends, keep the queue from growing for the whole run
+        threads.add(start("loadgen-purger", () -> {
+            while (running.get()) {
+                try {
+                    Thread.sleep(embeddedServer != null ? 1000 : 60_000);
+                    SQSTestUtils.purgeSQSQueue(feedClient, queueUrl);
+                } catch (InterruptedException e) {
+                    return;
+                } catch (RuntimeException e) {
+                    // the purge is best effort
+                }
+            }
+        }));
+
+        Map<String, Double> result = measure(scenario, acked, latencies);
+        result.put("failures", (double) failed.get());
+        running.set(false);
+        sinks.forEach(SQSSink::close);
+        threads.forEach(Thread::interrupt);
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        return result;
+    }
+
+    private Map<String, Double> measure(Scenario scenario, AtomicLong completed, LatencyRecorder latencies)
+            throws InterruptedException {
+        System.out.println("Running " + scenario.key());
+        Thread.sleep(warmupMillis);
+
+        com.sun.management.OperatingSystemMXBean os =
+                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        long startCompleted = completed.get();
+        long startCpu = os.getProcessCpuTime();
+        long startAllocated = allocatedBytes();
+        ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+        long startNanos = System.nanoTime();
+        latencies.start();
+        gcRecorder.start();
+        Thread.sleep(durationMillis);
+        gcRecorder.stop();
+        latencies.stop();
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long messages = Math.max(1, completed.get() - startCompleted);
+        long cpu = os.getProcessCpuTime() - startCpu;
+        long allocated = allocatedBytes() - startAllocated;
+
+        Map<String, Double> result = new LinkedHashMap<>();
+        result.put("throughput", messages * 1e9 / elapsedNanos);
+        result.put("p50Millis", latencies.percentileMillis(0.50));
+        result.put("p99Millis", latencies.percentileMillis(0.99));
+        result.put("p999Millis", latencies.percentileMillis(0.999));
+        result.put("cpuMicrosPerMessage", cpu / 1e3 / messages);
+        result.put("allocatedBytesPerMessage", (double) allocated / messages);
+        gcRecorder.report(result);
+        result.put("directMemoryBytes", (double) directMemoryBytes());
+        result.put("peakPlatformThreads", (double) ManagementFactory.getThreadMXBean().getPeakThreadCount());
+        result.put("residentBytes", (double) residentBytes());
+        System.out.println("  " + result);
+        return result;
+    }
+
+    private Map<String, Object> config(String queueName, Scenario scenario) {
+        Map<String, Object> config = SQSTestUtils.getTestConfigHashMap();
+        config.put("awsEndpoint", endpoint);
+        config.put("queueName", queueName);
+        config.put("statsIntervalSeconds", 0);
+        if (scenario.batchSize > 0) {
+            config.put("batchSizeOfOnceReceive", scenario.batchSize);
+            config.put("numberOfConsumers", scenario.consumers);
+        }
+        if (scenario.offHeapBodies) {
+            config.put("offHeapBodyPoolBytes", OFF_HEAP_BODY_POOL_BYTES);
+        }
+        if (scenario.virtualThreads) {
+            config.put("virtualThreads", true);
+        }
+        return config;
+    }
+
+    /*
+     * Allocations of the live threads. Threads that died during the run are not counted, the connector
+     * threads live for the whole scenario. Virtual threads are not counted either.
+     */
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            total += Math.max(0, bytes);
+        }
+        return total;
+    }
+
+    private static long directMemoryBytes() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+
+    /*
+     * The resident set of the process, which unlike the heap includes the stacks of the platform threads. It is
+     * only known on Linux.
+     */
+    private static long residentBytes() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // not on Linux
+        }
+        return 0;
+    }
+
+    private static Map<String, MessageAttributeValue> attributes(int count) {
+        Map<String, MessageAttributeValue> attributes = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            attributes.put("attribute-" + i, new MessageAttributeValue()
+                    .withDataType("String").withStringValue("value-" + i));
+        }
+        return attributes;
+    }
+
+    static List<String> compare(Map<String, Map<String, Double>> baseline,
+                                Map<String, Map<String, Double>> results, double tolerance) {
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Double>> result : results.entrySet()) {
+            Map<String, Double> expected = baseline.get(result.getKey());
+            if (expected == null) {
+                System.out.println("No baseline for " + result.getKey() + ", skipped.");
+                continue;
+            }
+            Double expectedThroughput = expected.get("throughput");
+            Double throughput = result.getValue().get("throughput");
+            if (expectedThroughput != null && throughput < expectedThroughput * (1 - tolerance)) {
+                regressions.add(String.format("%s: throughput %.1f msg/s is below the baseline %.1f msg/s",
+                        result.getKey(), throughput, expectedThroughput));
+            }
+            Double expectedP99 = expected.get("p99Millis");
+            Double p99 = result.getValue().get("p99Millis");
+            if (expectedP99 != null && p99 > expectedP99 * (1 + tolerance)) {
+                regressions.add(String.format("%s: p99 latency %.2f ms is above the baseline %.2f ms",
+                        result.getKey(), p99, expectedP99));
+            }
+        }
+        return regressions;
+    }
+
+    private static List<Boolean> booleanList(String name, String defaultValue) {
+        return Arrays.stream(System.getProperty(PREFIX + name, defaultValue).split(","))
+                .map(String::trim)
+                .map(Boolean::parseBoolean)
+                .collect(Collectors.toList());
+    }
+
+    private static List<Integer> intList(String name, String defaultValue) {
+        return Arrays.stream(System.getProperty(PREFIX + name, defaultValue).split(","))
+                .map(String::trim)
+                .map(Integer::parseInt)
+                .collect(Collectors.toList());
+    }
+
+    private static Thread start(String name, Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void pause() {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * One point of the sweep.
+     */
+    static final class Scenario {
+        final String type;
+        final int batchSize;
+        final int consumers;
+        final int parallelism;
+        final int messageSize;
+        final int attributeCount;
+        final boolean offHeapBodies;
+        final boolean virtualThreads;
+
+        Scenario(String type, int batchSize, int consumers, int parallelism, int messageSize, int attributeCount) {
+            this(type, batchSize, consumers, parallelism, messageSize, attributeCount, false, false);
+        }
+
+        Scenario(String type, int batchSize, int consumers, int parallelism, int messageSize, int attributeCount,
+                 boolean offHeapBodies, boolean virtualThreads) {
+            this.type = type;
+            this.batchSize = batchSize;
+            this.consumers = consumers;
+            this.parallelism = parallelism;
+            this.messageSize = messageSize;
+            this.attributeCount = attributeCount;
+            this.offHeapBodies = offHeapBodies;
+            this.virtualThreads = virtualThreads;
+        }
+
+        String key() {
+            StringBuilder key = new StringBuilder(type).append(':');
+            if (batchSize > 0) {
+                key.append("batchSizeOfOnceReceive=").append(batchSize)
+                        .append(",numberOfConsumers=").append(consumers).append(',');
+            }
+            key.append("parallelism=").append(parallelism)
+                    .append(",messageSize=").append(messageSize)
+                    .append(",attributes=").append(attributeCount);
+            if (offHeapBodies) {
+                key.append(",offHeapBodies=true");
+            }
+            if (virtualThreads) {
+                key.append(",virtualThreads=true");
+            }
+            return key.toString();
+        }
+    }
+
+    /**
+     * Records the garbage collections of the measurement window: how long they took in total and at most, and
+     * the most heap that was still live after one of them. With G1 and the parallel collector the durations are
+     * the pauses.
+     */
+    static final class GcRecorder implements NotificationListener {
+        private final Set<String> heapPools = new HashSet<>();
+        private volatile boolean recording;
+        private long collections;
+        private long totalMillis;
+        private long maxMillis;
+        private long liveHeapBytes;
+
+        GcRecorder() {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    heapPools.add(pool.getName());
+                }
+            }
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (collector instanceof NotificationEmitter) {
+                    ((NotificationEmitter) collector).addNotificationListener(this, null, null);
+                }
+            }
+        }
+
+        synchronized void start() {
+            collections = 0;
+            totalMillis = 0;
+            maxMillis = 0;
+            liveHeapBytes = 0;
+            recording = true;
+        }
+
+        void stop() {
+            recording = false;
+        }
+
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            if (!recording || !GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION
+                    .equals(notification.getType())) {
+                return;
+            }
+            GcInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData())
+                    .getGcInfo();
+            long live = 0;
+            for (Map.Entry<String, MemoryUsage> pool : info.getMemoryUsageAfterGc().entrySet()) {
+                if (heapPools.contains(pool.getKey())) {
+                    live += pool.getValue().getUsed();
+                }
+            }
+            synchronized (this) {
+                collections++;
+                totalMillis += info.getDuration();
+                maxMillis = Math.max(maxMillis, info.getDuration());
+                liveHeapBytes = Math.max(liveHeapBytes, live);
+            }
+        }
+
+        synchronized void report(Map<String, Double> result) {
+            result.put("gcCount", (double) collections);
+            result.put("gcMillis", (double) totalMillis);
+            result.put("gcMaxMillis", (double) maxMillis);
+            result.put("liveHeapBytes", (double) liveHeapBytes);
+        }
+    }
+
+    /**
+     * Collects latency samples of the measurement window.
+     */
+    static final class LatencyRecorder {
+        private final long[] samples = new long[MAX_SAMPLES];
+        private final AtomicInteger count = new AtomicInteger();
+        private volatile boolean recording;
+
+        void start() {
+            count.set(0);
+            recording = true;
+        }
+
+        void stop() {
+            recording = false;
+        }
+
+        void record(long nanos) {
+            if (recording) {
+                int index = count.getAndIncrement();
+                if (index < samples.length) {
+                    samples[index] = nanos;
+                }
+            }
+        }
+
+        double percentileMillis(double percentile) {
+            int size = Math.min(count.get(), samples.length);
+            if (size == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.min(size - 1, Math.ceil(percentile * size) - 1)] / 1e6;
+        }
+    }
+
+    /**
+     * A record written to the sink that measures the time until the sink acks it.
+     */
+    static final class LoadRecord implements Record<GenericRecord> {
+        private final org.apache.pulsar.client.api.Message<GenericRecord> message;
+        private final Map<String, String> properties;
+        private final long writeNanos;
+        private final LatencyRecorder latencies;
+        private final AtomicLong acked;
+        private final AtomicInteger failed;
+
+        LoadRecord(org.apache.pulsar.client.api.Message<GenericRecord> message, Map<String, String> properties,
+                   long writeNanos, LatencyRecorder latencies, AtomicLong acked, AtomicInteger failed) {
+            this.message = message;
+            this.properties = properties;
+            this.writeNanos = writeNanos;
+            this.latencies = latencies;
+            this.acked = acked;
+            this.failed = failed;
+        }
+
+        @Override
+        public GenericRecord getValue() {
+            return null;
+        }
+
+        @Override
+        public Map<String, String> getProperties() {
+            return properties;
+        }
+
+        @Override
+        public Optional<org.apache.pulsar.client.api.Message<GenericRecord>> getMessage() {
+            return Optional.of(message);
+        }
+
+        @Override
+        public void ack() {
+            latencies.record(System.nanoTime() - writeNanos);
+            acked.incrementAndGet();
+        }
+
+        @Override
+        public void fail() {
+            failed.incrementAndGet();
+        }
+    }
+}
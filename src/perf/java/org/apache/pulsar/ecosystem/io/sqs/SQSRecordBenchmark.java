@@ -0,0 +1,68 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the conversion of an sqs message into a pulsar record in {@link SQSRecord}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SQSRecordBenchmark {
+
+    @Param({"256", "16384"})
+    private int bodySize;
+
+    @Param({"0", "9"})
+    private int attributeCount;
+
+    private SQSRecord record;
+
+    @Setup
+    public void setup() {
+        record = new SQSRecord(BenchmarkFixtures.TOPIC, BenchmarkFixtures.message(bodySize, attributeCount), null);
+    }
+
+    @Benchmark
+    public byte[] getValue() {
+        return record.getValue();
+    }
+
+    @Benchmark
+    public Map<String, String> getProperties() {
+        return record.getProperties();
+    }
+
+    @Benchmark
+    public Optional<Long> getEventTime() {
+        return record.getEventTime();
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import java.util.concurrent.TimeUnit;
+import org.apache.pulsar.client.api.schema.GenericRecord;
+import org.apache.pulsar.functions.api.Record;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the request generation and the completion callback of {@link SQSSink}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SQSSinkBenchmark {
+
+    @Param({"256", "16384"})
+    private int bodySize;
+
+    @Param({"0", "9"})
+    private int propertyCount;
+
+    private SQSSink sink;
+
+    private Record<GenericRecord> record;
+
+    @Setup
+    public void setup() {
+        sink = BenchmarkFixtures.sink(BenchmarkFixtures.completingClient());
+        record = BenchmarkFixtures.sinkRecord(bodySize, propertyCount);
+    }
+
+    @Benchmark
+    public SendMessageRequest generateSendMessageRequest() {
+        return sink.generateSendMessageRequest(record);
+    }
+
+    /*
+     * The client completes the send in the calling thread, so this covers the request generation
+     * plus the AsyncHandler callback that acks the record.
+     */
+    @Benchmark
+    public void write() {
+        sink.write(record);
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import com.amazonaws.services.sqs.model.Message;
+import java.util.concurrent.TimeUnit;
+import org.apache.pulsar.functions.api.Record;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Control;
+
+/**
+ * Benchmarks the handoff between the consumer threads and the reader of {@link SQSSource}, and the
+ * AsyncHandler callbacks of ack and fail.
+ *
+ * <p>The number of producer threads of the handoff group is set by the runner with thread groups.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SQSSourceBenchmark {
+
+    /**
+     * Source shared by the producers and the reader of a handoff group.
+     */
+    @State(Scope.Group)
+    public static class Handoff {
+        @Param({"256", "16384"})
+        int messageSize;
+
+        // whether the values wait in the off-heap body pool instead of the heap
+        @Param({"false", "true"})
+        boolean offHeapBodies;
+
+        SQSSource source;
+        Message message;
+
+        @Setup
+        public void setup() {
+            SQSConnectorConfig config = new SQSConnectorConfig();
+            if (offHeapBodies) {
+                config.setOffHeapBodyPoolBytes(64L * 1024 * 1024);
+            }
+            source = BenchmarkFixtures.source(BenchmarkFixtures.completingClient(), config);
+            message = BenchmarkFixtures.message(messageSize, 1);
+        }
+    }
+
+    /**
+     * Source whose client completes every ack and fail immediately.
+     */
+    @State(Scope.Benchmark)
+    public static class Callbacks {
+        SQSSource source;
+
+        @Setup
+        public void setup() {
+            source = BenchmarkFixtures.source(BenchmarkFixtures.completingClient());
+        }
+    }
+
+    /*
+     * Once the measurement stopped, the producers stop on a full buffer or body pool and the reader on an
+     * empty buffer, so neither of them blocks forever while the other side is already done.
+     */
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public void enqueue(Handoff state, Control control) {
+        if (control.stopMeasurement && (state.source.getBufferedRecords() >= state.source.getQueueLength()
+                || !state.source.admitsReceive(1))) {
+            return;
+        }
+        state.source.enqueue(state.message);
+    }
+
+    /*
+     * The reader takes the value as the runtime does, and frees a pooled value as the ack would, without
+     * measuring the delete.
+     */
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public byte[] read(Handoff state, Control control) throws InterruptedException {
+        if (control.stopMeasurement && state.source.getBufferedRecords() == 0) {
+            return null;
+        }
+        Record<byte[]> record = state.source.read();
+        byte[] value = record.getValue();
+        if (record instanceof SQSPooledRecord) {
+            ((SQSPooledRecord) record).getBody().release();
+        }
+        return value;
+    }
+
+    @Benchmark
+    public void ack(Callbacks state) {
+        state.source.ack("receipt-handle");
+    }
+
+    @Benchmark
+    public void fail(Callbacks state) {
+        state.source.fail("receipt-handle");
+    }
+}
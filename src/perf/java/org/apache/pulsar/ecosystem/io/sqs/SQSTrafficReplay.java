@@ -0,0 +1,286 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.AmazonSQSAsyncClientBuilder;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import org.apache.pulsar.client.api.schema.GenericRecord;
+import org.apache.pulsar.functions.api.Record;
+import org.apache.pulsar.io.core.SinkContext;
+
+/**
+ * Replays a capture of {@link SQSTrafficCapture} into a queue of an SQS endpoint, or straight into
+ * {@link SQSSink}, at the pace it was captured at or a multiple of it.
+ *
+ * <p>Usage: {@code SQSTrafficReplay <capture> [speed]}, where a speed of 2 replays twice as fast and 0 as fast as
+ * possible. It is configured with system properties, e.g. {@code -Dsqs.replay.target=sink}: {@code target},
+ * {@code queue} (the default) or {@code sink}, {@code endpoint}, {@code queueName}, {@code window}, the maximum
+ * number of messages in flight, and {@code result}, a file the results are written to as json. Without an
+ * endpoint the {@link EmbeddedSQSServer} is started in process.
+ *
+ * <p>A message is due at the offset of its timestamp from the first message, divided by the speed. The lag
+ * behind that schedule is reported together with the rate and the latencies, so a replay that could not keep up
+ * with the capture is told apart from one that did.
+ */
+public class SQSTrafficReplay {
+
+    private static final String PREFIX = "sqs.replay.";
+    private static final long COMPLETION_TIMEOUT_SECONDS = 60;
+
+    private final String endpoint;
+    private final String queueName;
+    private final int window;
+    private final double speed;
+
+    SQSTrafficReplay(String endpoint, String queueName, int window, double speed) {
+        this.endpoint = endpoint;
+        this.queueName = queueName;
+        this.window = window;
+        this.speed = speed;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: SQSTrafficReplay <capture> [speed]");
+            System.exit(2);
+        }
+        Path capture = Paths.get(args[0]);
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 1.0;
+
+        String endpoint = System.getProperty(PREFIX + "endpoint", "");
+        EmbeddedSQSServer embeddedServer = endpoint.isEmpty() ? new EmbeddedSQSServer() : null;
+        SQSTrafficReplay replay = new SQSTrafficReplay(
+                embeddedServer != null ? embeddedServer.getEndpoint() : endpoint,
+                System.getProperty(PREFIX + "queueName", "replay-queue"),
+                Integer.getInteger(PREFIX + "window", 1000), speed);
+        Map<String, Double> result;
+        try {
+            result = "sink".equals(System.getProperty(PREFIX + "target", "queue"))
+                    ? replay.replayIntoSink(capture) : replay.replayIntoQueue(capture);
+        } finally {
+            if (embeddedServer != null) {
+                embeddedServer.close();
+            }
+        }
+        System.out.println(result);
+        String resultFile = System.getProperty(PREFIX + "result", "");
+        if (!resultFile.isEmpty()) {
+            new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(new File(resultFile), result);
+        }
+    }
+
+    /**
+     * Sends the captured messages to the queue, e.g. for a source to be measured against.
+     */
+    Map<String, Double> replayIntoQueue(Path capture) throws Exception {
+        AmazonSQSAsync client = AmazonSQSAsyncClientBuilder.standard()
+                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint, "us-east-1"))
+                .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("key", "secret")))
+                .build();
+        try {
+            String queueUrl = client.createQueue(queueName).getQueueUrl();
+            return replay(capture, (message, done) -> client.sendMessageAsync(
+                    new SendMessageRequest(queueUrl, message.getBody())
+                            .withMessageAttributes(message.getAttributes()),
+                    new AsyncHandler<SendMessageRequest, SendMessageResult>() {
+                        @Override
+                        public void onError(Exception e) {
+                            done.accept(false);
+                        }
+
+                        @Override
+                        public void onSuccess(SendMessageRequest request, SendMessageResult result) {
+                            done.accept(true);
+                        }
+                    }));
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    /**
+     * Writes the captured messages to a sink as records, the latency is the time until the sink acks a record.
+     */
+    Map<String, Double> replayIntoSink(Path capture) throws Exception {
+        Map<String, Object> config = SQSTestUtils.getTestConfigHashMap();
+        config.put("awsEndpoint", endpoint);
+        config.put("queueName", queueName);
+        config.put("statsIntervalSeconds", 0);
+        SQSSink sink = new SQSSink();
+        sink.open(config, mock(SinkContext.class, withSettings().stubOnly()));
+        try {
+            return replay(capture, (message, done) -> sink.write(new ReplayRecord(message, done)));
+        } finally {
+            sink.close();
+        }
+    }
+
+    private Map<String, Double> replay(Path capture,
+                                       BiConsumer<SQSTrafficCapture.CapturedMessage, Consumer<Boolean>> sender)
+            throws Exception {
+        Semaphore inFlight = new Semaphore(window);
+        SQSLoadGenerator.LatencyRecorder latencies = new SQSLoadGenerator.LatencyRecorder();
+        SQSLoadGenerator.LatencyRecorder lags = new SQSLoadGenerator.LatencyRecorder();
+        AtomicInteger failed = new AtomicInteger();
+        long messages = 0;
+        long bodyBytes = 0;
+        long firstTimestamp = 0;
+        long lastTimestamp = 0;
+        latencies.start();
+        lags.start();
+        long startNanos = System.nanoTime();
+        try (SQSTrafficCapture.Reader reader = new SQSTrafficCapture.Reader(capture)) {
+            for (SQSTrafficCapture.CapturedMessage message = reader.next(); message != null;
+                 message = reader.next()) {
+                if (messages == 0) {
+                    firstTimestamp = message.getTimestampMillis();
+                }
+                lastTimestamp = Math.max(lastTimestamp, message.getTimestampMillis());
+                // the messages of a source capture are in the order they were received, not quite the order
+                // they were sent in, an early one is sent right away
+                long dueNanos = speed > 0 ? startNanos + (long) (TimeUnit.MILLISECONDS.toNanos(
+                        message.getTimestampMillis() - firstTimestamp) / speed) : System.nanoTime();
+                long waitNanos = dueNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                }
+                inFlight.acquire();
+                long sendNanos = System.nanoTime();
+                lags.record(Math.max(0, sendNanos - dueNanos));
+                messages++;
+                bodyBytes += message.getBody().length();
+                AtomicBoolean completed = new AtomicBoolean();
+                sender.accept(message, success -> {
+                    if (!completed.compareAndSet(false, true)) {
+                        return;
+                    }
+                    if (success) {
+                        latencies.record(System.nanoTime() - sendNanos);
+                    } else {
+                        failed.incrementAndGet();
+                    }
+                    inFlight.release();
+                });
+            }
+        }
+        if (!inFlight.tryAcquire(window, COMPLETION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            System.err.println((window - inFlight.availablePermits()) + " messages did not complete in time.");
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        latencies.stop();
+        lags.stop();
+
+        Map<String, Double> result = new LinkedHashMap<>();
+        result.put("messages", (double) messages);
+        result.put("failures", (double) failed.get());
+        result.put("averageBodyBytes", messages > 0 ? (double) bodyBytes / messages : 0);
+        result.put("capturedRate", lastTimestamp > firstTimestamp
+                ? messages * 1e3 / (lastTimestamp - firstTimestamp) : 0);
+        result.put("throughput", messages * 1e9 / Math.max(1, elapsedNanos));
+        result.put("lagP50Millis", lags.percentileMillis(0.50));
+        result.put("lagP99Millis", lags.percentileMillis(0.99));
+        result.put("p50Millis", latencies.percentileMillis(0.50));
+        result.put("p99Millis", latencies.percentileMillis(0.99));
+        result.put("p999Millis", latencies.percentileMillis(0.999));
+        return result;
+    }
+
+    /**
+     * A record made from a captured message: its body as the payload, the key attribute as the key and the other
+     * attributes as properties.
+     */
+    static final class ReplayRecord implements Record<GenericRecord> {
+        private final org.apache.pulsar.client.api.Message<GenericRecord> message;
+        private final String key;
+        private final Map<String, String> properties = new HashMap<>();
+        private final Consumer<Boolean> done;
+
+        @SuppressWarnings("unchecked")
+        ReplayRecord(SQSTrafficCapture.CapturedMessage captured, Consumer<Boolean> done) {
+            this.message = mock(org.apache.pulsar.client.api.Message.class, withSettings().stubOnly());
+            when(message.getData()).thenReturn(captured.getBody().getBytes(UTF_8));
+            String key = null;
+            for (Map.Entry<String, MessageAttributeValue> attribute : captured.getAttributes().entrySet()) {
+                if (attribute.getKey().equals(SQSUtils.PULSAR_MESSAGE_KEY)) {
+                    key = attribute.getValue().getStringValue();
+                } else if (attribute.getValue().getStringValue() != null) {
+                    properties.put(attribute.getKey(), attribute.getValue().getStringValue());
+                }
+            }
+            this.key = key;
+            this.done = done;
+        }
+
+        @Override
+        public Optional<String> getKey() {
+            return Optional.ofNullable(key);
+        }
+
+        @Override
+        public GenericRecord getValue() {
+            return null;
+        }
+
+        @Override
+        public Map<String, String> getProperties() {
+            return properties;
+        }
+
+        @Override
+        public Optional<org.apache.pulsar.client.api.Message<GenericRecord>> getMessage() {
+            return Optional.of(message);
+        }
+
+        @Override
+        public void ack() {
+            done.accept(true);
+        }
+
+        @Override
+        public void fail() {
+            done.accept(false);
+        }
+    }
+}
@@ -0,0 +1,944 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lightweight in-JVM stand-in for AWS SQS, for tests that should not depend on localstack.
+ *
+ * <p>It speaks the SQS query protocol over HTTP, so a connector can simply point {@code awsEndpoint} at
+ * {@link #getEndpoint()}. It implements ReceiveMessage (with long polling), SendMessage, DeleteMessage,
+ * ChangeMessageVisibility and their batch forms, visibility timeouts, delays, and the FIFO semantics of
+ * message groups, ordering and deduplication. Latency, throttling errors, server errors and partial batch
+ * failures can be injected, either for a number of upcoming requests or at a rate drawn from a seeded
+ * random generator.
+ */
+public class EmbeddedSQSServer implements AutoCloseable {
+
+    public static final String ACCOUNT_ID = "000000000000";
+    public static final int DEFAULT_VISIBILITY_TIMEOUT_SECONDS = 30;
+
+    private static final String XMLNS = "http://queue.amazonaws.com/doc/2012-11-05/";
+    private static final long DEDUPLICATION_INTERVAL_MILLIS = 5 * 60 * 1000;
+    private static final long MAX_POLL_STEP_MILLIS = 50;
+
+    /**
+     * The errors that can be injected in place of a response.
+     */
+    public enum Fault {
+        THROTTLING(400, "Sender", "Throttling", "Rate exceeded"),
+        INTERNAL_ERROR(500, "Receiver", "InternalError", "We encountered an internal error. Please try again."),
+        SERVICE_UNAVAILABLE(503, "Receiver", "ServiceUnavailable", "Service is unavailable. Try again later.");
+
+        private final int status;
+        private final String type;
+        private final String code;
+        private final String message;
+
+        Fault(int status, String type, String code, String message) {
+            this.status = status;
+            this.type = type;
+            this.code = code;
+            this.message = message;
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Random random;
+    private final Map<String, SimulatedQueue> queues = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> requestCounts = new ConcurrentHashMap<>();
+    private final Map<String, Deque<Fault>> scheduledFaults = new ConcurrentHashMap<>();
+    private final AtomicLong scheduledEntryFailures = new AtomicLong();
+
+    private volatile long latencyMillis;
+    private volatile double throttlingRate;
+    private volatile double serverErrorRate;
+    private volatile double batchEntryFailureRate;
+
+    public EmbeddedSQSServer() throws IOException {
+        this(0L);
+    }
+
+    public EmbeddedSQSServer(long seed) throws IOException {
+        this.random = new Random(seed);
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "embedded-sqs");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(executor);
+        this.server.start();
+    }
+
+    public String getEndpoint() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public String createQueue(String queueName) {
+        return createQueue(queueName, new HashMap<>());
+    }
+
+    public String createQueue(String queueName, Map<String, String> attributes) {
+        return queues.computeIfAbsent(queueName, name -> new SimulatedQueue(name, attributes)).url;
+    }
+
+    /**
+     * Adds the given latency to every request before it is handled.
+     */
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Answers the given fraction of all requests with a throttling error.
+     */
+    public void setThrottlingRate(double throttlingRate) {
+        this.throttlingRate = throttlingRate;
+    }
+
+    /**
+     * Answers the given fraction of all requests with an internal server error.
+     */
+    public void setServerErrorRate(double serverErrorRate) {
+        this.serverErrorRate = serverErrorRate;
+    }
+
+    /**
+     * Fails the given fraction of the entries of every batch request.
+     */
+    public void setBatchEntryFailureRate(double batchEntryFailureRate) {
+        this.batchEntryFailureRate = batchEntryFailureRate;
+    }
+
+    /**
+     * Answers the next {@code count} requests of the given action (e.g. "ReceiveMessage") with the fault.
+     */
+    public void failNextRequests(String action, int count, Fault fault) {
+        Deque<Fault> faults = scheduledFaults.computeIfAbsent(action, a -> new ArrayDeque<>());
+        synchronized (faults) {
+            for (int i = 0; i < count; i++) {
+                faults.add(fault);
+            }
+        }
+    }
+
+    /**
+     * Fails the next {@code count} entries of batch requests, whatever their action.
+     */
+    public void failNextBatchEntries(int count) {
+        scheduledEntryFailures.addAndGet(count);
+    }
+
+    public long getRequestCount(String action) {
+        AtomicLong count = requestCounts.get(action);
+        return count == null ? 0 : count.get();
+    }
+
+    public int getVisibleMessageCount(String queueName) {
+        return queue(queueName).count(MessageState.VISIBLE);
+    }
+
+    public int getInFlightMessageCount(String queueName) {
+        return queue(queueName).count(MessageState.IN_FLIGHT);
+    }
+
+    public int getMessageCount(String queueName) {
+        SimulatedQueue queue = queue(queueName);
+        synchronized (queue) {
+            return queue.messages.size();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private SimulatedQueue queue(String queueName) {
+        SimulatedQueue queue = queues.get(queueName);
+        if (queue == null) {
+            throw new IllegalArgumentException("queue " + queueName + " does not exist");
+        }
+        return queue;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String response;
+        int status = 200;
+        try {
+            Map<String, String> params = parseForm(exchange);
+            String action = params.getOrDefault("Action", "");
+            requestCounts.computeIfAbsent(action, a -> new AtomicLong()).incrementAndGet();
+
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            Fault fault = nextFault(action);
+            if (fault != null) {
+                status = fault.status;
+                response = error(fault.type, fault.code, fault.message);
+            } else {
+                response = dispatch(action, exchange.getRequestURI().getPath(), params);
+            }
+        } catch (SQSError e) {
+            status = 400;
+            response = error("Sender", e.code, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = 500;
+            response = error("Receiver", "InternalError", "interrupted");
+        } catch (RuntimeException e) {
+            status = 500;
+            response = error("Receiver", "InternalError", String.valueOf(e.getMessage()));
+        }
+
+        byte[] bytes = response.getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/xml");
+        exchange.getResponseHeaders().set("x-amzn-RequestId", UUID.randomUUID().toString());
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private Fault nextFault(String action) {
+        Deque<Fault> faults = scheduledFaults.get(action);
+        if (faults != null) {
+            synchronized (faults) {
+                Fault fault = faults.poll();
+                if (fault != null) {
+                    return fault;
+                }
+            }
+        }
+        if (throttlingRate > 0 && random.nextDouble() < throttlingRate) {
+            return Fault.THROTTLING;
+        }
+        if (serverErrorRate > 0 && random.nextDouble() < serverErrorRate) {
+            return Fault.INTERNAL_ERROR;
+        }
+        return null;
+    }
+
+    private boolean nextEntryFails() {
+        if (scheduledEntryFailures.getAndUpdate(n -> n > 0 ? n - 1 : 0) > 0) {
+            return true;
+        }
+        return batchEntryFailureRate > 0 && random.nextDouble() < batchEntryFailureRate;
+    }
+
+    private String dispatch(String action, String path, Map<String, String> params) throws InterruptedException {
+        switch (action) {
+            case "CreateQueue":
+                return createQueueResponse(params);
+            case "GetQueueUrl":
+                return result(action, "<QueueUrl>" + queueByName(params.get("QueueName")).url + "</QueueUrl>");
+            case "GetQueueAttributes":
+                return getQueueAttributes(queueByPath(path, params), params);
+            case "PurgeQueue":
+                queueByPath(path, params).purge();
+                return result(action, null);
+            case "SendMessage":
+                return sendMessage(queueByPath(path, params), params);
+            case "SendMessageBatch":
+                return sendMessageBatch(queueByPath(path, params), params);
+            case "ReceiveMessage":
+                return receiveMessage(queueByPath(path, params), params);
+            case "DeleteMessage":
+                queueByPath(path, params).delete(params.get("ReceiptHandle"));
+                return result(action, null);
+            case "DeleteMessageBatch":
+                return deleteMessageBatch(queueByPath(path, params), params);
+            case "ChangeMessageVisibility":
+                queueByPath(path, params).changeVisibility(params.get("ReceiptHandle"),
+                        Integer.parseInt(params.get("VisibilityTimeout")));
+                return result(action, null);
+            case "ChangeMessageVisibilityBatch":
+                return changeMessageVisibilityBatch(queueByPath(path, params), params);
+            default:
+                throw new SQSError("InvalidAction", "The action " + action + " is not valid for this endpoint.");
+        }
+    }
+
+    private String createQueueResponse(Map<String, String> params) {
+        Map<String, String> attributes = new HashMap<>();
+        for (int i = 1; params.containsKey("Attribute." + i + ".Name"); i++) {
+            attributes.put(params.get("Attribute." + i + ".Name"), params.get("Attribute." + i + ".Value"));
+        }
+        String url = createQueue(params.get("QueueName"), attributes);
+        return result("CreateQueue", "<QueueUrl>" + url + "</QueueUrl>");
+    }
+
+    private String getQueueAttributes(SimulatedQueue queue, Map<String, String> params) {
+        Set<String> names = new HashSet<>(indexedValues(params, "AttributeName."));
+        boolean all = names.isEmpty() || names.contains("All");
+        Map<String, String> attributes = new LinkedHashMap<>();
+        synchronized (queue) {
+            attributes.put("ApproximateNumberOfMessages", String.valueOf(queue.countLocked(MessageState.VISIBLE)));
+            attributes.put("ApproximateNumberOfMessagesNotVisible",
+                    String.valueOf(queue.countLocked(MessageState.IN_FLIGHT)));
+            attributes.put("ApproximateNumberOfMessagesDelayed",
+                    String.valueOf(queue.countLocked(MessageState.DELAYED)));
+            attributes.put("VisibilityTimeout", String.valueOf(queue.visibilityTimeoutSeconds));
+            attributes.put("QueueArn", "arn:aws:sqs:us-east-1:" + ACCOUNT_ID + ":" + queue.name);
+            if (queue.fifo) {
+                attributes.put("FifoQueue", "true");
+                attributes.put("ContentBasedDeduplication", String.valueOf(queue.contentBasedDeduplication));
+            }
+        }
+        StringBuilder xml = new StringBuilder();
+        for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+            if (all || names.contains(attribute.getKey())) {
+                xml.append("<Attribute><Name>").append(attribute.getKey()).append("</Name><Value>")
+                        .append(escape(attribute.getValue())).append("</Value></Attribute>");
+            }
+        }
+        return result("GetQueueAttributes", xml.toString());
+    }
+
+    private String sendMessage(SimulatedQueue queue, Map<String, String> params) {
+        SimulatedMessage message = queue.send(params, "");
+        return result("SendMessage", sendResultEntry(message));
+    }
+
+    private String sendMessageBatch(SimulatedQueue queue, Map<String, String> params) {
+        StringBuilder xml = new StringBuilder();
+        for (String prefix : batchEntryPrefixes(params, "SendMessageBatchRequestEntry.")) {
+            String id = params.get(prefix + "Id");
+            if (nextEntryFails()) {
+                xml.append(batchError(id));
+                continue;
+            }
+            try {
+                SimulatedMessage message = queue.send(params, prefix);
+                xml.append("<SendMessageBatchResultEntry><Id>").append(escape(id)).append("</Id>")
+                        .append(sendResultEntry(message)).append("</SendMessageBatchResultEntry>");
+            } catch (SQSError e) {
+                xml.append(batchError(id, e.code, e.getMessage(), true));
+            }
+        }
+        return result("SendMessageBatch", xml.toString());
+    }
+
+    private String receiveMessage(SimulatedQueue queue, Map<String, String> params) throws InterruptedException {
+        int maxMessages = Integer.parseInt(params.getOrDefault("MaxNumberOfMessages", "1"));
+        int waitSeconds = Integer.parseInt(params.getOrDefault("WaitTimeSeconds", "0"));
+        int visibilityTimeout = Integer.parseInt(
+                params.getOrDefault("VisibilityTimeout", String.valueOf(queue.visibilityTimeoutSeconds)));
+        List<String> attributeNames = indexedValues(params, "AttributeName.");
+        List<String> messageAttributeNames = indexedValues(params, "MessageAttributeName.");
+
+        List<SimulatedMessage> messages = queue.receive(maxMessages, waitSeconds * 1000L, visibilityTimeout);
+        StringBuilder xml = new StringBuilder();
+        for (SimulatedMessage message : messages) {
+            xml.append("<Message><MessageId>").append(message.messageId).append("</MessageId>")
+                    .append("<ReceiptHandle>").append(message.receiptHandle).append("</ReceiptHandle>")
+                    .append("<MD5OfBody>").append(md5(message.body)).append("</MD5OfBody>")
+                    .append("<Body>").append(escape(message.body)).append("</Body>");
+            for (Map.Entry<String, String> attribute : message.systemAttributes(attributeNames).entrySet()) {
+                xml.append("<Attribute><Name>").append(attribute.getKey()).append("</Name><Value>")
+                        .append(escape(attribute.getValue())).append("</Value></Attribute>");
+            }
+            Map<String, MessageAttribute> selected = new TreeMap<>();
+            for (Map.Entry<String, MessageAttribute> attribute : message.attributes.entrySet()) {
+                if (isSelected(attribute.getKey(), messageAttributeNames)) {
+                    selected.put(attribute.getKey(), attribute.getValue());
+                }
+            }
+            if (!selected.isEmpty()) {
+                xml.append("<MD5OfMessageAttributes>").append(md5OfAttributes(selected))
+                        .append("</MD5OfMessageAttributes>");
+                for (Map.Entry<String, MessageAttribute> attribute : selected.entrySet()) {
+                    xml.append("<MessageAttribute><Name>").append(escape(attribute.getKey())).append("</Name>")
+                            .append(attribute.getValue().toXml()).append("</MessageAttribute>");
+                }
+            }
+            xml.append("</Message>");
+        }
+        return result("ReceiveMessage", xml.toString());
+    }
+
+    private String deleteMessageBatch(SimulatedQueue queue, Map<String, String> params) {
+        StringBuilder xml = new StringBuilder();
+        for (String prefix : batchEntryPrefixes(params, "DeleteMessageBatchRequestEntry.")) {
+            String id = params.get(prefix + "Id");
+            if (nextEntryFails()) {
+                xml.append(batchError(id));
+                continue;
+            }
+            queue.delete(params.get(prefix + "ReceiptHandle"));
+            xml.append("<DeleteMessageBatchResultEntry><Id>").append(escape(id))
+                    .append("</Id></DeleteMessageBatchResultEntry>");
+        }
+        return result("DeleteMessageBatch", xml.toString());
+    }
+
+    private String changeMessageVisibilityBatch(SimulatedQueue queue, Map<String, String> params) {
+        StringBuilder xml = new StringBuilder();
+        for (String prefix : batchEntryPrefixes(params, "ChangeMessageVisibilityBatchRequestEntry.")) {
+            String id = params.get(prefix + "Id");
+            if (nextEntryFails()) {
+                xml.append(batchError(id));
+                continue;
+            }
+            try {
+                queue.changeVisibility(params.get(prefix + "ReceiptHandle"),
+                        Integer.parseInt(params.get(prefix + "VisibilityTimeout")));
+                xml.append("<ChangeMessageVisibilityBatchResultEntry><Id>").append(escape(id))
+                        .append("</Id></ChangeMessageVisibilityBatchResultEntry>");
+            } catch (SQSError e) {
+                xml.append(batchError(id, e.code, e.getMessage(), true));
+            }
+        }
+        return result("ChangeMessageVisibilityBatch", xml.toString());
+    }
+
+    private SimulatedQueue queueByName(String queueName) {
+        SimulatedQueue queue = queueName == null ? null : queues.get(queueName);
+        if (queue == null) {
+            throw new SQSError("AWS.SimpleQueueService.NonExistentQueue",
+                    "The specified queue does not exist for this wsdl version.");
+        }
+        return queue;
+    }
+
+    private SimulatedQueue queueByPath(String path, Map<String, String> params) {
+        // the sdk moves the QueueUrl parameter into the request path
+        String queueUrl = params.getOrDefault("QueueUrl", path);
+        return queueByName(queueUrl.substring(queueUrl.lastIndexOf('/') + 1));
+    }
+
+    private static String sendResultEntry(SimulatedMessage message) {
+        StringBuilder xml = new StringBuilder()
+                .append("<MessageId>").append(message.messageId).append("</MessageId>")
+                .append("<MD5OfMessageBody>").append(md5(message.body)).append("</MD5OfMessageBody>");
+        if (!message.attributes.isEmpty()) {
+            xml.append("<MD5OfMessageAttributes>").append(md5OfAttributes(message.attributes))
+                    .append("</MD5OfMessageAttributes>");
+        }
+        if (message.sequenceNumber != null) {
+            xml.append("<SequenceNumber>").append(message.sequenceNumber).append("</SequenceNumber>");
+        }
+        return xml.toString();
+    }
+
+    private static String batchError(String id) {
+        return batchError(id, "InternalError", "injected batch entry failure", false);
+    }
+
+    private static String batchError(String id, String code, String message, boolean senderFault) {
+        return "<BatchResultErrorEntry><Id>" + escape(id) + "</Id><SenderFault>" + senderFault
+                + "</SenderFault><Code>" + code + "</Code><Message>" + escape(message)
+                + "</Message></BatchResultErrorEntry>";
+    }
+
+    private static String result(String action, String content) {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\"?>")
+                .append('<').append(action).append("Response xmlns=\"").append(XMLNS).append("\">");
+        if (content != null) {
+            xml.append('<').append(action).append("Result>").append(content)
+                    .append("</").append(action).append("Result>");
+        }
+        return xml.append("<ResponseMetadata><RequestId>").append(UUID.randomUUID())
+                .append("</RequestId></ResponseMetadata></").append(action).append("Response>").toString();
+    }
+
+    private static String error(String type, String code, String message) {
+        return "<?xml version=\"1.0\"?><ErrorResponse xmlns=\"" + XMLNS + "\"><Error><Type>" + type
+                + "</Type><Code>" + code + "</Code><Message>" + escape(message) + "</Message><Detail/></Error>"
+                + "<RequestId>" + UUID.randomUUID() + "</RequestId></ErrorResponse>";
+    }
+
+    private static Map<String, String> parseForm(HttpExchange exchange) throws IOException {
+        String body;
+        try (InputStream in = exchange.getRequestBody()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            body = out.toString(UTF_8.name());
+        }
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null && !query.isEmpty()) {
+            body = body.isEmpty() ? query : body + "&" + query;
+        }
+        Map<String, String> params = new HashMap<>();
+        for (String pair : body.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int separator = pair.indexOf('=');
+            String key = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            params.put(URLDecoder.decode(key, UTF_8.name()), URLDecoder.decode(value, UTF_8.name()));
+        }
+        return params;
+    }
+
+    private static List<String> indexedValues(Map<String, String> params, String prefix) {
+        List<String> values = new ArrayList<>();
+        for (int i = 1; params.containsKey(prefix + i); i++) {
+            values.add(params.get(prefix + i));
+        }
+        return values;
+    }
+
+    private static List<String> batchEntryPrefixes(Map<String, String> params, String prefix) {
+        List<String> prefixes = new ArrayList<>();
+        for (int i = 1; params.containsKey(prefix + i + ".Id"); i++) {
+            prefixes.add(prefix + i + ".");
+        }
+        return prefixes;
+    }
+
+    private static Map<String, MessageAttribute> parseAttributes(Map<String, String> params, String prefix) {
+        Map<String, MessageAttribute> attributes = new TreeMap<>();
+        for (int i = 1; params.containsKey(prefix + "MessageAttribute." + i + ".Name"); i++) {
+            String attributePrefix = prefix + "MessageAttribute." + i + ".";
+            attributes.put(params.get(attributePrefix + "Name"), new MessageAttribute(
+                    params.get(attributePrefix + "Value.DataType"),
+                    params.get(attributePrefix + "Value.StringValue"),
+                    params.get(attributePrefix + "Value.BinaryValue")));
+        }
+        return attributes;
+    }
+
+    private static boolean isSelected(String name, List<String> requested) {
+        for (String pattern : requested) {
+            if (pattern.equals("All") || pattern.equals(".*") || pattern.equals(name)
+                    || (pattern.endsWith(".*") && name.startsWith(pattern.substring(0, pattern.length() - 1)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String md5(String value) {
+        return hex(digest("MD5").digest(value.getBytes(UTF_8)));
+    }
+
+    /*
+     * The checksum the sdk verifies for message attributes: for every attribute sorted by name, the
+     * length-prefixed name and data type, a transport type byte and the length-prefixed value.
+     */
+    static String md5OfAttributes(Map<String, MessageAttribute> attributes) {
+        MessageDigest md5 = digest("MD5");
+        for (Map.Entry<String, MessageAttribute> attribute : new TreeMap<>(attributes).entrySet()) {
+            MessageAttribute value = attribute.getValue();
+            updateLengthAndBytes(md5, attribute.getKey().getBytes(UTF_8));
+            updateLengthAndBytes(md5, value.dataType.getBytes(UTF_8));
+            if (value.stringValue != null) {
+                md5.update((byte) 1);
+                updateLengthAndBytes(md5, value.stringValue.getBytes(UTF_8));
+            } else if (value.binaryValue != null) {
+                md5.update((byte) 2);
+                updateLengthAndBytes(md5, Base64.getDecoder().decode(value.binaryValue));
+            }
+        }
+        return hex(md5.digest());
+    }
+
+    private static void updateLengthAndBytes(MessageDigest digest, byte[] bytes) {
+        digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+
+    private static MessageDigest digest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    escaped.append("&amp;");
+                    break;
+                case '<':
+                    escaped.append("&lt;");
+                    break;
+                case '>':
+                    escaped.append("&gt;");
+                    break;
+                case '"':
+                    escaped.append("&quot;");
+                    break;
+                case '\r':
+                    escaped.append("&#13;");
+                    break;
+                default:
+                    escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private enum MessageState {
+        VISIBLE, IN_FLIGHT, DELAYED
+    }
+
+    private static final class SQSError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private final String code;
+
+        SQSError(String code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+
+    private static final class MessageAttribute {
+        private final String dataType;
+        private final String stringValue;
+        private final String binaryValue;
+
+        MessageAttribute(String dataType, String stringValue, String binaryValue) {
+            this.dataType = dataType;
+            this.stringValue = stringValue;
+            this.binaryValue = binaryValue;
+        }
+
+        String toXml() {
+            StringBuilder xml = new StringBuilder("<Value>");
+            if (stringValue != null) {
+                xml.append("<StringValue>").append(escape(stringValue)).append("</StringValue>");
+            } else if (binaryValue != null) {
+                xml.append("<BinaryValue>").append(binaryValue).append("</BinaryValue>");
+            }
+            return xml.append("<DataType>").append(escape(dataType)).append("</DataType></Value>").toString();
+        }
+    }
+
+    private static final class SimulatedMessage {
+        private final String messageId = UUID.randomUUID().toString();
+        private final String body;
+        private final Map<String, MessageAttribute> attributes;
+        private final long sentTimestamp = System.currentTimeMillis();
+        private final String groupId;
+        private final String sequenceNumber;
+        private long visibleAt;
+        private String receiptHandle;
+        private int receiveCount;
+        private long firstReceiveTimestamp;
+
+        SimulatedMessage(String body, Map<String, MessageAttribute> attributes, String groupId,
+                         String sequenceNumber, long visibleAt) {
+            this.body = body;
+            this.attributes = attributes;
+            this.groupId = groupId;
+            this.sequenceNumber = sequenceNumber;
+            this.visibleAt = visibleAt;
+        }
+
+        MessageState state(long now) {
+            if (visibleAt <= now) {
+                return MessageState.VISIBLE;
+            }
+            return receiptHandle == null ? MessageState.DELAYED : MessageState.IN_FLIGHT;
+        }
+
+        Map<String, String> systemAttributes(List<String> names) {
+            Map<String, String> all = new LinkedHashMap<>();
+            all.put("SentTimestamp", String.valueOf(sentTimestamp));
+            all.put("ApproximateReceiveCount", String.valueOf(receiveCount));
+            all.put("ApproximateFirstReceiveTimestamp", String.valueOf(firstReceiveTimestamp));
+            all.put("SenderId", ACCOUNT_ID);
+            if (groupId != null) {
+                all.put("MessageGroupId", groupId);
+                all.put("SequenceNumber", sequenceNumber);
+            }
+            if (names.contains("All")) {
+                return all;
+            }
+            Map<String, String> selected = new LinkedHashMap<>();
+            for (String name : names) {
+                if (all.containsKey(name)) {
+                    selected.put(name, all.get(name));
+                }
+            }
+            return selected;
+        }
+    }
+
+    /*
+     * Standard queues keep the visible messages in arrival order in a ready deque and the delayed or in-flight
+     * ones in a queue ordered by the time they become visible, so receives and deletes stay cheap with a deep
+     * backlog. FIFO queues scan all messages in order, because a message group is blocked by its oldest message.
+     */
+    private final class SimulatedQueue {
+        private final String name;
+        private final String url;
+        private final boolean fifo;
+        private final boolean contentBasedDeduplication;
+        private final int visibilityTimeoutSeconds;
+        private final int delaySeconds;
+        private final Map<String, SimulatedMessage> messages = new LinkedHashMap<>();
+        private final Map<String, SimulatedMessage> inFlight = new HashMap<>();
+        private final Deque<SimulatedMessage> ready = new ArrayDeque<>();
+        private final PriorityQueue<Invisible> invisible =
+                new PriorityQueue<>(Comparator.comparingLong((Invisible entry) -> entry.visibleAt));
+        private final Map<String, SimulatedMessage> deduplicated = new HashMap<>();
+        private final Map<String, Long> deduplicationExpiry = new HashMap<>();
+        private long sequence;
+
+        SimulatedQueue(String name, Map<String, String> attributes) {
+            this.name = name;
+            this.url = getEndpoint() + "/" + ACCOUNT_ID + "/" + name;
+            this.fifo = name.endsWith(".fifo") || Boolean.parseBoolean(attributes.get("FifoQueue"));
+            this.contentBasedDeduplication = Boolean.parseBoolean(attributes.get("ContentBasedDeduplication"));
+            this.visibilityTimeoutSeconds = Integer.parseInt(attributes.getOrDefault("VisibilityTimeout",
+                    String.valueOf(DEFAULT_VISIBILITY_TIMEOUT_SECONDS)));
+            this.delaySeconds = Integer.parseInt(attributes.getOrDefault("DelaySeconds", "0"));
+        }
+
+        synchronized SimulatedMessage send(Map<String, String> params, String prefix) {
+            String body = params.get(prefix + "MessageBody");
+            if (body == null || body.isEmpty()) {
+                throw new SQSError("MissingParameter", "The request must contain the parameter MessageBody.");
+            }
+            long now = System.currentTimeMillis();
+            String groupId = params.get(prefix + "MessageGroupId");
+            String deduplicationId = null;
+            if (fifo) {
+                if (groupId == null) {
+                    throw new SQSError("MissingParameter", "The request must contain the parameter MessageGroupId.");
+                }
+                deduplicationId = params.get(prefix + "MessageDeduplicationId");
+                if (deduplicationId == null && contentBasedDeduplication) {
+                    deduplicationId = hex(digest("SHA-256").digest(body.getBytes(UTF_8)));
+                }
+                if (deduplicationId == null) {
+                    throw new SQSError("InvalidParameterValue", "The queue should either have "
+                            + "ContentBasedDeduplication enabled or MessageDeduplicationId provided explicitly");
+                }
+                deduplicationExpiry.values().removeIf(expiry -> expiry < now);
+                deduplicated.keySet().retainAll(deduplicationExpiry.keySet());
+                SimulatedMessage duplicate = deduplicated.get(deduplicationId);
+                if (duplicate != null) {
+                    return duplicate;
+                }
+            }
+            int delay = Integer.parseInt(params.getOrDefault(prefix + "DelaySeconds", String.valueOf(delaySeconds)));
+            SimulatedMessage message = new SimulatedMessage(body, parseAttributes(params, prefix),
+                    fifo ? groupId : null, fifo ? String.format("%020d", ++sequence) : null, now + delay * 1000L);
+            messages.put(message.messageId, message);
+            if (!fifo) {
+                if (delay > 0) {
+                    invisible.add(new Invisible(message));
+                } else {
+                    ready.add(message);
+                }
+            }
+            if (deduplicationId != null) {
+                deduplicated.put(deduplicationId, message);
+                deduplicationExpiry.put(deduplicationId, now + DEDUPLICATION_INTERVAL_MILLIS);
+            }
+            notifyAll();
+            return message;
+        }
+
+        synchronized List<SimulatedMessage> receive(int maxMessages, long waitMillis, int visibilityTimeout)
+                throws InterruptedException {
+            long deadline = System.currentTimeMillis() + waitMillis;
+            while (true) {
+                List<SimulatedMessage> received = fifo
+                        ? pickFifo(maxMessages, visibilityTimeout) : pick(maxMessages, visibilityTimeout);
+                long remaining = deadline - System.currentTimeMillis();
+                if (!received.isEmpty() || remaining <= 0) {
+                    return received;
+                }
+                // also wake up now and then to notice expired visibility timeouts and delays
+                wait(Math.min(remaining, MAX_POLL_STEP_MILLIS));
+            }
+        }
+
+        private List<SimulatedMessage> pick(int maxMessages, int visibilityTimeout) {
+            long now = System.currentTimeMillis();
+            while (!invisible.isEmpty() && invisible.peek().visibleAt <= now) {
+                Invisible entry = invisible.poll();
+                if (entry.isCurrent()) {
+                    ready.add(entry.message);
+                }
+            }
+            List<SimulatedMessage> received = new ArrayList<>();
+            while (received.size() < maxMessages && !ready.isEmpty()) {
+                SimulatedMessage message = ready.poll();
+                // deleted messages are dropped, hidden ones come back through the invisible queue
+                if (messages.containsKey(message.messageId) && message.state(now) == MessageState.VISIBLE) {
+                    markReceived(message, now, visibilityTimeout);
+                    invisible.add(new Invisible(message));
+                    received.add(message);
+                }
+            }
+            return received;
+        }
+
+        private List<SimulatedMessage> pickFifo(int maxMessages, int visibilityTimeout) {
+            long now = System.currentTimeMillis();
+            Set<String> lockedGroups = new HashSet<>();
+            for (SimulatedMessage message : messages.values()) {
+                if (message.state(now) == MessageState.IN_FLIGHT) {
+                    lockedGroups.add(message.groupId);
+                }
+            }
+            List<SimulatedMessage> received = new ArrayList<>();
+            for (SimulatedMessage message : messages.values()) {
+                if (received.size() >= maxMessages) {
+                    break;
+                }
+                if (message.state(now) != MessageState.VISIBLE) {
+                    // later messages of the group must wait for this one
+                    lockedGroups.add(message.groupId);
+                } else if (!lockedGroups.contains(message.groupId)) {
+                    markReceived(message, now, visibilityTimeout);
+                    received.add(message);
+                }
+            }
+            return received;
+        }
+
+        private void markReceived(SimulatedMessage message, long now, int visibilityTimeout) {
+            if (message.receiptHandle != null) {
+                inFlight.remove(message.receiptHandle);
+            }
+            message.receiptHandle = UUID.randomUUID().toString();
+            message.visibleAt = now + visibilityTimeout * 1000L;
+            message.receiveCount++;
+            if (message.firstReceiveTimestamp == 0) {
+                message.firstReceiveTimestamp = now;
+            }
+            inFlight.put(message.receiptHandle, message);
+        }
+
+        synchronized void delete(String receiptHandle) {
+            SimulatedMessage message = inFlight.remove(receiptHandle);
+            if (message != null) {
+                messages.remove(message.messageId);
+                notifyAll();
+            }
+        }
+
+        synchronized void changeVisibility(String receiptHandle, int visibilityTimeout) {
+            SimulatedMessage message = inFlight.get(receiptHandle);
+            if (message == null) {
+                throw new SQSError("InvalidParameterValue", "Value " + receiptHandle + " for parameter "
+                        + "ReceiptHandle is invalid. Reason: Message does not exist or is not available for "
+                        + "visibility timeout change.");
+            }
+            message.visibleAt = System.currentTimeMillis() + visibilityTimeout * 1000L;
+            if (!fifo) {
+                invisible.add(new Invisible(message));
+            }
+            notifyAll();
+        }
+
+        synchronized void purge() {
+            messages.clear();
+            inFlight.clear();
+            ready.clear();
+            invisible.clear();
+        }
+
+        synchronized int count(MessageState state) {
+            return countLocked(state);
+        }
+
+        int countLocked(MessageState state) {
+            long now = System.currentTimeMillis();
+            int count = 0;
+            for (SimulatedMessage message : messages.values()) {
+                if (message.state(now) == state) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /*
+         * An entry of the invisible queue. It is stale once the message was deleted or its visibility changed.
+         */
+        private final class Invisible {
+            private final SimulatedMessage message;
+            private final long visibleAt;
+
+            Invisible(SimulatedMessage message) {
+                this.message = message;
+                this.visibleAt = message.visibleAt;
+            }
+
+            boolean isCurrent() {
+                return message.visibleAt == visibleAt && messages.containsKey(message.messageId);
+            }
+        }
+    }
+}
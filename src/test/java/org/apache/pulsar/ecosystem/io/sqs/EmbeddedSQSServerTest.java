@@ -0,0 +1,600 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.pulsar.client.api.schema.GenericRecord;
+import org.apache.pulsar.functions.api.Record;
+import org.apache.pulsar.io.core.SourceContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test {@link EmbeddedSQSServer}, and the connector running against it.
+ */
+public class EmbeddedSQSServerTest {
+
+    private static final String QUEUE = "embedded-queue";
+
+    private EmbeddedSQSServer server;
+    private AmazonSQS client;
+    private String queueUrl;
+
+    @Before
+    public void setup() throws Exception {
+        server = new EmbeddedSQSServer();
+        client = AmazonSQSClientBuilder.standard()
+                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(server.getEndpoint(),
+                        "us-east-1"))
+                .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("key", "secret")))
+                .build();
+        queueUrl = client.createQueue(QUEUE).getQueueUrl();
+    }
+
+    @After
+    public void cleanup() {
+        client.shutdown();
+        server.close();
+    }
+
+    /*
+     * Test Case: a message is received with its attributes, hidden while in flight and gone once deleted.
+     */
+    @Test
+    public void testSendReceiveDelete() {
+        Map<String, MessageAttributeValue> attributes = new HashMap<>();
+        attributes.put("color", new MessageAttributeValue().withDataType("String").withStringValue("blue"));
+        client.sendMessage(new SendMessageRequest(queueUrl, "hello & <welcome>")
+                .withMessageAttributes(attributes));
+
+        List<Message> messages = client.receiveMessage(new ReceiveMessageRequest(queueUrl)
+                .withMessageAttributeNames("All")
+                .withAttributeNames("SentTimestamp")).getMessages();
+        assertEquals(1, messages.size());
+        assertEquals("hello & <welcome>", messages.get(0).getBody());
+        assertEquals("blue", messages.get(0).getMessageAttributes().get("color").getStringValue());
+        assertTrue(messages.get(0).getAttributes().containsKey("SentTimestamp"));
+        assertEquals(1, server.getInFlightMessageCount(QUEUE));
+        assertEquals(0, client.receiveMessage(queueUrl).getMessages().size());
+
+        client.deleteMessage(queueUrl, messages.get(0).getReceiptHandle());
+        assertEquals(0, server.getMessageCount(QUEUE));
+    }
+
+    /*
+     * Test Case: a message becomes visible again when its visibility is reset.
+     */
+    @Test
+    public void testVisibilityTimeout() {
+        client.sendMessage(queueUrl, "retry-me");
+        Message message = client.receiveMessage(queueUrl).getMessages().get(0);
+        client.changeMessageVisibility(queueUrl, message.getReceiptHandle(), 0);
+
+        List<Message> redelivered = client.receiveMessage(new ReceiveMessageRequest(queueUrl)
+                .withAttributeNames("ApproximateReceiveCount")).getMessages();
+        assertEquals(1, redelivered.size());
+        assertEquals("2", redelivered.get(0).getAttributes().get("ApproximateReceiveCount"));
+    }
+
+    /*
+     * Test Case: a FIFO queue keeps the order of a group, blocks it while in flight and drops duplicates.
+     */
+    @Test
+    public void testFifoQueue() {
+        String fifoUrl = client.createQueue("embedded-queue.fifo").getQueueUrl();
+        for (String body : new String[]{"first", "second", "first"}) {
+            client.sendMessage(new SendMessageRequest(fifoUrl, body)
+                    .withMessageGroupId("group")
+                    .withMessageDeduplicationId(body));
+        }
+        assertEquals(2, server.getMessageCount("embedded-queue.fifo"));
+
+        Message first = client.receiveMessage(fifoUrl).getMessages().get(0);
+        assertEquals("first", first.getBody());
+        // the group is blocked while its first message is in flight
+        assertEquals(0, client.receiveMessage(fifoUrl).getMessages().size());
+        client.deleteMessage(fifoUrl, first.getReceiptHandle());
+        assertEquals("second", client.receiveMessage(fifoUrl).getMessages().get(0).getBody());
+    }
+
+    /*
+     * Test Case: injected throttling errors are retried by the client, failed batch entries are reported.
+     */
+    @Test
+    public void testFaultInjection() {
+        server.failNextRequests("SendMessage", 2, EmbeddedSQSServer.Fault.THROTTLING);
+        client.sendMessage(queueUrl, "throttled");
+        assertEquals(3, server.getRequestCount("SendMessage"));
+
+        server.failNextBatchEntries(1);
+        SendMessageBatchResult result = client.sendMessageBatch(new SendMessageBatchRequest(queueUrl).withEntries(
+                new SendMessageBatchRequestEntry("1", "a"), new SendMessageBatchRequestEntry("2", "b")));
+        assertEquals(1, result.getSuccessful().size());
+        assertEquals(1, result.getFailed().size());
+        assertEquals(2, server.getMessageCount(QUEUE));
+    }
+
+    /*
+     * Test Case: the source reads the messages of the stand-in and deletes them once acked.
+     */
+    @Test
+    public void testSourceReadsAndAcks() throws Exception {
+        readAndAck(sourceConfig());
+    }
+
+    /*
+     * Test Case: the source reads from the batches prefetched by its clients.
+     */
+    @Test
+    public void testSourcePrefetch() throws Exception {
+        Map<String, Object> properties = sourceConfig();
+        properties.put("prefetchEnabled", true);
+        properties.put("prefetchBatches", 2);
+        readAndAck(properties);
+    }
+
+    /*
+     * Test Case: the source reads and acks records whose values wait in the off-heap body pool.
+     */
+    @Test
+    public void testSourceOffHeapBodies() throws Exception {
+        Map<String, Object> properties = sourceConfig();
+        // room for 8 messages of a chunk each, less than a batch of both consumers
+        properties.put("offHeapBodyPoolBytes", 8 * 64);
+        properties.put("offHeapBodyChunkBytes", 64);
+        readAndAck(properties);
+    }
+
+    /*
+     * Test Case: the source captures the messages it receives with the time they were sent, to a file of its
+     * instance.
+     */
+    @Test
+    public void testSourceCapture() throws Exception {
+        Path captureDirectory = Files.createTempDirectory("sqs-capture");
+        Path captureFile = captureDirectory.resolve("capture-0.gz");
+        try {
+            Map<String, Object> properties = sourceConfig();
+            properties.put("captureFile", captureDirectory.resolve("capture.gz").toString());
+            long start = System.currentTimeMillis();
+            readAndAck(properties);
+
+            int captured = 0;
+            try (SQSTrafficCapture.Reader reader = new SQSTrafficCapture.Reader(captureFile)) {
+                for (SQSTrafficCapture.CapturedMessage message = reader.next(); message != null;
+                     message = reader.next()) {
+                    assertTrue(message.getBody().startsWith("message-"));
+                    assertTrue(message.getTimestampMillis() >= start - 1000);
+                    captured++;
+                }
+            }
+            assertEquals(20, captured);
+        } finally {
+            Files.deleteIfExists(captureFile);
+            Files.delete(captureDirectory);
+        }
+    }
+
+    /*
+     * Test Case: a source that cannot reach its queue on open does not leave a capture file behind.
+     */
+    @Test
+    public void testSourceCaptureNotOpenedOnFailedOpen() throws Exception {
+        Path captureDirectory = Files.createTempDirectory("sqs-capture");
+        try {
+            Map<String, Object> properties = sourceConfig();
+            // nothing listens on port 1
+            properties.put("awsEndpoint", "http://localhost:1");
+            properties.put("captureFile", captureDirectory.resolve("capture.gz").toString());
+            SourceContext context = mock(SourceContext.class);
+            when(context.getOutputTopic()).thenReturn("mock-topic");
+            SQSSource source = new SQSSource();
+            try {
+                source.open(properties, context);
+                fail("the queue cannot be reached");
+            } catch (AmazonClientException e) {
+                // expected
+            }
+            assertFalse(Files.exists(captureDirectory.resolve("capture-0.gz")));
+        } finally {
+            Files.delete(captureDirectory);
+        }
+    }
+
+    /*
+     * Test Case: a source resolves its queue url once on open, a restarted one resolves it again as the cache is
+     * not shared between connectors, and the warm-up opens the connections.
+     */
+    @Test
+    public void testSourceStartup() throws Exception {
+        Map<String, Object> properties = sourceConfig();
+        properties.put("clientPoolSize", 3);
+        properties.put("warmUpConnections", 2);
+        client.sendMessage(queueUrl, "message-0");
+
+        for (int restart = 0; restart < 2; restart++) {
+            SourceContext context = mock(SourceContext.class);
+            when(context.getOutputTopic()).thenReturn("mock-topic");
+            long attributeRequests = server.getRequestCount("GetQueueAttributes");
+            long resolved = server.getRequestCount("GetQueueUrl");
+            SQSSource source = new SQSSource();
+            source.open(properties, context);
+            try {
+                // 2 connections on each of the 3 clients, the clients may look up the visibility timeout on top
+                assertTrue(server.getRequestCount("GetQueueAttributes") - attributeRequests >= 6);
+                assertEquals(resolved + 1, server.getRequestCount("GetQueueUrl"));
+                if (restart == 0) {
+                    source.read().ack();
+                    verify(context).recordMetric(eq(SQSAbstractConnector.METRICS_STARTUP_MILLIS), anyDouble());
+                    verify(context).recordMetric(eq("_sqs_source_time_to_first_record_millis_"), anyDouble());
+                }
+            } finally {
+                source.close();
+            }
+        }
+    }
+
+    /*
+     * Test Case: on close the source makes the messages it did not hand out visible again and frees their bodies.
+     */
+    @Test
+    public void testSourceDrainOnClose() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            client.sendMessage(queueUrl, "message-" + i);
+        }
+        Map<String, Object> properties = sourceConfig();
+        properties.put("drainOnClose", true);
+        properties.put("drainTimeoutMillis", 3000);
+        properties.put("offHeapBodyPoolBytes", 64 * 1024);
+        SourceContext context = mock(SourceContext.class);
+        when(context.getOutputTopic()).thenReturn("mock-topic");
+
+        SQSSource source = new SQSSource();
+        source.open(properties, context);
+        for (int i = 0; i < 5; i++) {
+            source.read().ack();
+        }
+        source.close();
+
+        assertEquals(15, server.getMessageCount(QUEUE));
+        assertEquals(15, server.getVisibleMessageCount(QUEUE));
+        // the bodies of the records that were never read went back to the pool
+        assertEquals(source.getBodyPool().getCapacityBytes(), source.getBodyPool().getFreeBytes());
+    }
+
+    /*
+     * Test Case: a duplicate that arrives while the original is in flight is left alone, so it is still
+     * delivered when the original fails.
+     */
+    @Test
+    public void testSourceDedupKeepsDuplicateOfFailedMessage() throws Exception {
+        String dedupQueueUrl = client.createQueue(new CreateQueueRequest("dedup-queue")
+                .addAttributesEntry("VisibilityTimeout", "1")).getQueueUrl();
+        for (String body : new String[]{"original", "duplicate"}) {
+            client.sendMessage(new SendMessageRequest(dedupQueueUrl, body)
+                    .addMessageAttributesEntry("orderId", new MessageAttributeValue()
+                            .withDataType("String").withStringValue("order-1")));
+        }
+        Map<String, Object> properties = sourceConfig();
+        properties.put("queueName", "dedup-queue");
+        properties.put("numberOfConsumers", 1);
+        properties.put("dedupEnabled", true);
+        properties.put("dedupAttribute", "orderId");
+        SourceContext context = mock(SourceContext.class);
+        when(context.getOutputTopic()).thenReturn("mock-topic");
+
+        SQSSource source = new SQSSource();
+        source.open(properties, context);
+        try {
+            Record<byte[]> original = source.read();
+            assertEquals("original", new String(original.getValue(), StandardCharsets.UTF_8));
+            verify(context, timeout(10_000)).recordMetric("_sqs_source_dedup_in_flight_", 1);
+            assertEquals(2, server.getMessageCount("dedup-queue"));
+
+            original.fail();
+            // the duplicate comes back once its visibility timeout lapses, while the original stays hidden longer
+            Record<byte[]> redelivered = source.read();
+            assertEquals("duplicate", new String(redelivered.getValue(), StandardCharsets.UTF_8));
+            redelivered.ack();
+        } finally {
+            source.close();
+        }
+    }
+
+    /*
+     * Test Case: the sink fails an endpoint over after the threshold of failed sends and sends to the other one.
+     */
+    @Test
+    public void testSinkEndpointFailover() throws Exception {
+        EmbeddedSQSServer secondServer = new EmbeddedSQSServer();
+        SQSSink sink = new SQSSink();
+        try {
+            secondServer.createQueue(QUEUE);
+            Map<String, Object> properties = sourceConfig();
+            properties.put("endpoints", Arrays.asList(endpoint(server), endpoint(secondServer)));
+            properties.put("endpointFailureThreshold", 2);
+            sink.open(properties, null);
+            server.setServerErrorRate(1.0);
+
+            AtomicInteger failed = new AtomicInteger();
+            for (int i = 0; i < 10; i++) {
+                CountDownLatch done = new CountDownLatch(1);
+                Record<GenericRecord> record = sinkRecord("message-" + i);
+                doAnswer(invocation -> {
+                    done.countDown();
+                    return null;
+                }).when(record).ack();
+                doAnswer(invocation -> {
+                    failed.incrementAndGet();
+                    done.countDown();
+                    return null;
+                }).when(record).fail();
+                sink.write(record);
+                assertTrue(done.await(30, TimeUnit.SECONDS));
+            }
+
+            assertEquals(2, failed.get());
+            assertEquals(8, secondServer.getMessageCount(QUEUE));
+        } finally {
+            sink.close();
+            secondServer.close();
+        }
+    }
+
+    /*
+     * Test Case: the source consumes the queues of all its endpoints and deletes every message where it came from.
+     */
+    @Test
+    public void testSourceConsumesAllEndpoints() throws Exception {
+        EmbeddedSQSServer secondServer = new EmbeddedSQSServer();
+        SQSSource source = new SQSSource();
+        try {
+            String secondQueueUrl = secondServer.createQueue(QUEUE);
+            for (int i = 0; i < 5; i++) {
+                client.sendMessage(queueUrl, "message-" + i);
+            }
+            Map<String, Object> properties = sourceConfig();
+            properties.put("endpoints", Arrays.asList(endpoint(server), endpoint(secondServer)));
+            properties.put("numberOfConsumers", 1);
+            SourceContext context = mock(SourceContext.class);
+            when(context.getOutputTopic()).thenReturn("mock-topic");
+            source.open(properties, context);
+            assertEquals(1, source.getNumberOfRunningConsumers());
+
+            AmazonSQS secondClient = AmazonSQSClientBuilder.standard()
+                    .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(secondServer.getEndpoint(),
+                            "us-east-1"))
+                    .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("key", "secret")))
+                    .build();
+            for (int i = 5; i < 10; i++) {
+                secondClient.sendMessage(secondQueueUrl, "message-" + i);
+            }
+            secondClient.shutdown();
+
+            for (int i = 0; i < 10; i++) {
+                source.read().ack();
+            }
+            long deadline = System.currentTimeMillis() + 10_000;
+            while ((server.getMessageCount(QUEUE) > 0 || secondServer.getMessageCount(QUEUE) > 0)
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(0, server.getMessageCount(QUEUE));
+            assertEquals(0, secondServer.getMessageCount(QUEUE));
+        } finally {
+            source.close();
+            secondServer.close();
+        }
+    }
+
+    /*
+     * Test Case: with a spill log the sink acks the records once they are on disk, and sends them on while
+     * SQS is failing.
+     */
+    @Test
+    public void testSinkSpill() throws Exception {
+        Path spillDirectory = Files.createTempDirectory("sqs-spill");
+        SQSSink sink = new SQSSink();
+        try {
+            Map<String, Object> properties = sourceConfig();
+            properties.put("spillEnabled", true);
+            properties.put("spillDirectory", spillDirectory.toString());
+            properties.put("spillFsyncPolicy", "ALWAYS");
+            sink.open(properties, null);
+            // more failures than the client retries, so the sink retries the batch itself
+            server.failNextRequests("SendMessageBatch", 6, EmbeddedSQSServer.Fault.SERVICE_UNAVAILABLE);
+
+            CountDownLatch acked = new CountDownLatch(10);
+            for (int i = 0; i < 10; i++) {
+                Record<GenericRecord> record = sinkRecord("message-" + i);
+                doAnswer(invocation -> {
+                    acked.countDown();
+                    return null;
+                }).when(record).ack();
+                sink.write(record);
+            }
+            assertTrue(acked.await(5, TimeUnit.SECONDS));
+
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (server.getMessageCount(QUEUE) < 10 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(10, server.getMessageCount(QUEUE));
+        } finally {
+            sink.close();
+            try (Stream<Path> files = Files.walk(spillDirectory)) {
+                for (Path path : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    /*
+     * Test Case: the spilled messages SQS rejects as the fault of the sender are dropped, so they do not block
+     * the spill log, and are not sent again after a restart.
+     */
+    @Test
+    public void testSinkSpillDropsRejectedMessages() throws Exception {
+        Path spillDirectory = Files.createTempDirectory("sqs-spill");
+        // a message without a group id is rejected by a FIFO queue
+        client.createQueue("embedded-queue.fifo");
+        try {
+            Map<String, Object> properties = sourceConfig();
+            properties.put("spillEnabled", true);
+            properties.put("spillDirectory", spillDirectory.toString());
+            properties.put("spillFsyncPolicy", "ALWAYS");
+            properties.put("drainOnClose", true);
+            properties.put("drainTimeoutMillis", 10_000);
+            properties.put("queueName", "embedded-queue.fifo");
+            SQSSink sink = new SQSSink();
+            sink.open(properties, null);
+            CountDownLatch acked = new CountDownLatch(5);
+            for (int i = 0; i < 5; i++) {
+                Record<GenericRecord> record = sinkRecord("rejected-" + i);
+                doAnswer(invocation -> {
+                    acked.countDown();
+                    return null;
+                }).when(record).ack();
+                sink.write(record);
+            }
+            assertTrue(acked.await(5, TimeUnit.SECONDS));
+            // waits until the log is drained
+            sink.close();
+
+            properties.put("queueName", QUEUE);
+            sink = new SQSSink();
+            sink.open(properties, null);
+            try {
+                sink.write(sinkRecord("accepted"));
+                long deadline = System.currentTimeMillis() + 10_000;
+                while (server.getMessageCount(QUEUE) < 1 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(50);
+                }
+                Thread.sleep(500);
+            } finally {
+                sink.close();
+            }
+            List<Message> messages = client.receiveMessage(new ReceiveMessageRequest(queueUrl)
+                    .withMaxNumberOfMessages(10)).getMessages();
+            assertEquals(1, messages.size());
+            assertEquals("accepted", messages.get(0).getBody());
+        } finally {
+            try (Stream<Path> files = Files.walk(spillDirectory)) {
+                for (Path path : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    private static Map<String, Object> endpoint(EmbeddedSQSServer endpointServer) {
+        Map<String, Object> endpoint = new HashMap<>();
+        endpoint.put("awsEndpoint", endpointServer.getEndpoint());
+        return endpoint;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Record<GenericRecord> sinkRecord(String body) {
+        org.apache.pulsar.client.api.Message<GenericRecord> message =
+                mock(org.apache.pulsar.client.api.Message.class);
+        when(message.getData()).thenReturn(body.getBytes(StandardCharsets.UTF_8));
+        Record<GenericRecord> record = mock(Record.class);
+        when(record.getKey()).thenReturn(Optional.empty());
+        when(record.getProperties()).thenReturn(Collections.emptyMap());
+        when(record.getMessage()).thenReturn(Optional.of(message));
+        return record;
+    }
+
+    private Map<String, Object> sourceConfig() {
+        Map<String, Object> properties = SQSTestUtils.getTestConfigHashMap();
+        properties.put("awsEndpoint", server.getEndpoint());
+        properties.put("queueName", QUEUE);
+        properties.put("batchSizeOfOnceReceive", 10);
+        properties.put("numberOfConsumers", 2);
+        return properties;
+    }
+
+    private void readAndAck(Map<String, Object> properties) throws Exception {
+        for (int i = 0; i < 20; i++) {
+            client.sendMessage(queueUrl, "message-" + i);
+        }
+
+        SourceContext context = mock(SourceContext.class);
+        when(context.getOutputTopic()).thenReturn("mock-topic");
+
+        SQSSource source = new SQSSource();
+        source.open(properties, context);
+        try {
+            for (int i = 0; i < 20; i++) {
+                Record<byte[]> record = source.read();
+                assertTrue(new String(record.getValue(), StandardCharsets.UTF_8).startsWith("message-"));
+                record.ack();
+            }
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (server.getMessageCount(QUEUE) > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(0, server.getMessageCount(QUEUE));
+        } finally {
+            source.close();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.Test;
+
+/**
+ * Unit test {@link SQSBodyPool}.
+ */
+public class SQSBodyPoolTest {
+
+    private static final int CHUNK = 64;
+
+    /*
+     * Test Case: a value spread over several chunks reads back whole, and its chunks are freed once released.
+     */
+    @Test
+    public void testAllocateAndRelease() throws Exception {
+        SQSBodyPool pool = new SQSBodyPool(10 * CHUNK, CHUNK);
+        byte[] value = value(3 * CHUNK - 1);
+        SQSBodyPool.Body body = pool.allocate(value);
+        byte[] empty = new byte[0];
+        SQSBodyPool.Body emptyBody = pool.allocate(empty);
+        assertEquals(7 * CHUNK, pool.getFreeBytes());
+        assertArrayEquals(value, body.getBytes());
+        assertArrayEquals(empty, emptyBody.getBytes());
+
+        assertTrue(body.release());
+        assertEquals(10 * CHUNK, pool.getFreeBytes());
+        // releasing twice does not free the chunks again
+        assertFalse(body.release());
+        assertEquals(10 * CHUNK, pool.getFreeBytes());
+        try {
+            body.getBytes();
+            throw new AssertionError("a released value must not be read");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    /*
+     * Test Case: a retained value is freed with its last reference.
+     */
+    @Test
+    public void testRetain() throws Exception {
+        SQSBodyPool pool = new SQSBodyPool(10 * CHUNK, CHUNK);
+        SQSBodyPool.Body body = pool.allocate(value(CHUNK)).retain();
+        assertFalse(body.release());
+        assertEquals(9 * CHUNK, pool.getFreeBytes());
+        assertTrue(body.release());
+        assertEquals(10 * CHUNK, pool.getFreeBytes());
+    }
+
+    /*
+     * Test Case: an allocation waits for room, and a value larger than the pool is not pooled at all.
+     */
+    @Test
+    public void testWaitForRoom() throws Exception {
+        SQSBodyPool pool = new SQSBodyPool(2 * CHUNK, CHUNK);
+        assertNull(pool.allocate(value(2 * CHUNK + 1)));
+        SQSBodyPool.Body first = pool.allocate(value(2 * CHUNK));
+
+        CompletableFuture<SQSBodyPool.Body> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.allocate(value(CHUNK));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        try {
+            second.get(200, TimeUnit.MILLISECONDS);
+            throw new AssertionError("the allocation must wait for room");
+        } catch (TimeoutException e) {
+            // expected
+        }
+        first.release();
+        assertArrayEquals(value(CHUNK), second.get(5, TimeUnit.SECONDS).getBytes());
+        assertEquals(CHUNK, pool.getFreeBytes());
+    }
+
+    /*
+     * Test Case: the receives are admitted while the pool holds a batch of values of the average size.
+     */
+    @Test
+    public void testAdmits() throws Exception {
+        SQSBodyPool pool = new SQSBodyPool(10 * CHUNK, CHUNK);
+        assertTrue(pool.admits(10));
+        SQSBodyPool.Body body = pool.allocate(value(2 * CHUNK));
+        // 8 chunks are free and the average value takes 2
+        assertTrue(pool.admits(4));
+        assertFalse(pool.admits(5));
+        // a batch larger than the pool needs all of it
+        assertFalse(pool.admits(100));
+        body.release();
+        assertTrue(pool.admits(100));
+    }
+
+    private static byte[] value(int length) {
+        byte[] value = new byte[length];
+        Arrays.fill(value, (byte) 'x');
+        for (int i = 0; i < length; i += CHUNK) {
+            value[i] = (byte) i;
+        }
+        return value;
+    }
+}
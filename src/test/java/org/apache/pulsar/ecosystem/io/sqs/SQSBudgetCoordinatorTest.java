@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.pulsar.io.core.SourceContext;
+import org.junit.Test;
+
+/**
+ * Unit test {@link SQSBudgetCoordinator}.
+ */
+public class SQSBudgetCoordinatorTest {
+
+    /*
+     * Test Case: every instance keeps the minimum and the rest of the budget follows the demand.
+     */
+    @Test
+    public void testAllocate() {
+        // equal demand splits evenly
+        assertArrayEquals(new int[]{5, 5}, SQSBudgetCoordinator.allocate(10, 1, 50, new double[]{1, 1}));
+        // the busy instance takes the consumers of the idle one
+        assertArrayEquals(new int[]{9, 1}, SQSBudgetCoordinator.allocate(10, 1, 50, new double[]{1, 0}));
+        // an idle cluster runs the minimum only
+        assertArrayEquals(new int[]{1, 1, 1}, SQSBudgetCoordinator.allocate(30, 1, 50, new double[]{0, 0, 0}));
+        // in proportion to the demand, capped at the maximum
+        assertArrayEquals(new int[]{8, 4}, SQSBudgetCoordinator.allocate(12, 1, 50, new double[]{1, 0.5}));
+        assertArrayEquals(new int[]{4, 8}, SQSBudgetCoordinator.allocate(12, 1, 4, new double[]{1, 0.5}));
+        // an instance that did not report keeps the minimum
+        assertArrayEquals(new int[]{2, 8}, SQSBudgetCoordinator.allocate(10, 2, 50, new double[]{-1, 0.2}));
+        // the minimum wins over a budget that is too small
+        assertArrayEquals(new int[]{1, 1}, SQSBudgetCoordinator.allocate(1, 1, 50, new double[]{1, 1}));
+    }
+
+    /*
+     * Test Case: a full buffer takes away the demand, and stale or missing reports do not count.
+     */
+    @Test
+    public void testReports() {
+        assertEquals(0.5, SQSBudgetCoordinator.demand(1, 0.5), 0.001);
+        assertEquals(0, SQSBudgetCoordinator.demand(1, SQSReceiveController.PAUSE_OCCUPANCY), 0.001);
+        ByteBuffer report = SQSBudgetCoordinator.encode(1000, 0.8, 0.5);
+        assertEquals(0.4, SQSBudgetCoordinator.decode(report, 1000), 0.001);
+        assertEquals(-1, SQSBudgetCoordinator.decode(report, 1001), 0.001);
+        assertEquals(-1, SQSBudgetCoordinator.decode(null, 0), 0.001);
+        assertEquals(-1, SQSBudgetCoordinator.decode(ByteBuffer.allocate(4), 0), 0.001);
+    }
+
+    /*
+     * Test Case: two instances sharing a state store move the consumers to the one that receives full batches.
+     */
+    @Test
+    public void testCoordinate() {
+        Map<String, ByteBuffer> state = new HashMap<>();
+        SQSConnectorConfig config = new SQSConnectorConfig();
+        config.setNumberOfConsumers(5);
+        config.setBudgetCoordinationIntervalSeconds(10);
+        SQSSource busy = source(config);
+        SQSSource idle = source(config);
+        SQSBudgetCoordinator busyCoordinator = new SQSBudgetCoordinator(busy, context(state, 0));
+        SQSBudgetCoordinator idleCoordinator = new SQSBudgetCoordinator(idle, context(state, 1));
+
+        doReturn(100L).when(busy).getRequestedMessages();
+        doReturn(100L).when(busy).getReceivedMessages();
+        doReturn(100L).when(idle).getRequestedMessages();
+        doReturn(0L).when(idle).getReceivedMessages();
+        long now = System.currentTimeMillis();
+        // the idle instance reports first and does not know about the busy one yet
+        idleCoordinator.coordinate(now);
+        assertEquals(1, idleCoordinator.getShare());
+        busyCoordinator.coordinate(now);
+        assertEquals(9, busyCoordinator.getShare());
+        verify(busy).resizeConsumers(9);
+        verify(idle).resizeConsumers(1);
+
+        // the report of the busy instance expires
+        idleCoordinator.coordinate(now + 31000);
+        assertEquals(1, idleCoordinator.getShare());
+        verify(idle, never()).resizeConsumers(5);
+    }
+
+    private static SQSSource source(SQSConnectorConfig config) {
+        SQSSource source = mock(SQSSource.class);
+        doReturn(config).when(source).getConfig();
+        doReturn(5).when(source).getNumberOfRunningConsumers();
+        doReturn(0).when(source).getBufferedRecords();
+        doReturn(10000).when(source).getQueueLength();
+        return source;
+    }
+
+    private static SourceContext context(Map<String, ByteBuffer> state, int instanceId) {
+        SourceContext context = mock(SourceContext.class);
+        doReturn(instanceId).when(context).getInstanceId();
+        doReturn(2).when(context).getNumInstances();
+        doAnswer(invocation -> state.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(context).putState(anyString(), any(ByteBuffer.class));
+        doAnswer(invocation -> state.get(invocation.<String>getArgument(0))).when(context).getState(anyString());
+        return context;
+    }
+}
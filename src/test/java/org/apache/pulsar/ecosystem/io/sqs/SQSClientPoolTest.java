@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+import com.amazonaws.services.sqs.buffered.AmazonSQSBufferedAsyncClient;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+/**
+ * Unit test {@link SQSClientPool}.
+ */
+public class SQSClientPoolTest {
+
+    /*
+     * Test Case: requests go to the client with the fewest requests in flight.
+     */
+    @Test
+    public void testAcquireLeastInFlight() {
+        AmazonSQSBufferedAsyncClient first = mock(AmazonSQSBufferedAsyncClient.class);
+        AmazonSQSBufferedAsyncClient second = mock(AmazonSQSBufferedAsyncClient.class);
+        SQSClientPool pool = new SQSClientPool(Arrays.asList(first, second));
+
+        SQSClientPool.PooledClient a = pool.acquire();
+        SQSClientPool.PooledClient b = pool.acquire();
+        assertNotSame(a.getClient(), b.getClient());
+
+        a.release();
+        // only the client of a is idle now
+        SQSClientPool.PooledClient c = pool.acquire();
+        assertSame(a.getClient(), c.getClient());
+        SQSClientPool.PooledClient d = pool.acquire();
+        assertEquals(3, pool.getInFlight(0) + pool.getInFlight(1));
+        d.release();
+        c.release();
+        b.release();
+        assertEquals(0, pool.getInFlight(0) + pool.getInFlight(1));
+    }
+
+    /*
+     * Test Case: the peak of requests in flight and the saturation are reported per client.
+     */
+    @Test
+    public void testReport() {
+        SQSClientPool pool = new SQSClientPool(Arrays.asList(mock(AmazonSQSBufferedAsyncClient.class)));
+        SQSClientPool.PooledClient a = pool.acquire();
+        pool.acquire().release();
+        pool.acquire();
+
+        Map<String, Double> metrics = new HashMap<>();
+        pool.report(metrics::put, 4);
+        assertEquals(3, metrics.get("_sqs_client_0_requests_"), 0.0001);
+        assertEquals(2, metrics.get("_sqs_client_0_in_flight_peak_"), 0.0001);
+        assertEquals(0.5, metrics.get("_sqs_client_0_saturation_"), 0.0001);
+
+        a.release();
+        metrics.clear();
+        pool.report(metrics::put, 4);
+        // the peak starts over from the requests still in flight at the previous report
+        assertEquals(2, metrics.get("_sqs_client_0_in_flight_peak_"), 0.0001);
+        metrics.clear();
+        pool.report(metrics::put, 4);
+        assertEquals(1, metrics.get("_sqs_client_0_in_flight_peak_"), 0.0001);
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/**
+ * Unit test {@link SQSConfigWatcher}.
+ */
+public class SQSConfigWatcherTest {
+
+    /*
+     * Test Case: an override is applied once it changes, and the options it leaves out go back to their
+     * configured values.
+     */
+    @Test
+    public void testApplyOverride() throws Exception {
+        SQSSource source = source();
+        Map<String, ByteBuffer> state = new HashMap<>();
+        SQSConfigWatcher watcher = new SQSConfigWatcher(source, state::get);
+
+        watcher.poll();
+        verify(source, times(0)).resizeConsumers(anyInt());
+
+        state.put(SQSConfigWatcher.STATE_KEY, override("{\"numberOfConsumers\": 20, \"batchSizeOfOnceReceive\": 5}"));
+        watcher.poll();
+        verify(source).resizeConsumers(20);
+        assertEquals(20, source.getConfig().getNumberOfConsumers());
+        assertEquals(5, source.getReceiveBatchSize());
+
+        // the same override is not applied again
+        watcher.poll();
+        verify(source, times(1)).resizeConsumers(20);
+
+        state.put(SQSConfigWatcher.STATE_KEY, override("{\"batchSizeOfOnceReceive\": 10}"));
+        watcher.poll();
+        verify(source).resizeConsumers(2);
+        assertEquals(2, source.getConfig().getNumberOfConsumers());
+        assertEquals(10, source.getReceiveBatchSize());
+
+        state.remove(SQSConfigWatcher.STATE_KEY);
+        watcher.poll();
+        assertEquals(1, source.getReceiveBatchSize());
+        assertEquals(1, source.getConfig().getBatchSizeOfOnceReceive());
+    }
+
+    /*
+     * Test Case: options that are not valid or cannot change at runtime keep their value, and a broken override
+     * changes nothing.
+     */
+    @Test
+    public void testRejectOverride() throws Exception {
+        SQSSource source = source();
+        Map<String, ByteBuffer> state = new HashMap<>();
+        SQSConfigWatcher watcher = new SQSConfigWatcher(source, state::get);
+
+        state.put(SQSConfigWatcher.STATE_KEY, override("{\"numberOfConsumers\": 0, \"batchSizeOfOnceReceive\": 2.5,"
+                + " \"queueName\": \"other\", \"maxPendingSends\": 10, \"batchSizeOfOnceReceive2\": 3}"));
+        watcher.poll();
+        verify(source, times(0)).resizeConsumers(anyInt());
+        assertEquals(2, source.getConfig().getNumberOfConsumers());
+        assertEquals(1, source.getReceiveBatchSize());
+        assertEquals("test-queue", source.getConfig().getQueueName());
+        // the sink option is not applied by the source
+        assertEquals(0, source.getConfig().getMaxPendingSends());
+
+        state.put(SQSConfigWatcher.STATE_KEY, override("{\"batchSizeOfOnceReceive\": "));
+        watcher.run();
+        assertEquals(1, source.getReceiveBatchSize());
+    }
+
+    /*
+     * Test Case: a state store that cannot be read is read again after a growing number of intervals, and at
+     * every interval once it can be read.
+     */
+    @Test
+    public void testBackoffWhenStateFails() throws Exception {
+        SQSSource source = source();
+        AtomicBoolean failing = new AtomicBoolean(true);
+        AtomicInteger reads = new AtomicInteger();
+        SQSConfigWatcher watcher = new SQSConfigWatcher(source, key -> {
+            reads.incrementAndGet();
+            if (failing.get()) {
+                throw new IllegalStateException("State storage is not enabled");
+            }
+            return override("{\"numberOfConsumers\": 20}");
+        });
+
+        // read at the runs 1, 3, 6, 11, 20, 37 and 70 as the skipped intervals double, then at every 65th run
+        for (int i = 1; i <= 70 + 3 * (SQSConfigWatcher.MAX_BACKOFF_INTERVALS + 1); i++) {
+            watcher.run();
+        }
+        assertEquals(10, reads.get());
+        verify(source, times(0)).resizeConsumers(anyInt());
+
+        failing.set(false);
+        for (int i = 0; i <= SQSConfigWatcher.MAX_BACKOFF_INTERVALS; i++) {
+            watcher.run();
+        }
+        assertEquals(11, reads.get());
+        verify(source).resizeConsumers(20);
+        watcher.run();
+        assertEquals(12, reads.get());
+    }
+
+    private static SQSSource source() {
+        SQSConnectorConfig config = new SQSConnectorConfig();
+        config.setQueueName("test-queue");
+        config.setNumberOfConsumers(2);
+        config.setBatchSizeOfOnceReceive(1);
+        config.setConfigOverrideIntervalSeconds(10);
+        SQSSource source = spy(new SQSSource());
+        source.setConfig(config);
+        source.prepareQueue("persistent://public/default/test");
+        doNothing().when(source).resizeConsumers(anyInt());
+        return source;
+    }
+
+    private static ByteBuffer override(String json) {
+        return ByteBuffer.wrap(json.getBytes(UTF_8));
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.pulsar.functions.api.Record;
+import org.junit.Test;
+
+/**
+ * Unit test {@link SQSConflator}.
+ */
+public class SQSConflatorTest {
+
+    @SuppressWarnings("unchecked")
+    private static Record<String> record() {
+        return mock(Record.class);
+    }
+
+    /*
+     * Test Case: only the latest record of a key is sent, with the records it replaced, in the order of the keys.
+     */
+    @Test
+    public void testLastValueWins() {
+        Map<Record<String>, List<Record<String>>> sent = new LinkedHashMap<>();
+        SQSConflator<String> conflator = new SQSConflator<>(100, sent::put);
+        Record<String> a1 = record();
+        Record<String> b1 = record();
+        Record<String> a2 = record();
+        Record<String> a3 = record();
+        conflator.offer("a", a1);
+        conflator.offer("b", b1);
+        conflator.offer("a", a2);
+        conflator.offer("a", a3);
+        assertEquals(2, conflator.size());
+        assertEquals(0, sent.size());
+
+        conflator.flush();
+        assertEquals(Arrays.asList(a3, b1), new ArrayList<>(sent.keySet()));
+        assertEquals(Arrays.asList(a1, a2), sent.get(a3));
+        assertEquals(0, sent.get(b1).size());
+        assertEquals(2, conflator.getAndResetConflated());
+        assertEquals(0, conflator.size());
+    }
+
+    /*
+     * Test Case: a full window is sent at once.
+     */
+    @Test
+    public void testMaxKeys() {
+        List<Record<String>> sent = new ArrayList<>();
+        SQSConflator<String> conflator = new SQSConflator<>(2, (latest, replaced) -> sent.add(latest));
+        conflator.offer("a", record());
+        conflator.offer("a", record());
+        assertEquals(0, sent.size());
+        conflator.offer("b", record());
+        assertEquals(2, sent.size());
+        assertEquals(0, conflator.size());
+    }
+
+    /*
+     * Test Case: the records replaced by a record are acked when its send is acked.
+     */
+    @Test
+    public void testAckReplaced() {
+        SQSConflator<String> conflator = new SQSConflator<>(10, (latest, replaced) -> {
+            latest.ack();
+            replaced.forEach(Record::ack);
+        });
+        Record<String> first = record();
+        Record<String> second = record();
+        conflator.offer("a", first);
+        conflator.offer("a", second);
+        conflator.flush();
+        verify(first).ack();
+        verify(second).ack();
+    }
+}
@@ -19,10 +19,13 @@
 package org.apache.pulsar.ecosystem.io.sqs;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -81,6 +84,91 @@ public class SQSConnectorConfigTest {
                 20, config.getNumberOfConsumers());
     }
 
+    /*
+     * Test Case: the client pool is sized from the consumers unless its size is set.
+     *
+     * @throws IOException when failed to load the property map
+     */
+    @Test
+    public void testClientPoolSize() throws IOException {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("numberOfConsumers", 25);
+        SQSConnectorConfig config = SQSConnectorConfig.load(properties);
+        assertEquals(3, config.getEffectiveClientPoolSize());
+
+        properties.put("numberOfConsumers", 10);
+        assertEquals(1, SQSConnectorConfig.load(properties).getEffectiveClientPoolSize());
+
+        properties.put("clientPoolSize", 4);
+        properties.put("socketTimeoutMillis", 5000);
+        config = SQSConnectorConfig.load(properties);
+        config.validate();
+        assertEquals(4, config.getEffectiveClientPoolSize());
+        // a socket timeout shorter than a long poll is replaced by the default
+        assertEquals(SQSConnectorConfig.DEFAULT_SOCKET_TIMEOUT_MILLIS, config.getSocketTimeoutMillis());
+    }
+
+    /*
+     * Test Case: the prefetch depth is limited by the visibility timeout of the queue.
+     */
+    @Test
+    public void testLimitPrefetchToVisibilityTimeout() {
+        SQSConnectorConfig config = new SQSConnectorConfig();
+        config.setPrefetchEnabled(true);
+        config.setPrefetchBatches(5);
+
+        assertFalse(config.limitPrefetchToVisibilityTimeout(300));
+        assertEquals(5, config.getPrefetchBatches());
+        assertTrue(config.limitPrefetchToVisibilityTimeout(45));
+        assertEquals(2, config.getPrefetchBatches());
+        assertTrue(config.isPrefetchEnabled());
+        assertTrue(config.limitPrefetchToVisibilityTimeout(10));
+        assertFalse(config.isPrefetchEnabled());
+    }
+
+    /*
+     * Test Case: the prefetch depth is split over the clients of a pool, so the pool leases no more than it.
+     */
+    @Test
+    public void testClientPrefetchBatches() {
+        SQSConnectorConfig config = new SQSConnectorConfig();
+        config.setPrefetchBatches(5);
+
+        assertEquals(5, config.getClientPrefetchBatches(0, 1));
+        int total = 0;
+        for (int i = 0; i < 3; i++) {
+            total += config.getClientPrefetchBatches(i, 3);
+        }
+        assertEquals(5, total);
+        assertEquals(2, config.getClientPrefetchBatches(0, 3));
+        assertEquals(1, config.getClientPrefetchBatches(2, 3));
+        // more clients than batches, the last ones do not prefetch
+        assertEquals(1, config.getClientPrefetchBatches(4, 8));
+        assertEquals(0, config.getClientPrefetchBatches(5, 8));
+    }
+
+    /*
+     * Test Case: the projected message attributes include the ones the connector needs itself.
+     *
+     * @throws IOException when failed to load the property map
+     */
+    @Test
+    public void testMessageAttributeNames() throws IOException {
+        assertEquals(Collections.singletonList("All"),
+                SQSConnectorConfig.load(Collections.emptyMap()).getEffectiveMessageAttributeNames());
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("messageAttributeNames", "color, size");
+        properties.put("filter", "attr.type == 'order'");
+        assertEquals(Arrays.asList("color", "size", SQSUtils.PULSAR_MESSAGE_KEY, SQSUtils.PULSAR_TOPIC_ATTRIBUTE,
+                "type"), SQSConnectorConfig.load(properties).getEffectiveMessageAttributeNames());
+
+        properties.put("traceSamplingRatio", 0.1);
+        assertEquals(Arrays.asList("color", "size", SQSUtils.PULSAR_MESSAGE_KEY, SQSUtils.PULSAR_TOPIC_ATTRIBUTE,
+                        SQSTracer.TRACEPARENT, "type"),
+                SQSConnectorConfig.load(properties).getEffectiveMessageAttributeNames());
+    }
+
     /*
      * Test Case: init source connector without required params.
      */
@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+/**
+ * Unit test {@link SQSDedupCache}.
+ */
+public class SQSDedupCacheTest {
+
+    private static final String REMOVED = "";
+
+    /*
+     * Test Case: a key is in flight until it is acked, and known until its time to live is over or it is removed.
+     */
+    @Test
+    public void testDuplicatesExpire() {
+        SQSDedupCache cache = new SQSDedupCache(10, 100);
+        assertEquals(SQSDedupCache.State.NEW, cache.checkAndAdd("a", 0));
+        assertEquals(SQSDedupCache.State.IN_FLIGHT, cache.checkAndAdd("a", 10));
+        cache.markAcked("a");
+        assertEquals(SQSDedupCache.State.ACKED, cache.checkAndAdd("a", 50));
+        assertEquals(2.0 / 3, cache.getAndResetHitRate(), 0.0001);
+        assertEquals(SQSDedupCache.State.NEW, cache.checkAndAdd("a", 100));
+
+        cache.remove("a");
+        assertEquals(SQSDedupCache.State.NEW, cache.checkAndAdd("a", 101));
+    }
+
+    /*
+     * Test Case: a key that is removed and added again is not evicted when its old entry expires.
+     */
+    @Test
+    public void testRemoveAndAddAgain() {
+        SQSDedupCache cache = new SQSDedupCache(10, 100);
+        assertEquals(SQSDedupCache.State.NEW, cache.checkAndAdd("a", 0));
+        cache.remove("a");
+        assertEquals(SQSDedupCache.State.NEW, cache.checkAndAdd("a", 50));
+        cache.markAcked("a");
+
+        // the old entry of the key expires, the new one is still known
+        assertEquals(SQSDedupCache.State.NEW, cache.checkAndAdd("b", 120));
+        assertEquals(SQSDedupCache.State.ACKED, cache.checkAndAdd("a", 130));
+        assertEquals(2, cache.size());
+    }
+
+    /*
+     * Test Case: the oldest keys are evicted when the cache is full, the table stays consistent with a
+     * reference model through inserts, evictions and removals.
+     */
+    @Test
+    public void testEvictOldest() {
+        int maxEntries = 100;
+        SQSDedupCache cache = new SQSDedupCache(maxEntries, Long.MAX_VALUE);
+        Deque<String> model = new ArrayDeque<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            String key = "message-" + random.nextInt(300);
+            if (random.nextInt(10) == 0) {
+                // a removed key keeps its slot in the insertion order until it is evicted
+                cache.remove(key);
+                model = model.stream().map(k -> k.equals(key) ? REMOVED : k)
+                        .collect(Collectors.toCollection(ArrayDeque::new));
+                continue;
+            }
+            boolean duplicate = model.contains(key);
+            assertEquals(key, duplicate, cache.checkAndAdd(key, i) != SQSDedupCache.State.NEW);
+            if (!duplicate) {
+                if (model.size() == maxEntries) {
+                    model.removeFirst();
+                }
+                model.addLast(key);
+            }
+        }
+        assertEquals(model.size(), cache.size());
+        assertEquals(256 * 12 + maxEntries * 16, cache.getMemoryBytes());
+    }
+}
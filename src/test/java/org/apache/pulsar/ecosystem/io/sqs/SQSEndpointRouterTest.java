@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Unit test {@link SQSEndpointRouter} and {@link SQSEndpoint}.
+ */
+public class SQSEndpointRouterTest {
+
+    private static SQSEndpoint endpoint(int index, String queueUrl) {
+        return new SQSEndpoint(index, "endpoint-" + index, null, queueUrl, 3);
+    }
+
+    /*
+     * Test Case: an endpoint is failed over after the threshold of consecutive errors and recovers on a success.
+     */
+    @Test
+    public void testFailoverAndRecovery() {
+        SQSEndpoint endpoint = endpoint(0, "queue-url");
+        endpoint.onError();
+        endpoint.onError();
+        assertTrue(endpoint.isHealthy());
+        endpoint.onSuccess(TimeUnit.MILLISECONDS.toNanos(5));
+        endpoint.onError();
+        endpoint.onError();
+        assertTrue(endpoint.isHealthy());
+        endpoint.onError();
+        assertFalse(endpoint.isHealthy());
+
+        endpoint.onSuccess(TimeUnit.MILLISECONDS.toNanos(5));
+        assertTrue(endpoint.isHealthy());
+        Map<String, Double> metrics = new HashMap<>();
+        endpoint.report(metrics::put);
+        assertEquals(1.0, metrics.get(SQSEndpoint.metricName(0, "failovers")), 0);
+        assertEquals(1.0, metrics.get(SQSEndpoint.metricName(0, "recoveries")), 0);
+        assertEquals(5.0, metrics.get(SQSEndpoint.metricName(0, "errors")), 0);
+        assertEquals(1.0, metrics.get(SQSEndpoint.metricName(0, "healthy")), 0);
+    }
+
+    /*
+     * Test Case: the healthy endpoint with the lowest latency is chosen, errors raise the score of an endpoint.
+     */
+    @Test
+    public void testChooseLowestScore() {
+        SQSEndpoint slow = endpoint(0, "slow");
+        SQSEndpoint fast = endpoint(1, "fast");
+        SQSEndpointRouter router = new SQSEndpointRouter(Arrays.asList(slow, fast));
+        slow.onSuccess(TimeUnit.MILLISECONDS.toNanos(30));
+        fast.onSuccess(TimeUnit.MILLISECONDS.toNanos(10));
+        assertSame(fast, router.choose());
+
+        fast.onError();
+        fast.onError();
+        assertSame(slow, router.choose());
+    }
+
+    /*
+     * Test Case: failed over endpoints and endpoints without a queue are routed around, and when all of them are
+     * failed over the one with the fewest consecutive errors is chosen.
+     */
+    @Test
+    public void testRouteAroundFailedEndpoints() {
+        SQSEndpoint first = endpoint(0, "first");
+        SQSEndpoint second = endpoint(1, "second");
+        SQSEndpoint unresolved = endpoint(2, null);
+        SQSEndpointRouter router = new SQSEndpointRouter(Arrays.asList(unresolved, first, second));
+        assertSame(first, router.choose());
+
+        for (int i = 0; i < 3; i++) {
+            first.onError();
+        }
+        assertSame(second, router.choose());
+
+        for (int i = 0; i < 4; i++) {
+            second.onError();
+        }
+        assertFalse(second.isHealthy());
+        assertSame(first, router.choose());
+    }
+}
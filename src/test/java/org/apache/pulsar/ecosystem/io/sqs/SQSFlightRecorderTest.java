@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.Request;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+/**
+ * Unit test {@link SQSFlightRecorder}.
+ */
+public class SQSFlightRecorderTest {
+
+    private static final String REQUEST_EVENT = "org.apache.pulsar.ecosystem.io.sqs.Request";
+
+    /*
+     * Test Case: a request is recorded with its action and entries while the event is enabled, and not otherwise.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRequestEvent() throws Exception {
+        SQSFlightRecorder recorder = new SQSFlightRecorder();
+        DeleteMessageBatchRequest delete = new DeleteMessageBatchRequest("queue").withEntries(
+                new DeleteMessageBatchRequestEntry("1", "h1"), new DeleteMessageBatchRequestEntry("2", "h2"));
+        Request<DeleteMessageBatchRequest> request = mock(Request.class);
+        when(request.getOriginalRequest()).thenReturn(delete);
+
+        // disabled unless a recording enables it
+        recorder.beforeExecution(delete);
+        assertNull(SQSFlightRecorder.beginRoundTrip(SQSRequestStats.Action.DELETE));
+
+        Path file = Files.createTempFile("sqs-connector", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(REQUEST_EVENT);
+            recording.start();
+            recorder.beforeExecution(delete);
+            recorder.afterResponse(request, null);
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            events.removeIf(event -> !event.getEventType().getName().equals(REQUEST_EVENT));
+            assertEquals(1, events.size());
+            assertEquals("DeleteMessageBatch", events.get(0).getString("action"));
+            assertEquals(2, events.get(0).getInt("entries"));
+            assertEquals(true, events.get(0).getBoolean("success"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import java.util.Arrays;
+import java.util.HashSet;
+import org.junit.Test;
+
+/**
+ * Unit test {@link SQSMessageFilter}.
+ */
+public class SQSMessageFilterTest {
+
+    /*
+     * Test Case: predicates on attributes and the body prefix combine with the usual precedence.
+     */
+    @Test
+    public void testEvaluate() {
+        SQSMessageFilter filter = SQSMessageFilter.compile(
+                "attr.type == 'order' && !body startsWith 'test' || attr.priority exists");
+        assertEquals(new HashSet<>(Arrays.asList("type", "priority")), filter.getAttributeNames());
+
+        assertTrue(filter.test(message("{\"id\": 1}", "type", "order")));
+        assertFalse(filter.test(message("test-order", "type", "order")));
+        assertFalse(filter.test(message("{\"id\": 1}", "type", "refund")));
+        assertTrue(filter.test(message("test-order", "priority", "high")));
+
+        SQSMessageFilter grouped = SQSMessageFilter.compile("attr.type != 'a && b' && (body startsWith '{' || "
+                + "body startsWith '[')");
+        assertTrue(grouped.test(message("[1]", "type", "c")));
+        assertFalse(grouped.test(message("[1]", "type", "a && b")));
+        assertFalse(grouped.test(message("1", "type", "c")));
+    }
+
+    /*
+     * Test Case: an empty filter passes everything, an invalid one is rejected.
+     */
+    @Test
+    public void testCompile() {
+        assertNull(SQSMessageFilter.compile(" "));
+        for (String invalid : new String[]{"attr.type == order", "body == 'x'", "attr.type == 'x' &&",
+                "(attr.type exists", "size > 1", "attr.type exists 'x'"}) {
+            try {
+                SQSMessageFilter.compile(invalid);
+                throw new AssertionError("The filter should be invalid: " + invalid);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    private static Message message(String body, String attribute, String value) {
+        return new Message().withBody(body).addMessageAttributesEntry(attribute,
+                new MessageAttributeValue().withDataType("String").withStringValue(value));
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Unit test {@link SQSQueueMonitor}.
+ */
+public class SQSQueueMonitorTest {
+
+    /*
+     * Test Case: the recommended consumers keep up with the arrivals and drain the backlog within the target.
+     */
+    @Test
+    public void testRecommendConsumers() {
+        // 10 consumers drain 100 msg/s and the backlog is stable: they keep up
+        assertEquals(10, SQSQueueMonitor.recommendConsumers(100, 0, 0, 10, 60));
+        // another 6000 messages to drain in 60s doubles the required rate
+        assertEquals(20, SQSQueueMonitor.recommendConsumers(100, 0, 6000, 10, 60));
+        // the backlog grows by 50 msg/s on top of what is drained
+        assertEquals(15, SQSQueueMonitor.recommendConsumers(100, 50, 0, 10, 60));
+        // idle queue
+        assertEquals(1, SQSQueueMonitor.recommendConsumers(0, 0, 0, 10, 60));
+    }
+
+    /*
+     * Test Case: the monitor exports the backlog and resizes the consumers within the bounds.
+     */
+    @Test
+    public void testAutoscale() {
+        SQSConnectorConfig config = new SQSConnectorConfig();
+        config.setAutoscaleConsumers(true);
+        config.setMinConsumers(1);
+        config.setMaxConsumers(30);
+        config.setBacklogDrainTargetSeconds(60);
+        SQSSource source = mock(SQSSource.class);
+        doReturn(config).when(source).getConfig();
+        doReturn(10).when(source).getNumberOfRunningConsumers();
+        doReturn(1).when(source).getNumberOfInstances();
+        doReturn(10000).when(source).getQueueLength();
+
+        SQSQueueMonitor monitor = new SQSQueueMonitor(source);
+        long start = System.nanoTime();
+        monitor.update(60000, 10, 0, 0, start);
+        verify(source).setApproximateBacklog(60000);
+        verify(source, never()).resizeConsumers(anyInt());
+
+        // 10 consumers drained 100 msg/s while 6000 msg/s arrived, and 120000 messages are to drain in 60s
+        monitor.update(120000, 10, 0, 1000, start + TimeUnit.SECONDS.toNanos(10));
+        assertEquals(30, monitor.getRecommendedConsumers());
+        assertEquals(27, monitor.getRecommendedParallelism());
+        verify(source).resizeConsumers(30);
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.GetQueueUrlRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Unit test {@link SQSRateLimiter}.
+ */
+public class SQSRateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /*
+     * Test Case: an idle bucket holds the burst, beyond it the callers wait for the rate.
+     */
+    @Test
+    public void testReserve() {
+        SQSRateLimiter limiter = new SQSRateLimiter(10, 5, SQSRateLimiter.Unit.CALLS);
+        long now = System.nanoTime() + SECOND;
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.reserve(1, now) <= 0);
+        }
+        assertEquals(SECOND / 10, limiter.reserve(1, now));
+        assertEquals(3 * SECOND / 10, limiter.reserve(2, now));
+
+        // a long idle period does not save up more than the burst
+        long later = now + 60 * SECOND;
+        assertTrue(limiter.reserve(5, later) <= 0);
+        assertEquals(SECOND / 10, limiter.reserve(1, later));
+    }
+
+    /*
+     * Test Case: a new rate applies at once, and a rate of 0 lifts the limit.
+     */
+    @Test
+    public void testSetRate() {
+        SQSRateLimiter limiter = new SQSRateLimiter(10, 1, SQSRateLimiter.Unit.CALLS);
+        long now = System.nanoTime() + SECOND;
+        assertTrue(limiter.reserve(1, now) <= 0);
+        assertEquals(SECOND / 10, limiter.reserve(1, now));
+
+        // the debt at the previous rate is forgiven
+        limiter.setRate(100, 1);
+        assertTrue(limiter.reserve(1, now) <= 0);
+        assertEquals(SECOND / 100, limiter.reserve(1, now));
+
+        limiter.setRate(0, 0);
+        assertFalse(limiter.isLimited());
+        long start = System.nanoTime();
+        limiter.acquire(1000);
+        assertTrue(System.nanoTime() - start < SECOND);
+    }
+
+    /*
+     * Test Case: tokens are counted per call or per message, calls that move no messages are free.
+     */
+    @Test
+    public void testTokensOf() {
+        DeleteMessageBatchRequest delete = new DeleteMessageBatchRequest("queue").withEntries(
+                new DeleteMessageBatchRequestEntry("1", "h1"), new DeleteMessageBatchRequestEntry("2", "h2"));
+        ReceiveMessageRequest receive = new ReceiveMessageRequest("queue").withMaxNumberOfMessages(10);
+
+        SQSRateLimiter calls = new SQSRateLimiter(10, 1, SQSRateLimiter.Unit.CALLS);
+        assertEquals(1, calls.tokensOf(delete));
+        assertEquals(1, calls.tokensOf(receive));
+
+        SQSRateLimiter messages = new SQSRateLimiter(10, 1, SQSRateLimiter.Unit.MESSAGES);
+        assertEquals(2, messages.tokensOf(delete));
+        assertEquals(10, messages.tokensOf(receive));
+
+        // the bucket has a single token, a limited call would wait for it
+        messages.beforeExecution(new GetQueueUrlRequest("queue"));
+        Map<String, Double> metrics = new HashMap<>();
+        messages.report(metrics::put);
+        assertEquals(0, metrics.get(SQSRateLimiter.METRICS_WAITS), 0.0001);
+    }
+}
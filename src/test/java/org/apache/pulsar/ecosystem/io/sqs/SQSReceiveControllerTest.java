@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/**
+ * Unit test {@link SQSReceiveController}.
+ */
+public class SQSReceiveControllerTest {
+
+    /*
+     * Test Case: receives long poll, whether they return messages or not, and only a buffer more than half full
+     * shortens the wait.
+     */
+    @Test
+    public void testWaitTime() {
+        SQSReceiveController controller = new SQSReceiveController(1, () -> 1);
+        assertTrue(controller.plan(0, 100, -1));
+        assertEquals(SQSUtils.MAX_WAIT_TIME, controller.getWaitTimeSeconds());
+        controller.onReceived(1, 0);
+        assertTrue(controller.plan(0, 100, -1));
+        assertEquals(SQSUtils.MAX_WAIT_TIME, controller.getWaitTimeSeconds());
+        controller.onReceived(1, 1);
+        assertTrue(controller.plan(50, 100, -1));
+        assertEquals(SQSUtils.MAX_WAIT_TIME, controller.getWaitTimeSeconds());
+
+        assertTrue(controller.plan(51, 100, -1));
+        assertEquals(SQSReceiveController.MIN_WAIT_TIME_SECONDS, controller.getWaitTimeSeconds());
+        controller.onReceived(1, 1);
+        assertTrue(controller.plan(10, 100, -1));
+        assertEquals(SQSUtils.MAX_WAIT_TIME, controller.getWaitTimeSeconds());
+    }
+
+    /*
+     * Test Case: the backlog that makes the queue busy follows the number of running consumers.
+     */
+    @Test
+    public void testRunningConsumers() {
+        AtomicInteger consumers = new AtomicInteger(1);
+        SQSReceiveController controller = new SQSReceiveController(2, consumers::get);
+        assertTrue(controller.plan(0, 100, 20));
+        assertEquals(10, controller.getBatchSize());
+
+        consumers.set(5);
+        assertTrue(controller.plan(0, 100, 20));
+        assertEquals(2, controller.getBatchSize());
+    }
+
+    /*
+     * Test Case: full receives or a backlog grow the batch, the free buffer space limits it.
+     */
+    @Test
+    public void testBatchSize() {
+        SQSReceiveController controller = new SQSReceiveController(2, () -> 5);
+        assertTrue(controller.plan(0, 100, -1));
+        assertEquals(2, controller.getBatchSize());
+
+        assertTrue(controller.plan(0, 100, 50));
+        assertEquals(10, controller.getBatchSize());
+
+        for (int i = 0; i < 3; i++) {
+            controller.onReceived(2, 2);
+        }
+        assertTrue(controller.plan(0, 100, -1));
+        assertEquals(10, controller.getBatchSize());
+        // only 6 records fit into the buffer
+        assertTrue(controller.plan(44, 50, -1));
+        assertEquals(6, controller.getBatchSize());
+    }
+
+    /*
+     * Test Case: nothing is received while the source buffer is close to full.
+     */
+    @Test
+    public void testPauseWhenBufferFull() {
+        SQSReceiveController controller = new SQSReceiveController(10, () -> 1);
+        assertFalse(controller.plan(90, 100, 1000));
+        assertTrue(controller.plan(89, 100, 1000));
+        assertEquals(10, controller.getBatchSize());
+    }
+}
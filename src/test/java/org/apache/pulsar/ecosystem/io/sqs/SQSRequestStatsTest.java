@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+/**
+ * Unit test {@link SQSRequestStats}.
+ */
+public class SQSRequestStatsTest {
+
+    /*
+     * Test Case: empty receives, batch entries and billed chunks are counted per api action.
+     */
+    @Test
+    public void testCountRequests() {
+        SQSRequestStats stats = new SQSRequestStats();
+
+        ReceiveMessageRequest receive = new ReceiveMessageRequest("queue").withMaxNumberOfMessages(10);
+        stats.afterResponse(request(receive), new Response<>(new ReceiveMessageResult(), null));
+        stats.afterResponse(request(receive), new Response<>(new ReceiveMessageResult()
+                .withMessages(new Message().withBody("a"), new Message().withBody("b")), null));
+
+        DeleteMessageBatchRequest delete = new DeleteMessageBatchRequest("queue").withEntries(
+                new DeleteMessageBatchRequestEntry("1", "h1"), new DeleteMessageBatchRequestEntry("2", "h2"));
+        stats.afterResponse(request(delete), new Response<>(null, null));
+
+        char[] body = new char[SQSRequestStats.BILLED_CHUNK_SIZE + 1];
+        SendMessageRequest send = new SendMessageRequest("queue", new String(body));
+        stats.afterResponse(request(send), new Response<>(null, null));
+
+        assertEquals(2, stats.getCalls(SQSRequestStats.Action.RECEIVE));
+        assertEquals(2, stats.getEntries(SQSRequestStats.Action.RECEIVE));
+        assertEquals(1, stats.getEmptyReceives());
+        assertEquals(2, stats.getEntries(SQSRequestStats.Action.DELETE_BATCH));
+        assertEquals(1, stats.getCalls(SQSRequestStats.Action.SEND));
+        // 2 receives + 1 delete batch + a send of two chunks
+        assertEquals(5, stats.getBilledChunks());
+
+        Map<String, Double> metrics = new HashMap<>();
+        stats.report(metrics::put);
+        assertEquals(0.1, metrics.get("_sqs_request_receive_fill_ratio_"), 0.0001);
+        assertEquals(0.2, metrics.get("_sqs_request_delete_batch_fill_ratio_"), 0.0001);
+        assertEquals(5, metrics.get("_sqs_billed_requests_"), 0.0001);
+
+        // the next report only covers the requests issued after the previous one
+        metrics.clear();
+        stats.report(metrics::put);
+        assertEquals(0, metrics.get("_sqs_billed_requests_"), 0.0001);
+    }
+
+    /*
+     * Test Case: an error returned by SQS is billed, a request that did not reach SQS is not.
+     */
+    @Test
+    public void testCountErrors() {
+        SQSRequestStats stats = new SQSRequestStats();
+        SendMessageRequest send = new SendMessageRequest("queue", "a");
+        stats.afterError(request(send), null, new AmazonServiceException("Throttled"));
+        stats.afterError(request(send), null, new SdkClientException("Unable to execute HTTP request"));
+
+        assertEquals(2, stats.getCalls(SQSRequestStats.Action.SEND));
+        assertEquals(2, stats.getErrors(SQSRequestStats.Action.SEND));
+        assertEquals(1, stats.getBilledChunks());
+    }
+
+    private static Request<?> request(AmazonWebServiceRequest originalRequest) {
+        Request<?> request = mock(Request.class);
+        doReturn(originalRequest).when(request).getOriginalRequest();
+        return request;
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Base64;
+import org.apache.pulsar.common.schema.SchemaType;
+import org.junit.Test;
+
+/**
+ * Unit test {@link SQSSchemaDecoder}.
+ */
+public class SQSSchemaDecoderTest {
+
+    private static final String DEFINITION = "{\"type\":\"record\",\"name\":\"Order\",\"fields\":["
+            + "{\"name\":\"id\",\"type\":\"string\"},"
+            + "{\"name\":\"note\",\"type\":[\"null\",\"string\"]},"
+            + "{\"name\":\"count\",\"type\":\"int\",\"default\":1}]}";
+
+    /*
+     * Test Case: a json body is passed on as it is when it has the required fields of the schema.
+     */
+    @Test
+    public void testDecodeJson() throws Exception {
+        SQSSchemaDecoder decoder = SQSSchemaDecoder.create(SchemaType.JSON, DEFINITION);
+        assertEquals(SchemaType.JSON, decoder.getSchema().getSchemaInfo().getType());
+
+        String body = "{\"id\":\"order-1\"}";
+        assertArrayEquals(body.getBytes(UTF_8), decoder.decode(body));
+        for (String invalid : new String[]{"{\"note\":\"no id\"}", "{\"id\":null}", "[1, 2]", "not json"}) {
+            try {
+                decoder.decode(invalid);
+                fail("decoded " + invalid);
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    /*
+     * Test Case: a binary body is base64 decoded.
+     */
+    @Test
+    public void testDecodeBinary() throws Exception {
+        SQSSchemaDecoder decoder = SQSSchemaDecoder.create(SchemaType.AVRO, DEFINITION);
+        byte[] encoded = {2, 'i', 'd', 0, 2};
+        assertArrayEquals(encoded, decoder.decode(Base64.getEncoder().encodeToString(encoded)));
+        try {
+            decoder.decode("not base64!");
+            fail("decoded an invalid base64 body");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /*
+     * Test Case: bytes need no decoder, other schemas need a definition and unsupported types are rejected.
+     */
+    @Test
+    public void testCreate() {
+        assertNull(SQSSchemaDecoder.create(SchemaType.BYTES, ""));
+        for (SchemaType type : new SchemaType[]{SchemaType.JSON, SchemaType.STRING}) {
+            try {
+                SQSSchemaDecoder.create(type, "");
+                fail("created a decoder for " + type);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
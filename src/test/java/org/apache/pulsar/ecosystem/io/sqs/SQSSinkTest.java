@@ -20,6 +20,7 @@ package org.apache.pulsar.ecosystem.io.sqs;
 
 import static org.apache.pulsar.ecosystem.io.sqs.SQSTestUtils.getTestConfigHashMap;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Map;
 import org.junit.Test;
@@ -44,4 +45,31 @@ public class SQSSinkTest {
             assertNull("Connect to AWS SQS should not get exception", e);
         }
     }
+
+    /*
+     * Test Case: SQSSink validates its config on open, spilling needs a directory.
+     */
+    @Test
+    public void testOpenValidatesConfig() throws Exception {
+        Map<String, Object> properties = getTestConfigHashMap();
+        properties.put("spillEnabled", true);
+
+        SQSSink sink = new SQSSink();
+        try {
+            sink.open(properties, null);
+            throw new AssertionError("spilling without a directory is not valid");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("spillDirectory"));
+        } finally {
+            sink.close();
+        }
+    }
+
+    /*
+     * Test Case: SQSSink closes without a config, so a failed open does not hide its error.
+     */
+    @Test
+    public void testCloseWithoutConfig() {
+        new SQSSink().close();
+    }
 }
@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+/**
+ * Unit test {@link SQSSpillCodec}.
+ */
+public class SQSSpillCodecTest {
+
+    /*
+     * Test Case: the body and the string and binary attributes of a message survive the spill log.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        SendMessageRequest request = new SendMessageRequest("queue-url", "body with \u00fcn\u00efcode")
+                .addMessageAttributesEntry("color", new MessageAttributeValue()
+                        .withDataType("String").withStringValue("blue"))
+                .addMessageAttributesEntry("payload", new MessageAttributeValue()
+                        .withDataType("Binary").withBinaryValue(ByteBuffer.wrap("bytes".getBytes(UTF_8))));
+
+        SendMessageBatchRequestEntry entry = SQSSpillCodec.decode(SQSSpillCodec.encode(request), "7");
+        assertEquals("7", entry.getId());
+        assertEquals("body with \u00fcn\u00efcode", entry.getMessageBody());
+        assertEquals(request.getMessageAttributes(), entry.getMessageAttributes());
+    }
+
+    /*
+     * Test Case: a message without attributes is sent without attributes.
+     */
+    @Test
+    public void testNoAttributes() throws Exception {
+        SendMessageBatchRequestEntry entry = SQSSpillCodec.decode(
+                SQSSpillCodec.encode(new SendMessageRequest("queue-url", "")), "0");
+        assertEquals("", entry.getMessageBody());
+        assertTrue(entry.getMessageAttributes().isEmpty());
+    }
+}
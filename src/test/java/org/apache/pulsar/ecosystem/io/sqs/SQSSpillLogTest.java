@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test {@link SQSSpillLog}.
+ */
+public class SQSSpillLogTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+
+    private Path directory;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("sqs-spill");
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private SQSSpillLog open(SQSSpillLog.FsyncPolicy policy) throws IOException {
+        return SQSSpillLog.open(directory, SEGMENT_SIZE, 4 * SEGMENT_SIZE, policy, 10);
+    }
+
+    private static byte[] entry(int i) {
+        return ("entry-" + i).getBytes(UTF_8);
+    }
+
+    private static List<String> read(SQSSpillLog spillLog, int maxEntries) throws InterruptedException {
+        List<String> entries = new ArrayList<>();
+        for (byte[] entry : spillLog.read(maxEntries, Integer.MAX_VALUE, 0)) {
+            entries.add(new String(entry, UTF_8));
+        }
+        return entries;
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".log")).sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /*
+     * Test Case: entries are read in order, in batches, and acked right away without an fsync interval.
+     */
+    @Test
+    public void testAppendReadCommit() throws Exception {
+        AtomicInteger durable = new AtomicInteger();
+        try (SQSSpillLog spillLog = open(SQSSpillLog.FsyncPolicy.ALWAYS)) {
+            for (int i = 0; i < 5; i++) {
+                assertTrue(spillLog.append(entry(i), durable::incrementAndGet));
+            }
+            assertEquals(5, durable.get());
+            assertEquals(List.of("entry-0", "entry-1", "entry-2"), read(spillLog, 3));
+            assertEquals(List.of("entry-3", "entry-4"), read(spillLog, 3));
+            assertTrue(read(spillLog, 3).isEmpty());
+            assertEquals(5, spillLog.size());
+            spillLog.commit();
+            assertEquals(0, spillLog.size());
+        }
+    }
+
+    /*
+     * Test Case: a batch is cut at the byte limit, but holds at least one entry.
+     */
+    @Test
+    public void testReadByteLimit() throws Exception {
+        try (SQSSpillLog spillLog = open(SQSSpillLog.FsyncPolicy.NONE)) {
+            for (int i = 0; i < 3; i++) {
+                spillLog.append(entry(i), () -> { });
+            }
+            assertEquals(1, spillLog.read(10, 3, 0).size());
+            assertEquals(2, spillLog.read(10, 2 * entry(0).length, 0).size());
+        }
+    }
+
+    /*
+     * Test Case: with the INTERVAL policy the entries are acked by the flusher once they are forced.
+     */
+    @Test
+    public void testIntervalFsync() throws Exception {
+        AtomicInteger durable = new AtomicInteger();
+        try (SQSSpillLog spillLog = open(SQSSpillLog.FsyncPolicy.INTERVAL)) {
+            spillLog.append(entry(0), durable::incrementAndGet);
+            spillLog.append(entry(1), durable::incrementAndGet);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (durable.get() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(2, durable.get());
+        }
+    }
+
+    /*
+     * Test Case: the log rolls to a new segment when one is full, deletes the segments that were read entirely,
+     * and rejects entries once it uses up its space.
+     */
+    @Test
+    public void testSegmentsAndCapacity() throws Exception {
+        byte[] large = new byte[300];
+        try (SQSSpillLog spillLog = open(SQSSpillLog.FsyncPolicy.NONE)) {
+            int appended = 0;
+            while (spillLog.append(large, () -> { })) {
+                appended++;
+            }
+            // three entries fit into a segment of 1024 bytes, the log holds four segments
+            assertEquals(12, appended);
+            assertEquals(4, spillLog.getSegmentCount());
+            assertFalse(spillLog.append(new byte[SEGMENT_SIZE], () -> { }));
+
+            assertEquals(10, spillLog.read(10, Integer.MAX_VALUE, 0).size());
+            spillLog.commit();
+            assertEquals(2, spillLog.size());
+            assertEquals(1, spillLog.getSegmentCount());
+            assertEquals(1, segmentFiles().size());
+            assertTrue(spillLog.append(large, () -> { }));
+        }
+    }
+
+    /*
+     * Test Case: the entries that were not committed are read again after a restart, the committed ones are not.
+     */
+    @Test
+    public void testReplayAfterRestart() throws Exception {
+        try (SQSSpillLog spillLog = open(SQSSpillLog.FsyncPolicy.ALWAYS)) {
+            for (int i = 0; i < 40; i++) {
+                spillLog.append(entry(i), () -> { });
+            }
+            assertEquals(10, read(spillLog, 10).size());
+            spillLog.commit();
+            // read but not committed
+            read(spillLog, 10);
+        }
+        try (SQSSpillLog spillLog = open(SQSSpillLog.FsyncPolicy.ALWAYS)) {
+            assertEquals(30, spillLog.size());
+            assertEquals("entry-10", read(spillLog, 1).get(0));
+            spillLog.append(entry(40), () -> { });
+            List<String> rest = read(spillLog, 100);
+            assertEquals(30, rest.size());
+            assertEquals("entry-40", rest.get(rest.size() - 1));
+        }
+    }
+
+    /*
+     * Test Case: an append torn by a crash is cut off on recovery, the entries before it are kept.
+     */
+    @Test
+    public void testTornAppend() throws Exception {
+        int tornAt;
+        try (SQSSpillLog spillLog = open(SQSSpillLog.FsyncPolicy.ALWAYS)) {
+            spillLog.append(entry(0), () -> { });
+            spillLog.append(entry(1), () -> { });
+            tornAt = SQSSpillLog.HEADER_SIZE + entry(0).length;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segmentFiles().get(0).toFile(), "rw")) {
+            // the crc of the second entry no longer matches
+            file.seek(tornAt + SQSSpillLog.HEADER_SIZE);
+            file.write('X');
+        }
+        try (SQSSpillLog spillLog = open(SQSSpillLog.FsyncPolicy.ALWAYS)) {
+            assertEquals(1, spillLog.size());
+            spillLog.append(entry(2), () -> { });
+            assertEquals(List.of("entry-0", "entry-2"), read(spillLog, 10));
+        }
+    }
+
+    /*
+     * Test Case: a directory is locked while a log is open in it, a second log cannot be opened there.
+     */
+    @Test
+    public void testDirectoryLocked() throws Exception {
+        try (SQSSpillLog spillLog = open(SQSSpillLog.FsyncPolicy.ALWAYS)) {
+            try {
+                open(SQSSpillLog.FsyncPolicy.ALWAYS);
+                throw new AssertionError("the directory is locked");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("another sink"));
+            }
+        }
+        open(SQSSpillLog.FsyncPolicy.ALWAYS).close();
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Unit test {@link SQSThreads}.
+ */
+public class SQSThreadsTest {
+
+    /*
+     * Test Case: platform threads are named after the prefix.
+     */
+    @Test
+    public void testPlatformThreads() throws Exception {
+        ExecutorService executor = SQSThreads.newExecutor("sqs-test", false);
+        try {
+            Thread thread = executor.submit(Thread::currentThread).get(10, TimeUnit.SECONDS);
+            assertEquals("sqs-test-0", thread.getName());
+            assertFalse(thread.isDaemon());
+            assertFalse(SQSThreads.isVirtual(thread));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /*
+     * Test Case: on JDK 21+ every task runs on a new virtual thread.
+     */
+    @Test
+    public void testVirtualThreads() throws Exception {
+        Assume.assumeTrue(SQSThreads.isVirtualSupported());
+        ExecutorService executor = SQSThreads.newExecutor("sqs-test", true);
+        try {
+            Thread first = executor.submit(Thread::currentThread).get(10, TimeUnit.SECONDS);
+            Thread second = executor.submit(Thread::currentThread).get(10, TimeUnit.SECONDS);
+            assertTrue(SQSThreads.isVirtual(first));
+            assertEquals("sqs-test-0", first.getName());
+            assertEquals("sqs-test-1", second.getName());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /*
+     * Test Case: without virtual threads the connector falls back to platform threads and their consumer limit.
+     */
+    @Test
+    public void testFallbackToPlatformThreads() throws Exception {
+        Assume.assumeFalse(SQSThreads.isVirtualSupported());
+        assertFalse(SQSThreads.isVirtual(SQSThreads.factory("sqs-test", true).newThread(() -> { })));
+
+        SQSConnectorConfig config = new SQSConnectorConfig();
+        config.setVirtualThreads(true);
+        config.setNumberOfConsumers(200);
+        config.validate();
+        assertFalse(config.isVirtualThreads());
+        assertEquals(SQSConnectorConfig.DEFAULT_NUMBER_OF_SQS_CONSUMERS, config.getNumberOfConsumers());
+    }
+}
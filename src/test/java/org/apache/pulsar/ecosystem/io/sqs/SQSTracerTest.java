@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.MessageSystemAttributeName;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.Test;
+
+/**
+ * Unit test {@link SQSTracer}.
+ */
+public class SQSTracerTest {
+
+    private static final String TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+    private static final String SPAN_ID = "00f067aa0ba902b7";
+
+    /**
+     * Keeps the exported spans in memory.
+     */
+    public static class InMemoryExporter implements SQSSpanExporter {
+        private final List<SQSSpan> spans = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void export(SQSSpan span) {
+            spans.add(span);
+        }
+
+        SQSSpan get(String name) {
+            return spans.stream().filter(span -> span.getName().equals(name)).findFirst().orElse(null);
+        }
+    }
+
+    private static Message message(String traceparent) {
+        Map<String, MessageAttributeValue> attributes = new HashMap<>();
+        if (traceparent != null) {
+            attributes.put(SQSTracer.TRACEPARENT, new MessageAttributeValue().withDataType("String")
+                    .withStringValue(traceparent));
+        }
+        Map<String, String> systemAttributes = new HashMap<>();
+        systemAttributes.put(MessageSystemAttributeName.SentTimestamp.toString(),
+                String.valueOf(System.currentTimeMillis() - 100));
+        return new Message().withMessageId("id").withReceiptHandle("handle")
+                .withMessageAttributes(attributes).withAttributes(systemAttributes);
+    }
+
+    /*
+     * Test Case: a traceparent of version 00 is parsed with its sampled flag, malformed ones are ignored.
+     */
+    @Test
+    public void testParse() {
+        SQSTracer.Context context = SQSTracer.Context.parse("00-" + TRACE_ID + "-" + SPAN_ID + "-01");
+        assertEquals(TRACE_ID, context.traceId);
+        assertEquals(SPAN_ID, context.spanId);
+        assertTrue(context.sampled);
+        assertFalse(SQSTracer.Context.parse("00-" + TRACE_ID + "-" + SPAN_ID + "-00").sampled);
+
+        assertNull(SQSTracer.Context.parse(null));
+        assertNull(SQSTracer.Context.parse("01-" + TRACE_ID + "-" + SPAN_ID + "-01"));
+        assertNull(SQSTracer.Context.parse("00-" + TRACE_ID.toUpperCase() + "-" + SPAN_ID + "-01"));
+        assertNull(SQSTracer.Context.parse("00-00000000000000000000000000000000-" + SPAN_ID + "-01"));
+    }
+
+    /*
+     * Test Case: the context of the sink send is continued by the source, whose spans cover the message.
+     */
+    @Test
+    public void testPropagation() {
+        InMemoryExporter exporter = new InMemoryExporter();
+        SQSTracer tracer = new SQSTracer(1, exporter);
+
+        SQSTracer.SendTrace send = tracer.startSend("00-" + TRACE_ID + "-" + SPAN_ID + "-01");
+        send.onComplete(true);
+        SQSSpan sendSpan = exporter.get("sqs.sink.send");
+        assertEquals(TRACE_ID, sendSpan.getTraceId());
+        assertEquals(SPAN_ID, sendSpan.getParentSpanId());
+        assertEquals(send.getTraceparent(), SQSTracer.format(TRACE_ID, sendSpan.getSpanId()));
+
+        SQSTracer.MessageTrace trace = tracer.startMessage(message(send.getTraceparent()));
+        trace.onRead();
+        trace.onComplete(true);
+        trace.onComplete(false);
+        assertEquals(5, exporter.spans.size());
+
+        SQSSpan receive = exporter.get("sqs.source.receive");
+        assertEquals(TRACE_ID, receive.getTraceId());
+        assertEquals(sendSpan.getSpanId(), receive.getParentSpanId());
+        assertFalse(receive.isError());
+        SQSSpan dwell = exporter.get("sqs.source.dwell");
+        assertEquals(receive.getSpanId(), dwell.getParentSpanId());
+        assertTrue(dwell.getEndEpochNanos() - dwell.getStartEpochNanos() > 0);
+        assertEquals(receive.getSpanId(), exporter.get("sqs.source.buffer").getParentSpanId());
+        SQSSpan publish = exporter.get("sqs.source.publish");
+        assertEquals(trace.getTraceparent(), SQSTracer.format(TRACE_ID, publish.getSpanId()));
+    }
+
+    /*
+     * Test Case: an unsampled context is not traced, and a zero ratio disables tracing.
+     */
+    @Test
+    public void testSampling() throws Exception {
+        InMemoryExporter exporter = new InMemoryExporter();
+        SQSTracer tracer = new SQSTracer(1, exporter);
+        assertNull(tracer.startMessage(message("00-" + TRACE_ID + "-" + SPAN_ID + "-00")));
+        SQSTracer.MessageTrace root = tracer.startMessage(message(null));
+        assertNotNull(root);
+        assertEquals(55, root.getTraceparent().length());
+
+        assertNull(SQSTracer.create(0, ""));
+        assertNotNull(SQSTracer.create(0.5, InMemoryExporter.class.getName()));
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test {@link SQSTrafficCapture}.
+ */
+public class SQSTrafficCaptureTest {
+
+    private Path file;
+
+    @Before
+    public void setup() throws IOException {
+        file = Files.createTempFile("sqs-capture", ".gz");
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private static SendMessageRequest message(int i) {
+        return new SendMessageRequest(null, "body-" + i)
+                .addMessageAttributesEntry("index", new MessageAttributeValue()
+                        .withDataType("Number").withStringValue(String.valueOf(i)));
+    }
+
+    private List<SQSTrafficCapture.CapturedMessage> readAll() throws IOException {
+        List<SQSTrafficCapture.CapturedMessage> messages = new ArrayList<>();
+        try (SQSTrafficCapture.Reader reader = new SQSTrafficCapture.Reader(file)) {
+            for (SQSTrafficCapture.CapturedMessage message = reader.next(); message != null;
+                 message = reader.next()) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /*
+     * Test Case: the captured messages are read back in order with their body, attributes and time, up to the
+     * maximum number of messages.
+     */
+    @Test
+    public void testCaptureAndRead() throws Exception {
+        try (SQSTrafficCapture capture = SQSTrafficCapture.open(file, 1.0, 8)) {
+            for (int i = 0; i < 10; i++) {
+                capture.capture(message(i), 1000L + i);
+            }
+        }
+
+        List<SQSTrafficCapture.CapturedMessage> messages = readAll();
+        assertEquals(8, messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            assertEquals(1000L + i, messages.get(i).getTimestampMillis());
+            assertEquals("body-" + i, messages.get(i).getBody());
+            assertEquals(String.valueOf(i), messages.get(i).getAttributes().get("index").getStringValue());
+        }
+    }
+
+    /*
+     * Test Case: only the sampled ratio of the messages is captured.
+     */
+    @Test
+    public void testSampling() throws Exception {
+        try (SQSTrafficCapture capture = SQSTrafficCapture.open(file, 0.1, Long.MAX_VALUE)) {
+            for (int i = 0; i < 5000; i++) {
+                capture.capture(message(i), i);
+            }
+        }
+        int captured = readAll().size();
+        assertTrue("captured " + captured, captured > 300 && captured < 700);
+    }
+
+    /*
+     * Test Case: a capture that was cut off is read up to its last complete message.
+     */
+    @Test
+    public void testTruncatedCapture() throws Exception {
+        try (SQSTrafficCapture capture = SQSTrafficCapture.open(file, 1.0, Long.MAX_VALUE)) {
+            for (int i = 0; i < 1000; i++) {
+                capture.capture(message(i), i);
+            }
+        }
+        try (RandomAccessFile truncated = new RandomAccessFile(file.toFile(), "rw")) {
+            truncated.setLength(truncated.length() / 2);
+        }
+        assertTrue(readAll().size() < 1000);
+    }
+
+    /*
+     * Test Case: a file that is not a capture is rejected.
+     */
+    @Test(expected = IOException.class)
+    public void testNotACapture() throws Exception {
+        try (GZIPOutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write(new byte[16]);
+        }
+        assertNull(new SQSTrafficCapture.Reader(file).next());
+    }
+}
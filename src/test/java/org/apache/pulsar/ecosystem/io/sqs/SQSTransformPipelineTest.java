@@ -0,0 +1,161 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.sqs;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.amazonaws.services.sqs.model.Message;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+/**
+ * Unit test {@link SQSTransformPipeline} and {@link SQSTransformedRecord}.
+ */
+public class SQSTransformPipelineTest {
+
+    /**
+     * Splits a record on commas, and routes the parts to the topic of the route config.
+     */
+    public static class SplitTransformer implements SQSRecordTransformer {
+        private String route;
+
+        @Override
+        public void open(Map<String, Object> config) {
+            route = (String) config.get("route");
+        }
+
+        @Override
+        public List<SQSRecordData> transform(SQSRecordData record) {
+            String[] parts = new String(record.getValue(), UTF_8).split(",");
+            SQSRecordData[] records = new SQSRecordData[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                records[i] = record.toBuilder().key(parts[i]).value(parts[i].getBytes(UTF_8))
+                        .destinationTopic(route).build();
+            }
+            return Arrays.asList(records);
+        }
+    }
+
+    /**
+     * Drops the records keyed drop, fails on the records keyed fail.
+     */
+    public static class DropTransformer implements SQSRecordTransformer {
+        @Override
+        public List<SQSRecordData> transform(SQSRecordData record) {
+            if ("fail".equals(record.getKey())) {
+                throw new IllegalStateException("cannot transform " + record.getKey());
+            }
+            return "drop".equals(record.getKey()) ? Collections.emptyList() : Collections.singletonList(record);
+        }
+    }
+
+    private static SQSRecordData data(String value) {
+        return SQSRecordData.builder().value(value.getBytes(UTF_8)).destinationTopic("topic").build();
+    }
+
+    /*
+     * Test Case: the transformers are applied in order, a record may be split, re-keyed, re-routed and dropped.
+     */
+    @Test
+    public void testApply() throws Exception {
+        Map<String, Object> config = new HashMap<>();
+        config.put("route", "routed-topic");
+        SQSTransformPipeline pipeline = SQSTransformPipeline.load(
+                SplitTransformer.class.getName() + ", " + DropTransformer.class.getName(), config);
+
+        List<SQSRecordData> records = pipeline.apply(data("a,drop,b"));
+        assertEquals(2, records.size());
+        assertEquals("a", records.get(0).getKey());
+        assertEquals("b", new String(records.get(1).getValue(), UTF_8));
+        assertEquals("routed-topic", records.get(1).getDestinationTopic());
+        assertTrue(pipeline.apply(data("drop")).isEmpty());
+
+        Map<String, Double> metrics = new HashMap<>();
+        pipeline.report(metrics::put);
+        assertEquals(2, metrics.get(SQSTransformPipeline.metricName(0, "records")), 0.0001);
+        assertEquals(4, metrics.get(SQSTransformPipeline.metricName(1, "records")), 0.0001);
+        assertEquals(2, metrics.get(SQSTransformPipeline.metricName(1, "dropped")), 0.0001);
+        assertTrue(metrics.get(SQSTransformPipeline.metricName(1, "time_millis")) >= 0);
+    }
+
+    /*
+     * Test Case: a failing transformer is counted and its failure is passed to the source.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testTransformerFailure() throws Exception {
+        SQSTransformPipeline pipeline = SQSTransformPipeline.load(DropTransformer.class.getName(), null);
+        try {
+            pipeline.apply(SQSRecordData.builder().key("fail").build());
+        } finally {
+            Map<String, Double> metrics = new HashMap<>();
+            pipeline.report(metrics::put);
+            assertEquals(1, metrics.get(SQSTransformPipeline.metricName(0, "errors")), 0.0001);
+        }
+    }
+
+    /*
+     * Test Case: no transformers make no pipeline, a class that is not a transformer is rejected.
+     */
+    @Test
+    public void testLoad() throws Exception {
+        assertNull(SQSTransformPipeline.load(" ", null));
+        try {
+            SQSTransformPipeline.load(String.class.getName(), null);
+            throw new AssertionError("a String is not a transformer");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains(String.class.getName()));
+        }
+    }
+
+    /*
+     * Test Case: the message is deleted once all records made from it are acked, and failed only once.
+     */
+    @Test
+    public void testTransformedRecordAck() {
+        SQSSource source = mock(SQSSource.class);
+        Message message = new Message().withMessageId("id").withReceiptHandle("handle");
+        SQSTransformedRecord.Origin origin = new SQSTransformedRecord.Origin(message, source, 2, null);
+        SQSTransformedRecord first = new SQSTransformedRecord(data("a"), origin);
+        SQSTransformedRecord second = new SQSTransformedRecord(data("b"), origin);
+
+        first.ack();
+        verify(source, never()).ackMessage(any(), any(Message.class));
+        second.ack();
+        verify(source).ackMessage(isNull(), eq(message));
+
+        SQSTransformedRecord.Origin failing = new SQSTransformedRecord.Origin(message, source, 2, null);
+        new SQSTransformedRecord(data("a"), failing).fail();
+        new SQSTransformedRecord(data("b"), failing).fail();
+        verify(source, times(1)).failMessage(isNull(), any(Message.class));
+    }
+}